@@ -1,10 +1,7 @@
 package com.adobe.training.core;
 
-import java.util.Arrays;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.Map;
-import java.util.regex.Pattern;
 
 import javax.jcr.Node;
 import javax.jcr.RepositoryException;
@@ -21,6 +18,7 @@ import org.apache.sling.api.resource.ResourceResolverFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.adobe.training.core.alerts.ThresholdIndex;
 import com.adobe.training.core.models.StockModel;
 import com.day.cq.workflow.WorkflowException;
 import com.day.cq.workflow.WorkflowSession;
@@ -33,11 +31,14 @@ import com.day.cq.workflow.metadata.MetaDataMap;
  * To have this class trigger with every imported stock symbol,
  * make sure the workflow launcher has a Globbing Path of /content(/.* /)lastTrade (no spaces)
  *
+ * Note that this starts a workflow instance per imported quote. At higher tick rates use the
+ * StockAlertEngine instead, which the importer feeds directly, and remove the workflow launcher.
+ *
  * This class assumes the following jcr data structure for the stock
  * /content
  *   + <stock symbol> [cq:Page]
  *     + lastTrade [nt:unstructured]
- *       - lastTrade = <imported stock value>
+ *       - lastTrade = <imported stock value, Double>
  */
 
 @Service
@@ -86,28 +87,27 @@ public class StockAlertProcess implements WorkflowProcess {
                 Resource stockResource =  resourceResolver.getResource(payloadNode.getParent().getPath());
                 //Create StockModel from the resource
                 StockModel stock = stockResource.adaptTo(StockModel.class);
+                if (stock == null) {
+                    //the model cannot be created without a complete lastTrade node
+                    logger.warn("@@@@@No stock quote at {}", stockResource.getPath());
+                    return;
+                }
                 String symbol = stock.getStockSymbol();
                 logger.info("@@@@@Checking stock: " + symbol);
 
-                Double lastTrade;
+                double lastTrade;
                 try {
                     lastTrade = stock.getLastTrade();
                     logger.info("@@@@@last trade was " + lastTrade);
 
-                    //parse the passed workflow arguments into an iterator. Ex: "ADBE=105 \n MSFT=55"
-                    Iterator<String> argumentsIterator = Arrays.asList(
-                            Pattern.compile("\n").split(args.get("PROCESS_ARGS", ""))).iterator();
-
-                    //Iterate over each argument
-                    while (argumentsIterator.hasNext()) {
-                        String argument = argumentsIterator.next();
-                        //Check if the argument is the stock symbol in question
-                        if(argument.contains(symbol)){
-                            Double thresholdTrade = Double.parseDouble(argument.split("=")[1]);
-                            //Check to see if the newly imported price is higher than the threshold
-                            if (thresholdTrade < lastTrade) {
-                                logger.warn("@@@@@ Stock Alert! " + symbol + " is over " + thresholdTrade);
-                            }
+                    //the arguments are compiled once per distinct text. Ex: "ADBE=105 \n MSFT=55"
+                    ThresholdIndex index = ThresholdIndex.forArguments(args.get("PROCESS_ARGS", ""));
+                    ThresholdIndex.Thresholds thresholds = index.get(symbol);
+                    if (thresholds != null) {
+                        //Check which thresholds the newly imported price is higher than
+                        int exceeded = thresholds.countBelow(lastTrade);
+                        for (int i = 0; i < exceeded; i++) {
+                            logger.warn("@@@@@ Stock Alert! " + symbol + " is over " + thresholds.get(i));
                         }
                     }
                 } catch (Exception e) {
@@ -1,24 +1,47 @@
 package com.adobe.training.core;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.net.MalformedURLException;
-import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.jcr.Node;
 import javax.jcr.RepositoryException;
 import javax.jcr.Session;
+import javax.jcr.Value;
 
+import org.apache.felix.scr.annotations.Activate;
 import org.apache.felix.scr.annotations.Component;
+import org.apache.felix.scr.annotations.Modified;
 import org.apache.felix.scr.annotations.Property;
 import org.apache.felix.scr.annotations.Reference;
+import org.apache.felix.scr.annotations.ReferenceCardinality;
+import org.apache.felix.scr.annotations.ReferencePolicy;
 import org.apache.felix.scr.annotations.Service;
 import org.apache.sling.api.resource.Resource;
+import org.apache.sling.commons.osgi.PropertiesUtil;
 import org.apache.sling.jcr.api.SlingRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.adobe.training.core.alerts.StockAlertEngine;
+import com.adobe.training.core.metrics.StatisticsProvider;
+import com.adobe.training.core.stock.LastTradeNode;
+import com.adobe.training.core.stock.Quote;
+import com.adobe.training.core.stock.QuoteFetcher;
+import com.adobe.training.core.stock.QuoteParser;
+import com.adobe.training.core.stock.QuoteWriteListener;
+import com.adobe.training.core.stock.QuoteWriter;
+import com.adobe.training.core.stock.TickHistoryStore;
 import com.day.cq.commons.jcr.JcrUtil;
 import com.day.cq.polling.importer.ImportException;
 import com.day.cq.polling.importer.Importer;
@@ -29,99 +52,429 @@ import com.day.cq.polling.importer.Importer;
  * /content
  *   + <STOCK_SYMBOL> [cq:Page]
  *     + lastTrade [nt:unstructured]
- *       - lastTrade = <value>
- *       - requestedDate = <value>
- *       - requestTime = <value>
- *       - upDown = <value>
- *       - openPrice = <value>
- *       - rangeHigh = <value>
- *       - rangeLow = <value>
- *       - volume = <value>
+ *       - lastTrade = <Double>
+ *       - tradeTimestamp = <Date>
+ *       - upDown = <Double>
+ *       - openPrice = <Double>
+ *       - rangeHigh = <Double>
+ *       - rangeLow = <Double>
+ *       - volume = <Long>
+ *
+ * The lastTrade node only holds the latest quote, every imported quote is also appended
+ * to the TickHistoryStore and handed to the StockAlertEngine. Quotes identical to the last one imported for a symbol
+ * (Ex: outside market hours) are skipped, nothing is written for them. A quote that could not be written
+ * is forgotten, the next identical quote is written again.
+ *
+ * The data source of the polling importer (stock:<dataSource>) can be:
+ * -a single stock symbol. Ex: stock:ADBE
+ * -a comma separated symbol list. Ex: stock:ADBE,MSFT,ORCL
+ * -the path of a list node with a multi-valued "symbols" property. Ex: stock:/etc/trainingproject/stocks
+ * Symbols that are not valid node names (Ex: containing / or :) are dropped. Only quotes of the requested symbols
+ * are written, under the symbol as requested, the case of the symbol returned by the source does not matter.
+ *
+ * Quotes are fetched from source.url with the QuoteFetcher registered for its scheme: HttpQuoteFetcher for http(s),
+ * which applies timeouts and bounds the parallel requests, or SimulatedQuoteSource for simulator: URLs.
+ * In batch mode the symbols are fetched with as few requests as possible (batch.size symbols per request, in parallel)
+ * and the quotes are handed to the QuoteWriter, which coalesces them and saves them in bulk.
+ * With batch mode disabled every symbol is fetched and saved on its own, which allows to compare
+ * both paths at /bin/trainingproject/stats.json. A batch cycle is charged with the commits the QuoteWriter
+ * made since the previous batch cycle.
+ *
+ * A cycle failing with an IOException or a RepositoryException is logged, counted as failedCycles
+ * and its exception is kept as lastError, the polling importer tries again at the next interval.
  *
  * @author Kevin Nennig (nennig@adobe.com)
  *
  */
-@Service(value = Importer.class)
-@Component
+@Service(value = {Importer.class, StatisticsProvider.class})
+@Component(metatype = true, label = "Training Stock Data Importer")
 @Property(name = "importer.scheme", value = "stock", propertyPrivate = false)
-public class StockDataImporter implements Importer {
+@Reference(name = "fetcher", referenceInterface = QuoteFetcher.class,
+        cardinality = ReferenceCardinality.MANDATORY_MULTIPLE, policy = ReferencePolicy.DYNAMIC)
+public class StockDataImporter implements Importer, StatisticsProvider {
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
-    private final String SOURCE_URL = "http://download.finance.yahoo.com/d/quotes.csv?f=sl1d1t1c1ohgv&e=.csv&s=";
+    private static final String DEFAULT_SOURCE_URL = "http://download.finance.yahoo.com/d/quotes.csv?f=sl1d1t1c1ohgv&e=.csv&s=";
 
+    @Property(label = "Source URL", description = "Quote source, the comma separated symbols are appended."
+            + " Use simulator:quotes.csv?s= for simulated quotes", value = DEFAULT_SOURCE_URL)
+    public static final String PROPERTY_SOURCE_URL = "source.url";
+    @Property(label = "Batch Mode", description = "Fetch and save all symbols of a data source together", boolValue = true)
+    public static final String PROPERTY_BATCH_ENABLED = "batch.enabled";
+    @Property(label = "Symbols per Request", description = "Maximum number of symbols fetched with one request", intValue = 200)
+    public static final String PROPERTY_BATCH_SIZE = "batch.size";
 
-    private static final String LASTTRADE = "lastTrade";
-    private static final String REQUESTDATE = "requestDate";
-    private static final String REQUESTTIME = "requestTime";
-    private static final String UPDOWN = "upDown";
-    private static final String OPENPRICE = "openPrice";
-    private static final String RANGEHIGH = "rangeHigh";
-    private static final String RANGELOW = "rangeLow";
-    private static final String VOLUME = "volume";
+    private static final String SYMBOLS = "symbols";
 
     @Reference
     private SlingRepository repo;
 
+    @Reference
+    private TickHistoryStore historyStore;
+
+    @Reference
+    private QuoteWriter quoteWriter;
+
+    @Reference(cardinality = ReferenceCardinality.OPTIONAL_UNARY, policy = ReferencePolicy.DYNAMIC)
+    private volatile StockAlertEngine alertEngine;
+
+    //URL scheme -> fetcher handling it, see QuoteFetcher.PROPERTY_SCHEMES
+    private final ConcurrentMap<String, QuoteFetcher> fetchers = new ConcurrentHashMap<String, QuoteFetcher>();
+
+    private volatile String sourceUrl;
+    private boolean batchEnabled;
+    private int batchSize;
+
+    //fingerprint of the last quote written per lastTrade path, identical quotes are not written again
+    private final ConcurrentMap<String, Long> fingerprints = new ConcurrentHashMap<String, Long>();
+    private final QuoteWriteListener dropListener = new QuoteWriteListener() {
+        @Override
+        public void quoteDropped(String path, Quote quote) {
+            forget(path, quote);
+        }
+    };
+    private final AtomicLong quotesWritten = new AtomicLong();
+    private final AtomicLong quotesSkipped = new AtomicLong();
+    private final AtomicLong quotesUnparsable = new AtomicLong();
+    private final AtomicLong quotesUnrequested = new AtomicLong();
+    private final AtomicLong failedCycles = new AtomicLong();
+    private final AtomicLong writerCommitsSeen = new AtomicLong();
+    private volatile String lastError;
+
+    private final CycleStatistics batchStats = new CycleStatistics();
+    private final CycleStatistics singleStats = new CycleStatistics();
+
+    @Activate
+    protected void activate(Map<String, Object> properties) {
+        configure(properties);
+    }
+
+    @Modified
+    protected void modified(Map<String, Object> properties) {
+        configure(properties);
+    }
+
+    protected void configure(Map<String, Object> properties) {
+        sourceUrl = PropertiesUtil.toString(properties.get(PROPERTY_SOURCE_URL), DEFAULT_SOURCE_URL);
+        batchEnabled = PropertiesUtil.toBoolean(properties.get(PROPERTY_BATCH_ENABLED), true);
+        batchSize = Math.max(1, PropertiesUtil.toInteger(properties.get(PROPERTY_BATCH_SIZE), 200));
+        logger.info("Stock importer configured: {}, batch mode {}, {} symbols per request",
+                new Object[]{sourceUrl, batchEnabled, batchSize});
+    }
+
+    protected void bindFetcher(QuoteFetcher fetcher, Map<String, Object> properties) {
+        for (String scheme : PropertiesUtil.toStringArray(properties.get(QuoteFetcher.PROPERTY_SCHEMES), new String[0])) {
+            fetchers.put(scheme, fetcher);
+        }
+    }
+
+    protected void unbindFetcher(QuoteFetcher fetcher, Map<String, Object> properties) {
+        for (String scheme : PropertiesUtil.toStringArray(properties.get(QuoteFetcher.PROPERTY_SCHEMES), new String[0])) {
+            fetchers.remove(scheme, fetcher);
+        }
+    }
+
+    /**
+     * @return the fetcher registered for the scheme of the source URL
+     */
+    private QuoteFetcher fetcherFor(String url) throws IOException {
+        int colon = url.indexOf(':');
+        QuoteFetcher fetcher = colon > 0 ? fetchers.get(url.substring(0, colon)) : null;
+        if (fetcher == null) throw new MalformedURLException("No quote fetcher for " + url);
+        return fetcher;
+    }
+
+    public String getSourceUrl() {
+        return sourceUrl;
+    }
+
     @Override
     public void importData(final String scheme, final String dataSource, final Resource resource)
             throws ImportException {
         try {
-            // dataSource will be interpreted as the stock symbol
-            URL sourceUrl	 = new URL(SOURCE_URL + dataSource);
-            BufferedReader in = new BufferedReader(new InputStreamReader(sourceUrl.openStream()));
-            String readLine = in.readLine(); // expecting only one line
-            String[] lastTrade = readLine.split(",");
-            logger.info("Last trade for stock symbol {} was {}", dataSource, lastTrade);
-            in.close();
-
-            //persist
-            writeToRepository(dataSource, lastTrade, resource);
+            List<String> symbols = resolveSymbols(dataSource);
+            if (batchEnabled) {
+                importBatch(symbols, resource);
+            } else {
+                importEach(symbols, resource);
+            }
         }
         catch (MalformedURLException e) {
+            cycleFailed(e);
             logger.error("MalformedURLException", e);
         }
         catch (IOException e) {
+            cycleFailed(e);
             logger.error("IOException", e);
         }
         catch (RepositoryException e) {
+            cycleFailed(e);
             logger.error("RepositoryException", e);
         }
 
     }
 
     /**
-     * Creates the Yahoo stock data structure
+     * Original import path: one request, one session and one save per stock symbol
+     */
+    private void importEach(final List<String> symbols, final Resource resource) throws IOException, RepositoryException {
+        long start = System.currentTimeMillis();
+        int imported = 0;
+        for (String symbol : symbols) {
+            // dataSource will be interpreted as the stock symbol
+            String url = sourceUrl + symbol;
+            CharSequence text = fetcherFor(url).fetch(url);
+            if (text.length() == 0) continue;
+            String readLine = text.subSequence(0, lineEnd(text, 0)).toString(); // expecting only one line
+            Quote quote = new Quote();
+            if (!quote.setFromCsv(readLine.split(","))) {
+                quotesUnparsable.incrementAndGet();
+                logger.warn("Could not parse the last trade of stock symbol {}: {}", symbol, readLine);
+                continue;
+            }
+            if (!symbol.equalsIgnoreCase(quote.getSymbol())) {
+                quotesUnrequested.incrementAndGet();
+                logger.warn("Dropping the quote of {}, {} was requested", quote.getSymbol(), symbol);
+                continue;
+            }
+            quote.setSymbol(symbol);
+            logger.info("Last trade for stock symbol {} was {}", symbol, quote.getLastTrade());
+
+            String lastTradePath = resource.getPath() + "/" + quote.getSymbol() + "/" + LastTradeNode.NAME;
+            if (!isChanged(lastTradePath, quote)) {
+                quotesSkipped.incrementAndGet();
+                continue;
+            }
+
+            //persist
+            try {
+                writeToRepository(quote, resource);
+            } catch (RepositoryException e) {
+                forget(lastTradePath, quote);
+                throw e;
+            }
+            quotesWritten.incrementAndGet();
+            appendHistory(quote);
+            submitAlerts(quote);
+            imported++;
+        }
+        singleStats.record(imported, symbols.size(), imported, System.currentTimeMillis() - start);
+        logCycle("single", singleStats);
+    }
+
+    /**
+     * Batch import path: symbols are fetched batch.size at a time and the parsed quotes are handed
+     * to the QuoteWriter, which coalesces them and writes all lastTrade nodes with one session per flush.
+     * Lines are read with the QuoteParser straight from the response text, lines that cannot be parsed
+     * into a quote are dropped.
+     */
+    private void importBatch(final List<String> symbols, final Resource resource) throws IOException {
+        long start = System.currentTimeMillis();
+        int written = 0;
+        Quote quote = new Quote();
+        QuoteParser parser = new QuoteParser();
+        String parentPath = resource.getPath();
+        String source = sourceUrl;
+        QuoteFetcher fetcher = fetcherFor(source);
+        //the symbol as requested, by the symbol in any case
+        Map<String, String> requested = new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
+        for (String symbol : symbols) {
+            requested.put(symbol, symbol);
+        }
+        List<String> urls = new ArrayList<String>();
+        for (int from = 0; from < symbols.size(); from += batchSize) {
+            urls.add(source + join(symbols.subList(from, Math.min(from + batchSize, symbols.size()))));
+        }
+        //the requests run in parallel, a failed request only loses the quotes of its own batch
+        List<CharSequence> responses = fetcher.fetchAll(urls);
+        for (CharSequence text : responses) {
+            if (text == null) continue;
+            //one line per requested symbol, the first column holds the symbol
+            for (int lineStart = 0, next; lineStart < text.length(); lineStart = next) {
+                int end = lineEnd(text, lineStart);
+                next = end < text.length() && text.charAt(end) == '\r' ? end + 2 : end + 1;
+                if (end == lineStart) continue;
+                if (!parser.parse(text, lineStart, end, quote)) {
+                    quotesUnparsable.incrementAndGet();
+                    logger.debug("Dropping unparsable quote line {}", text.subSequence(lineStart, end));
+                    continue;
+                }
+                String symbol = requested.get(quote.getSymbol());
+                if (symbol == null) {
+                    quotesUnrequested.incrementAndGet();
+                    logger.debug("Dropping the quote of {}, it was not requested", quote.getSymbol());
+                    continue;
+                }
+                quote.setSymbol(symbol);
+                if (!isChanged(parentPath + "/" + quote.getSymbol() + "/" + LastTradeNode.NAME, quote)) {
+                    quotesSkipped.incrementAndGet();
+                    continue;
+                }
+                quoteWriter.write(parentPath, quote, dropListener);
+                quotesWritten.incrementAndGet();
+                appendHistory(quote);
+                submitAlerts(quote);
+                written++;
+            }
+        }
+        batchStats.record(written, urls.size(), writerCommits(), System.currentTimeMillis() - start);
+        logCycle("batch", batchStats);
+    }
+
+    /**
+     * The commits of the batch path happen in the QuoteWriter, on its own schedule. A cycle is charged
+     * with the commits the writer made since the previous batch cycle.
+     *
+     * @return the commits of the QuoteWriter since the last call, 0 if it does not report its commits
+     */
+    private long writerCommits() {
+        if (!(quoteWriter instanceof StatisticsProvider)) return 0;
+        Object commits = ((StatisticsProvider) quoteWriter).getStatistics().get("commits");
+        if (!(commits instanceof Number)) return 0;
+        long total = ((Number) commits).longValue();
+        long previous = writerCommitsSeen.getAndSet(total);
+        return Math.max(0, total - previous);
+    }
+
+    /**
+     * @return the index of the \r\n or \n ending the line starting at start, else the length of the text
+     */
+    private static int lineEnd(CharSequence text, int start) {
+        for (int i = start; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\n' || c == '\r' && i + 1 < text.length() && text.charAt(i + 1) == '\n') return i;
+        }
+        return text.length();
+    }
+
+    /**
+     * Creates the Yahoo stock data structure, see LastTradeNode
      *
      *  + <STOCK_SYMBOL> [cq:Page]
      *     + lastTrade [nt:unstructured]
-     *       - lastTrade = <value>
-     *       - requestedDate = <value>
-     *       - requestTime = <value>
-     *       - upDown = <value>
-     *       - openPrice = <value>
-     *       - rangeHigh = <value>
-     *       - rangeLow = <value>
-     *       - volume = <value>
      */
-    private void writeToRepository(final String stockSymbol, final String[] lastTrade, final Resource resource) throws RepositoryException {
+    private void writeToRepository(final Quote quote, final Resource resource) throws RepositoryException {
         Session session= repo.loginService("training",null);
-        Node parent = resource.adaptTo(Node.class);
-        Node stockPageNode = JcrUtil.createPath(parent.getPath() + "/" + stockSymbol, "cq:Page",
-                session);
-        Node lastTradeNode = JcrUtil.createPath(stockPageNode.getPath() + "/lastTrade", "nt:unstructured",
-                session);
-        if(lastTrade.length > 8){
-            lastTradeNode.setProperty(LASTTRADE, lastTrade[1]);
-            lastTradeNode.setProperty(REQUESTDATE, lastTrade[2].replace("\"", ""));
-            lastTradeNode.setProperty(REQUESTTIME, lastTrade[3].replace("\"", ""));
-            lastTradeNode.setProperty(UPDOWN, lastTrade[4]);
-            lastTradeNode.setProperty(OPENPRICE, lastTrade[5]);
-            lastTradeNode.setProperty(RANGEHIGH, lastTrade[6]);
-            lastTradeNode.setProperty(RANGELOW, lastTrade[7]);
-            lastTradeNode.setProperty(VOLUME, lastTrade[8]);
-        }
-        session.save();
-        session.logout();
+        try {
+            Node stockPageNode = JcrUtil.createPath(resource.getPath() + "/" + quote.getSymbol(), "cq:Page",
+                    session);
+            Node lastTradeNode = JcrUtil.createPath(stockPageNode.getPath() + "/" + LastTradeNode.NAME,
+                    "nt:unstructured", session);
+            LastTradeNode.write(lastTradeNode, quote);
+            session.save();
+        } finally {
+            session.logout();
+        }
+    }
+
+    /**
+     * Compares the quote with the fingerprint of the last quote written to the lastTrade node
+     * and remembers the new fingerprint, until the write fails (see forget).
+     *
+     * @return false if the quote is identical to the last one written
+     */
+    private boolean isChanged(final String lastTradePath, final Quote quote) {
+        long fingerprint = quote.fingerprint();
+        Long previous = fingerprints.put(lastTradePath, fingerprint);
+        return previous == null || previous.longValue() != fingerprint;
+    }
+
+    /**
+     * Drops the fingerprint of a quote that could not be written, unless a newer quote replaced it
+     */
+    private void forget(final String lastTradePath, final Quote quote) {
+        fingerprints.remove(lastTradePath, quote.fingerprint());
+    }
+
+    /**
+     * Appends the quote to the tick history. A failing history write does not stop the import.
+     */
+    private void appendHistory(final Quote quote) {
+        try {
+            historyStore.append(quote);
+        } catch (IOException e) {
+            logger.error("Could not append " + quote + " to the tick history", e);
+        }
+    }
+
+    /**
+     * Hands the quote to the alert engine, if one is running
+     */
+    private void submitAlerts(final Quote quote) {
+        StockAlertEngine engine = alertEngine;
+        if (engine != null && !engine.submit(quote)) {
+            logger.debug("Alert engine queue is full, {} not evaluated", quote);
+        }
+    }
+
+    /**
+     * Turns the data source into the list of symbols to import.
+     * A data source starting with "/" is read as a list node holding a "symbols" property
+     */
+    private List<String> resolveSymbols(final String dataSource) throws RepositoryException {
+        //keeps the order of the data source, drops duplicates
+        Set<String> symbols = new LinkedHashSet<String>();
+        if (dataSource == null) return new ArrayList<String>(symbols);
+        if (dataSource.startsWith("/")) {
+            Session session = repo.loginService("training", null);
+            try {
+                if (session.nodeExists(dataSource) && session.getNode(dataSource).hasProperty(SYMBOLS)) {
+                    for (Value value : session.getNode(dataSource).getProperty(SYMBOLS).getValues()) {
+                        addSymbol(symbols, value.getString());
+                    }
+                } else {
+                    logger.warn("Symbol list {} does not exist or has no {} property", dataSource, SYMBOLS);
+                }
+            } finally {
+                session.logout();
+            }
+        } else {
+            for (String symbol : Arrays.asList(dataSource.split(","))) {
+                addSymbol(symbols, symbol);
+            }
+        }
+        return new ArrayList<String>(symbols);
+    }
+
+    private void addSymbol(Set<String> symbols, String symbol) {
+        String trimmed = symbol.trim();
+        if (trimmed.isEmpty()) return;
+        if (isValidName(trimmed)) {
+            symbols.add(trimmed);
+        } else {
+            logger.warn("Ignoring the stock symbol {}, it is not a valid node name", trimmed);
+        }
+    }
+
+    /**
+     * @return false for . and .., and for names with characters JCR does not allow or that change the path
+     */
+    static boolean isValidName(String symbol) {
+        if (symbol.equals(".") || symbol.equals("..")) return false;
+        for (int i = 0; i < symbol.length(); i++) {
+            char c = symbol.charAt(i);
+            if (c < ' ' || "/:[]|*%\\\"'".indexOf(c) >= 0) return false;
+        }
+        return true;
+    }
+
+    private String join(List<String> symbols) {
+        StringBuilder sb = new StringBuilder();
+        for (String symbol : symbols) {
+            if (sb.length() > 0) sb.append(',');
+            sb.append(symbol);
+        }
+        return sb.toString();
+    }
+
+    private void cycleFailed(Exception e) {
+        failedCycles.incrementAndGet();
+        lastError = e.toString();
+    }
+
+    private void logCycle(String mode, CycleStatistics stats) {
+        logger.info("Stock import ({}) of {} symbols took {} ms with {} requests and {} commits",
+                new Object[]{mode, stats.lastSymbols, stats.lastMillis, stats.lastRequests, stats.lastCommits});
     }
 
     @Override
@@ -130,5 +483,64 @@ public class StockDataImporter implements Importer {
         importData(scheme, dataSource, target);
 
     }
-}
 
+    @Override
+    public String getStatisticsName() {
+        return "stockImporter";
+    }
+
+    @Override
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<String, Object>();
+        stats.put("sourceUrl", sourceUrl);
+        stats.put("batchEnabled", batchEnabled);
+        stats.put("written", quotesWritten.get());
+        stats.put("skippedUnchanged", quotesSkipped.get());
+        stats.put("unparsable", quotesUnparsable.get());
+        stats.put("unrequested", quotesUnrequested.get());
+        stats.put("trackedSymbols", fingerprints.size());
+        stats.put("failedCycles", failedCycles.get());
+        if (lastError != null) stats.put("lastError", lastError);
+        batchStats.putInto(stats, "batch.");
+        singleStats.putInto(stats, "single.");
+        return stats;
+    }
+
+    /**
+     * Running totals of the import cycles of one import mode
+     */
+    private static class CycleStatistics {
+        private final AtomicLong cycles = new AtomicLong();
+        private final AtomicLong symbols = new AtomicLong();
+        private final AtomicLong requests = new AtomicLong();
+        private final AtomicLong commits = new AtomicLong();
+        private final AtomicLong millis = new AtomicLong();
+        private volatile long lastSymbols;
+        private volatile long lastRequests;
+        private volatile long lastCommits;
+        private volatile long lastMillis;
+
+        void record(long cycleSymbols, long cycleRequests, long cycleCommits, long cycleMillis) {
+            cycles.incrementAndGet();
+            symbols.addAndGet(cycleSymbols);
+            requests.addAndGet(cycleRequests);
+            commits.addAndGet(cycleCommits);
+            millis.addAndGet(cycleMillis);
+            lastSymbols = cycleSymbols;
+            lastRequests = cycleRequests;
+            lastCommits = cycleCommits;
+            lastMillis = cycleMillis;
+        }
+
+        void putInto(Map<String, Object> stats, String prefix) {
+            long cycleCount = cycles.get();
+            long totalMillis = millis.get();
+            stats.put(prefix + "cycles", cycleCount);
+            stats.put(prefix + "symbols", symbols.get());
+            stats.put(prefix + "symbolsPerSecond", totalMillis > 0 ? symbols.get() * 1000.0 / totalMillis : 0.0);
+            stats.put(prefix + "requestsPerCycle", cycleCount > 0 ? (double) requests.get() / cycleCount : 0.0);
+            stats.put(prefix + "commitsPerCycle", cycleCount > 0 ? (double) commits.get() / cycleCount : 0.0);
+            stats.put(prefix + "lastCycleMillis", lastMillis);
+        }
+    }
+}
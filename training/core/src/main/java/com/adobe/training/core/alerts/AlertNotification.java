@@ -0,0 +1,91 @@
+package com.adobe.training.core.alerts;
+
+import org.osgi.service.event.Event;
+
+/**
+ * One emitted alert as delivered to an AlertSink, read from the alert event of the StockAlertEngine
+ */
+public final class AlertNotification {
+
+    private final String rule;
+    private final String owner;
+    private final String symbol;
+    private final String metric;
+    private final String direction;
+    private final double threshold;
+    private final double value;
+    private final double price;
+    private final long timestamp;
+
+    public AlertNotification(String rule, String owner, String symbol, String metric, String direction,
+            double threshold, double value, double price, long timestamp) {
+        this.rule = rule;
+        this.owner = owner;
+        this.symbol = symbol;
+        this.metric = metric;
+        this.direction = direction;
+        this.threshold = threshold;
+        this.value = value;
+        this.price = price;
+        this.timestamp = timestamp;
+    }
+
+    /**
+     * @return the notification of a com/adobe/training/core/stock/ALERT event
+     */
+    public static AlertNotification fromEvent(Event event) {
+        return new AlertNotification(
+                (String) event.getProperty(StockAlertEngine.PROPERTY_RULE),
+                (String) event.getProperty(StockAlertEngine.PROPERTY_OWNER),
+                (String) event.getProperty(StockAlertEngine.PROPERTY_SYMBOL),
+                (String) event.getProperty(StockAlertEngine.PROPERTY_METRIC),
+                (String) event.getProperty(StockAlertEngine.PROPERTY_DIRECTION),
+                number(event, StockAlertEngine.PROPERTY_THRESHOLD),
+                number(event, StockAlertEngine.PROPERTY_VALUE),
+                number(event, StockAlertEngine.PROPERTY_PRICE),
+                timestamp(event));
+    }
+
+    private static double number(Event event, String name) {
+        Object value = event.getProperty(name);
+        return value instanceof Number ? ((Number) value).doubleValue() : 0;
+    }
+
+    private static long timestamp(Event event) {
+        Object value = event.getProperty(StockAlertEngine.PROPERTY_TIMESTAMP);
+        return value instanceof Number ? ((Number) value).longValue() : 0;
+    }
+
+    public String getRule() {
+        return rule;
+    }
+    public String getOwner() {
+        return owner;
+    }
+    public String getSymbol() {
+        return symbol;
+    }
+    public String getMetric() {
+        return metric;
+    }
+    public String getDirection() {
+        return direction;
+    }
+    public double getThreshold() {
+        return threshold;
+    }
+    public double getValue() {
+        return value;
+    }
+    public double getPrice() {
+        return price;
+    }
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    @Override
+    public String toString() {
+        return symbol + " " + metric + " " + direction + " " + threshold + ": " + value + " (" + rule + ")";
+    }
+}
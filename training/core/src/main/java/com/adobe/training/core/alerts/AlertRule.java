@@ -0,0 +1,109 @@
+package com.adobe.training.core.alerts;
+
+import java.util.Locale;
+
+/**
+ * Immutable alert rule of a user. A rule fires when its metric crosses the threshold between two quotes
+ * of the symbol, not on every quote the condition holds for:
+ *
+ * -price: last trade price
+ * -percentFromOpen: move of the last trade from the open price, in percent
+ * -volumeDelta: volume traded since the previous quote (a spike detector)
+ * -rangeBreakout: last trade breaking out of the day range (rangeHigh/rangeLow) of the previous quote,
+ *  the threshold is not used
+ *
+ * Direction above fires when the metric rises over the threshold, below when it falls under it.
+ */
+public final class AlertRule {
+
+    public enum Metric {
+        PRICE("price"),
+        PERCENT_FROM_OPEN("percentFromOpen"),
+        VOLUME_DELTA("volumeDelta"),
+        RANGE_BREAKOUT("rangeBreakout");
+
+        private final String propertyValue;
+
+        Metric(String propertyValue) {
+            this.propertyValue = propertyValue;
+        }
+
+        /**
+         * @return the name used in rule nodes, Ex: percentFromOpen
+         */
+        public String getPropertyValue() {
+            return propertyValue;
+        }
+
+        /**
+         * @return the metric of the name used in rule nodes, null if there is none
+         */
+        public static Metric fromPropertyValue(String value) {
+            for (Metric metric : values()) {
+                if (metric.propertyValue.equalsIgnoreCase(value)) return metric;
+            }
+            return null;
+        }
+    }
+
+    public enum Direction {
+        ABOVE, BELOW;
+
+        /**
+         * @return the direction of the name used in rule nodes (above, below), null if there is none
+         */
+        public static Direction fromPropertyValue(String value) {
+            if (value == null) return null;
+            String upper = value.toUpperCase(Locale.US);
+            for (Direction direction : values()) {
+                if (direction.name().equals(upper)) return direction;
+            }
+            return null;
+        }
+    }
+
+    private final String id;
+    private final String owner;
+    private final String symbol;
+    private final Metric metric;
+    private final Direction direction;
+    private final double threshold;
+
+    /**
+     * @param id unique id of the rule, Ex: the path of its node
+     * @param owner the user the rule belongs to
+     */
+    public AlertRule(String id, String owner, String symbol, Metric metric, Direction direction, double threshold) {
+        this.id = id;
+        this.owner = owner;
+        this.symbol = symbol;
+        this.metric = metric;
+        this.direction = direction;
+        this.threshold = threshold;
+    }
+
+    public String getId() {
+        return id;
+    }
+    public String getOwner() {
+        return owner;
+    }
+    public String getSymbol() {
+        return symbol;
+    }
+    public Metric getMetric() {
+        return metric;
+    }
+    public Direction getDirection() {
+        return direction;
+    }
+    public double getThreshold() {
+        return threshold;
+    }
+
+    @Override
+    public String toString() {
+        return id + ": " + symbol + " " + metric.getPropertyValue() + " " + direction.name().toLowerCase(Locale.US)
+                + (metric == Metric.RANGE_BREAKOUT ? "" : " " + threshold);
+    }
+}
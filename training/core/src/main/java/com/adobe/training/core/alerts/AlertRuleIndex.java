@@ -0,0 +1,212 @@
+package com.adobe.training.core.alerts;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.adobe.training.core.stock.Quote;
+
+/**
+ * Immutable index of AlertRules. Per symbol, the thresholds of every metric and direction are kept in a
+ * sorted array, so the rules crossed between two quotes are the thresholds between the previous and the
+ * new metric value: two binary searches plus one step per fired rule, O(log n + k).
+ *
+ * A metric rising from p to c crosses the above thresholds t with p <= t < c,
+ * a metric falling from p to c crosses the below thresholds t with c < t <= p.
+ */
+public final class AlertRuleIndex {
+
+    //metrics compared against thresholds, RANGE_BREAKOUT rules compare against the previous quote instead
+    private static final AlertRule.Metric[] THRESHOLD_METRICS = {
+        AlertRule.Metric.PRICE, AlertRule.Metric.PERCENT_FROM_OPEN, AlertRule.Metric.VOLUME_DELTA
+    };
+    private static final int SLOTS = THRESHOLD_METRICS.length * 2;
+
+    private static final double[] NO_THRESHOLDS = new double[0];
+    private static final AlertRule[] NO_RULES = new AlertRule[0];
+
+    private final Map<String, SymbolRules> symbols;
+    private final int ruleCount;
+
+    private AlertRuleIndex(Map<String, SymbolRules> symbols, int ruleCount) {
+        this.symbols = symbols;
+        this.ruleCount = ruleCount;
+    }
+
+    public static AlertRuleIndex build(List<AlertRule> rules) {
+        Map<String, List<AlertRule>> bySymbol = new HashMap<String, List<AlertRule>>();
+        for (AlertRule rule : rules) {
+            List<AlertRule> symbolRules = bySymbol.get(rule.getSymbol());
+            if (symbolRules == null) {
+                symbolRules = new ArrayList<AlertRule>();
+                bySymbol.put(rule.getSymbol(), symbolRules);
+            }
+            symbolRules.add(rule);
+        }
+        Map<String, SymbolRules> symbols = new HashMap<String, SymbolRules>(bySymbol.size() * 2);
+        for (Map.Entry<String, List<AlertRule>> entry : bySymbol.entrySet()) {
+            symbols.put(entry.getKey(), new SymbolRules(entry.getValue()));
+        }
+        return new AlertRuleIndex(symbols, rules.size());
+    }
+
+    /**
+     * Calls the visitor with every rule of the symbol that the move from the previous to the current quote crosses
+     *
+     * @param previous the previous quote of the symbol
+     * @param current the new quote of the symbol
+     * @return number of fired rules
+     */
+    public int evaluate(Quote previous, Quote current, AlertRuleVisitor visitor) {
+        SymbolRules rules = symbols.get(current.getSymbol());
+        if (rules == null) return 0;
+        int fired = 0;
+        for (int metric = 0; metric < THRESHOLD_METRICS.length; metric++) {
+            double before = value(THRESHOLD_METRICS[metric], previous, null);
+            double now = value(THRESHOLD_METRICS[metric], current, previous);
+            if (THRESHOLD_METRICS[metric] == AlertRule.Metric.VOLUME_DELTA) {
+                //the delta of the previous quote is not known, a spike is a delta over the threshold
+                before = 0;
+            }
+            if (now > before) {
+                fired += fire(rules, metric * 2, firstAtLeast(rules.thresholds[metric * 2], before),
+                        firstAtLeast(rules.thresholds[metric * 2], now), now, visitor);
+            } else if (now < before) {
+                fired += fire(rules, metric * 2 + 1, firstAbove(rules.thresholds[metric * 2 + 1], now),
+                        firstAbove(rules.thresholds[metric * 2 + 1], before), now, visitor);
+            }
+        }
+        double price = current.getLastTrade();
+        if (price > previous.getRangeHigh() && previous.getLastTrade() <= previous.getRangeHigh()) {
+            fired += fire(rules.breakoutAbove, price, visitor);
+        }
+        if (price < previous.getRangeLow() && previous.getLastTrade() >= previous.getRangeLow()) {
+            fired += fire(rules.breakoutBelow, price, visitor);
+        }
+        return fired;
+    }
+
+    /**
+     * @param previous the quote before, only needed for VOLUME_DELTA
+     */
+    static double value(AlertRule.Metric metric, Quote quote, Quote previous) {
+        switch (metric) {
+            case PRICE:
+                return quote.getLastTrade();
+            case PERCENT_FROM_OPEN:
+                return quote.getOpenPrice() != 0 ? (quote.getLastTrade() - quote.getOpenPrice()) * 100 / quote.getOpenPrice() : 0;
+            case VOLUME_DELTA:
+                if (previous == null) return 0;
+                //the volume is the volume of the day, it restarts with the first quote of a day
+                long delta = quote.getVolume() - previous.getVolume();
+                return delta >= 0 ? delta : quote.getVolume();
+            default:
+                return quote.getLastTrade();
+        }
+    }
+
+    private static int fire(SymbolRules rules, int slot, int from, int to, double value, AlertRuleVisitor visitor) {
+        AlertRule[] slotRules = rules.rules[slot];
+        for (int i = from; i < to; i++) {
+            visitor.fired(slotRules[i], value);
+        }
+        return Math.max(0, to - from);
+    }
+
+    private static int fire(AlertRule[] rules, double value, AlertRuleVisitor visitor) {
+        for (AlertRule rule : rules) {
+            visitor.fired(rule, value);
+        }
+        return rules.length;
+    }
+
+    /**
+     * @return index of the first threshold >= value
+     */
+    private static int firstAtLeast(double[] thresholds, double value) {
+        int low = 0;
+        int high = thresholds.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (thresholds[middle] < value) low = middle + 1;
+            else high = middle;
+        }
+        return low;
+    }
+
+    /**
+     * @return index of the first threshold > value
+     */
+    private static int firstAbove(double[] thresholds, double value) {
+        int low = 0;
+        int high = thresholds.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (thresholds[middle] <= value) low = middle + 1;
+            else high = middle;
+        }
+        return low;
+    }
+
+    public int getRuleCount() {
+        return ruleCount;
+    }
+
+    public int getSymbolCount() {
+        return symbols.size();
+    }
+
+    /**
+     * Rules of one symbol: per metric and direction (slot = metric * 2 + direction) the thresholds in
+     * ascending order and the rules in the same order
+     */
+    private static final class SymbolRules {
+        private final double[][] thresholds = new double[SLOTS][];
+        private final AlertRule[][] rules = new AlertRule[SLOTS][];
+        private final AlertRule[] breakoutAbove;
+        private final AlertRule[] breakoutBelow;
+
+        SymbolRules(List<AlertRule> symbolRules) {
+            List<AlertRule> above = new ArrayList<AlertRule>();
+            List<AlertRule> below = new ArrayList<AlertRule>();
+            for (int metric = 0; metric < THRESHOLD_METRICS.length; metric++) {
+                for (AlertRule.Direction direction : AlertRule.Direction.values()) {
+                    List<AlertRule> slotRules = new ArrayList<AlertRule>();
+                    for (AlertRule rule : symbolRules) {
+                        if (rule.getMetric() == THRESHOLD_METRICS[metric] && rule.getDirection() == direction) {
+                            slotRules.add(rule);
+                        }
+                    }
+                    int slot = metric * 2 + direction.ordinal();
+                    if (slotRules.isEmpty()) {
+                        thresholds[slot] = NO_THRESHOLDS;
+                        rules[slot] = NO_RULES;
+                        continue;
+                    }
+                    AlertRule[] sorted = slotRules.toArray(new AlertRule[slotRules.size()]);
+                    Arrays.sort(sorted, new Comparator<AlertRule>() {
+                        @Override
+                        public int compare(AlertRule a, AlertRule b) {
+                            return Double.compare(a.getThreshold(), b.getThreshold());
+                        }
+                    });
+                    rules[slot] = sorted;
+                    thresholds[slot] = new double[sorted.length];
+                    for (int i = 0; i < sorted.length; i++) {
+                        thresholds[slot][i] = sorted[i].getThreshold();
+                    }
+                }
+            }
+            for (AlertRule rule : symbolRules) {
+                if (rule.getMetric() != AlertRule.Metric.RANGE_BREAKOUT) continue;
+                if (rule.getDirection() == AlertRule.Direction.ABOVE) above.add(rule);
+                else below.add(rule);
+            }
+            breakoutAbove = above.toArray(new AlertRule[above.size()]);
+            breakoutBelow = below.toArray(new AlertRule[below.size()]);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.adobe.training.core.alerts;
+
+import java.util.List;
+
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.RepositoryException;
+
+/**
+ * Reads the alert rules of all users from the repository:
+ *
+ * /etc/trainingproject/stockalerts
+ *   + <user id>
+ *     + <rule name> [nt:unstructured]
+ *       - symbol = <STOCK_SYMBOL>
+ *       - metric = price | percentFromOpen | volumeDelta | rangeBreakout
+ *       - direction = above | below
+ *       - threshold = <Double, not needed for rangeBreakout>
+ *
+ * The id of a rule is the path of its node.
+ */
+public final class AlertRuleReader {
+
+    public static final String ROOT = "/etc/trainingproject/stockalerts";
+
+    public static final String SYMBOL = "symbol";
+    public static final String METRIC = "metric";
+    public static final String DIRECTION = "direction";
+    public static final String THRESHOLD = "threshold";
+
+    private AlertRuleReader() {
+    }
+
+    /**
+     * Adds the rules of all users below the root to the rules
+     *
+     * @param invalid receives the paths of rule nodes that are incomplete or have unknown values
+     */
+    public static void read(Node root, List<AlertRule> rules, List<String> invalid) throws RepositoryException {
+        for (NodeIterator owners = root.getNodes(); owners.hasNext();) {
+            Node owner = owners.nextNode();
+            for (NodeIterator ruleNodes = owner.getNodes(); ruleNodes.hasNext();) {
+                Node ruleNode = ruleNodes.nextNode();
+                AlertRule rule = read(ruleNode, owner.getName());
+                if (rule != null) rules.add(rule);
+                else invalid.add(ruleNode.getPath());
+            }
+        }
+    }
+
+    /**
+     * @return the rule of the node, null if it is incomplete or has unknown values
+     */
+    public static AlertRule read(Node node, String owner) throws RepositoryException {
+        if (!node.hasProperty(SYMBOL) || !node.hasProperty(METRIC) || !node.hasProperty(DIRECTION)) return null;
+        AlertRule.Metric metric = AlertRule.Metric.fromPropertyValue(node.getProperty(METRIC).getString());
+        AlertRule.Direction direction = AlertRule.Direction.fromPropertyValue(node.getProperty(DIRECTION).getString());
+        if (metric == null || direction == null) return null;
+        double threshold = 0;
+        if (metric != AlertRule.Metric.RANGE_BREAKOUT) {
+            if (!node.hasProperty(THRESHOLD)) return null;
+            try {
+                threshold = Double.parseDouble(node.getProperty(THRESHOLD).getString());
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        return new AlertRule(node.getPath(), owner, node.getProperty(SYMBOL).getString().trim(), metric, direction, threshold);
+    }
+}
@@ -0,0 +1,12 @@
+package com.adobe.training.core.alerts;
+
+/**
+ * Receives the rules crossed by a quote, see AlertRuleIndex.evaluate
+ */
+public interface AlertRuleVisitor {
+
+    /**
+     * @param value the value of the rule metric for the new quote
+     */
+    public void fired(AlertRule rule, double value);
+}
@@ -0,0 +1,18 @@
+package com.adobe.training.core.alerts;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Delivers alert digests to their subscribers (Ex: by mail). The AlertDigestDispatcher hands every
+ * registered sink one digest per subscriber and window.
+ */
+public interface AlertSink {
+
+    /**
+     * @param owner the subscriber, the owner of the rules
+     * @param notifications the alerts of the subscriber emitted in the window, oldest first
+     * @throws IOException if the digest could not be delivered, it is not delivered again
+     */
+    public void deliver(String owner, List<AlertNotification> notifications) throws IOException;
+}
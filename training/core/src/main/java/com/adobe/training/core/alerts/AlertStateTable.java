@@ -0,0 +1,165 @@
+package com.adobe.training.core.alerts;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.adobe.training.core.stock.Quote;
+
+/**
+ * Alert state of every rule, kept in parallel arrays indexed by a slot per rule:
+ *
+ * -lastEmitted: when the rule was last emitted (epoch millis), a crossing within the cooldown is suppressed
+ * -armed: a rule that was emitted is disarmed until its metric moves back past the hysteresis band,
+ *  threshold - band for above rules and threshold + band for below rules. Crossings of a disarmed rule are suppressed.
+ *
+ * The band is hysteresisPercent of the threshold. Range breakouts have no threshold, only the cooldown applies to them.
+ * The disarmed rules are tracked per symbol, so a quote only looks at the disarmed rules of its symbol.
+ *
+ * All methods are synchronized, the table is shared by the evaluating threads.
+ */
+public class AlertStateTable {
+
+    private final double hysteresisPercent;
+    private final long cooldownMillis;
+
+    //rule id -> slot
+    private Map<String, Integer> slots = new HashMap<String, Integer>();
+    private AlertRule[] rules = new AlertRule[0];
+    private long[] lastEmitted = new long[0];
+    private boolean[] armed = new boolean[0];
+    //symbol -> slots of its disarmed rules
+    private Map<String, BitSet> disarmed = new HashMap<String, BitSet>();
+
+    /**
+     * @param hysteresisPercent width of the band a rule has to move back before it fires again, in percent of its threshold
+     * @param cooldownMillis minimum time between two emissions of a rule
+     */
+    public AlertStateTable(double hysteresisPercent, long cooldownMillis) {
+        this.hysteresisPercent = hysteresisPercent;
+        this.cooldownMillis = cooldownMillis;
+    }
+
+    /**
+     * Replaces the rules, the state of rules with the same id is kept
+     */
+    public synchronized void setRules(List<AlertRule> newRules) {
+        Map<String, Integer> newSlots = new HashMap<String, Integer>(newRules.size() * 2);
+        AlertRule[] newRuleArray = new AlertRule[newRules.size()];
+        long[] newLastEmitted = new long[newRules.size()];
+        boolean[] newArmed = new boolean[newRules.size()];
+        Map<String, BitSet> newDisarmed = new HashMap<String, BitSet>();
+        for (int slot = 0; slot < newRuleArray.length; slot++) {
+            AlertRule rule = newRules.get(slot);
+            newSlots.put(rule.getId(), slot);
+            newRuleArray[slot] = rule;
+            newArmed[slot] = true;
+            Integer old = slots.get(rule.getId());
+            if (old != null) {
+                newLastEmitted[slot] = lastEmitted[old];
+                newArmed[slot] = armed[old];
+                if (!newArmed[slot]) disarmedOf(newDisarmed, rule.getSymbol()).set(slot);
+            }
+        }
+        slots = newSlots;
+        rules = newRuleArray;
+        lastEmitted = newLastEmitted;
+        armed = newArmed;
+        disarmed = newDisarmed;
+    }
+
+    /**
+     * Re-arms the disarmed rules of the quote's symbol whose metric moved back past the hysteresis band
+     *
+     * @param previous the quote before, needed for volumeDelta rules
+     */
+    public synchronized void rearm(Quote previous, Quote quote) {
+        BitSet symbolDisarmed = disarmed.get(quote.getSymbol());
+        if (symbolDisarmed == null) return;
+        for (int slot = symbolDisarmed.nextSetBit(0); slot >= 0; slot = symbolDisarmed.nextSetBit(slot + 1)) {
+            AlertRule rule = rules[slot];
+            double value = AlertRuleIndex.value(rule.getMetric(), quote, previous);
+            double band = Math.abs(rule.getThreshold()) * hysteresisPercent / 100;
+            boolean back = rule.getDirection() == AlertRule.Direction.ABOVE
+                    ? value <= rule.getThreshold() - band
+                    : value >= rule.getThreshold() + band;
+            if (back) {
+                armed[slot] = true;
+                symbolDisarmed.clear(slot);
+            }
+        }
+        if (symbolDisarmed.isEmpty()) disarmed.remove(quote.getSymbol());
+    }
+
+    /**
+     * Records a crossing of the rule
+     *
+     * @return true if the alert is to be emitted, false if it is suppressed by the hysteresis or the cooldown
+     */
+    public synchronized boolean fire(AlertRule rule, long now) {
+        Integer slot = slots.get(rule.getId());
+        //a rule of an index built after this table was updated
+        if (slot == null) return true;
+        if (!armed[slot] || (lastEmitted[slot] != 0 && now - lastEmitted[slot] < cooldownMillis)) return false;
+        lastEmitted[slot] = now;
+        if (rule.getMetric() != AlertRule.Metric.RANGE_BREAKOUT) {
+            armed[slot] = false;
+            disarmedOf(disarmed, rule.getSymbol()).set(slot);
+        }
+        return true;
+    }
+
+    /**
+     * Adds the state to the lists, for snapshots
+     *
+     * @return the number of rules with a state: emitted at least once or disarmed
+     */
+    public synchronized int export(List<String> ids, List<Long> emitted, List<Boolean> isArmed) {
+        int count = 0;
+        for (int slot = 0; slot < rules.length; slot++) {
+            if (lastEmitted[slot] == 0 && armed[slot]) continue;
+            ids.add(rules[slot].getId());
+            emitted.add(lastEmitted[slot]);
+            isArmed.add(armed[slot]);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Restores the state of a snapshot, ids of unknown rules are ignored
+     */
+    public synchronized void restore(String[] ids, long[] emitted, boolean[] isArmed) {
+        int count = Math.min(ids.length, Math.min(emitted.length, isArmed.length));
+        for (int i = 0; i < count; i++) {
+            Integer slot = slots.get(ids[i]);
+            if (slot == null) continue;
+            lastEmitted[slot] = emitted[i];
+            armed[slot] = isArmed[i];
+            if (isArmed[i]) {
+                BitSet symbolDisarmed = disarmed.get(rules[slot].getSymbol());
+                if (symbolDisarmed != null) symbolDisarmed.clear(slot);
+            } else {
+                disarmedOf(disarmed, rules[slot].getSymbol()).set(slot);
+            }
+        }
+    }
+
+    public synchronized int getDisarmedCount() {
+        int count = 0;
+        for (BitSet symbolDisarmed : disarmed.values()) {
+            count += symbolDisarmed.cardinality();
+        }
+        return count;
+    }
+
+    private static BitSet disarmedOf(Map<String, BitSet> disarmed, String symbol) {
+        BitSet symbolDisarmed = disarmed.get(symbol);
+        if (symbolDisarmed == null) {
+            symbolDisarmed = new BitSet();
+            disarmed.put(symbol, symbolDisarmed);
+        }
+        return symbolDisarmed;
+    }
+}
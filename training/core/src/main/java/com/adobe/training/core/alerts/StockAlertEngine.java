@@ -0,0 +1,39 @@
+package com.adobe.training.core.alerts;
+
+import com.adobe.training.core.stock.Quote;
+
+/**
+ * Evaluates the alert rules of imported quotes in memory and posts an OSGi event per rule crossed
+ * since the previous quote of the symbol:
+ *
+ * topic     com/adobe/training/core/stock/ALERT
+ * symbol    the stock symbol
+ * price     the last trade price of the quote
+ * threshold the threshold of the rule
+ * timestamp trade time of the quote (epoch millis)
+ * rule      id of the rule
+ * owner     the user the rule belongs to
+ * metric    metric of the rule, Ex: percentFromOpen
+ * direction above or below
+ * value     value of the metric for the quote
+ */
+public interface StockAlertEngine {
+
+    public static final String TOPIC_ALERT = "com/adobe/training/core/stock/ALERT";
+    public static final String PROPERTY_SYMBOL = "symbol";
+    public static final String PROPERTY_PRICE = "price";
+    public static final String PROPERTY_THRESHOLD = "threshold";
+    public static final String PROPERTY_TIMESTAMP = "timestamp";
+    public static final String PROPERTY_RULE = "rule";
+    public static final String PROPERTY_OWNER = "owner";
+    public static final String PROPERTY_METRIC = "metric";
+    public static final String PROPERTY_DIRECTION = "direction";
+    public static final String PROPERTY_VALUE = "value";
+
+    /**
+     * Queues the quote for evaluation without blocking. The quote is copied, the caller may reuse the instance.
+     *
+     * @return false if the quote was dropped because the queue is full
+     */
+    public boolean submit(Quote quote);
+}
@@ -0,0 +1,158 @@
+package com.adobe.training.core.alerts;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Immutable index of the price thresholds of the Stock Threshold Checker workflow step.
+ * The process arguments hold one threshold per line, a symbol may have several:
+ *
+ * ADBE=105
+ * MSFT=55
+ * MSFT=60
+ *
+ * Symbols are matched exactly (MS does not match MSFT). Lookups are a single hash lookup and
+ * allocate nothing, the thresholds of a symbol are sorted so exceeded thresholds are found by binary search.
+ */
+public final class ThresholdIndex {
+
+    //compiled indexes by process arguments, workflows only use a handful of argument blocks
+    private static final int MAX_CACHED = 32;
+    private static final ConcurrentMap<String, ThresholdIndex> CACHE = new ConcurrentHashMap<String, ThresholdIndex>();
+
+    private final Map<String, Thresholds> thresholds;
+    private final int ruleCount;
+    private final List<String> invalidLines;
+
+    private ThresholdIndex(Map<String, Thresholds> thresholds, int ruleCount, List<String> invalidLines) {
+        this.thresholds = thresholds;
+        this.ruleCount = ruleCount;
+        this.invalidLines = invalidLines;
+    }
+
+    /**
+     * @return the index of the arguments, compiled on first use and cached by the argument text
+     */
+    public static ThresholdIndex forArguments(String arguments) {
+        ThresholdIndex index = CACHE.get(arguments);
+        if (index == null) {
+            index = compile(arguments);
+            if (CACHE.size() >= MAX_CACHED) CACHE.clear();
+            CACHE.putIfAbsent(arguments, index);
+        }
+        return index;
+    }
+
+    /**
+     * Parses the SYMBOL=price lines of the arguments. Blank lines are skipped,
+     * lines without a symbol or a numeric price are reported by getInvalidLines.
+     */
+    public static ThresholdIndex compile(String arguments) {
+        Map<String, List<Double>> bySymbol = new HashMap<String, List<Double>>();
+        List<String> invalid = new ArrayList<String>();
+        int rules = 0;
+        for (String line : arguments.split("\n")) {
+            String argument = line.trim();
+            if (argument.isEmpty()) continue;
+            int equals = argument.indexOf('=');
+            String symbol = equals > 0 ? argument.substring(0, equals).trim() : "";
+            double threshold;
+            try {
+                threshold = Double.parseDouble(argument.substring(equals + 1));
+            } catch (NumberFormatException e) {
+                threshold = Double.NaN;
+            }
+            if (symbol.isEmpty() || Double.isNaN(threshold)) {
+                invalid.add(argument);
+                continue;
+            }
+            List<Double> values = bySymbol.get(symbol);
+            if (values == null) {
+                values = new ArrayList<Double>();
+                bySymbol.put(symbol, values);
+            }
+            values.add(threshold);
+            rules++;
+        }
+
+        Map<String, Thresholds> thresholds = new HashMap<String, Thresholds>(bySymbol.size() * 2);
+        for (Map.Entry<String, List<Double>> entry : bySymbol.entrySet()) {
+            double[] values = new double[entry.getValue().size()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = entry.getValue().get(i);
+            }
+            Arrays.sort(values);
+            thresholds.put(entry.getKey(), new Thresholds(values));
+        }
+        return new ThresholdIndex(thresholds, rules, Collections.unmodifiableList(invalid));
+    }
+
+    /**
+     * @return the thresholds of the symbol, null if it has none
+     */
+    public Thresholds get(String symbol) {
+        return thresholds.get(symbol);
+    }
+
+    /**
+     * @return number of thresholds of the symbol below the price
+     */
+    public int countExceeded(String symbol, double price) {
+        Thresholds symbolThresholds = thresholds.get(symbol);
+        return symbolThresholds != null ? symbolThresholds.countBelow(price) : 0;
+    }
+
+    public int getSymbolCount() {
+        return thresholds.size();
+    }
+
+    public int getRuleCount() {
+        return ruleCount;
+    }
+
+    public List<String> getInvalidLines() {
+        return invalidLines;
+    }
+
+    /**
+     * Sorted thresholds of one symbol
+     */
+    public static final class Thresholds {
+        private final double[] values;
+
+        private Thresholds(double[] values) {
+            this.values = values;
+        }
+
+        public int size() {
+            return values.length;
+        }
+
+        /**
+         * @return the index-th lowest threshold
+         */
+        public double get(int index) {
+            return values[index];
+        }
+
+        /**
+         * @return number of thresholds strictly below the price, these are get(0) .. get(count - 1)
+         */
+        public int countBelow(double price) {
+            int low = 0;
+            int high = values.length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (values[middle] < price) low = middle + 1;
+                else high = middle;
+            }
+            return low;
+        }
+    }
+}
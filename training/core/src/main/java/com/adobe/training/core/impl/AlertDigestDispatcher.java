@@ -0,0 +1,216 @@
+package com.adobe.training.core.impl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.felix.scr.annotations.Activate;
+import org.apache.felix.scr.annotations.Component;
+import org.apache.felix.scr.annotations.Deactivate;
+import org.apache.felix.scr.annotations.Property;
+import org.apache.felix.scr.annotations.Reference;
+import org.apache.felix.scr.annotations.ReferenceCardinality;
+import org.apache.felix.scr.annotations.ReferencePolicy;
+import org.apache.felix.scr.annotations.Service;
+import org.apache.sling.commons.osgi.PropertiesUtil;
+import org.osgi.service.event.Event;
+import org.osgi.service.event.EventConstants;
+import org.osgi.service.event.EventHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.adobe.training.core.alerts.AlertNotification;
+import com.adobe.training.core.alerts.AlertSink;
+import com.adobe.training.core.alerts.StockAlertEngine;
+import com.adobe.training.core.metrics.LatencyHistogram;
+import com.adobe.training.core.metrics.StatisticsProvider;
+
+/**
+ * Collects the alert events of the StockAlertEngine per owner and hands every registered AlertSink
+ * one digest per owner every digest.window milliseconds, instead of one notification per alert.
+ * At most max.pending alerts wait per owner, more are dropped until the next digest.
+ *
+ * Reports the digests, the failed deliveries and the latency from receiving an alert to its delivery.
+ * A digest counts as delivered once a sink took it, a digest no sink took is counted as undelivered.
+ */
+@Component(metatype = true, label = "Training Alert Digest Dispatcher")
+@Service(value = {EventHandler.class, StatisticsProvider.class})
+@Property(name = EventConstants.EVENT_TOPIC, value = StockAlertEngine.TOPIC_ALERT, propertyPrivate = true)
+@Reference(name = "sink", referenceInterface = AlertSink.class,
+        cardinality = ReferenceCardinality.OPTIONAL_MULTIPLE, policy = ReferencePolicy.DYNAMIC)
+public class AlertDigestDispatcher implements EventHandler, StatisticsProvider {
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    @Property(label = "Digest Window", description = "Milliseconds between two digests of an owner", longValue = 60000)
+    public static final String PROPERTY_DIGEST_WINDOW = "digest.window";
+    @Property(label = "Max Pending Alerts", description = "Maximum number of alerts waiting per owner, more are dropped", intValue = 1000)
+    public static final String PROPERTY_MAX_PENDING = "max.pending";
+
+    private final List<AlertSink> sinks = new CopyOnWriteArrayList<AlertSink>();
+
+    private int maxPending;
+    //owner -> alerts of the current window, swapped with an empty map on dispatch
+    private Map<String, List<PendingAlert>> pending = new HashMap<String, List<PendingAlert>>();
+    private final Object lock = new Object();
+    private ScheduledExecutorService executor;
+
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong digests = new AtomicLong();
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong undeliveredDigests = new AtomicLong();
+    private final AtomicLong failedDigests = new AtomicLong();
+    private final LatencyHistogram dispatchLatency = new LatencyHistogram();
+    private final LatencyHistogram deliveryTime = new LatencyHistogram();
+
+    @Activate
+    protected void activate(Map<String, Object> properties) {
+        long window = Math.max(1, PropertiesUtil.toLong(properties.get(PROPERTY_DIGEST_WINDOW), 60000));
+        maxPending = Math.max(1, PropertiesUtil.toInteger(properties.get(PROPERTY_MAX_PENDING), 1000));
+        executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "training-alert-digests");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    dispatch();
+                } catch (RuntimeException e) {
+                    logger.error("Could not dispatch the alert digests", e);
+                }
+            }
+        }, window, window, TimeUnit.MILLISECONDS);
+    }
+
+    @Deactivate
+    protected void deactivate() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        //deliver what is pending
+        dispatch();
+    }
+
+    protected void bindSink(AlertSink sink, Map<String, Object> properties) {
+        sinks.add(sink);
+    }
+
+    protected void unbindSink(AlertSink sink, Map<String, Object> properties) {
+        sinks.remove(sink);
+    }
+
+    @Override
+    public void handleEvent(Event event) {
+        AlertNotification notification = AlertNotification.fromEvent(event);
+        String owner = notification.getOwner() != null ? notification.getOwner() : "";
+        received.incrementAndGet();
+        synchronized (lock) {
+            List<PendingAlert> alerts = pending.get(owner);
+            if (alerts == null) {
+                alerts = new ArrayList<PendingAlert>();
+                pending.put(owner, alerts);
+            }
+            if (alerts.size() >= maxPending) {
+                dropped.incrementAndGet();
+                return;
+            }
+            alerts.add(new PendingAlert(notification, System.nanoTime()));
+        }
+    }
+
+    /**
+     * Hands the alerts collected since the last dispatch to the sinks, one digest per owner
+     */
+    void dispatch() {
+        Map<String, List<PendingAlert>> window;
+        synchronized (lock) {
+            if (pending.isEmpty()) return;
+            window = pending;
+            pending = new HashMap<String, List<PendingAlert>>();
+        }
+        for (Map.Entry<String, List<PendingAlert>> entry : window.entrySet()) {
+            List<AlertNotification> notifications = new ArrayList<AlertNotification>(entry.getValue().size());
+            for (PendingAlert alert : entry.getValue()) {
+                notifications.add(alert.notification);
+            }
+            long start = System.nanoTime();
+            int taken = 0;
+            for (AlertSink sink : sinks) {
+                try {
+                    sink.deliver(entry.getKey(), notifications);
+                    taken++;
+                } catch (IOException e) {
+                    failedDigests.incrementAndGet();
+                    logger.error("Could not deliver the alert digest of " + entry.getKey(), e);
+                } catch (RuntimeException e) {
+                    failedDigests.incrementAndGet();
+                    logger.error("Could not deliver the alert digest of " + entry.getKey(), e);
+                }
+            }
+            if (taken == 0) {
+                undeliveredDigests.incrementAndGet();
+                continue;
+            }
+            deliveryTime.recordSince(start);
+            digests.incrementAndGet();
+            delivered.addAndGet(notifications.size());
+            for (PendingAlert alert : entry.getValue()) {
+                dispatchLatency.recordSince(alert.receivedNanos);
+            }
+        }
+    }
+
+    @Override
+    public String getStatisticsName() {
+        return "alertDigestDispatcher";
+    }
+
+    @Override
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<String, Object>();
+        int waiting = 0;
+        synchronized (lock) {
+            for (List<PendingAlert> alerts : pending.values()) {
+                waiting += alerts.size();
+            }
+        }
+        stats.put("sinks", sinks.size());
+        stats.put("received", received.get());
+        stats.put("pending", waiting);
+        stats.put("dropped", dropped.get());
+        stats.put("digests", digests.get());
+        stats.put("delivered", delivered.get());
+        stats.put("failedDigests", failedDigests.get());
+        stats.put("undeliveredDigests", undeliveredDigests.get());
+        dispatchLatency.putInto(stats, "latency.");
+        deliveryTime.putInto(stats, "delivery.");
+        return stats;
+    }
+
+    private static class PendingAlert {
+        private final AlertNotification notification;
+        private final long receivedNanos;
+
+        PendingAlert(AlertNotification notification, long receivedNanos) {
+            this.notification = notification;
+            this.receivedNanos = receivedNanos;
+        }
+    }
+}
@@ -0,0 +1,315 @@
+package com.adobe.training.core.impl;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+
+import org.apache.felix.scr.annotations.Activate;
+import org.apache.felix.scr.annotations.Component;
+import org.apache.felix.scr.annotations.Deactivate;
+import org.apache.felix.scr.annotations.Property;
+import org.apache.felix.scr.annotations.Reference;
+import org.apache.felix.scr.annotations.Service;
+import org.apache.sling.commons.osgi.PropertiesUtil;
+import org.apache.sling.jcr.api.SlingRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.adobe.training.core.metrics.LatencyHistogram;
+import com.adobe.training.core.metrics.StatisticsProvider;
+import com.adobe.training.core.stock.LastTradeNode;
+import com.adobe.training.core.stock.Quote;
+import com.adobe.training.core.stock.QuoteWriteListener;
+import com.adobe.training.core.stock.QuoteWriter;
+import com.day.cq.commons.jcr.JcrUtil;
+
+/**
+ * QuoteWriter that coalesces quotes in memory and writes them with one session:
+ *
+ * -only the latest quote per lastTrade node is kept until the next flush
+ * -a flush runs every flush.interval milliseconds, or as soon as flush.max.symbols symbols are pending
+ * -a flush saves the session every save.chunk nodes. If it fails, the quotes of the flush are written again one by one
+ *  and the quotes that still fail are dropped and counted, so one bad quote does not hold back the others.
+ *  If the service user cannot log in, the quotes are queued again
+ * -the QuoteWriteListener of a dropped quote is told, also for the quotes still pending once the writer is stopped
+ *
+ * Polling at short intervals therefore costs one commit per flush instead of one per symbol and poll.
+ */
+@Component(metatype = true, label = "Training Coalescing Quote Writer")
+@Service(value = {QuoteWriter.class, StatisticsProvider.class})
+public class CoalescingQuoteWriter implements QuoteWriter, StatisticsProvider {
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    @Property(label = "Flush Interval", description = "Milliseconds between two flushes", intValue = 1000)
+    public static final String PROPERTY_FLUSH_INTERVAL = "flush.interval";
+    @Property(label = "Max Pending Symbols", description = "Number of pending symbols that triggers a flush right away", intValue = 1000)
+    public static final String PROPERTY_FLUSH_MAX_SYMBOLS = "flush.max.symbols";
+    @Property(label = "Nodes per Save", description = "Number of lastTrade nodes written before the session is saved", intValue = 500)
+    public static final String PROPERTY_SAVE_CHUNK = "save.chunk";
+
+    @Reference
+    private SlingRepository repo;
+
+    private int flushInterval;
+    private int maxSymbols;
+    private int saveChunk;
+
+    //lastTrade path -> latest quote, swapped with an empty map on flush
+    private Map<String, PendingQuote> pending = new HashMap<String, PendingQuote>();
+    private final Object lock = new Object();
+    //serializes flushes of the timer, size trigger and explicit flush calls
+    private final Object flushLock = new Object();
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    private ScheduledExecutorService executor;
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong flushes = new AtomicLong();
+    private final AtomicLong commits = new AtomicLong();
+    private final AtomicLong failedFlushes = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile long lastBatchSize;
+    private final AtomicLong maxBatchSize = new AtomicLong();
+    private final LatencyHistogram flushLatency = new LatencyHistogram();
+
+    @Activate
+    protected void activate(Map<String, Object> properties) {
+        flushInterval = Math.max(10, PropertiesUtil.toInteger(properties.get(PROPERTY_FLUSH_INTERVAL), 1000));
+        maxSymbols = Math.max(1, PropertiesUtil.toInteger(properties.get(PROPERTY_FLUSH_MAX_SYMBOLS), 1000));
+        saveChunk = Math.max(1, PropertiesUtil.toInteger(properties.get(PROPERTY_SAVE_CHUNK), 500));
+        executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "training-quote-writer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                flush();
+            }
+        }, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+        logger.info("Quote writer flushes every {} ms or {} symbols", flushInterval, maxSymbols);
+    }
+
+    @Deactivate
+    protected void deactivate() {
+        ExecutorService stopping = executor;
+        executor = null;
+        stopping.shutdown();
+        try {
+            stopping.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+        //the service user could not log in, nothing writes the quotes left
+        Map<String, PendingQuote> left;
+        synchronized (lock) {
+            left = pending;
+            pending = new HashMap<String, PendingQuote>();
+        }
+        for (Map.Entry<String, PendingQuote> entry : left.entrySet()) {
+            drop(entry.getKey(), entry.getValue());
+        }
+    }
+
+    @Override
+    public void write(String parentPath, Quote quote, QuoteWriteListener listener) {
+        String path = parentPath + "/" + quote.getSymbol() + "/" + LastTradeNode.NAME;
+        int size;
+        synchronized (lock) {
+            PendingQuote entry = pending.get(path);
+            if (entry == null) {
+                entry = new PendingQuote(parentPath);
+                pending.put(path, entry);
+            } else {
+                coalesced.incrementAndGet();
+            }
+            entry.quote.copyFrom(quote);
+            entry.listener = listener;
+            size = pending.size();
+        }
+        submitted.incrementAndGet();
+        ScheduledExecutorService current = executor;
+        if (size >= maxSymbols && current != null && flushRequested.compareAndSet(false, true)) {
+            current.execute(new Runnable() {
+                @Override
+                public void run() {
+                    flushRequested.set(false);
+                    flush();
+                }
+            });
+        }
+    }
+
+    @Override
+    public void flush() {
+        synchronized (flushLock) {
+            Map<String, PendingQuote> batch;
+            synchronized (lock) {
+                if (pending.isEmpty()) return;
+                batch = pending;
+                pending = new HashMap<String, PendingQuote>();
+            }
+            long start = System.nanoTime();
+            try {
+                writeBatch(batch);
+                flushes.incrementAndGet();
+                written.addAndGet(batch.size());
+                lastBatchSize = batch.size();
+                if (batch.size() > maxBatchSize.get()) maxBatchSize.set(batch.size());
+            } catch (RepositoryException e) {
+                failedFlushes.incrementAndGet();
+                logger.warn("Could not write " + batch.size() + " quotes, writing them one by one", e);
+                try {
+                    written.addAndGet(writeOneByOne(batch));
+                } catch (RepositoryException loginFailure) {
+                    logger.error("Could not write " + batch.size() + " quotes, queueing them again", loginFailure);
+                    requeue(batch);
+                }
+            } finally {
+                flushLatency.recordSince(start);
+            }
+        }
+    }
+
+    /**
+     * Creates the stock data structure for every quote of the batch, see LastTradeNode
+     *
+     *  + <STOCK_SYMBOL> [cq:Page]
+     *     + lastTrade [nt:unstructured]
+     */
+    private void writeBatch(Map<String, PendingQuote> batch) throws RepositoryException {
+        Session session = repo.loginService("training", null);
+        try {
+            int unsaved = 0;
+            for (PendingQuote entry : batch.values()) {
+                writeQuote(session, entry);
+                if (++unsaved == saveChunk) {
+                    session.save();
+                    commits.incrementAndGet();
+                    unsaved = 0;
+                }
+            }
+            if (session.hasPendingChanges()) {
+                session.save();
+                commits.incrementAndGet();
+            }
+        } finally {
+            session.logout();
+        }
+    }
+
+    /**
+     * Writes and saves the quotes of a failed batch one at a time, the quotes that fail are dropped
+     *
+     * @return the number of quotes written
+     * @throws RepositoryException if the service user cannot log in
+     */
+    private int writeOneByOne(Map<String, PendingQuote> batch) throws RepositoryException {
+        Session session = repo.loginService("training", null);
+        int saved = 0;
+        try {
+            for (Map.Entry<String, PendingQuote> entry : batch.entrySet()) {
+                try {
+                    writeQuote(session, entry.getValue());
+                    session.save();
+                    commits.incrementAndGet();
+                    saved++;
+                } catch (RepositoryException e) {
+                    logger.error("Dropping the quote of " + entry.getKey(), e);
+                    session.refresh(false);
+                    drop(entry.getKey(), entry.getValue());
+                }
+            }
+        } finally {
+            session.logout();
+        }
+        return saved;
+    }
+
+    private void drop(String path, PendingQuote entry) {
+        dropped.incrementAndGet();
+        if (entry.listener == null) return;
+        try {
+            entry.listener.quoteDropped(path, entry.quote);
+        } catch (RuntimeException e) {
+            logger.error("The listener of a dropped quote failed", e);
+        }
+    }
+
+    private static void writeQuote(Session session, PendingQuote entry) throws RepositoryException {
+        Quote quote = entry.quote;
+        Node stockPageNode = JcrUtil.createPath(entry.parentPath + "/" + quote.getSymbol(), "cq:Page", session);
+        Node lastTradeNode = JcrUtil.createPath(stockPageNode.getPath() + "/" + LastTradeNode.NAME,
+                "nt:unstructured", session);
+        LastTradeNode.write(lastTradeNode, quote);
+    }
+
+    /**
+     * Puts the quotes of a batch that could not be written back, unless a newer quote arrived meanwhile
+     */
+    private void requeue(Map<String, PendingQuote> batch) {
+        synchronized (lock) {
+            for (Map.Entry<String, PendingQuote> entry : batch.entrySet()) {
+                if (!pending.containsKey(entry.getKey())) {
+                    pending.put(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+    }
+
+    @Override
+    public String getStatisticsName() {
+        return "quoteWriter";
+    }
+
+    @Override
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<String, Object>();
+        long flushCount = flushes.get();
+        synchronized (lock) {
+            stats.put("pending", pending.size());
+        }
+        stats.put("submitted", submitted.get());
+        stats.put("coalesced", coalesced.get());
+        stats.put("written", written.get());
+        stats.put("flushes", flushCount);
+        stats.put("failedFlushes", failedFlushes.get());
+        stats.put("dropped", dropped.get());
+        stats.put("commits", commits.get());
+        stats.put("lastBatchSize", lastBatchSize);
+        stats.put("maxBatchSize", maxBatchSize.get());
+        stats.put("meanBatchSize", flushCount > 0 ? (double) written.get() / flushCount : 0.0);
+        flushLatency.putInto(stats, "flushLatency.");
+        return stats;
+    }
+
+    /**
+     * Latest quote of one lastTrade node and the listener it was written with
+     */
+    private static class PendingQuote {
+        private final String parentPath;
+        private final Quote quote = new Quote();
+        private QuoteWriteListener listener;
+
+        PendingQuote(String parentPath) {
+            this.parentPath = parentPath;
+        }
+    }
+}
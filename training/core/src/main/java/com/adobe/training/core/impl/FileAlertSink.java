@@ -0,0 +1,82 @@
+package com.adobe.training.core.impl;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Dictionary;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import org.apache.felix.scr.annotations.Activate;
+import org.apache.felix.scr.annotations.Component;
+import org.apache.felix.scr.annotations.ConfigurationPolicy;
+import org.apache.felix.scr.annotations.Property;
+import org.apache.felix.scr.annotations.Service;
+import org.apache.sling.commons.osgi.PropertiesUtil;
+import org.osgi.service.component.ComponentContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.adobe.training.core.alerts.AlertNotification;
+import com.adobe.training.core.alerts.AlertSink;
+
+/**
+ * AlertSink appending the digests to a local file, one block per digest:
+ *
+ * 2016-11-13T21:00:00Z jdoe 2 alerts
+ *   ADBE price above 105.0: 105.25 (/etc/trainingproject/stockalerts/jdoe/adbe105)
+ *   MSFT percentFromOpen below -3.0: -3.2 (/etc/trainingproject/stockalerts/jdoe/msftdrop)
+ *
+ * Only active when configured, so alerts are not written to the local disk unless asked for.
+ */
+@Component(metatype = true, label = "Training Alert File Sink", policy = ConfigurationPolicy.REQUIRE)
+@Service(value = AlertSink.class)
+public class FileAlertSink implements AlertSink {
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    @Property(label = "File", description = "File the digests are appended to. Defaults to the data area of the bundle")
+    public static final String PROPERTY_FILE = "file.path";
+
+    private static final String DEFAULT_FILE = "alert-digests.log";
+
+    private File file;
+
+    @Activate
+    protected void activate(ComponentContext context) {
+        configure(context.getProperties(), context.getBundleContext().getDataFile(DEFAULT_FILE));
+    }
+
+    protected void configure(Dictionary<?, ?> properties, File defaultFile) {
+        String configured = PropertiesUtil.toString(properties.get(PROPERTY_FILE), null);
+        file = configured == null || configured.isEmpty() ? defaultFile : new File(configured);
+        logger.info("Alert digests are appended to {}", file.getAbsolutePath());
+    }
+
+    @Override
+    public synchronized void deliver(String owner, List<AlertNotification> notifications) throws IOException {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        StringBuilder digest = new StringBuilder();
+        digest.append(format.format(new Date())).append(' ').append(owner).append(' ')
+                .append(notifications.size()).append(" alerts\n");
+        for (AlertNotification notification : notifications) {
+            digest.append("  ").append(notification).append('\n');
+        }
+        File parent = file.getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Could not create " + parent);
+        }
+        Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), "UTF-8"));
+        try {
+            writer.write(digest.toString());
+        } finally {
+            writer.close();
+        }
+    }
+}
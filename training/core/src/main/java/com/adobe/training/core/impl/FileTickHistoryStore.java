@@ -0,0 +1,523 @@
+package com.adobe.training.core.impl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Dictionary;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TimeZone;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.felix.scr.annotations.Activate;
+import org.apache.felix.scr.annotations.Component;
+import org.apache.felix.scr.annotations.Deactivate;
+import org.apache.felix.scr.annotations.Properties;
+import org.apache.felix.scr.annotations.Property;
+import org.apache.felix.scr.annotations.Service;
+import org.apache.sling.commons.osgi.PropertiesUtil;
+import org.osgi.service.component.ComponentContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.adobe.training.core.metrics.StatisticsProvider;
+import com.adobe.training.core.stock.Quote;
+import com.adobe.training.core.stock.TickBlockDecoder;
+import com.adobe.training.core.stock.TickBlockEncoder;
+import com.adobe.training.core.stock.TickHistoryStore;
+import com.adobe.training.core.stock.TickVisitor;
+
+/**
+ * File based TickHistoryStore. Every symbol gets a folder with one segment per (UTC) day:
+ *
+ * <history.directory>
+ *   + ADBE
+ *     - 2016-11-13.seg  compressed tick blocks (see TickBlockEncoder), appended in time order
+ *     - 2016-11-13.idx  one 32 byte entry per block: first/last timestamp, offset, length, tick count
+ *
+ * Ticks are collected per symbol into an open block that is appended once it holds block.size ticks,
+ * is older than block.max.age seconds or the day changes. Range reads only visit the days of the range
+ * that have a segment, binary search their index, only decode the blocks overlapping the range
+ * and include the open block.
+ *
+ * The component is scheduled to append aged open blocks of symbols that stopped ticking.
+ */
+@Component(metatype = true, label = "Training Stock Tick History Store")
+@Service(value = {TickHistoryStore.class, StatisticsProvider.class, Runnable.class})
+@Properties({
+    @Property(name = "scheduler.period", longValue = 60, propertyPrivate = true),
+    @Property(name = "scheduler.concurrent", boolValue = false, propertyPrivate = true)
+})
+public class FileTickHistoryStore implements TickHistoryStore, StatisticsProvider, Runnable {
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    @Property(label = "Directory", description = "Folder of the tick segments. Defaults to the data area of the bundle")
+    public static final String PROPERTY_DIRECTORY = "history.directory";
+    @Property(label = "Block Size", description = "Maximum number of ticks per compressed block", intValue = 128)
+    public static final String PROPERTY_BLOCK_SIZE = "block.size";
+    @Property(label = "Block Max Age", description = "Seconds after which an open block is appended even if not full", intValue = 300)
+    public static final String PROPERTY_BLOCK_MAX_AGE = "block.max.age";
+
+    private static final String DEFAULT_DIRECTORY = "stock-history";
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String INDEX_SUFFIX = ".idx";
+    private static final int INDEX_ENTRY_SIZE = 32;
+    private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    private File directory;
+    private int blockSize;
+    private long blockMaxAge;
+
+    private final ConcurrentMap<String, SymbolState> symbols = new ConcurrentHashMap<String, SymbolState>();
+
+    private final AtomicLong appended = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong blocksWritten = new AtomicLong();
+    private final AtomicLong ticksWritten = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private final AtomicLong rangeReads = new AtomicLong();
+    private final AtomicLong blocksDecoded = new AtomicLong();
+    private final AtomicLong ticksRead = new AtomicLong();
+
+    @Activate
+    protected void activate(ComponentContext context) {
+        configure(context.getProperties(), context.getBundleContext().getDataFile(DEFAULT_DIRECTORY));
+    }
+
+    @Deactivate
+    protected void deactivate() {
+        flush(0);
+    }
+
+    protected void configure(Dictionary<?, ?> properties, File defaultDirectory) {
+        String configured = PropertiesUtil.toString(properties.get(PROPERTY_DIRECTORY), null);
+        directory = configured == null || configured.isEmpty() ? defaultDirectory : new File(configured);
+        blockSize = Math.max(1, PropertiesUtil.toInteger(properties.get(PROPERTY_BLOCK_SIZE), 128));
+        blockMaxAge = Math.max(0, PropertiesUtil.toInteger(properties.get(PROPERTY_BLOCK_MAX_AGE), 300)) * 1000L;
+        symbols.clear();
+        logger.info("Tick history is stored in {}", directory.getAbsolutePath());
+    }
+
+    @Override
+    public void run() {
+        flush(blockMaxAge);
+    }
+
+    /**
+     * Appends the open blocks that are older than maxAge milliseconds
+     */
+    protected void flush(long maxAge) {
+        long now = System.currentTimeMillis();
+        for (SymbolState state : symbols.values()) {
+            synchronized (state) {
+                if (state.block.getCount() > 0 && now - state.blockStarted >= maxAge) {
+                    try {
+                        appendBlock(state);
+                    } catch (IOException e) {
+                        logger.error("Could not append the tick block of " + state.folder, e);
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public void append(Quote tick) throws IOException {
+        if (folderName(tick.getSymbol()) == null) {
+            rejected.incrementAndGet();
+            return;
+        }
+        SymbolState state = stateFor(tick.getSymbol());
+        synchronized (state) {
+            if (!state.recovered) {
+                recover(state);
+            }
+            if (tick.getTimestamp() < state.lastTimestamp) {
+                rejected.incrementAndGet();
+                return;
+            }
+            long day = dayOf(tick.getTimestamp());
+            if (day != state.day) {
+                if (state.block.getCount() > 0) {
+                    appendBlock(state);
+                }
+                openSegment(state, day);
+            }
+            if (state.block.getCount() == 0) {
+                state.blockStarted = System.currentTimeMillis();
+            }
+            state.block.add(tick);
+            state.lastTimestamp = tick.getTimestamp();
+            if (state.block.getCount() >= blockSize
+                    || System.currentTimeMillis() - state.blockStarted >= blockMaxAge) {
+                appendBlock(state);
+            }
+        }
+        appended.incrementAndGet();
+    }
+
+    @Override
+    public int read(String symbol, long from, long to, TickVisitor visitor) throws IOException {
+        rangeReads.incrementAndGet();
+        String name = folderName(symbol);
+        if (name == null) return 0;
+        File folder = new File(directory, name);
+        Quote tick = new Quote();
+        tick.setSymbol(symbol);
+        TickBlockDecoder decoder = new TickBlockDecoder();
+        byte[] buffer = new byte[4096];
+        int visited = 0;
+        for (long day : daysOf(symbol, folder, dayOf(from), dayOf(to))) {
+            File index = indexFile(folder, day);
+            if (index.exists()) {
+                long[] entries = readIndex(index);
+                int blocks = entries.length / 4;
+                RandomAccessFile segment = new RandomAccessFile(segmentFile(folder, day), "r");
+                try {
+                    for (int block = firstBlockEndingAfter(entries, from); block < blocks; block++) {
+                        long first = entries[block * 4];
+                        if (first > to) break;
+                        int length = (int) (entries[block * 4 + 3] >>> 32);
+                        if (buffer.length < length) buffer = new byte[length];
+                        segment.seek(entries[block * 4 + 2]);
+                        segment.readFully(buffer, 0, length);
+                        decoder.reset(buffer, 0, length);
+                        blocksDecoded.incrementAndGet();
+                        int result = visitBlock(decoder, tick, from, to, visitor);
+                        if (result < 0) return visited - result - 1;
+                        visited += result;
+                    }
+                } finally {
+                    segment.close();
+                }
+            }
+            //ticks of the open block are not in the segment yet
+            byte[] open = openBlock(symbol, day);
+            if (open != null) {
+                decoder.reset(open, 0, open.length);
+                int result = visitBlock(decoder, tick, from, to, visitor);
+                if (result < 0) return visited - result - 1;
+                visited += result;
+            }
+        }
+        return visited;
+    }
+
+    /**
+     * @return the days between first and last day with an index or the open block of the symbol, in order
+     */
+    private SortedSet<Long> daysOf(String symbol, File folder, long firstDay, long lastDay) {
+        SortedSet<Long> days = new TreeSet<Long>();
+        String[] names = folder.list();
+        if (names != null) {
+            SimpleDateFormat format = dayFormat();
+            for (String name : names) {
+                if (!name.endsWith(INDEX_SUFFIX)) continue;
+                try {
+                    long day = dayOf(format.parse(name.substring(0, name.length() - INDEX_SUFFIX.length())).getTime());
+                    if (day >= firstDay && day <= lastDay) days.add(day);
+                } catch (ParseException e) {
+                    logger.debug("Ignoring {} in {}", name, folder);
+                }
+            }
+        }
+        SymbolState state = symbols.get(symbol);
+        if (state != null) {
+            synchronized (state) {
+                if (state.day >= firstDay && state.day <= lastDay && state.block.getCount() > 0) days.add(state.day);
+            }
+        }
+        return days;
+    }
+
+    /**
+     * @return the number of ticks visited, or -(visited + 1) if the visitor asked to stop
+     */
+    private int visitBlock(TickBlockDecoder decoder, Quote tick, long from, long to, TickVisitor visitor) {
+        int visited = 0;
+        while (decoder.next(tick)) {
+            if (tick.getTimestamp() > to) break;
+            if (tick.getTimestamp() >= from) {
+                visited++;
+                ticksRead.incrementAndGet();
+                if (!visitor.visit(tick)) return -(visited + 1);
+            }
+        }
+        return visited;
+    }
+
+    private byte[] openBlock(String symbol, long day) throws IOException {
+        SymbolState state = symbols.get(symbol);
+        if (state == null) return null;
+        synchronized (state) {
+            if (state.day != day || state.block.getCount() == 0) return null;
+            ByteArrayOutputStream out = new ByteArrayOutputStream(state.block.getEncodedSize());
+            state.block.writeTo(out);
+            return out.toByteArray();
+        }
+    }
+
+    /**
+     * Reads the index as 4 longs per block: first timestamp, last timestamp, offset, length << 32 | count
+     */
+    private static long[] readIndex(File index) throws IOException {
+        int blocks = (int) (index.length() / INDEX_ENTRY_SIZE);
+        long[] entries = new long[blocks * 4];
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(index)));
+        try {
+            for (int i = 0; i < entries.length; i++) {
+                entries[i] = in.readLong();
+            }
+        } finally {
+            in.close();
+        }
+        return entries;
+    }
+
+    private static int firstBlockEndingAfter(long[] entries, long from) {
+        int low = 0;
+        int high = entries.length / 4 - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (entries[mid * 4 + 1] < from) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Writes the open block to the segment, then its index entry, and starts a new block.
+     * If a write fails, the segment and the index are cut back to the last complete block
+     * and the block stays open, so the next append writes it at the right offset.
+     */
+    private void appendBlock(SymbolState state) throws IOException {
+        TickBlockEncoder block = state.block;
+        int length = block.getEncodedSize();
+        File segmentFile = segmentFile(state.folder, state.day);
+        File indexFile = indexFile(state.folder, state.day);
+        long indexLength = indexFile.length();
+        try {
+            DataOutputStream segment = openForAppend(segmentFile, length);
+            try {
+                block.writeTo(segment);
+            } finally {
+                segment.close();
+            }
+            DataOutputStream index = openForAppend(indexFile, INDEX_ENTRY_SIZE);
+            try {
+                index.writeLong(block.getFirstTimestamp());
+                index.writeLong(block.getLastTimestamp());
+                index.writeLong(state.offset);
+                index.writeInt(length);
+                index.writeInt(block.getCount());
+            } finally {
+                index.close();
+            }
+        } catch (IOException e) {
+            truncate(segmentFile, state.offset);
+            truncate(indexFile, indexLength);
+            throw e;
+        }
+        state.offset += length;
+        blocksWritten.incrementAndGet();
+        ticksWritten.addAndGet(block.getCount());
+        bytesWritten.addAndGet(length);
+        block.reset();
+    }
+
+    private SymbolState stateFor(String symbol) {
+        SymbolState state = symbols.get(symbol);
+        if (state == null) {
+            SymbolState created = new SymbolState(new File(directory, folderName(symbol)));
+            state = symbols.putIfAbsent(symbol, created);
+            if (state == null) state = created;
+        }
+        return state;
+    }
+
+    /**
+     * Picks up the last timestamp of a symbol from its latest index, so a restart keeps the history in order
+     */
+    private void recover(SymbolState state) throws IOException {
+        File latest = null;
+        File[] indexes = state.folder.listFiles();
+        if (indexes != null) {
+            for (File index : indexes) {
+                //index names are ISO dates, so the latest day sorts last
+                if (index.getName().endsWith(INDEX_SUFFIX)
+                        && (latest == null || index.getName().compareTo(latest.getName()) > 0)) {
+                    latest = index;
+                }
+            }
+        }
+        if (latest != null && latest.length() >= INDEX_ENTRY_SIZE) {
+            RandomAccessFile file = new RandomAccessFile(latest, "r");
+            try {
+                file.seek((file.length() / INDEX_ENTRY_SIZE - 1) * INDEX_ENTRY_SIZE + 8);
+                state.lastTimestamp = file.readLong();
+            } finally {
+                file.close();
+            }
+        }
+        state.recovered = true;
+    }
+
+    /**
+     * Switches the symbol to the segment of the given day. Data after the last indexed block
+     * (a block whose index entry was never written) is dropped.
+     */
+    private void openSegment(SymbolState state, long day) throws IOException {
+        if (!state.folder.exists() && !state.folder.mkdirs()) {
+            throw new IOException("Could not create " + state.folder);
+        }
+        state.day = day;
+        state.offset = 0;
+        File index = indexFile(state.folder, day);
+        if (index.exists()) {
+            RandomAccessFile file = new RandomAccessFile(index, "rw");
+            try {
+                long blocks = file.length() / INDEX_ENTRY_SIZE;
+                file.setLength(blocks * INDEX_ENTRY_SIZE);
+                if (blocks > 0) {
+                    file.seek((blocks - 1) * INDEX_ENTRY_SIZE + 8);
+                    state.lastTimestamp = Math.max(state.lastTimestamp, file.readLong());
+                    state.offset = file.readLong() + file.readInt();
+                }
+            } finally {
+                file.close();
+            }
+        }
+        File segment = segmentFile(state.folder, day);
+        if (segment.exists() && segment.length() != state.offset) {
+            RandomAccessFile file = new RandomAccessFile(segment, "rw");
+            try {
+                file.setLength(state.offset);
+            } finally {
+                file.close();
+            }
+        }
+    }
+
+    /**
+     * Cuts the file back to the given length, a failure is logged as the segment is cut again when it is reopened
+     */
+    private void truncate(File file, long length) {
+        if (!file.exists() || file.length() <= length) return;
+        try {
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                raf.setLength(length);
+            } finally {
+                raf.close();
+            }
+        } catch (IOException e) {
+            logger.error("Could not cut " + file + " back to " + length + " bytes", e);
+        }
+    }
+
+    private static DataOutputStream openForAppend(File file, int size) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true), size));
+    }
+
+    private static long dayOf(long timestamp) {
+        return timestamp >= 0 ? timestamp / DAY_MILLIS : (timestamp + 1) / DAY_MILLIS - 1;
+    }
+
+    private static File segmentFile(File folder, long day) {
+        return new File(folder, dayName(day) + SEGMENT_SUFFIX);
+    }
+
+    private static File indexFile(File folder, long day) {
+        return new File(folder, dayName(day) + INDEX_SUFFIX);
+    }
+
+    private static String dayName(long day) {
+        return dayFormat().format(new Date(day * DAY_MILLIS));
+    }
+
+    private static SimpleDateFormat dayFormat() {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return format;
+    }
+
+    /**
+     * Keeps symbols like ^GSPC or BRK.B usable as folder names. ASCII letters, digits, '.' and '-' are kept,
+     * every other UTF-8 byte is percent-escaped (^GSPC is %5EGSPC), so two symbols never share a folder.
+     *
+     * @return null for symbols that would name the directory or its parent: empty, "." and ".."
+     */
+    static String folderName(String symbol) {
+        if (symbol == null || symbol.isEmpty() || ".".equals(symbol) || "..".equals(symbol)) return null;
+        StringBuilder sb = new StringBuilder(symbol.length());
+        for (byte b : symbol.getBytes(UTF_8)) {
+            char c = (char) (b & 0xff);
+            if ((c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '.' || c == '-') {
+                sb.append(c);
+            } else {
+                sb.append('%').append(HEX[c >> 4]).append(HEX[c & 0xf]);
+            }
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public String getStatisticsName() {
+        return "tickHistory";
+    }
+
+    @Override
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<String, Object>();
+        long ticks = ticksWritten.get();
+        stats.put("symbols", symbols.size());
+        stats.put("ticksAppended", appended.get());
+        stats.put("ticksRejected", rejected.get());
+        stats.put("blocksWritten", blocksWritten.get());
+        stats.put("bytesWritten", bytesWritten.get());
+        stats.put("bytesPerTick", ticks > 0 ? (double) bytesWritten.get() / ticks : 0.0);
+        stats.put("rangeReads", rangeReads.get());
+        stats.put("blocksDecoded", blocksDecoded.get());
+        stats.put("ticksRead", ticksRead.get());
+        return stats;
+    }
+
+    /**
+     * Append position and open block of a symbol, appends of the same symbol are serialized on it
+     */
+    private static class SymbolState {
+        private final File folder;
+        private final TickBlockEncoder block = new TickBlockEncoder();
+        private long day = Long.MIN_VALUE;
+        private long offset;
+        private long blockStarted;
+        private long lastTimestamp = Long.MIN_VALUE;
+        private boolean recovered;
+
+        SymbolState(File folder) {
+            this.folder = folder;
+            block.reset();
+        }
+    }
+}
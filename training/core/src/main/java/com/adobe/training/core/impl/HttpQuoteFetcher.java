@@ -0,0 +1,286 @@
+package com.adobe.training.core.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.lang.reflect.Method;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.felix.scr.annotations.Activate;
+import org.apache.felix.scr.annotations.Component;
+import org.apache.felix.scr.annotations.Deactivate;
+import org.apache.felix.scr.annotations.Modified;
+import org.apache.felix.scr.annotations.Property;
+import org.apache.felix.scr.annotations.PropertyOption;
+import org.apache.felix.scr.annotations.Service;
+import org.apache.sling.commons.osgi.PropertiesUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.adobe.training.core.metrics.LatencyHistogram;
+import com.adobe.training.core.metrics.StatisticsProvider;
+import com.adobe.training.core.stock.QuoteFetcher;
+
+/**
+ * QuoteFetcher on top of HttpURLConnection:
+ *
+ * -connect and read timeouts, so a slow source fails instead of stalling the polling importer
+ * -responses are read to the end, into one StringBuilder without a String per line, and closed, which returns
+ *  the connection to the JDK keep-alive cache
+ *  (its size per host is the http.maxConnections system property, 5 by default)
+ * -fetchAll runs on the configured executor with at most max.in.flight requests at the same time
+ * -a latency histogram per source (host:port)
+ *
+ * The executor is a fixed thread pool, or one virtual thread per request when the JVM provides them.
+ */
+@Component(metatype = true, label = "Training Quote Fetcher")
+@Service(value = {QuoteFetcher.class, StatisticsProvider.class})
+@Property(name = QuoteFetcher.PROPERTY_SCHEMES, value = {"http", "https"}, propertyPrivate = true)
+public class HttpQuoteFetcher implements QuoteFetcher, StatisticsProvider {
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    public static final String EXECUTOR_PLATFORM = "platform";
+    public static final String EXECUTOR_VIRTUAL = "virtual";
+
+    @Property(label = "Connect Timeout", description = "Milliseconds to wait for a connection", intValue = 2000)
+    public static final String PROPERTY_CONNECT_TIMEOUT = "connect.timeout";
+    @Property(label = "Read Timeout", description = "Milliseconds to wait for data of an open connection", intValue = 5000)
+    public static final String PROPERTY_READ_TIMEOUT = "read.timeout";
+    @Property(label = "Max In-Flight Requests", description = "Number of requests running at the same time", intValue = 8)
+    public static final String PROPERTY_MAX_IN_FLIGHT = "max.in.flight";
+    @Property(label = "Executor", description = "Threads running the requests of fetchAll", value = EXECUTOR_PLATFORM,
+            options = {
+                @PropertyOption(name = EXECUTOR_PLATFORM, value = "Fixed thread pool"),
+                @PropertyOption(name = EXECUTOR_VIRTUAL, value = "Virtual threads (falls back to the thread pool)")
+            })
+    public static final String PROPERTY_EXECUTOR = "executor";
+
+    //a larger Content-Length is not trusted to presize the response
+    private static final int MAX_PRESIZE = 1 << 20;
+
+    private volatile int connectTimeout;
+    private volatile int readTimeout;
+    private volatile Semaphore inFlight;
+    private volatile ExecutorService executor;
+    private String executorType;
+
+    private final ConcurrentMap<String, LatencyHistogram> latencies = new ConcurrentHashMap<String, LatencyHistogram>();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+
+    @Activate
+    protected void activate(Map<String, Object> properties) {
+        configure(properties);
+    }
+
+    @Modified
+    protected void modified(Map<String, Object> properties) {
+        ExecutorService previous = executor;
+        configure(properties);
+        previous.shutdown();
+    }
+
+    @Deactivate
+    protected void deactivate() {
+        executor.shutdownNow();
+    }
+
+    protected void configure(Map<String, Object> properties) {
+        connectTimeout = Math.max(1, PropertiesUtil.toInteger(properties.get(PROPERTY_CONNECT_TIMEOUT), 2000));
+        readTimeout = Math.max(1, PropertiesUtil.toInteger(properties.get(PROPERTY_READ_TIMEOUT), 5000));
+        int maxInFlight = Math.max(1, PropertiesUtil.toInteger(properties.get(PROPERTY_MAX_IN_FLIGHT), 8));
+        inFlight = new Semaphore(maxInFlight);
+        executorType = PropertiesUtil.toString(properties.get(PROPERTY_EXECUTOR), EXECUTOR_PLATFORM);
+        ExecutorService virtual = EXECUTOR_VIRTUAL.equals(executorType) ? newVirtualThreadExecutor() : null;
+        if (virtual != null) {
+            executor = virtual;
+        } else {
+            executorType = EXECUTOR_PLATFORM;
+            executor = Executors.newFixedThreadPool(maxInFlight, new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "training-quote-fetch-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        logger.info("Quote fetcher: {} executor, {} requests in flight, timeouts {}/{} ms",
+                new Object[]{executorType, maxInFlight, connectTimeout, readTimeout});
+    }
+
+    /**
+     * Executors.newVirtualThreadPerTaskExecutor() is looked up at runtime, older JVMs return null
+     */
+    private ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (Exception e) {
+            logger.info("Virtual threads are not available on this JVM, using a thread pool");
+            return null;
+        }
+    }
+
+    @Override
+    public CharSequence fetch(String url) throws IOException {
+        //released to the semaphore it was acquired from, even if a reconfiguration replaced it meanwhile
+        Semaphore slots = inFlight;
+        try {
+            slots.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting to fetch " + url);
+        }
+        try {
+            return request(url);
+        } finally {
+            slots.release();
+        }
+    }
+
+    @Override
+    public List<CharSequence> fetchAll(List<String> urls) {
+        List<Future<CharSequence>> futures = new ArrayList<Future<CharSequence>>(urls.size());
+        for (final String url : urls) {
+            futures.add(executor.submit(new Callable<CharSequence>() {
+                @Override
+                public CharSequence call() throws IOException {
+                    return fetch(url);
+                }
+            }));
+        }
+        //every request ends within the timeouts, the deadline only guards against a stuck executor
+        long deadline = System.nanoTime()
+                + TimeUnit.MILLISECONDS.toNanos((long) (connectTimeout + readTimeout) * (urls.size() + 1));
+        List<CharSequence> results = new ArrayList<CharSequence>(urls.size());
+        for (int i = 0; i < futures.size(); i++) {
+            Future<CharSequence> future = futures.get(i);
+            try {
+                results.add(future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS));
+            } catch (ExecutionException e) {
+                logger.warn("Could not fetch {}: {}", urls.get(i), e.getCause().toString());
+                results.add(null);
+            } catch (TimeoutException e) {
+                future.cancel(true);
+                logger.warn("Gave up waiting for {}", urls.get(i));
+                results.add(null);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                future.cancel(true);
+                results.add(null);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Reads the response into one StringBuilder, a char buffer at a time, the lines are split by the QuoteParser
+     */
+    private CharSequence request(String url) throws IOException {
+        URL sourceUrl = new URL(url);
+        LatencyHistogram latency = latencyOf(sourceUrl);
+        requests.incrementAndGet();
+        long start = System.nanoTime();
+        boolean success = false;
+        HttpURLConnection connection = (HttpURLConnection) sourceUrl.openConnection();
+        try {
+            connection.setConnectTimeout(connectTimeout);
+            connection.setReadTimeout(readTimeout);
+            connection.setUseCaches(false);
+            int status = connection.getResponseCode();
+            if (status != HttpURLConnection.HTTP_OK) {
+                drain(connection.getErrorStream());
+                throw new IOException("Source answered " + status + " for " + url);
+            }
+            int length = connection.getContentLength();
+            StringBuilder text = new StringBuilder(length > 0 && length < MAX_PRESIZE ? length : 1024);
+            Reader in = new InputStreamReader(connection.getInputStream(), "UTF-8");
+            try {
+                char[] buffer = new char[4096];
+                int read;
+                while ((read = in.read(buffer)) >= 0) {
+                    text.append(buffer, 0, read);
+                }
+            } finally {
+                //closing a fully read stream keeps the connection alive for the next request
+                in.close();
+            }
+            success = true;
+            return text;
+        } catch (SocketTimeoutException e) {
+            timeouts.incrementAndGet();
+            //a timed out connection cannot be reused
+            connection.disconnect();
+            throw e;
+        } finally {
+            latency.recordSince(start);
+            if (!success) failures.incrementAndGet();
+        }
+    }
+
+    private void drain(InputStream in) throws IOException {
+        if (in == null) return;
+        try {
+            byte[] buffer = new byte[1024];
+            while (in.read(buffer) >= 0) {
+                //discard the error page
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    private LatencyHistogram latencyOf(URL url) {
+        String source = url.getHost() + ":" + (url.getPort() < 0 ? url.getDefaultPort() : url.getPort());
+        LatencyHistogram latency = latencies.get(source);
+        if (latency == null) {
+            LatencyHistogram created = new LatencyHistogram();
+            latency = latencies.putIfAbsent(source, created);
+            if (latency == null) latency = created;
+        }
+        return latency;
+    }
+
+    @Override
+    public String getStatisticsName() {
+        return "quoteFetcher";
+    }
+
+    @Override
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<String, Object>();
+        stats.put("executor", executorType);
+        stats.put("availableSlots", inFlight.availablePermits());
+        stats.put("requests", requests.get());
+        stats.put("failures", failures.get());
+        stats.put("timeouts", timeouts.get());
+        for (Map.Entry<String, LatencyHistogram> entry : latencies.entrySet()) {
+            entry.getValue().putInto(stats, "source." + entry.getKey() + ".");
+        }
+        return stats;
+    }
+}
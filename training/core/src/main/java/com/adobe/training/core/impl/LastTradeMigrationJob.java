@@ -0,0 +1,138 @@
+package com.adobe.training.core.impl;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.query.Query;
+
+import org.apache.felix.scr.annotations.Activate;
+import org.apache.felix.scr.annotations.Component;
+import org.apache.felix.scr.annotations.Property;
+import org.apache.felix.scr.annotations.Reference;
+import org.apache.felix.scr.annotations.Service;
+import org.apache.sling.commons.osgi.PropertiesUtil;
+import org.apache.sling.event.jobs.Job;
+import org.apache.sling.event.jobs.consumer.JobConsumer;
+import org.apache.sling.jcr.api.SlingRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.adobe.training.core.metrics.StatisticsProvider;
+import com.adobe.training.core.stock.LastTradeNode;
+import com.adobe.training.core.stock.Quote;
+
+/**
+ * Converts lastTrade nodes with String properties (requestDate/requestTime) into typed properties,
+ * see LastTradeNode. Started with a POST to /bin/trainingproject/migratelasttrade
+ *
+ * The job queries batch.size legacy nodes below the root path, converts them and saves, until no legacy
+ * node is left. Converted nodes drop out of the query, so a job that failed or was stopped by a restart
+ * continues where it left off when it runs again. Nodes that cannot be converted are marked with
+ * migrationFailed = true and skipped.
+ */
+@Component(metatype = true, label = "Training Last Trade Migration")
+@Service(value = {JobConsumer.class, StatisticsProvider.class})
+@Property(name = JobConsumer.PROPERTY_TOPICS, value = LastTradeMigrationJob.TOPIC, propertyPrivate = true)
+public class LastTradeMigrationJob implements JobConsumer, StatisticsProvider {
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    public static final String TOPIC = "com/adobe/training/core/stock/migratelasttrade";
+    public static final String PROPERTY_ROOT = "root";
+    public static final String DEFAULT_ROOT = "/content";
+    public static final String MIGRATION_FAILED = "migrationFailed";
+
+    @Property(label = "Nodes per Batch", description = "Number of lastTrade nodes converted before the session is saved", intValue = 500)
+    public static final String PROPERTY_BATCH_SIZE = "batch.size";
+
+    @Reference
+    private SlingRepository repo;
+
+    private int batchSize;
+
+    private final AtomicLong migrated = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private volatile String lastResult = "none";
+
+    @Activate
+    protected void activate(Map<String, Object> properties) {
+        batchSize = Math.max(1, PropertiesUtil.toInteger(properties.get(PROPERTY_BATCH_SIZE), 500));
+    }
+
+    @Override
+    public JobResult process(Job job) {
+        String root = job.getProperty(PROPERTY_ROOT, DEFAULT_ROOT);
+        if (!root.startsWith("/") || root.contains("]")) {
+            logger.error("Not a valid root path for the lastTrade migration: {}", root);
+            return JobResult.CANCEL;
+        }
+        long start = System.currentTimeMillis();
+        long converted = 0;
+        Session session = null;
+        try {
+            session = repo.loginService("training", null);
+            Quote quote = new Quote();
+            while (true) {
+                Query query = session.getWorkspace().getQueryManager().createQuery(
+                        "SELECT * FROM [nt:unstructured] AS n WHERE ISDESCENDANTNODE(n, [" + root + "])"
+                        + " AND NAME(n) = '" + LastTradeNode.NAME + "'"
+                        + " AND n.[" + LastTradeNode.REQUESTDATE + "] IS NOT NULL"
+                        + " AND n.[" + MIGRATION_FAILED + "] IS NULL", Query.JCR_SQL2);
+                query.setLimit(batchSize);
+                NodeIterator nodes = query.execute().getNodes();
+                if (!nodes.hasNext()) break;
+                int batchConverted = 0;
+                int batchFailed = 0;
+                while (nodes.hasNext()) {
+                    Node node = nodes.nextNode();
+                    if (LastTradeNode.read(node, quote)) {
+                        LastTradeNode.write(node, quote);
+                        batchConverted++;
+                    } else {
+                        logger.warn("Cannot convert {}, marking it as failed", node.getPath());
+                        node.setProperty(MIGRATION_FAILED, true);
+                        batchFailed++;
+                    }
+                }
+                session.save();
+                //counted once saved, the nodes of a failed batch are converted again by the retried job
+                converted += batchConverted;
+                migrated.addAndGet(batchConverted);
+                failed.addAndGet(batchFailed);
+                batches.incrementAndGet();
+                logger.info("lastTrade migration below {}: {} nodes converted so far", root, converted);
+            }
+            lastResult = "converted " + converted + " nodes below " + root + " in "
+                    + (System.currentTimeMillis() - start) + " ms";
+            logger.info("lastTrade migration done, {}", lastResult);
+            return JobResult.OK;
+        } catch (RepositoryException e) {
+            //saved batches stay converted, the retried job continues with the remaining nodes
+            lastResult = "failed after " + converted + " nodes below " + root;
+            logger.error("lastTrade migration failed, the job will be retried", e);
+            return JobResult.FAILED;
+        } finally {
+            if (session != null) session.logout();
+        }
+    }
+
+    @Override
+    public String getStatisticsName() {
+        return "lastTradeMigration";
+    }
+
+    @Override
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<String, Object>();
+        stats.put("migrated", migrated.get());
+        stats.put("failed", failed.get());
+        stats.put("batches", batches.get());
+        stats.put("lastResult", lastResult);
+        return stats;
+    }
+}
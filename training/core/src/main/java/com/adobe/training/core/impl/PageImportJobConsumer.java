@@ -0,0 +1,364 @@
+package com.adobe.training.core.impl;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.jcr.Binary;
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+
+import org.apache.felix.scr.annotations.Activate;
+import org.apache.felix.scr.annotations.Component;
+import org.apache.felix.scr.annotations.Modified;
+import org.apache.felix.scr.annotations.Property;
+import org.apache.felix.scr.annotations.Reference;
+import org.apache.felix.scr.annotations.Service;
+import org.apache.sling.api.resource.LoginException;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.apache.sling.commons.osgi.PropertiesUtil;
+import org.apache.sling.event.jobs.Job;
+import org.apache.sling.event.jobs.JobManager;
+import org.apache.sling.event.jobs.consumer.JobConsumer;
+import org.apache.sling.jcr.api.SlingRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.adobe.training.core.importer.CsvRowReader;
+import com.adobe.training.core.importer.ImportJobQueue;
+import com.adobe.training.core.importer.ImportListener;
+import com.adobe.training.core.importer.ImportProgress;
+import com.adobe.training.core.importer.ImportReport;
+import com.adobe.training.core.importer.PageImporter;
+import com.adobe.training.core.metrics.StatisticsProvider;
+import com.day.cq.commons.jcr.JcrUtil;
+
+/**
+ * ImportJobQueue storing the files below JOBS with the service user and importing them in jobs of TOPIC.
+ *
+ * A job imports its file with the PageImporter as the user who queued it (the service user impersonates
+ * the user, it must be allowed to), with the job id as import id: a job retried by Sling after a failure
+ * resumes after the last checkpoint. The progress is saved every progress.rows rows and when the job ends,
+ * the file is removed once it is imported.
+ *
+ * Reports the queued, running, succeeded and failed imports and the rows imported by jobs.
+ */
+@Component(metatype = true, label = "Training Page Import Jobs")
+@Service(value = {ImportJobQueue.class, JobConsumer.class, StatisticsProvider.class})
+@Property(name = JobConsumer.PROPERTY_TOPICS, value = ImportJobQueue.TOPIC, propertyPrivate = true)
+public class PageImportJobConsumer implements ImportJobQueue, JobConsumer, StatisticsProvider {
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    @Property(label = "Progress Rows", description = "Rows imported between two saves of the progress", intValue = 1000)
+    public static final String PROPERTY_PROGRESS_ROWS = "progress.rows";
+
+    static final String JOB_ID = "jobId";
+    static final String USER_ID = "userId";
+    static final String CHARSET = "charset";
+    static final String CHUNK_SIZE = "chunkSize";
+    static final String PARALLELISM = "parallelism";
+    private static final String SLING_JOB_ID = "slingJobId";
+    private static final String FILE = "file";
+
+    @Reference
+    private PageImporter pageImporter;
+
+    @Reference
+    private JobManager jobManager;
+
+    @Reference
+    private SlingRepository repo;
+
+    @Reference
+    private ResourceResolverFactory resourceResolverFactory;
+
+    private volatile int progressRows;
+
+    private final AtomicLong queued = new AtomicLong();
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicLong succeeded = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong rows = new AtomicLong();
+
+    @Activate
+    protected void activate(Map<String, Object> properties) {
+        configure(properties);
+    }
+
+    @Modified
+    protected void modified(Map<String, Object> properties) {
+        configure(properties);
+    }
+
+    protected void configure(Map<String, Object> properties) {
+        progressRows = Math.max(1, PropertiesUtil.toInteger(properties.get(PROPERTY_PROGRESS_ROWS), 1000));
+    }
+
+    @Override
+    public String enqueue(InputStream csv, String charset, String userId, int chunkSize, int parallelism) throws IOException {
+        String id = UUID.randomUUID().toString();
+        Session session = null;
+        try {
+            session = repo.loginService("training", null);
+            Node jobs = session.nodeExists(JOBS) ? session.getNode(JOBS) : JcrUtil.createPath(JOBS, "sling:Folder", session);
+            Node jobNode = jobs.addNode(id, "nt:unstructured");
+            //the binary is spooled to the blob store, not kept in memory
+            Binary binary = session.getValueFactory().createBinary(csv);
+            Node content = jobNode.addNode(FILE, "nt:file").addNode("jcr:content", "nt:resource");
+            content.setProperty("jcr:data", binary);
+            content.setProperty("jcr:mimeType", "text/csv");
+            content.setProperty("jcr:encoding", charset);
+            content.setProperty("jcr:lastModified", Calendar.getInstance());
+            ImportProgress progress = new ImportProgress();
+            progress.setBytesTotal(binary.getSize());
+            progress.writeTo(jobNode);
+            jobNode.setProperty(USER_ID, userId);
+            session.save();
+
+            Map<String, Object> properties = new HashMap<String, Object>();
+            properties.put(JOB_ID, id);
+            properties.put(USER_ID, userId);
+            properties.put(CHARSET, charset);
+            properties.put(CHUNK_SIZE, chunkSize);
+            properties.put(PARALLELISM, parallelism);
+            Job job = jobManager.addJob(TOPIC, properties);
+            if (job == null) {
+                jobNode.remove();
+                session.save();
+                throw new IOException("Could not queue the job of import " + id);
+            }
+            jobNode.setProperty(SLING_JOB_ID, job.getId());
+            session.save();
+            queued.incrementAndGet();
+            logger.info("Queued import {} of {} bytes for {}", new Object[]{id, binary.getSize(), userId});
+            return id;
+        } catch (RepositoryException e) {
+            throw new IOException("Could not store the file of import " + id, e);
+        } finally {
+            if (session != null) session.logout();
+        }
+    }
+
+    @Override
+    public ImportProgress getProgress(String jobId) {
+        if (jobId == null || !jobId.matches("[0-9a-f-]+")) return null;
+        Session session = null;
+        try {
+            session = repo.loginService("training", null);
+            String path = JOBS + "/" + jobId;
+            if (!session.nodeExists(path)) return null;
+            Node jobNode = session.getNode(path);
+            ImportProgress progress = ImportProgress.readFrom(jobNode);
+            //a job Sling gave up on leaves the progress it saved last
+            if (!ImportProgress.STATE_SUCCEEDED.equals(progress.getState()) && jobNode.hasProperty(SLING_JOB_ID)) {
+                Job job = jobManager.getJobById(jobNode.getProperty(SLING_JOB_ID).getString());
+                if (job != null && job.getJobState() != Job.JobState.QUEUED && job.getJobState() != Job.JobState.ACTIVE
+                        && job.getJobState() != Job.JobState.SUCCEEDED) {
+                    progress.setState(ImportProgress.STATE_FAILED);
+                    if (progress.getError() == null) progress.setError("The job is " + job.getJobState());
+                }
+            }
+            return progress;
+        } catch (RepositoryException e) {
+            logger.error("Could not read the progress of import " + jobId, e);
+            return null;
+        } finally {
+            if (session != null) session.logout();
+        }
+    }
+
+    @Override
+    public JobResult process(Job job) {
+        String id = job.getProperty(JOB_ID, String.class);
+        String userId = job.getProperty(USER_ID, String.class);
+        String charset = job.getProperty(CHARSET, "UTF-8");
+        int chunkSize = job.getProperty(CHUNK_SIZE, 0);
+        int parallelism = job.getProperty(PARALLELISM, 0);
+
+        Session session = null;
+        ResourceResolver resolver = null;
+        CsvRowReader csv = null;
+        Node jobNode = null;
+        ImportProgress progress = null;
+        running.incrementAndGet();
+        try {
+            session = repo.loginService("training", null);
+            String path = JOBS + "/" + id;
+            if (!session.nodeExists(path + "/" + FILE)) {
+                logger.error("The file of import {} is gone, cancelling its job", id);
+                return JobResult.CANCEL;
+            }
+            jobNode = session.getNode(path);
+            progress = ImportProgress.readFrom(jobNode);
+            //a retried job counts again from the start: the rows up to its checkpoint are skipped and added once
+            //the import returns, the rows committed after the checkpoint are imported again and reported as existing
+            progress.setState(ImportProgress.STATE_RUNNING);
+            progress.setRows(0);
+            progress.setCreated(0);
+            progress.setFailed(0);
+            progress.getErrors().clear();
+            progress.setError(null);
+            progress.setStartedMillis(System.currentTimeMillis());
+            save(jobNode, progress, 0);
+
+            resolver = login(userId);
+            Binary binary = jobNode.getNode(FILE + "/jcr:content").getProperty("jcr:data").getBinary();
+            CountingInputStream in = new CountingInputStream(binary.getStream());
+            csv = new CsvRowReader(new InputStreamReader(in, charset));
+            ImportReport report = pageImporter.importPages(resolver, csv, id, chunkSize, parallelism, false,
+                    new ProgressListener(jobNode, progress, in));
+            progress.setRows(progress.getRows() + report.getResumed());
+
+            progress.setState(report.getError() != null ? ImportProgress.STATE_FAILED : ImportProgress.STATE_SUCCEEDED);
+            progress.setError(report.getError());
+            //a file that does not match its checkpoint fails the same way again, nothing reads it any more
+            boolean cancel = report.getError() != null && !report.isRetryable();
+            if (report.getError() == null || cancel) jobNode.getNode(FILE).remove();
+            save(jobNode, progress, in.getCount());
+            logger.info("Import {} done: {}", id, report.toMap());
+            if (report.getError() != null) {
+                failed.incrementAndGet();
+                //Ex: the workers could not log in, Sling retries the job with the file kept
+                return cancel ? JobResult.CANCEL : JobResult.FAILED;
+            }
+            succeeded.incrementAndGet();
+            return JobResult.OK;
+        } catch (Exception e) {
+            logger.error("Import " + id + " failed, Sling retries it", e);
+            failed.incrementAndGet();
+            if (progress != null) {
+                progress.setState(ImportProgress.STATE_FAILED);
+                progress.setError(e.toString());
+                save(jobNode, progress, progress.getBytesRead());
+            }
+            return JobResult.FAILED;
+        } finally {
+            running.decrementAndGet();
+            if (csv != null) {
+                try {
+                    csv.close();
+                } catch (IOException e) {
+                    logger.warn("Could not close the file of import " + id + ": " + e);
+                }
+            }
+            if (resolver != null) resolver.close();
+            if (session != null) session.logout();
+        }
+    }
+
+    /**
+     * Saves the progress on the job node, a failed save is logged and the import goes on
+     */
+    private void save(Node jobNode, ImportProgress progress, long bytesRead) {
+        progress.setBytesRead(bytesRead);
+        progress.setUpdatedMillis(System.currentTimeMillis());
+        try {
+            progress.writeTo(jobNode);
+            jobNode.getSession().save();
+        } catch (RepositoryException e) {
+            logger.warn("Could not save the progress of an import: " + e);
+        }
+    }
+
+    /**
+     * @param userId user to impersonate, the service user itself if null
+     */
+    private ResourceResolver login(String userId) throws LoginException {
+        Map<String, Object> serviceParams = new HashMap<String, Object>();
+        serviceParams.put(ResourceResolverFactory.SUBSERVICE, "training");
+        if (userId != null) serviceParams.put(ResourceResolverFactory.USER_IMPERSONATION, userId);
+        return resourceResolverFactory.getServiceResourceResolver(serviceParams);
+    }
+
+    /**
+     * Counts the rows of the import and saves the progress every progress.rows rows.
+     * Called by one thread at a time (see PageImporter), the session is only used by one thread at a time.
+     */
+    private final class ProgressListener implements ImportListener {
+        private final Node jobNode;
+        private final ImportProgress progress;
+        private final CountingInputStream in;
+
+        ProgressListener(Node jobNode, ImportProgress progress, CountingInputStream in) {
+            this.jobNode = jobNode;
+            this.progress = progress;
+            this.in = in;
+        }
+
+        @Override
+        public void rowImported(String key, Map<String, Object> result) {
+            Object status = result.get("Status");
+            progress.setRows(progress.getRows() + 1);
+            rows.incrementAndGet();
+            if (PageImporterImpl.STATUS_CREATED.equals(status)) {
+                progress.setCreated(progress.getCreated() + 1);
+            } else if (!PageImporterImpl.STATUS_EXISTING.equals(status)) {
+                progress.rowFailed(key + ": " + status);
+            }
+            if (progress.getRows() % progressRows == 0) save(jobNode, progress, in.getCount());
+        }
+    }
+
+    /**
+     * Counts the bytes read, for the share of the file imported
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+        private volatile long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) count += read;
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+
+        long getCount() {
+            return count;
+        }
+    }
+
+    @Override
+    public String getStatisticsName() {
+        return "pageImportJobs";
+    }
+
+    @Override
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<String, Object>();
+        stats.put("progressRows", progressRows);
+        stats.put("queued", queued.get());
+        stats.put("running", running.get());
+        stats.put("succeeded", succeeded.get());
+        stats.put("failed", failed.get());
+        stats.put("rows", rows.get());
+        return stats;
+    }
+}
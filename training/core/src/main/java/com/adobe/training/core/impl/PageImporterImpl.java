@@ -0,0 +1,799 @@
+package com.adobe.training.core.impl;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.jcr.InvalidItemStateException;
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+
+import org.apache.felix.scr.annotations.Activate;
+import org.apache.felix.scr.annotations.Component;
+import org.apache.felix.scr.annotations.Modified;
+import org.apache.felix.scr.annotations.Property;
+import org.apache.felix.scr.annotations.Reference;
+import org.apache.felix.scr.annotations.Service;
+import org.apache.sling.api.resource.LoginException;
+import org.apache.sling.api.resource.PersistenceException;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.apache.sling.commons.osgi.PropertiesUtil;
+import org.apache.sling.jcr.api.SlingRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.adobe.training.core.importer.CommitWatermark;
+import com.adobe.training.core.importer.CsvRowReader;
+import com.adobe.training.core.importer.ImportListener;
+import com.adobe.training.core.importer.ImportReport;
+import com.adobe.training.core.importer.PageImporter;
+import com.adobe.training.core.importer.PagePublisher;
+import com.adobe.training.core.importer.PageRow;
+import com.adobe.training.core.importer.PublishListener;
+import com.adobe.training.core.importer.PublishQueue;
+import com.adobe.training.core.metrics.LatencyHistogram;
+import com.adobe.training.core.metrics.StatisticsProvider;
+import com.day.cq.commons.jcr.JcrUtil;
+import com.day.cq.replication.ReplicationActionType;
+import com.day.cq.replication.ReplicationException;
+import com.day.cq.replication.Replicator;
+import com.day.cq.tagging.Tag;
+import com.day.cq.tagging.TagManager;
+import com.day.cq.wcm.api.Page;
+import com.day.cq.wcm.api.PageManager;
+
+/**
+ * PageImporter committing chunk.size pages at a time. If a row of a chunk fails or the commit of a chunk fails,
+ * the chunk is reverted and committed again row by row, so only the bad rows are lost.
+ * Rows whose page already exists are reported as such and not created again, so a chunk committed
+ * before its checkpoint was written can be imported again.
+ * Pages to publish are queued on a PublishQueue of the PagePublisher once their chunk is committed, if the
+ * session that created them may activate them, and activated in batches while the import goes on.
+ * The import returns once the batches are replicated, their replication time is in the report.
+ *
+ * A parallel import reads the file with the calling thread and hands every row to the worker of its partition
+ * through a bounded queue, so memory use stays flat. The workers log in the service user impersonating the
+ * user of the calling resolver, so they may only create the pages this user may create, and the permission
+ * to activate a page is always checked with the calling resolver. A chunk commit failing with a conflict
+ * (InvalidItemStateException) is retried commit.retries times after a short back off.
+ *
+ * An import whose id is already running is not started, its report holds an error.
+ * Checkpoints are written below PageImporter.CHECKPOINTS with the service user, properties:
+ * rows (committed rows) and hash (SHA-1 of the text of these rows, one \n after each row).
+ *
+ * Reports the imports, rows, created pages, failed rows and commits, conflicts and the chunk commit time.
+ */
+@Component(metatype = true, label = "Training Page Importer")
+@Service(value = {PageImporter.class, StatisticsProvider.class})
+public class PageImporterImpl implements PageImporter, StatisticsProvider {
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    @Property(label = "Chunk Size", description = "Pages created per commit", intValue = 100)
+    public static final String PROPERTY_CHUNK_SIZE = "chunk.size";
+
+    @Property(label = "Max Chunk Size", description = "Most pages per commit an import may ask for, "
+            + "the configured chunk size if it is higher", intValue = 1000)
+    public static final String PROPERTY_MAX_CHUNK_SIZE = "max.chunk.size";
+
+    @Property(label = "Parallelism", description = "Workers creating the pages of an import, 1 to create them with the request thread",
+            intValue = 1)
+    public static final String PROPERTY_PARALLELISM = "parallelism";
+
+    @Property(label = "Max Parallelism", description = "Most workers an import may ask for, "
+            + "the configured parallelism if it is higher", intValue = 4)
+    public static final String PROPERTY_MAX_PARALLELISM = "max.parallelism";
+
+    @Property(label = "Partition Depth", description = "Depth of the ancestor the rows of a parallel import are partitioned by, "
+            + "ex: 4 hands the pages below /content/trainingproject/en/products to one worker", intValue = 4)
+    public static final String PROPERTY_PARTITION_DEPTH = "partition.depth";
+
+    @Property(label = "Commit Retries", description = "Times a chunk commit failing with a conflict is retried "
+            + "before the chunk is committed row by row", intValue = 3)
+    public static final String PROPERTY_COMMIT_RETRIES = "commit.retries";
+
+    static final String DEFAULT_TEMPLATE = "/apps/trainingproject/templates/page-content";
+    static final String STATUS_CREATED = "Successful";
+    static final String STATUS_EXISTING = "Already exists";
+    static final String STATUS_FAILED = "Could not create a page";
+    static final String STATUS_UNPARSABLE = "Could not properly parce";
+    static final String PUBLISH_QUEUED = "Queued";
+    static final String PUBLISH_DENIED = "Not allowed";
+    private static final String CHECKPOINT_ROWS = "rows";
+    private static final String CHECKPOINT_HASH = "hash";
+    private static final long RETRY_BACKOFF_MILLIS = 50;
+    private static final long WORKER_FLUSH_MILLIS = 1000;
+    private static final PendingRow END = new PendingRow(0, null, null);
+
+    @Reference
+    private Replicator replicator;
+
+    @Reference
+    private SlingRepository repo;
+
+    @Reference
+    private ResourceResolverFactory resourceResolverFactory;
+
+    @Reference
+    private PagePublisher pagePublisher;
+
+    private volatile int chunkSize;
+    private volatile int maxChunkSize;
+    private volatile int parallelism;
+    private volatile int maxParallelism;
+    private volatile int partitionDepth;
+    private volatile int commitRetries;
+
+    private final AtomicInteger running = new AtomicInteger();
+    private final Set<String> runningIds = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final AtomicLong imports = new AtomicLong();
+    private final AtomicLong rows = new AtomicLong();
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong failedCommits = new AtomicLong();
+    private final AtomicLong conflicts = new AtomicLong();
+    private final AtomicLong resumedImports = new AtomicLong();
+    private final LatencyHistogram commitTime = new LatencyHistogram();
+
+    @Activate
+    protected void activate(Map<String, Object> properties) {
+        configure(properties);
+    }
+
+    @Modified
+    protected void modified(Map<String, Object> properties) {
+        configure(properties);
+    }
+
+    protected void configure(Map<String, Object> properties) {
+        chunkSize = Math.max(1, PropertiesUtil.toInteger(properties.get(PROPERTY_CHUNK_SIZE), 100));
+        maxChunkSize = Math.max(chunkSize, PropertiesUtil.toInteger(properties.get(PROPERTY_MAX_CHUNK_SIZE), 1000));
+        parallelism = Math.max(1, PropertiesUtil.toInteger(properties.get(PROPERTY_PARALLELISM), 1));
+        maxParallelism = Math.max(parallelism, PropertiesUtil.toInteger(properties.get(PROPERTY_MAX_PARALLELISM), 4));
+        partitionDepth = Math.max(1, PropertiesUtil.toInteger(properties.get(PROPERTY_PARTITION_DEPTH), 4));
+        commitRetries = Math.max(0, PropertiesUtil.toInteger(properties.get(PROPERTY_COMMIT_RETRIES), 3));
+    }
+
+    @Override
+    public ImportReport importPages(ResourceResolver resolver, CsvRowReader csv, String importId, int chunkSize,
+            int parallelism, boolean restart, ImportListener listener) throws IOException {
+        int size = chunkSize > 0 ? Math.min(chunkSize, maxChunkSize) : this.chunkSize;
+        int workers = parallelism > 0 ? Math.min(parallelism, maxParallelism) : this.parallelism;
+        String[] fields = csv.readRow();
+        String line = csv.getLine();
+        String id = importId != null && !importId.isEmpty() ? importId
+                : hex(sha1().digest(bytes(resolver.getUserID() + "\n" + line)));
+        ImportReport report = new ImportReport(id, size, workers);
+        //two runs of one import would write the same checkpoint
+        if (!runningIds.add(id)) {
+            report.setError("Import " + id + " is already running");
+            report.done();
+            return report;
+        }
+        running.incrementAndGet();
+        imports.incrementAndGet();
+        ImportRun run = null;
+        try {
+            long[] checkpointRows = new long[1];
+            String checkpointHash = restart ? null : readCheckpoint(id, checkpointRows);
+            if (restart) removeCheckpoint(id);
+            if (checkpointHash != null) resumedImports.incrementAndGet();
+            long start = checkpointHash != null ? checkpointRows[0] : 0;
+            run = new ImportRun(resolver, id, size, report, start, listener);
+            if (workers > 1) run.startWorkers(workers);
+
+            MessageDigest digest = sha1();
+            List<PendingRow> chunk = new ArrayList<PendingRow>();
+            while (fields != null && report.getError() == null) {
+                digest.update(bytes(line));
+                long row = report.rowRead();
+                rows.incrementAndGet();
+                if (row <= start) {
+                    //committed by a previous run, the rows read so far must be the same
+                    report.rowResumed();
+                    if (row == start && !checkpointHash.equals(hashSoFar(digest))) {
+                        report.setError("The file does not match the checkpoint of import " + id
+                                + ", restart the import to ignore the checkpoint", false);
+                        return report;
+                    }
+                } else {
+                    if ((row - start) % size == 0) run.watermark.mark(row, hashSoFar(digest));
+                    PendingRow pending = new PendingRow(row, line, PageRow.parse(fields));
+                    if (workers > 1) {
+                        run.dispatch(resolver, pending);
+                    } else {
+                        chunk.add(pending);
+                        if (chunk.size() >= size) {
+                            commitChunk(resolver, chunk, run);
+                            chunk.clear();
+                        }
+                    }
+                }
+                fields = csv.readRow();
+                line = csv.getLine();
+            }
+            if (start > 0 && report.getRows() < start) {
+                report.setError("The file has fewer rows than the checkpoint of import " + id
+                        + ", restart the import to ignore the checkpoint", false);
+                return report;
+            }
+            if (!chunk.isEmpty()) commitChunk(resolver, chunk, run);
+            run.awaitWorkers();
+            run.awaitPublished();
+            if (report.getError() == null && run.watermark.getWatermark() == report.getRows()) removeCheckpoint(id);
+            return report;
+        } finally {
+            if (run != null) {
+                run.stopWorkers();
+                //the committed pages are activated even if the import failed
+                run.publishQueue.flush();
+            }
+            report.done();
+            running.decrementAndGet();
+            runningIds.remove(id);
+        }
+    }
+
+    @Override
+    public int getMaxParallelism() {
+        return maxParallelism;
+    }
+
+    /**
+     * Creates the pages of the chunk and commits them, row by row if a row fails, or if the commit fails
+     * other than with a conflict commit.retries times
+     */
+    private void commitChunk(ResourceResolver resolver, List<PendingRow> chunk, ImportRun run) {
+        ImportReport report = run.report;
+        List<Map<String, Object>> results = new ArrayList<Map<String, Object>>(chunk.size());
+        boolean failedRow = false;
+        for (int attempt = 0; ; attempt++) {
+            long start = System.nanoTime();
+            for (PendingRow pending : chunk) {
+                if (pending.row == null) {
+                    results.add(status(STATUS_UNPARSABLE));
+                    continue;
+                }
+                try {
+                    results.add(createPage(resolver, pending.row));
+                } catch (Exception e) {
+                    logger.warn(pending.row.getPath() + " not created, committing its chunk row by row: " + e);
+                    failedRow = true;
+                    break;
+                }
+            }
+            if (failedRow) break;
+            try {
+                resolver.commit();
+                commitTime.recordSince(start);
+                break;
+            } catch (PersistenceException e) {
+                if (isConflict(e)) {
+                    report.conflict();
+                    conflicts.incrementAndGet();
+                    if (attempt < commitRetries) {
+                        logger.info("Conflict committing a chunk of {} pages, retrying: {}", chunk.size(), e.getMessage());
+                        report.retried();
+                        resolver.revert();
+                        results.clear();
+                        backOff(attempt);
+                        resolver.refresh();
+                        continue;
+                    }
+                }
+                logger.warn("Could not commit a chunk of " + chunk.size() + " pages, committing it row by row", e);
+                failedRow = true;
+                break;
+            }
+        }
+        if (failedRow) {
+            report.commitFailed();
+            failedCommits.incrementAndGet();
+            resolver.revert();
+            results.clear();
+            for (PendingRow pending : chunk) {
+                results.add(pending.row != null ? commitRow(resolver, pending.row) : status(STATUS_UNPARSABLE));
+            }
+        }
+        report.chunkCommitted();
+
+        for (int i = 0; i < results.size(); i++) {
+            PendingRow pending = chunk.get(i);
+            Map<String, Object> result = results.get(i);
+            Object status = result.get("Status");
+            if (STATUS_CREATED.equals(status)) {
+                report.pageCreated();
+                created.incrementAndGet();
+                if (pending.row.isPublish()) result.put("Publish", queuePublish(run, pending.row.getPath()));
+            } else if (STATUS_EXISTING.equals(status)) {
+                report.pageExisting();
+            } else {
+                report.rowFailed();
+                failed.incrementAndGet();
+            }
+            run.rowImported(pending.row != null ? pending.row.getPath() : pending.line, result);
+        }
+        run.committed(chunk);
+    }
+
+    /**
+     * @return true if the commit failed because another session changed the same nodes
+     */
+    private static boolean isConflict(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof InvalidItemStateException) return true;
+        }
+        return false;
+    }
+
+    private static void backOff(int attempt) {
+        try {
+            Thread.sleep(RETRY_BACKOFF_MILLIS * (attempt + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return the ancestor of the page at the given depth, null if the page is at this depth or above
+     */
+    static String partitionOf(String path, int depth) {
+        int end = 0;
+        for (int i = 0; i < depth; i++) {
+            end = path.indexOf('/', end + 1);
+            if (end < 0) return null;
+        }
+        return path.substring(0, end);
+    }
+
+    /**
+     * Logs in the service user impersonating the given user
+     */
+    private ResourceResolver login(String userId) throws LoginException {
+        if (userId == null) throw new LoginException("The calling resolver has no user to impersonate");
+        Map<String, Object> serviceParams = new HashMap<String, Object>();
+        serviceParams.put(ResourceResolverFactory.SUBSERVICE, "training");
+        serviceParams.put(ResourceResolverFactory.USER_IMPERSONATION, userId);
+        return resourceResolverFactory.getServiceResourceResolver(serviceParams);
+    }
+
+    /**
+     * A row of the file with its number, row is null if it could not be parsed
+     */
+    private static final class PendingRow {
+        final long number;
+        final String line;
+        final PageRow row;
+
+        PendingRow(long number, String line, PageRow row) {
+            this.number = number;
+            this.line = line;
+            this.row = row;
+        }
+    }
+
+    /**
+     * State of one import shared by the reading thread and the workers
+     */
+    private final class ImportRun {
+        //the resolver of the caller, used by the reading thread and to check the permission to activate
+        final ResourceResolver caller;
+        final String userId;
+        final String id;
+        final int size;
+        final ImportReport report;
+        final CommitWatermark watermark;
+        final PublishQueue publishQueue;
+        private final ImportListener listener;
+        private long checkpointWritten;
+        private Worker[] workers;
+        private ExecutorService executor;
+        //worker of every partition, partitions are handed out round robin as they are first seen
+        private final Map<String, Worker> partitions = new HashMap<String, Worker>();
+
+        ImportRun(ResourceResolver caller, String id, int size, final ImportReport report, long start,
+                ImportListener listener) {
+            this.caller = caller;
+            this.userId = caller.getUserID();
+            this.id = id;
+            this.size = size;
+            this.report = report;
+            this.watermark = new CommitWatermark(start);
+            this.listener = listener;
+            this.checkpointWritten = start;
+            this.publishQueue = pagePublisher.open(new PublishListener() {
+                @Override
+                public void batchReplicated(String[] paths, long micros, Exception error) {
+                    report.batchPublished(paths.length, micros, error != null);
+                }
+            });
+        }
+
+        void startWorkers(int count) {
+            final String name = "training-page-importer-" + id;
+            executor = Executors.newFixedThreadPool(count, new ThreadFactory() {
+                private final AtomicInteger threads = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, name + "-" + threads.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            workers = new Worker[count];
+            for (int i = 0; i < count; i++) {
+                workers[i] = new Worker(this);
+                executor.execute(workers[i]);
+            }
+        }
+
+        /**
+         * Hands the row to the worker of its partition, creates it with the resolver if it is above the partitions
+         */
+        void dispatch(ResourceResolver resolver, PendingRow pending) throws IOException {
+            String partition = pending.row != null ? partitionOf(pending.row.getPath(), partitionDepth) : null;
+            if (partition == null) {
+                //the workers check the permission to activate with the same resolver
+                synchronized (caller) {
+                    commitChunk(resolver, Collections.singletonList(pending), this);
+                }
+                return;
+            }
+            Worker worker = partitions.get(partition);
+            if (worker == null) {
+                worker = workers[partitions.size() % workers.length];
+                partitions.put(partition, worker);
+                report.partitionStarted();
+            }
+            try {
+                worker.queue.put(pending);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while handing row " + pending.number + " to a worker");
+            }
+        }
+
+        /**
+         * Waits for the workers to commit the rows handed to them
+         */
+        void awaitWorkers() throws IOException {
+            if (executor == null) return;
+            executor.shutdown();
+            try {
+                for (Worker worker : workers) {
+                    worker.queue.put(END);
+                }
+                while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                    logger.info("Import {} waiting for its workers, {} rows committed", id, watermark.getWatermark());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the workers of import " + id);
+            }
+        }
+
+        /**
+         * Waits for the pages queued for activation to be replicated
+         */
+        void awaitPublished() throws IOException {
+            try {
+                publishQueue.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the pages of import " + id + " to be published");
+            }
+        }
+
+        void stopWorkers() {
+            if (executor != null) executor.shutdownNow();
+        }
+
+        void rowImported(String key, Map<String, Object> result) {
+            if (listener == null) return;
+            synchronized (listener) {
+                listener.rowImported(key, result);
+            }
+        }
+
+        /**
+         * Marks the rows committed and writes the checkpoint if it moved
+         */
+        void committed(List<PendingRow> chunk) {
+            boolean moved = false;
+            for (PendingRow pending : chunk) {
+                moved |= watermark.committed(pending.number);
+            }
+            if (moved) writeCheckpoint();
+        }
+
+        private synchronized void writeCheckpoint() {
+            //row and hash read together, other workers may move the checkpoint meanwhile
+            CommitWatermark.Checkpoint checkpoint = watermark.getCheckpoint();
+            if (checkpoint.getRow() <= checkpointWritten) return;
+            PageImporterImpl.this.writeCheckpoint(id, checkpoint.getRow(), checkpoint.getHash());
+            checkpointWritten = checkpoint.getRow();
+        }
+    }
+
+    /**
+     * Creates the rows of its partitions with its own service resolver, size rows per commit.
+     * A partial chunk is committed when no row comes within WORKER_FLUSH_MILLIS.
+     */
+    private final class Worker implements Runnable {
+        final BlockingQueue<PendingRow> queue;
+        private final ImportRun run;
+
+        Worker(ImportRun run) {
+            this.run = run;
+            this.queue = new LinkedBlockingQueue<PendingRow>(run.size * 2);
+        }
+
+        @Override
+        public void run() {
+            ResourceResolver resolver = null;
+            try {
+                resolver = login(run.userId);
+                List<PendingRow> chunk = new ArrayList<PendingRow>();
+                PendingRow pending;
+                do {
+                    pending = chunk.isEmpty() ? queue.take() : queue.poll(WORKER_FLUSH_MILLIS, TimeUnit.MILLISECONDS);
+                    if (pending != null && pending != END) chunk.add(pending);
+                    if (!chunk.isEmpty() && (pending == null || pending == END || chunk.size() >= run.size)) {
+                        //see the pages committed by the other sessions
+                        resolver.refresh();
+                        commitChunk(resolver, chunk, run);
+                        chunk.clear();
+                    }
+                } while (pending != END);
+            } catch (LoginException e) {
+                logger.error("Import " + run.id + " could not log in the workers as " + run.userId, e);
+                run.report.setError("The workers could not log in: " + e.getMessage());
+                drain();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException e) {
+                logger.error("A worker of import " + run.id + " failed", e);
+                run.report.setError("A worker failed: " + e);
+                drain();
+            } finally {
+                if (resolver != null) resolver.close();
+            }
+        }
+
+        /**
+         * Takes the rows handed to a failed worker until the end, so the reading thread is not blocked
+         */
+        private void drain() {
+            try {
+                while (queue.take() != END) {
+                    //dropped, the import stops with an error
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private Map<String, Object> commitRow(ResourceResolver resolver, PageRow row) {
+        try {
+            Map<String, Object> result = createPage(resolver, row);
+            resolver.commit();
+            return result;
+        } catch (Exception e) {
+            resolver.revert();
+            logger.error(row.getPath() + " not created successfully: " + e);
+            return status(STATUS_FAILED);
+        }
+    }
+
+    /**
+     * Creates the page of the row without saving it
+     *
+     * @return the result of the row, Status is STATUS_EXISTING if the page exists already
+     */
+    private Map<String, Object> createPage(ResourceResolver resolver, PageRow row) throws Exception {
+        PageManager pageManager = resolver.adaptTo(PageManager.class);
+        if (pageManager.getPage(row.getPath()) != null) {
+            Map<String, Object> result = status(STATUS_EXISTING);
+            result.put("Location", row.getPath());
+            return result;
+        }
+
+        //Parse the path to get the pageNodeName and parentPath
+        int lastSlash = row.getPath().lastIndexOf("/");
+        String pageNodeName = row.getPath().substring(lastSlash + 1);
+        String parentPath = row.getPath().substring(0, Math.max(0, lastSlash));
+
+        //Set a default template if none is given
+        String template = row.getTemplate();
+        if (template == null || template.isEmpty()) {
+            template = DEFAULT_TEMPLATE;
+        }
+
+        Page p = pageManager.create(parentPath, pageNodeName, template, row.getTitle(), false);
+        //Add a tag to the page
+        if (row.getTag() != null && !row.getTag().isEmpty()) {
+            TagManager tm = resolver.adaptTo(TagManager.class);
+            Tag tag = tm.resolve(row.getTag());
+            if (tag == null) throw new IllegalArgumentException("Tag " + row.getTag() + " does not exist");
+            tm.setTags(p.getContentResource(), new Tag[]{tag}, false);
+        }
+
+        Map<String, Object> result = status(STATUS_CREATED);
+        result.put("Location", p.getPath());
+        result.put("Title", p.getTitle());
+        result.put("Template Used", p.getTemplate() != null ? p.getTemplate().getPath() : template);
+        Tag[] tags = p.getTags();
+        if (tags.length > 0) result.put("Tagged with", tags[0].getTitle());
+        result.put("Was Published", false);
+        return result;
+    }
+
+    /**
+     * Queues the page for activation if the calling session may activate it.
+     * The workers share the calling session, one at a time, refreshed to see the pages they created.
+     *
+     * @return PUBLISH_QUEUED, else PUBLISH_DENIED
+     */
+    private String queuePublish(ImportRun run, String path) {
+        try {
+            synchronized (run.caller) {
+                if (run.workers != null) run.caller.refresh();
+                replicator.checkPermission(run.caller.adaptTo(Session.class), ReplicationActionType.ACTIVATE, path);
+            }
+        } catch (ReplicationException e) {
+            logger.error("Not allowed to publish " + path, e);
+            return PUBLISH_DENIED;
+        }
+        run.report.publishQueued();
+        run.publishQueue.add(path);
+        return PUBLISH_QUEUED;
+    }
+
+    private static Map<String, Object> status(String status) {
+        Map<String, Object> result = new LinkedHashMap<String, Object>();
+        result.put("Status", status);
+        return result;
+    }
+
+    /**
+     * @param rows receives the committed rows of the checkpoint
+     * @return the hash of the checkpoint, null if there is none
+     */
+    private String readCheckpoint(String id, long[] rows) {
+        Session session = null;
+        try {
+            session = repo.loginService("training", null);
+            String path = checkpointPath(id);
+            if (!session.nodeExists(path)) return null;
+            Node checkpoint = session.getNode(path);
+            rows[0] = checkpoint.getProperty(CHECKPOINT_ROWS).getLong();
+            logger.info("Resuming import {} after row {}", id, rows[0]);
+            return checkpoint.getProperty(CHECKPOINT_HASH).getString();
+        } catch (RepositoryException e) {
+            logger.error("Could not read the checkpoint of import " + id + ", importing from the start", e);
+            return null;
+        } finally {
+            if (session != null) session.logout();
+        }
+    }
+
+    private void writeCheckpoint(String id, long rows, String hash) {
+        Session session = null;
+        try {
+            session = repo.loginService("training", null);
+            Node checkpoints = session.nodeExists(CHECKPOINTS) ? session.getNode(CHECKPOINTS)
+                    : JcrUtil.createPath(CHECKPOINTS, "sling:Folder", session);
+            String name = JcrUtil.escapeIllegalJcrChars(id);
+            Node checkpoint = checkpoints.hasNode(name) ? checkpoints.getNode(name) : checkpoints.addNode(name, "nt:unstructured");
+            checkpoint.setProperty(CHECKPOINT_ROWS, rows);
+            checkpoint.setProperty(CHECKPOINT_HASH, hash);
+            checkpoint.setProperty("jcr:lastModified", Calendar.getInstance());
+            session.save();
+        } catch (RepositoryException e) {
+            logger.error("Could not write the checkpoint of import " + id, e);
+        } finally {
+            if (session != null) session.logout();
+        }
+    }
+
+    private void removeCheckpoint(String id) {
+        Session session = null;
+        try {
+            session = repo.loginService("training", null);
+            String path = checkpointPath(id);
+            if (session.nodeExists(path)) {
+                session.getNode(path).remove();
+                session.save();
+            }
+        } catch (RepositoryException e) {
+            logger.error("Could not remove the checkpoint of import " + id, e);
+        } finally {
+            if (session != null) session.logout();
+        }
+    }
+
+    private static String checkpointPath(String id) {
+        return CHECKPOINTS + "/" + JcrUtil.escapeIllegalJcrChars(id);
+    }
+
+    private static MessageDigest sha1() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return the hash of what was digested so far, the digest can be updated further
+     */
+    private static String hashSoFar(MessageDigest digest) {
+        try {
+            return hex(((MessageDigest) digest.clone()).digest());
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] bytes(String line) {
+        try {
+            return (line + "\n").getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+
+    @Override
+    public String getStatisticsName() {
+        return "pageImporter";
+    }
+
+    @Override
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<String, Object>();
+        stats.put("chunkSize", chunkSize);
+        stats.put("maxChunkSize", maxChunkSize);
+        stats.put("parallelism", parallelism);
+        stats.put("maxParallelism", maxParallelism);
+        stats.put("running", running.get());
+        stats.put("imports", imports.get());
+        stats.put("resumedImports", resumedImports.get());
+        stats.put("rows", rows.get());
+        stats.put("created", created.get());
+        stats.put("failed", failed.get());
+        stats.put("failedCommits", failedCommits.get());
+        stats.put("conflicts", conflicts.get());
+        commitTime.putInto(stats, "commit.");
+        return stats;
+    }
+}
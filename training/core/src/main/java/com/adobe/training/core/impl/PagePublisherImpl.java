@@ -0,0 +1,286 @@
+package com.adobe.training.core.impl;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+
+import org.apache.felix.scr.annotations.Activate;
+import org.apache.felix.scr.annotations.Component;
+import org.apache.felix.scr.annotations.Deactivate;
+import org.apache.felix.scr.annotations.Property;
+import org.apache.felix.scr.annotations.Reference;
+import org.apache.felix.scr.annotations.Service;
+import org.apache.sling.commons.osgi.PropertiesUtil;
+import org.apache.sling.jcr.api.SlingRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.adobe.training.core.importer.PagePublisher;
+import com.adobe.training.core.importer.PublishListener;
+import com.adobe.training.core.importer.PublishQueue;
+import com.adobe.training.core.metrics.LatencyHistogram;
+import com.adobe.training.core.metrics.StatisticsProvider;
+import com.day.cq.replication.ReplicationActionType;
+import com.day.cq.replication.ReplicationException;
+import com.day.cq.replication.ReplicationOptions;
+import com.day.cq.replication.Replicator;
+
+/**
+ * PagePublisher activating batch.size pages per Replicator call, with the multi-path
+ * replicate(session, type, paths, options), on a pool of "threads" threads. Every batch logs in the service user.
+ *
+ * Pages queued with publish(path) share one queue, flushed every linger.millis, so the pages created
+ * by separate requests (Ex: the PageCreator) are activated together.
+ *
+ * A batch the Replicator fails is activated again one page at a time, so a bad page does not fail the others.
+ * Its pages are reported to the listener as batches of one page.
+ *
+ * Reports the batches, retried batches, activated and failed pages, the pages waiting and the batch replication time.
+ */
+@Component(metatype = true, label = "Training Page Publisher")
+@Service(value = {PagePublisher.class, StatisticsProvider.class})
+public class PagePublisherImpl implements PagePublisher, StatisticsProvider {
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    @Property(label = "Batch Size", description = "Pages activated per replication call", intValue = 100)
+    public static final String PROPERTY_BATCH_SIZE = "batch.size";
+
+    @Property(label = "Threads", description = "Batches replicated at the same time, the batches of a queue are replicated one at a time",
+            intValue = 2)
+    public static final String PROPERTY_THREADS = "threads";
+
+    @Property(label = "Linger", description = "Milliseconds a page queued with publish(path) waits for more pages before its batch starts",
+            intValue = 1000)
+    public static final String PROPERTY_LINGER_MILLIS = "linger.millis";
+
+    @Reference
+    private Replicator replicator;
+
+    @Reference
+    private SlingRepository repo;
+
+    private volatile int batchSize;
+    private ScheduledExecutorService executor;
+    private Queue shared;
+
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong failedBatches = new AtomicLong();
+    private final AtomicLong retriedBatches = new AtomicLong();
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong waiting = new AtomicLong();
+    private final LatencyHistogram batchTime = new LatencyHistogram();
+
+    @Activate
+    protected void activate(Map<String, Object> properties) {
+        batchSize = Math.max(1, PropertiesUtil.toInteger(properties.get(PROPERTY_BATCH_SIZE), 100));
+        int threads = Math.max(1, PropertiesUtil.toInteger(properties.get(PROPERTY_THREADS), 2));
+        long linger = Math.max(1, PropertiesUtil.toInteger(properties.get(PROPERTY_LINGER_MILLIS), 1000));
+        executor = new ScheduledThreadPoolExecutor(threads, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "training-page-publisher-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        shared = new Queue(null);
+        executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                shared.flush();
+            }
+        }, linger, linger, TimeUnit.MILLISECONDS);
+    }
+
+    @Deactivate
+    protected void deactivate() {
+        //the batches started so far are replicated, pages queued later are failed
+        shared.flush();
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+                logger.warn("Stopped with batches still replicating");
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void publish(String path) {
+        shared.add(path);
+    }
+
+    @Override
+    public PublishQueue open(PublishListener listener) {
+        return new Queue(listener);
+    }
+
+    /**
+     * Activates the batch with the service user
+     */
+    private void replicate(String[] paths, PublishListener listener) {
+        long start = System.nanoTime();
+        Session session = null;
+        try {
+            session = repo.loginService("training", null);
+            ReplicationException error = tryActivate(session, paths);
+            if (error == null || paths.length == 1) {
+                batchDone(paths, (System.nanoTime() - start) / 1000, error, listener);
+                return;
+            }
+            //only the pages failing on their own are lost
+            logger.warn("Could not activate a batch of {} pages starting with {}, activating them one by one: {}",
+                    new Object[]{paths.length, paths[0], error.toString()});
+            retriedBatches.incrementAndGet();
+            for (String path : paths) {
+                long pageStart = System.nanoTime();
+                String[] page = new String[]{path};
+                ReplicationException pageError = tryActivate(session, page);
+                batchDone(page, (System.nanoTime() - pageStart) / 1000, pageError, listener);
+            }
+        } catch (RepositoryException e) {
+            batchDone(paths, (System.nanoTime() - start) / 1000, e, listener);
+        } finally {
+            if (session != null) session.logout();
+        }
+    }
+
+    /**
+     * @return why the pages were not activated, null if they were
+     */
+    private ReplicationException tryActivate(Session session, String[] paths) {
+        ReplicationOptions options = new ReplicationOptions();
+        options.setSynchronous(false);
+        try {
+            replicator.replicate(session, ReplicationActionType.ACTIVATE, paths, options);
+            return null;
+        } catch (ReplicationException e) {
+            return e;
+        }
+    }
+
+    private void batchDone(String[] paths, long micros, Exception error, PublishListener listener) {
+        waiting.addAndGet(-paths.length);
+        batches.incrementAndGet();
+        batchTime.record(micros);
+        if (error == null) {
+            published.addAndGet(paths.length);
+        } else {
+            logger.error("Could not activate a batch of " + paths.length + " pages starting with " + paths[0], error);
+            failedBatches.incrementAndGet();
+            failed.addAndGet(paths.length);
+        }
+        if (listener != null) {
+            try {
+                listener.batchReplicated(paths, micros, error);
+            } catch (RuntimeException e) {
+                logger.error("The listener of a batch failed", e);
+            }
+        }
+    }
+
+    /**
+     * Pages collected into batches, the next batch is handed to the executor once the previous one is replicated
+     */
+    private final class Queue implements PublishQueue {
+        private final PublishListener listener;
+        private List<String> paths = new ArrayList<String>();
+        private final LinkedList<String[]> started = new LinkedList<String[]>();
+        private boolean replicating;
+
+        Queue(PublishListener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public synchronized void add(String path) {
+            paths.add(path);
+            waiting.incrementAndGet();
+            if (paths.size() >= batchSize) startBatch();
+        }
+
+        @Override
+        public synchronized void flush() {
+            if (!paths.isEmpty()) startBatch();
+        }
+
+        @Override
+        public synchronized void await() throws InterruptedException {
+            flush();
+            while (replicating || !started.isEmpty()) {
+                wait();
+            }
+        }
+
+        private void startBatch() {
+            started.add(paths.toArray(new String[paths.size()]));
+            paths = new ArrayList<String>();
+            replicateNext();
+        }
+
+        private void replicateNext() {
+            if (replicating || started.isEmpty()) return;
+            final String[] batch = started.removeFirst();
+            replicating = true;
+            try {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            replicate(batch, listener);
+                        } finally {
+                            batchReplicated();
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                replicating = false;
+                batchDone(batch, 0, new ReplicationException("The page publisher is stopped"), listener);
+                replicateNext();
+                notifyAll();
+            }
+        }
+
+        private synchronized void batchReplicated() {
+            replicating = false;
+            replicateNext();
+            notifyAll();
+        }
+    }
+
+    @Override
+    public String getStatisticsName() {
+        return "pagePublisher";
+    }
+
+    @Override
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<String, Object>();
+        stats.put("batchSize", batchSize);
+        stats.put("batches", batches.get());
+        stats.put("failedBatches", failedBatches.get());
+        stats.put("retriedBatches", retriedBatches.get());
+        stats.put("published", published.get());
+        stats.put("failed", failed.get());
+        stats.put("waiting", waiting.get());
+        batchTime.putInto(stats, "batch.");
+        return stats;
+    }
+}
@@ -0,0 +1,165 @@
+package com.adobe.training.core.impl;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.query.Query;
+import javax.jcr.query.QueryManager;
+import javax.jcr.query.qom.Column;
+import javax.jcr.query.qom.Constraint;
+import javax.jcr.query.qom.QueryObjectModel;
+import javax.jcr.query.qom.QueryObjectModelFactory;
+import javax.jcr.query.qom.Selector;
+
+import org.apache.felix.scr.annotations.Activate;
+import org.apache.felix.scr.annotations.Component;
+import org.apache.felix.scr.annotations.Modified;
+import org.apache.felix.scr.annotations.Property;
+import org.apache.felix.scr.annotations.Service;
+import org.apache.sling.commons.osgi.PropertiesUtil;
+
+import com.adobe.training.core.metrics.LatencyHistogram;
+import com.adobe.training.core.metrics.StatisticsProvider;
+import com.adobe.training.core.search.SearchQueries;
+
+/**
+ * SearchQueries keeping the statements of the cache.size most recently used language and root combinations.
+ *
+ * The first jqom query of a root is built as query object model, later ones are created from the
+ * JCR-SQL2 statement of that model, so the QOM tree is not built again for every request.
+ *
+ * The queries select the columns of the search results, so the results can be read as rows without loading the nodes.
+ *
+ * Reports the statement cache hits and misses and the prepare and execution time per language.
+ */
+@Component(metatype = true, label = "Training Search Queries")
+@Service(value = {SearchQueries.class, StatisticsProvider.class})
+public class SearchQueriesImpl implements SearchQueries, StatisticsProvider {
+
+    @Property(label = "Cache Size", description = "Maximum number of cached query statements", intValue = 100)
+    public static final String PROPERTY_CACHE_SIZE = "cache.size";
+
+    private static final String SELECTOR_NAME = "node";
+    private static final String NODE_TYPE = "nt:unstructured";
+    private static final String[] COLUMNS = {COLUMN_PATH, COLUMN_TITLE, COLUMN_LAST_MODIFIED, COLUMN_EXCERPT};
+
+    private volatile int maxSize;
+    //language and root -> JCR-SQL2 statement, access ordered
+    private final Map<String, String> statements = new LinkedHashMap<String, String>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > maxSize;
+        }
+    };
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final LatencyHistogram sqlPrepare = new LatencyHistogram();
+    private final LatencyHistogram sqlExecution = new LatencyHistogram();
+    private final LatencyHistogram jqomPrepare = new LatencyHistogram();
+    private final LatencyHistogram jqomExecution = new LatencyHistogram();
+
+    @Activate
+    protected void activate(Map<String, Object> properties) {
+        configure(properties);
+    }
+
+    @Modified
+    protected void modified(Map<String, Object> properties) {
+        configure(properties);
+    }
+
+    protected void configure(Map<String, Object> properties) {
+        maxSize = Math.max(1, PropertiesUtil.toInteger(properties.get(PROPERTY_CACHE_SIZE), 100));
+        synchronized (statements) {
+            statements.clear();
+        }
+    }
+
+    @Override
+    public Query prepare(Session session, String language, String root) throws RepositoryException {
+        long start = System.nanoTime();
+        String key = language + ":" + root;
+        String statement;
+        synchronized (statements) {
+            statement = statements.get(key);
+        }
+        QueryManager queryManager = session.getWorkspace().getQueryManager();
+        Query query;
+        if (statement != null) {
+            hits.incrementAndGet();
+            query = queryManager.createQuery(statement, Query.JCR_SQL2);
+        } else {
+            misses.incrementAndGet();
+            if (LANGUAGE_JQOM.equals(language)) {
+                QueryObjectModel model = createModel(queryManager.getQOMFactory(), root);
+                statement = model.getStatement();
+                query = model;
+            } else {
+                StringBuilder columns = new StringBuilder();
+                for (String column : COLUMNS) {
+                    if (columns.length() > 0) columns.append(", ");
+                    columns.append('[').append(column).append(']');
+                }
+                statement = "SELECT " + columns + " FROM [" + NODE_TYPE + "] AS " + SELECTOR_NAME
+                        + " WHERE ISDESCENDANTNODE(" + SELECTOR_NAME + ", [" + root + "])"
+                        + " AND CONTAINS(" + SELECTOR_NAME + ".*, $" + TERM + ")";
+                query = queryManager.createQuery(statement, Query.JCR_SQL2);
+            }
+            synchronized (statements) {
+                statements.put(key, statement);
+            }
+        }
+        histogram(language, false).recordSince(start);
+        return query;
+    }
+
+    /**
+     * All nt:unstructured nodes below the root containing the term
+     */
+    private static QueryObjectModel createModel(QueryObjectModelFactory qf, String root) throws RepositoryException {
+        Selector selector = qf.selector(NODE_TYPE, SELECTOR_NAME);
+        Constraint constraint = qf.fullTextSearch(SELECTOR_NAME, null, qf.bindVariable(TERM));
+        constraint = qf.and(constraint, qf.descendantNode(SELECTOR_NAME, root));
+        Column[] columns = new Column[COLUMNS.length];
+        for (int i = 0; i < COLUMNS.length; i++) {
+            columns[i] = qf.column(SELECTOR_NAME, COLUMNS[i], COLUMNS[i]);
+        }
+        return qf.createQuery(selector, constraint, null, columns);
+    }
+
+    @Override
+    public void recordExecution(String language, long startNanos) {
+        histogram(language, true).recordSince(startNanos);
+    }
+
+    private LatencyHistogram histogram(String language, boolean execution) {
+        if (LANGUAGE_JQOM.equals(language)) return execution ? jqomExecution : jqomPrepare;
+        return execution ? sqlExecution : sqlPrepare;
+    }
+
+    @Override
+    public String getStatisticsName() {
+        return "searchQueries";
+    }
+
+    @Override
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<String, Object>();
+        synchronized (statements) {
+            stats.put("cachedStatements", statements.size());
+        }
+        stats.put("hits", hits.get());
+        stats.put("misses", misses.get());
+        sqlPrepare.putInto(stats, "sql.prepare.");
+        sqlExecution.putInto(stats, "sql.execution.");
+        jqomPrepare.putInto(stats, "jqom.prepare.");
+        jqomExecution.putInto(stats, "jqom.execution.");
+        return stats;
+    }
+}
@@ -0,0 +1,216 @@
+package com.adobe.training.core.impl;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.felix.scr.annotations.Activate;
+import org.apache.felix.scr.annotations.Component;
+import org.apache.felix.scr.annotations.Modified;
+import org.apache.felix.scr.annotations.Properties;
+import org.apache.felix.scr.annotations.Property;
+import org.apache.felix.scr.annotations.Service;
+import org.apache.sling.api.SlingConstants;
+import org.apache.sling.commons.osgi.PropertiesUtil;
+import org.osgi.service.event.Event;
+import org.osgi.service.event.EventConstants;
+import org.osgi.service.event.EventHandler;
+
+import com.adobe.training.core.metrics.LatencyHistogram;
+import com.adobe.training.core.metrics.StatisticsProvider;
+import com.adobe.training.core.search.SearchResult;
+import com.adobe.training.core.search.SearchResultCache;
+
+/**
+ * SearchResultCache holding the cache.size most recently used result pages for at most ttl seconds.
+ *
+ * A resource event below a query root (or above it, Ex: removing the site) drops the pages of that root
+ * and changes the revision of that root, pages read while the revision of their root changed are not cached.
+ * Revisions are kept for at most cache.size roots, a page whose root revision was dropped is not cached.
+ * Pages are cached per user, as users may see different results.
+ *
+ * Reports hit ratio, evictions, expirations, invalidations, the estimated heap used by the cached pages
+ * and the request latency of cached and uncached requests.
+ */
+@Component(metatype = true, label = "Training Search Result Cache")
+@Service(value = {SearchResultCache.class, EventHandler.class, StatisticsProvider.class})
+@Properties({
+    @Property(name = EventConstants.EVENT_TOPIC, value = {SlingConstants.TOPIC_RESOURCE_ADDED,
+            SlingConstants.TOPIC_RESOURCE_CHANGED, SlingConstants.TOPIC_RESOURCE_REMOVED}, propertyPrivate = true),
+    @Property(name = EventConstants.EVENT_FILTER, value = "(path=/content/*)", propertyPrivate = true)
+})
+public class SearchResultCacheImpl implements SearchResultCache, EventHandler, StatisticsProvider {
+
+    @Property(label = "Cache Size", description = "Maximum number of cached result pages", intValue = 1000)
+    public static final String PROPERTY_CACHE_SIZE = "cache.size";
+    @Property(label = "Time to Live", description = "Seconds a result page is cached", intValue = 300)
+    public static final String PROPERTY_TTL = "ttl";
+
+    private volatile int maxSize;
+    private volatile long ttlMillis;
+    //access ordered, the eldest entry is the least recently used one
+    private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            if (size() <= maxSize) return false;
+            evictions.incrementAndGet();
+            bytes.addAndGet(-eldest.getValue().bytes);
+            return true;
+        }
+    };
+
+    //root -> revision, revisions are unique, so a root whose revision was dropped does not get an old one back
+    private final Map<String, Long> revisions = new HashMap<String, Long>();
+    private long lastRevision;
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+    private final LatencyHistogram cachedLatency = new LatencyHistogram();
+    private final LatencyHistogram uncachedLatency = new LatencyHistogram();
+
+    @Activate
+    protected void activate(Map<String, Object> properties) {
+        configure(properties);
+    }
+
+    @Modified
+    protected void modified(Map<String, Object> properties) {
+        configure(properties);
+    }
+
+    protected void configure(Map<String, Object> properties) {
+        maxSize = Math.max(1, PropertiesUtil.toInteger(properties.get(PROPERTY_CACHE_SIZE), 1000));
+        ttlMillis = Math.max(0, PropertiesUtil.toInteger(properties.get(PROPERTY_TTL), 300)) * 1000L;
+        synchronized (entries) {
+            entries.clear();
+            revisions.clear();
+            bytes.set(0);
+        }
+    }
+
+    @Override
+    public SearchResult get(String user, String root, String language, String term, long offset, int limit) {
+        String key = key(user, root, language, term, offset, limit);
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                if (System.currentTimeMillis() - entry.created < ttlMillis) {
+                    hits.incrementAndGet();
+                    return entry.result;
+                }
+                entries.remove(key);
+                bytes.addAndGet(-entry.bytes);
+                expirations.incrementAndGet();
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    @Override
+    public void put(String user, String root, String language, String term, long offset, int limit,
+            SearchResult result, long readRevision) {
+        String key = key(user, root, language, term, offset, limit);
+        Entry entry = new Entry(root, result, key.length());
+        synchronized (entries) {
+            Long revision = revisions.get(root);
+            if (revision == null || revision != readRevision) return;
+            Entry replaced = entries.put(key, entry);
+            bytes.addAndGet(entry.bytes - (replaced != null ? replaced.bytes : 0));
+        }
+    }
+
+    @Override
+    public long getRevision(String root) {
+        synchronized (entries) {
+            Long revision = revisions.get(root);
+            if (revision == null) {
+                if (revisions.size() >= maxSize) revisions.clear();
+                revision = ++lastRevision;
+                revisions.put(root, revision);
+            }
+            return revision;
+        }
+    }
+
+    private static String key(String user, String root, String language, String term, long offset, int limit) {
+        return new StringBuilder().append(user).append('\n').append(root).append('\n').append(language)
+                .append('\n').append(offset).append('\n').append(limit).append('\n').append(term).toString();
+    }
+
+    @Override
+    public void handleEvent(Event event) {
+        String path = (String) event.getProperty(SlingConstants.PROPERTY_PATH);
+        if (path == null) return;
+        synchronized (entries) {
+            for (Map.Entry<String, Long> root : revisions.entrySet()) {
+                if (isSameOrBelow(path, root.getKey()) || isSameOrBelow(root.getKey(), path)) {
+                    root.setValue(++lastRevision);
+                }
+            }
+            for (Iterator<Entry> values = entries.values().iterator(); values.hasNext();) {
+                Entry entry = values.next();
+                if (isSameOrBelow(path, entry.root) || isSameOrBelow(entry.root, path)) {
+                    values.remove();
+                    bytes.addAndGet(-entry.bytes);
+                    invalidations.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    private static boolean isSameOrBelow(String path, String root) {
+        return path.startsWith(root) && (path.length() == root.length() || path.charAt(root.length()) == '/');
+    }
+
+    @Override
+    public void recordRequest(boolean cached, long startNanos) {
+        (cached ? cachedLatency : uncachedLatency).recordSince(startNanos);
+    }
+
+    @Override
+    public String getStatisticsName() {
+        return "searchResultCache";
+    }
+
+    @Override
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<String, Object>();
+        long hitCount = hits.get();
+        long lookups = hitCount + misses.get();
+        synchronized (entries) {
+            stats.put("size", entries.size());
+        }
+        stats.put("maxSize", maxSize);
+        stats.put("estimatedBytes", bytes.get());
+        stats.put("hits", hitCount);
+        stats.put("misses", misses.get());
+        stats.put("hitRatio", lookups > 0 ? (double) hitCount / lookups : 0.0);
+        stats.put("evictions", evictions.get());
+        stats.put("expirations", expirations.get());
+        stats.put("invalidations", invalidations.get());
+        cachedLatency.putInto(stats, "cached.");
+        uncachedLatency.putInto(stats, "uncached.");
+        return stats;
+    }
+
+    private static class Entry {
+        private final String root;
+        private final SearchResult result;
+        private final long created = System.currentTimeMillis();
+        private final long bytes;
+
+        Entry(String root, SearchResult result, int keyLength) {
+            this.root = root;
+            this.result = result;
+            this.bytes = result.estimateBytes() + 40 + 2L * keyLength + 48;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.adobe.training.core.impl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.felix.scr.annotations.Activate;
+import org.apache.felix.scr.annotations.Component;
+import org.apache.felix.scr.annotations.Modified;
+import org.apache.felix.scr.annotations.Property;
+import org.apache.felix.scr.annotations.Service;
+import org.apache.sling.commons.osgi.PropertiesUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.adobe.training.core.metrics.StatisticsProvider;
+import com.adobe.training.core.stock.QuoteFetcher;
+import com.adobe.training.core.stock.QuoteSimulator;
+
+/**
+ * In-process stand-in of the quotes.csv source, answering simulator: URLs with QuoteSimulator quotes.
+ * To import simulated quotes, set the source URL of the Training Stock Data Importer to
+ *
+ * simulator:quotes.csv?s=
+ *
+ * The same quotes are served over HTTP at /bin/trainingproject/quotefeed.csv?s=ADBE,MSFT
+ */
+@Component(metatype = true, label = "Training Simulated Quote Source")
+@Service(value = {QuoteFetcher.class, SimulatedQuoteSource.class, StatisticsProvider.class})
+@Property(name = QuoteFetcher.PROPERTY_SCHEMES, value = SimulatedQuoteSource.SCHEME, propertyPrivate = true)
+public class SimulatedQuoteSource implements QuoteFetcher, StatisticsProvider {
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    public static final String SCHEME = "simulator";
+    public static final String SOURCE_URL = SCHEME + ":quotes.csv?s=";
+
+    @Property(label = "Symbols", description = "Number of simulated symbols (SIM00000, SIM00001, ..) offered by getSymbols", intValue = 10000)
+    public static final String PROPERTY_SYMBOL_COUNT = "symbol.count";
+    @Property(label = "Update Interval", description = "Milliseconds between two price changes of a symbol", intValue = 1000)
+    public static final String PROPERTY_UPDATE_INTERVAL = "update.interval";
+    @Property(label = "Seed", description = "Seed of the random walks", longValue = 42)
+    public static final String PROPERTY_SEED = "seed";
+
+    private volatile QuoteSimulator simulator;
+    private volatile int symbolCount;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong lines = new AtomicLong();
+
+    @Activate
+    protected void activate(Map<String, Object> properties) {
+        configure(properties);
+    }
+
+    @Modified
+    protected void modified(Map<String, Object> properties) {
+        configure(properties);
+    }
+
+    protected void configure(Map<String, Object> properties) {
+        symbolCount = Math.max(1, PropertiesUtil.toInteger(properties.get(PROPERTY_SYMBOL_COUNT), 10000));
+        long updateInterval = PropertiesUtil.toLong(properties.get(PROPERTY_UPDATE_INTERVAL), 1000);
+        simulator = new QuoteSimulator(PropertiesUtil.toLong(properties.get(PROPERTY_SEED), 42), updateInterval);
+        logger.info("Simulating {} symbols, updated every {} ms", symbolCount, updateInterval);
+    }
+
+    /**
+     * @return the first count simulated symbols, at most symbol.count
+     */
+    public List<String> getSymbols(int count) {
+        int size = Math.min(count, symbolCount);
+        List<String> symbols = new ArrayList<String>(size);
+        for (int i = 0; i < size; i++) {
+            symbols.add(QuoteSimulator.symbolName(i));
+        }
+        return symbols;
+    }
+
+    /**
+     * Moves every requested symbol one step, so the next quotes differ from the last ones
+     */
+    public void stepAll() {
+        simulator.stepAll();
+    }
+
+    /**
+     * Appends the feed lines of the comma separated symbols
+     */
+    public void appendCsv(String symbols, StringBuilder out) {
+        long now = System.currentTimeMillis();
+        int count = 0;
+        int start = 0;
+        while (start <= symbols.length()) {
+            int end = symbols.indexOf(',', start);
+            if (end < 0) end = symbols.length();
+            String symbol = symbols.substring(start, end).trim();
+            if (!symbol.isEmpty()) {
+                simulator.appendCsv(symbol, now, out);
+                count++;
+            }
+            start = end + 1;
+        }
+        requests.incrementAndGet();
+        lines.addAndGet(count);
+    }
+
+    @Override
+    public CharSequence fetch(String url) throws IOException {
+        int symbols = url.indexOf("s=");
+        if (!url.startsWith(SCHEME + ":") || symbols < 0) {
+            throw new IOException("Expecting " + SOURCE_URL + "<symbols>, got " + url);
+        }
+        StringBuilder csv = new StringBuilder();
+        appendCsv(url.substring(symbols + 2), csv);
+        return csv;
+    }
+
+    @Override
+    public List<CharSequence> fetchAll(List<String> urls) {
+        List<CharSequence> results = new ArrayList<CharSequence>(urls.size());
+        for (String url : urls) {
+            try {
+                results.add(fetch(url));
+            } catch (IOException e) {
+                logger.warn("Could not simulate {}: {}", url, e.getMessage());
+                results.add(null);
+            }
+        }
+        return results;
+    }
+
+    @Override
+    public String getStatisticsName() {
+        return "simulatedQuoteSource";
+    }
+
+    @Override
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<String, Object>();
+        stats.put("symbols", simulator.getSymbolCount());
+        stats.put("requests", requests.get());
+        stats.put("lines", lines.get());
+        return stats;
+    }
+}
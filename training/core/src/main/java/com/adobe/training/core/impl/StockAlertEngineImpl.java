@@ -0,0 +1,471 @@
+package com.adobe.training.core.impl;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.Value;
+import javax.jcr.ValueFactory;
+
+import org.apache.felix.scr.annotations.Activate;
+import org.apache.felix.scr.annotations.Component;
+import org.apache.felix.scr.annotations.Deactivate;
+import org.apache.felix.scr.annotations.Properties;
+import org.apache.felix.scr.annotations.Property;
+import org.apache.felix.scr.annotations.PropertyUnbounded;
+import org.apache.felix.scr.annotations.Reference;
+import org.apache.felix.scr.annotations.Service;
+import org.apache.sling.api.SlingConstants;
+import org.apache.sling.commons.osgi.PropertiesUtil;
+import org.apache.sling.jcr.api.SlingRepository;
+import org.osgi.service.event.Event;
+import org.osgi.service.event.EventAdmin;
+import org.osgi.service.event.EventConstants;
+import org.osgi.service.event.EventHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.adobe.training.core.alerts.AlertRule;
+import com.adobe.training.core.alerts.AlertRuleIndex;
+import com.adobe.training.core.alerts.AlertRuleReader;
+import com.adobe.training.core.alerts.AlertRuleVisitor;
+import com.adobe.training.core.alerts.AlertStateTable;
+import com.adobe.training.core.alerts.StockAlertEngine;
+import com.adobe.training.core.metrics.LatencyHistogram;
+import com.adobe.training.core.metrics.StatisticsProvider;
+import com.adobe.training.core.stock.Quote;
+import com.day.cq.commons.jcr.JcrUtil;
+
+/**
+ * StockAlertEngine evaluating the alert rules of all users without a workflow: quotes are queued (at most
+ * queue.size) and evaluated by worker.count threads against an AlertRuleIndex. The quotes of a symbol always
+ * go to the same thread, so they are evaluated in the order they were submitted. Each quote is evaluated
+ * together with the quote submitted before it for the same symbol, so a rule fires when the quote crosses
+ * its threshold and not again while the condition holds. The first quote of a symbol only sets the baseline.
+ * A quote identical to the last one submitted for its symbol is not evaluated again, and a quote not newer than
+ * the previous quote of its symbol is ignored, so the importer and the LastTradeAlertListener can both feed the engine.
+ *
+ * The rules are the configured price thresholds (owner "config") and the rule nodes below
+ * /etc/trainingproject/stockalerts, see AlertRuleReader. Changes of rule nodes rebuild the index
+ * in the background, at most once per reload.delay.
+ *
+ * A crossing is only posted if the rule is armed and out of its cooldown, see AlertStateTable: a price
+ * hovering around a threshold alerts once, not on every crossing. The state of the rules is written to
+ * /var/trainingproject/stockalerts/state every snapshot.interval seconds and restored on activation.
+ * The AlertDigestDispatcher turns the posted alerts into digests.
+ *
+ * Reports the queue depth, the evaluation time, the latency from submit to the posted alerts
+ * and the emitted and suppressed alerts.
+ */
+@Component(metatype = true, label = "Training Stock Alert Engine")
+@Service(value = {StockAlertEngine.class, EventHandler.class, StatisticsProvider.class})
+@Properties({
+    @Property(name = EventConstants.EVENT_TOPIC, value = {SlingConstants.TOPIC_RESOURCE_ADDED,
+            SlingConstants.TOPIC_RESOURCE_CHANGED, SlingConstants.TOPIC_RESOURCE_REMOVED}, propertyPrivate = true),
+    @Property(name = EventConstants.EVENT_FILTER, value = "(path=" + AlertRuleReader.ROOT + "*)", propertyPrivate = true)
+})
+public class StockAlertEngineImpl implements StockAlertEngine, EventHandler, StatisticsProvider {
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    @Property(label = "Rules", description = "Price thresholds, one per entry, Ex: ADBE=105", unbounded = PropertyUnbounded.ARRAY)
+    public static final String PROPERTY_RULES = "rules";
+    @Property(label = "Workers", description = "Number of threads evaluating quotes", intValue = 2)
+    public static final String PROPERTY_WORKER_COUNT = "worker.count";
+    @Property(label = "Queue Size", description = "Maximum number of quotes waiting for evaluation, more are dropped", intValue = 10000)
+    public static final String PROPERTY_QUEUE_SIZE = "queue.size";
+    @Property(label = "Reload Delay", description = "Milliseconds to wait after a rule node changed before the rules are reloaded", longValue = 1000)
+    public static final String PROPERTY_RELOAD_DELAY = "reload.delay";
+    @Property(label = "Hysteresis", description = "Percent of the threshold a metric has to move back before its rule fires again", doubleValue = 0.5)
+    public static final String PROPERTY_HYSTERESIS = "hysteresis.percent";
+    @Property(label = "Cooldown", description = "Minimum seconds between two alerts of a rule", longValue = 300)
+    public static final String PROPERTY_COOLDOWN = "cooldown";
+    @Property(label = "Snapshot Interval", description = "Seconds between two snapshots of the alert state, 0 disables snapshots", longValue = 60)
+    public static final String PROPERTY_SNAPSHOT_INTERVAL = "snapshot.interval";
+
+    static final String STATE_PATH = "/var/trainingproject/stockalerts/state";
+    private static final String STATE_RULES = "rules";
+    private static final String STATE_LAST_EMITTED = "lastEmitted";
+    private static final String STATE_ARMED = "armed";
+
+    private static final String CONFIG_OWNER = "config";
+
+    @Reference
+    private EventAdmin eventAdmin;
+
+    @Reference
+    private SlingRepository repo;
+
+    private volatile AlertRuleIndex index = AlertRuleIndex.build(new ArrayList<AlertRule>());
+    private List<AlertRule> configRules;
+    private AlertStateTable state;
+    private long reloadDelay;
+    private long snapshotInterval;
+    //one single threaded lane per worker, the quotes of a symbol are evaluated in order by one lane
+    private ThreadPoolExecutor[] lanes;
+    private ScheduledExecutorService scheduler;
+    private final AtomicBoolean reloadPending = new AtomicBoolean();
+
+    //fingerprint of the last quote queued per symbol
+    private final ConcurrentMap<String, Long> lastSubmitted = new ConcurrentHashMap<String, Long>();
+    //last quote queued per symbol, the baseline of the next one
+    private final ConcurrentMap<String, Quote> previous = new ConcurrentHashMap<String, Quote>();
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong duplicates = new AtomicLong();
+    private final AtomicLong outOfOrder = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong evaluated = new AtomicLong();
+    private final AtomicLong emitted = new AtomicLong();
+    private final AtomicLong suppressed = new AtomicLong();
+    private final AtomicLong reloads = new AtomicLong();
+    private final AtomicInteger maxQueueDepth = new AtomicInteger();
+    private volatile long lastReloadMillis;
+    private final LatencyHistogram evaluationTime = new LatencyHistogram();
+    private final LatencyHistogram alertLatency = new LatencyHistogram();
+
+    @Activate
+    protected void activate(Map<String, Object> properties) {
+        configRules = new ArrayList<AlertRule>();
+        for (String rule : PropertiesUtil.toStringArray(properties.get(PROPERTY_RULES), new String[0])) {
+            AlertRule parsed = parseConfigRule(rule);
+            if (parsed != null) configRules.add(parsed);
+            else logger.warn("Ignoring invalid alert rule {}", rule);
+        }
+        reloadDelay = Math.max(0, PropertiesUtil.toLong(properties.get(PROPERTY_RELOAD_DELAY), 1000));
+        state = new AlertStateTable(Math.max(0, PropertiesUtil.toDouble(properties.get(PROPERTY_HYSTERESIS), 0.5)),
+                Math.max(0, PropertiesUtil.toLong(properties.get(PROPERTY_COOLDOWN), 300)) * 1000);
+        snapshotInterval = Math.max(0, PropertiesUtil.toLong(properties.get(PROPERTY_SNAPSHOT_INTERVAL), 60));
+        scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "training-stock-alert-rules");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        reload();
+        restoreState();
+        if (snapshotInterval > 0) {
+            scheduler.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    saveState();
+                }
+            }, snapshotInterval, snapshotInterval, TimeUnit.SECONDS);
+        }
+
+        int workers = Math.max(1, PropertiesUtil.toInteger(properties.get(PROPERTY_WORKER_COUNT), 2));
+        int queueSize = Math.max(1, PropertiesUtil.toInteger(properties.get(PROPERTY_QUEUE_SIZE), 10000));
+        lanes = new ThreadPoolExecutor[workers];
+        for (int i = 0; i < workers; i++) {
+            final String name = "training-stock-alerts-" + (i + 1);
+            lanes[i] = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<Runnable>(Math.max(1, queueSize / workers)), new ThreadFactory() {
+                        @Override
+                        public Thread newThread(Runnable runnable) {
+                            Thread thread = new Thread(runnable, name);
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+        }
+        logger.info("Stock alert engine: {} rules for {} symbols, {} workers",
+                new Object[]{index.getRuleCount(), index.getSymbolCount(), workers});
+    }
+
+    @Deactivate
+    protected void deactivate() {
+        scheduler.shutdownNow();
+        for (ThreadPoolExecutor lane : lanes) {
+            lane.shutdown();
+        }
+        try {
+            for (ThreadPoolExecutor lane : lanes) {
+                lane.awaitTermination(10, TimeUnit.SECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (snapshotInterval > 0) saveState();
+        lastSubmitted.clear();
+        previous.clear();
+    }
+
+    /**
+     * Reads "SYMBOL=price", a price above rule
+     */
+    private static AlertRule parseConfigRule(String rule) {
+        int separator = rule.indexOf('=');
+        if (separator <= 0) return null;
+        String symbol = rule.substring(0, separator).trim();
+        try {
+            double threshold = Double.parseDouble(rule.substring(separator + 1).trim());
+            return new AlertRule(CONFIG_OWNER + ":" + rule.trim(), CONFIG_OWNER, symbol,
+                    AlertRule.Metric.PRICE, AlertRule.Direction.ABOVE, threshold);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * A rule node changed, reloads the rules after the reload delay unless a reload is pending already
+     */
+    @Override
+    public void handleEvent(Event event) {
+        if (!reloadPending.compareAndSet(false, true)) return;
+        try {
+            scheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    reloadPending.set(false);
+                    reload();
+                }
+            }, reloadDelay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            //deactivated
+            reloadPending.set(false);
+        }
+    }
+
+    /**
+     * Builds a new index from the configured rules and the rule nodes, and replaces the current one.
+     * If the rule nodes cannot be read, the current index is kept.
+     */
+    void reload() {
+        long start = System.currentTimeMillis();
+        List<AlertRule> rules = new ArrayList<AlertRule>(configRules);
+        List<String> invalid = new ArrayList<String>();
+        Session session = null;
+        try {
+            session = repo.loginService("training", null);
+            if (session.nodeExists(AlertRuleReader.ROOT)) {
+                AlertRuleReader.read(session.getNode(AlertRuleReader.ROOT), rules, invalid);
+            }
+        } catch (RepositoryException e) {
+            logger.error("Could not read the alert rules below " + AlertRuleReader.ROOT, e);
+            return;
+        } finally {
+            if (session != null) session.logout();
+        }
+        for (String path : invalid) {
+            logger.warn("Ignoring invalid alert rule {}", path);
+        }
+        //the state table knows a rule before the index can fire it
+        state.setRules(rules);
+        index = AlertRuleIndex.build(rules);
+        reloads.incrementAndGet();
+        lastReloadMillis = System.currentTimeMillis() - start;
+        logger.info("Loaded {} alert rules for {} symbols", index.getRuleCount(), index.getSymbolCount());
+    }
+
+    /**
+     * Writes the state of the rules that were emitted or are disarmed to the repository
+     */
+    void saveState() {
+        List<String> ids = new ArrayList<String>();
+        List<Long> lastEmitted = new ArrayList<Long>();
+        List<Boolean> armed = new ArrayList<Boolean>();
+        state.export(ids, lastEmitted, armed);
+        Session session = null;
+        try {
+            session = repo.loginService("training", null);
+            Node stateNode = JcrUtil.createPath(STATE_PATH, "sling:Folder", "nt:unstructured", session, false);
+            ValueFactory values = session.getValueFactory();
+            Value[] lastEmittedValues = new Value[ids.size()];
+            Value[] armedValues = new Value[ids.size()];
+            for (int i = 0; i < ids.size(); i++) {
+                lastEmittedValues[i] = values.createValue(lastEmitted.get(i));
+                armedValues[i] = values.createValue(armed.get(i));
+            }
+            stateNode.setProperty(STATE_RULES, ids.toArray(new String[ids.size()]));
+            stateNode.setProperty(STATE_LAST_EMITTED, lastEmittedValues);
+            stateNode.setProperty(STATE_ARMED, armedValues);
+            session.save();
+        } catch (RepositoryException e) {
+            logger.error("Could not save the alert state to " + STATE_PATH, e);
+        } finally {
+            if (session != null) session.logout();
+        }
+    }
+
+    private void restoreState() {
+        Session session = null;
+        try {
+            session = repo.loginService("training", null);
+            if (!session.nodeExists(STATE_PATH)) return;
+            Node stateNode = session.getNode(STATE_PATH);
+            if (!stateNode.hasProperty(STATE_RULES)) return;
+            Value[] ids = stateNode.getProperty(STATE_RULES).getValues();
+            Value[] lastEmittedValues = stateNode.getProperty(STATE_LAST_EMITTED).getValues();
+            Value[] armedValues = stateNode.getProperty(STATE_ARMED).getValues();
+            int count = Math.min(ids.length, Math.min(lastEmittedValues.length, armedValues.length));
+            String[] ruleIds = new String[count];
+            long[] lastEmitted = new long[count];
+            boolean[] armed = new boolean[count];
+            for (int i = 0; i < count; i++) {
+                ruleIds[i] = ids[i].getString();
+                lastEmitted[i] = lastEmittedValues[i].getLong();
+                armed[i] = armedValues[i].getBoolean();
+            }
+            state.restore(ruleIds, lastEmitted, armed);
+            logger.info("Restored the alert state of {} rules", count);
+        } catch (RepositoryException e) {
+            logger.error("Could not restore the alert state from " + STATE_PATH, e);
+        } finally {
+            if (session != null) session.logout();
+        }
+    }
+
+    @Override
+    public boolean submit(Quote quote) {
+        Long fingerprint = quote.fingerprint();
+        if (fingerprint.equals(lastSubmitted.put(quote.getSymbol(), fingerprint))) {
+            duplicates.incrementAndGet();
+            return true;
+        }
+        Quote copy = new Quote();
+        copy.copyFrom(quote);
+        Quote before;
+        do {
+            before = previous.get(quote.getSymbol());
+            if (before != null && quote.getTimestamp() <= before.getTimestamp()) {
+                //delivered late by the other source
+                outOfOrder.incrementAndGet();
+                return true;
+            }
+        } while (before == null ? previous.putIfAbsent(quote.getSymbol(), copy) != null
+                : !previous.replace(quote.getSymbol(), before, copy));
+        if (before == null) {
+            //nothing to cross yet
+            return true;
+        }
+        try {
+            lane(quote.getSymbol()).execute(new Evaluation(before, copy, System.nanoTime()));
+        } catch (RejectedExecutionException e) {
+            //forget the quote, so it is evaluated if it is submitted again
+            lastSubmitted.remove(quote.getSymbol(), fingerprint);
+            previous.replace(quote.getSymbol(), copy, before);
+            dropped.incrementAndGet();
+            return false;
+        }
+        submitted.incrementAndGet();
+        int depth = getQueueDepth();
+        int max = maxQueueDepth.get();
+        while (depth > max && !maxQueueDepth.compareAndSet(max, depth)) {
+            max = maxQueueDepth.get();
+        }
+        return true;
+    }
+
+    private ThreadPoolExecutor lane(String symbol) {
+        return lanes[(symbol.hashCode() & Integer.MAX_VALUE) % lanes.length];
+    }
+
+    private int getQueueDepth() {
+        int depth = 0;
+        for (ThreadPoolExecutor lane : lanes) {
+            depth += lane.getQueue().size();
+        }
+        return depth;
+    }
+
+    private void evaluate(Quote before, final Quote quote, long submittedNanos) {
+        long start = System.nanoTime();
+        final long now = System.currentTimeMillis();
+        state.rearm(before, quote);
+        index.evaluate(before, quote, new AlertRuleVisitor() {
+            @Override
+            public void fired(AlertRule rule, double value) {
+                if (!state.fire(rule, now)) {
+                    suppressed.incrementAndGet();
+                    return;
+                }
+                Map<String, Object> properties = new HashMap<String, Object>();
+                properties.put(PROPERTY_SYMBOL, quote.getSymbol());
+                properties.put(PROPERTY_PRICE, quote.getLastTrade());
+                properties.put(PROPERTY_THRESHOLD, rule.getThreshold());
+                properties.put(PROPERTY_TIMESTAMP, quote.getTimestamp());
+                properties.put(PROPERTY_RULE, rule.getId());
+                properties.put(PROPERTY_OWNER, rule.getOwner());
+                properties.put(PROPERTY_METRIC, rule.getMetric().getPropertyValue());
+                properties.put(PROPERTY_DIRECTION, rule.getDirection().name().toLowerCase(Locale.US));
+                properties.put(PROPERTY_VALUE, value);
+                eventAdmin.postEvent(new Event(TOPIC_ALERT, properties));
+                emitted.incrementAndGet();
+            }
+        });
+        evaluated.incrementAndGet();
+        evaluationTime.recordSince(start);
+        alertLatency.recordSince(submittedNanos);
+    }
+
+    @Override
+    public String getStatisticsName() {
+        return "stockAlertEngine";
+    }
+
+    @Override
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<String, Object>();
+        AlertRuleIndex current = index;
+        stats.put("rules", current.getRuleCount());
+        stats.put("symbols", current.getSymbolCount());
+        stats.put("reloads", reloads.get());
+        stats.put("lastReloadMillis", lastReloadMillis);
+        stats.put("queueDepth", getQueueDepth());
+        stats.put("maxQueueDepth", maxQueueDepth.get());
+        stats.put("submitted", submitted.get());
+        stats.put("duplicates", duplicates.get());
+        stats.put("outOfOrder", outOfOrder.get());
+        stats.put("dropped", dropped.get());
+        stats.put("evaluated", evaluated.get());
+        stats.put("emitted", emitted.get());
+        stats.put("suppressed", suppressed.get());
+        stats.put("disarmedRules", state.getDisarmedCount());
+        evaluationTime.putInto(stats, "evaluation.");
+        alertLatency.putInto(stats, "latency.");
+        return stats;
+    }
+
+    /**
+     * Evaluation of one queued quote
+     */
+    private class Evaluation implements Runnable {
+        private final Quote before;
+        private final Quote quote;
+        private final long submittedNanos;
+
+        Evaluation(Quote before, Quote quote, long submittedNanos) {
+            this.before = before;
+            this.quote = quote;
+            this.submittedNanos = submittedNanos;
+        }
+
+        @Override
+        public void run() {
+            try {
+                evaluate(before, quote, submittedNanos);
+            } catch (RuntimeException e) {
+                logger.error("Could not evaluate " + quote, e);
+            }
+        }
+    }
+}
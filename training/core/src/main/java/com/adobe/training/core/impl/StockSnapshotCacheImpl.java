@@ -0,0 +1,188 @@
+package com.adobe.training.core.impl;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.jcr.Node;
+import javax.jcr.PathNotFoundException;
+import javax.jcr.RepositoryException;
+
+import org.apache.felix.scr.annotations.Activate;
+import org.apache.felix.scr.annotations.Component;
+import org.apache.felix.scr.annotations.Modified;
+import org.apache.felix.scr.annotations.Properties;
+import org.apache.felix.scr.annotations.Property;
+import org.apache.felix.scr.annotations.Service;
+import org.apache.sling.api.SlingConstants;
+import org.apache.sling.commons.osgi.PropertiesUtil;
+import org.osgi.service.event.Event;
+import org.osgi.service.event.EventConstants;
+import org.osgi.service.event.EventHandler;
+
+import com.adobe.training.core.metrics.StatisticsProvider;
+import com.adobe.training.core.stock.LastTradeNode;
+import com.adobe.training.core.stock.StockSnapshot;
+import com.adobe.training.core.stock.StockSnapshotCache;
+
+/**
+ * StockSnapshotCache holding the cache.size most recently used snapshots.
+ *
+ * Resource events of a lastTrade node drop the snapshot of its stock page, removing a page drops the
+ * snapshots below it. Every invalidation changes the revision of the stock pages it drops: a snapshot read
+ * while the revision of its page changed is returned to its caller but not cached, as it may hold the values
+ * from before the change. Revisions are kept for at most cache.size pages, a snapshot whose page revision
+ * was dropped is not cached.
+ *
+ * The snapshots are shared by all users. A cached snapshot is only returned if the session of the caller
+ * can read the lastTrade node, so a user does not get the values of a node it may not read.
+ */
+@Component(metatype = true, label = "Training Stock Snapshot Cache")
+@Service(value = {StockSnapshotCache.class, EventHandler.class, StatisticsProvider.class})
+@Properties({
+    @Property(name = EventConstants.EVENT_TOPIC, value = {SlingConstants.TOPIC_RESOURCE_ADDED,
+            SlingConstants.TOPIC_RESOURCE_CHANGED, SlingConstants.TOPIC_RESOURCE_REMOVED}, propertyPrivate = true),
+    @Property(name = EventConstants.EVENT_FILTER, value = "(path=/content/*)", propertyPrivate = true)
+})
+public class StockSnapshotCacheImpl implements StockSnapshotCache, EventHandler, StatisticsProvider {
+
+    @Property(label = "Cache Size", description = "Maximum number of cached stock snapshots", intValue = 1000)
+    public static final String PROPERTY_CACHE_SIZE = "cache.size";
+
+    private static final String LASTTRADE_SUFFIX = "/" + LastTradeNode.NAME;
+
+    private volatile int maxSize;
+    //access ordered, the eldest entry is the least recently used one
+    private final Map<String, StockSnapshot> snapshots = new LinkedHashMap<String, StockSnapshot>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, StockSnapshot> eldest) {
+            if (size() <= maxSize) return false;
+            evictions.incrementAndGet();
+            return true;
+        }
+    };
+
+    //stock page path -> revision, revisions are unique, so a page whose revision was dropped does not get an old one back
+    private final Map<String, Long> revisions = new HashMap<String, Long>();
+    private long lastRevision;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    @Activate
+    protected void activate(Map<String, Object> properties) {
+        configure(properties);
+    }
+
+    @Modified
+    protected void modified(Map<String, Object> properties) {
+        configure(properties);
+    }
+
+    protected void configure(Map<String, Object> properties) {
+        maxSize = Math.max(1, PropertiesUtil.toInteger(properties.get(PROPERTY_CACHE_SIZE), 1000));
+        synchronized (snapshots) {
+            snapshots.clear();
+            revisions.clear();
+        }
+    }
+
+    @Override
+    public StockSnapshot get(Node stock) throws RepositoryException {
+        String path = stock.getPath();
+        StockSnapshot cached;
+        long readRevision;
+        synchronized (snapshots) {
+            cached = snapshots.get(path);
+            readRevision = cached == null ? revisionOf(path) : 0;
+        }
+        if (cached != null) {
+            //checked with the session of the caller, the snapshot may have been read by another user
+            if (!stock.hasNode(LastTradeNode.NAME)) {
+                throw new PathNotFoundException(path + LASTTRADE_SUFFIX);
+            }
+            hits.incrementAndGet();
+            return cached;
+        }
+        misses.incrementAndGet();
+        StockSnapshot snapshot = StockSnapshot.read(stock, readRevision);
+        synchronized (snapshots) {
+            Long revision = revisions.get(path);
+            if (revision != null && revision == readRevision) {
+                snapshots.put(path, snapshot);
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * @return the revision of the stock page, a new one if the page has none. Called holding the snapshots lock.
+     */
+    private long revisionOf(String path) {
+        Long revision = revisions.get(path);
+        if (revision == null) {
+            if (revisions.size() >= maxSize) revisions.clear();
+            revision = ++lastRevision;
+            revisions.put(path, revision);
+        }
+        return revision;
+    }
+
+    @Override
+    public void handleEvent(Event event) {
+        String path = (String) event.getProperty(SlingConstants.PROPERTY_PATH);
+        if (path == null) return;
+        if (path.endsWith(LASTTRADE_SUFFIX)) {
+            invalidate(path.substring(0, path.length() - LASTTRADE_SUFFIX.length()), false);
+        } else if (SlingConstants.TOPIC_RESOURCE_REMOVED.equals(event.getTopic())) {
+            invalidate(path, true);
+        }
+    }
+
+    private void invalidate(String path, boolean subtree) {
+        synchronized (snapshots) {
+            if (revisions.containsKey(path)) revisions.put(path, ++lastRevision);
+            if (snapshots.remove(path) != null) invalidations.incrementAndGet();
+            if (subtree) {
+                String prefix = path + "/";
+                for (Map.Entry<String, Long> page : revisions.entrySet()) {
+                    if (page.getKey().startsWith(prefix)) page.setValue(++lastRevision);
+                }
+                for (Iterator<String> paths = snapshots.keySet().iterator(); paths.hasNext();) {
+                    if (paths.next().startsWith(prefix)) {
+                        paths.remove();
+                        invalidations.incrementAndGet();
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public String getStatisticsName() {
+        return "stockSnapshotCache";
+    }
+
+    @Override
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<String, Object>();
+        long hitCount = hits.get();
+        long lookups = hitCount + misses.get();
+        synchronized (snapshots) {
+            stats.put("size", snapshots.size());
+            stats.put("revision", lastRevision);
+        }
+        stats.put("maxSize", maxSize);
+        stats.put("hits", hitCount);
+        stats.put("misses", misses.get());
+        stats.put("hitRatio", lookups > 0 ? (double) hitCount / lookups : 0.0);
+        stats.put("evictions", evictions.get());
+        stats.put("invalidations", invalidations.get());
+        return stats;
+    }
+}
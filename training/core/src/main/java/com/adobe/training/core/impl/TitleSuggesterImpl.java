@@ -0,0 +1,298 @@
+package com.adobe.training.core.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.felix.scr.annotations.Activate;
+import org.apache.felix.scr.annotations.Component;
+import org.apache.felix.scr.annotations.Deactivate;
+import org.apache.felix.scr.annotations.Property;
+import org.apache.felix.scr.annotations.PropertyUnbounded;
+import org.apache.felix.scr.annotations.Reference;
+import org.apache.felix.scr.annotations.Service;
+import org.apache.sling.api.resource.LoginException;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.apache.sling.commons.osgi.PropertiesUtil;
+import org.osgi.service.event.Event;
+import org.osgi.service.event.EventConstants;
+import org.osgi.service.event.EventHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.adobe.training.core.metrics.LatencyHistogram;
+import com.adobe.training.core.metrics.StatisticsProvider;
+import com.adobe.training.core.search.SuggestIndex;
+import com.adobe.training.core.search.Suggestion;
+import com.adobe.training.core.search.TitleSuggester;
+import com.day.cq.tagging.Tag;
+import com.day.cq.wcm.api.Page;
+import com.day.cq.wcm.api.PageEvent;
+import com.day.cq.wcm.api.PageManager;
+import com.day.cq.wcm.api.PageModification;
+
+/**
+ * TitleSuggester keeping a SuggestIndex per configured site root. The indexes are built in the background
+ * on activation and updated from page events: created, moved, restored and rolled out pages are indexed
+ * with the pages below them, modified pages are indexed again and deleted pages are removed.
+ * Events are applied in order by a single thread, after the build.
+ *
+ * A page is ranked by the number in the weight.property of its jcr:content (Ex: a view count written
+ * by an analytics import), pages without it have weight 0.
+ *
+ * The indexes are built with the service user. The suggestions are filtered by the resolver of the request:
+ * twice the limit is looked up, and again with twice as many (at most MAX_CANDIDATES) while pages the user
+ * cannot read leave fewer than limit suggestions.
+ *
+ * Reports the pages and trie nodes per site root, the applied page changes and the lookup latency.
+ */
+@Component(metatype = true, label = "Training Title Suggester")
+@Service(value = {TitleSuggester.class, EventHandler.class, StatisticsProvider.class})
+@Property(name = EventConstants.EVENT_TOPIC, value = PageEvent.EVENT_TOPIC, propertyPrivate = true)
+public class TitleSuggesterImpl implements TitleSuggester, EventHandler, StatisticsProvider {
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    @Property(label = "Site Roots", description = "Pages below these paths are suggested, one index per root",
+            unbounded = PropertyUnbounded.ARRAY, value = {"/content/trainingproject"})
+    public static final String PROPERTY_SITE_ROOTS = "site.roots";
+    @Property(label = "Weight Property", description = "Page property holding the popularity weight of a page",
+            value = "popularity")
+    public static final String PROPERTY_WEIGHT = "weight.property";
+
+    private static final int MAX_CANDIDATES = 1000;
+
+    @Reference
+    private ResourceResolverFactory resourceResolverFactory;
+
+    private String[] siteRoots;
+    private String weightProperty;
+    //site root -> index, present once built
+    private final Map<String, SuggestIndex> indexes = new ConcurrentHashMap<String, SuggestIndex>();
+    private ExecutorService executor;
+
+    private final AtomicLong updates = new AtomicLong();
+    private final AtomicLong failedUpdates = new AtomicLong();
+    private final AtomicLong buildMillis = new AtomicLong();
+    private final LatencyHistogram lookupLatency = new LatencyHistogram();
+
+    @Activate
+    protected void activate(Map<String, Object> properties) {
+        siteRoots = PropertiesUtil.toStringArray(properties.get(PROPERTY_SITE_ROOTS), new String[]{"/content/trainingproject"});
+        weightProperty = PropertiesUtil.toString(properties.get(PROPERTY_WEIGHT), "popularity");
+        indexes.clear();
+        executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "training-title-suggester");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                build();
+            }
+        });
+    }
+
+    @Deactivate
+    protected void deactivate() {
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        indexes.clear();
+    }
+
+    @Override
+    public List<Suggestion> suggest(ResourceResolver resolver, String path, String prefix, int limit) {
+        long start = System.nanoTime();
+        String root = siteRootOf(path);
+        SuggestIndex index = root != null ? indexes.get(root) : null;
+        if (index == null) return Collections.emptyList();
+        List<Suggestion> suggestions = new ArrayList<Suggestion>();
+        int candidates = Math.min(2 * limit, MAX_CANDIDATES);
+        while (true) {
+            List<Suggestion> found = index.lookup(prefix, candidates);
+            suggestions.clear();
+            for (Suggestion suggestion : found) {
+                if (resolver.getResource(suggestion.getPath()) == null) continue;
+                suggestions.add(suggestion);
+                if (suggestions.size() == limit) break;
+            }
+            if (suggestions.size() == limit || found.size() < candidates || candidates == MAX_CANDIDATES) break;
+            candidates = Math.min(2 * candidates, MAX_CANDIDATES);
+        }
+        lookupLatency.recordSince(start);
+        return suggestions;
+    }
+
+    @Override
+    public void handleEvent(Event event) {
+        PageEvent pageEvent = PageEvent.fromEvent(event);
+        if (pageEvent == null) return;
+        final List<PageModification> modifications = new ArrayList<PageModification>();
+        for (Iterator<PageModification> iterator = pageEvent.getModifications(); iterator.hasNext();) {
+            PageModification modification = iterator.next();
+            if (siteRootOf(modification.getPath()) != null
+                    || (modification.getDestination() != null && siteRootOf(modification.getDestination()) != null)) {
+                modifications.add(modification);
+            }
+        }
+        if (modifications.isEmpty()) return;
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    apply(modifications);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            logger.debug("Suggester deactivated, page changes ignored");
+        }
+    }
+
+    /**
+     * Builds the index of every site root from the pages in the repository
+     */
+    private void build() {
+        long start = System.currentTimeMillis();
+        ResourceResolver resolver = null;
+        try {
+            resolver = login();
+            PageManager pageManager = resolver.adaptTo(PageManager.class);
+            for (String root : siteRoots) {
+                SuggestIndex index = new SuggestIndex();
+                Page page = pageManager.getPage(root);
+                if (page != null) indexTree(index, page);
+                indexes.put(root, index);
+                logger.info("Indexed {} page titles below {}", index.size(), root);
+            }
+        } catch (LoginException e) {
+            logger.error("Could not build the suggest indexes", e);
+        } finally {
+            if (resolver != null) resolver.close();
+        }
+        buildMillis.set(System.currentTimeMillis() - start);
+    }
+
+    private void apply(List<PageModification> modifications) {
+        ResourceResolver resolver = null;
+        try {
+            resolver = login();
+            PageManager pageManager = resolver.adaptTo(PageManager.class);
+            for (PageModification modification : modifications) {
+                SuggestIndex index = indexOf(modification.getPath());
+                switch (modification.getType()) {
+                    case DELETED:
+                        if (index != null) index.removeTree(modification.getPath());
+                        break;
+                    case MOVED:
+                        if (index != null) index.removeTree(modification.getPath());
+                        SuggestIndex destination = indexOf(modification.getDestination());
+                        Page moved = pageManager.getPage(modification.getDestination());
+                        if (destination != null && moved != null) indexTree(destination, moved);
+                        break;
+                    case CREATED:
+                    case RESTORED:
+                    case ROLLEDOUT:
+                        Page created = pageManager.getPage(modification.getPath());
+                        if (index != null && created != null) indexTree(index, created);
+                        break;
+                    case MODIFIED:
+                        Page modified = pageManager.getPage(modification.getPath());
+                        if (index != null && modified != null) indexPage(index, modified);
+                        break;
+                    default:
+                        continue;
+                }
+                updates.incrementAndGet();
+            }
+        } catch (LoginException e) {
+            failedUpdates.addAndGet(modifications.size());
+            logger.error("Could not update the suggest indexes", e);
+        } finally {
+            if (resolver != null) resolver.close();
+        }
+    }
+
+    private void indexTree(SuggestIndex index, Page page) {
+        indexPage(index, page);
+        for (Iterator<Page> children = page.listChildren(); children.hasNext();) {
+            indexTree(index, children.next());
+        }
+    }
+
+    private void indexPage(SuggestIndex index, Page page) {
+        Tag[] tags = page.getTags();
+        String[] tagTitles = new String[tags.length];
+        for (int i = 0; i < tags.length; i++) {
+            tagTitles[i] = tags[i].getTitle();
+        }
+        String title = page.getTitle() != null ? page.getTitle() : page.getName();
+        long weight = PropertiesUtil.toLong(page.getProperties().get(weightProperty), 0);
+        index.put(page.getPath(), title, tagTitles, weight);
+    }
+
+    /**
+     * @return the index of the site root containing the path, null if there is none or it is not built yet
+     */
+    private SuggestIndex indexOf(String path) {
+        String root = siteRootOf(path);
+        return root != null ? indexes.get(root) : null;
+    }
+
+    /**
+     * @return the longest site root containing the path, null if there is none
+     */
+    private String siteRootOf(String path) {
+        if (path == null) return null;
+        String found = null;
+        for (String root : siteRoots) {
+            if ((path.equals(root) || path.startsWith(root + "/")) && (found == null || root.length() > found.length())) {
+                found = root;
+            }
+        }
+        return found;
+    }
+
+    private ResourceResolver login() throws LoginException {
+        Map<String, Object> serviceParams = new HashMap<String, Object>();
+        serviceParams.put(ResourceResolverFactory.SUBSERVICE, "training");
+        return resourceResolverFactory.getServiceResourceResolver(serviceParams);
+    }
+
+    @Override
+    public String getStatisticsName() {
+        return "titleSuggester";
+    }
+
+    @Override
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<String, Object>();
+        for (Map.Entry<String, SuggestIndex> entry : indexes.entrySet()) {
+            stats.put("pages." + entry.getKey(), entry.getValue().size());
+            stats.put("nodes." + entry.getKey(), entry.getValue().getNodeCount());
+        }
+        stats.put("buildMillis", buildMillis.get());
+        stats.put("updates", updates.get());
+        stats.put("failedUpdates", failedUpdates.get());
+        lookupLatency.putInto(stats, "lookup.");
+        return stats;
+    }
+}
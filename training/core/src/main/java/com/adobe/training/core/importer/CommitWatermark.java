@@ -0,0 +1,91 @@
+package com.adobe.training.core.importer;
+
+import java.util.BitSet;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Tracks the rows of an import committed out of order by several workers.
+ *
+ * The watermark is the last row up to which every row is committed. The reader marks the rows a checkpoint
+ * can be written at with the hash of the rows up to them, the checkpoint is the last mark below the watermark.
+ * Workers commit rows concurrently, the checkpoint is read as one Checkpoint, so its row and hash always belong together.
+ */
+public class CommitWatermark {
+
+    private long watermark;
+    //bit i is row watermark + 1 + i
+    private BitSet committed = new BitSet();
+    private final TreeMap<Long, String> marks = new TreeMap<Long, String>();
+    private Checkpoint checkpoint;
+
+    /**
+     * @param start the rows committed before, by a previous run
+     */
+    public CommitWatermark(long start) {
+        watermark = start;
+        checkpoint = new Checkpoint(start, null);
+    }
+
+    /**
+     * Marks a row a checkpoint can be written at, before the row is committed
+     *
+     * @param hash hash of the rows up to the row
+     */
+    public synchronized void mark(long row, String hash) {
+        if (row > watermark) marks.put(row, hash);
+    }
+
+    /**
+     * @return true if the checkpoint moved
+     */
+    public synchronized boolean committed(long row) {
+        if (row <= watermark) return false;
+        committed.set((int) (row - watermark - 1));
+        int advance = committed.nextClearBit(0);
+        if (advance == 0) return false;
+        watermark += advance;
+        committed = committed.get(advance, Math.max(advance, committed.length()));
+
+        Map.Entry<Long, String> mark = marks.floorEntry(watermark);
+        if (mark == null) return false;
+        checkpoint = new Checkpoint(mark.getKey(), mark.getValue());
+        marks.headMap(mark.getKey(), true).clear();
+        return true;
+    }
+
+    /**
+     * @return the last row up to which every row is committed
+     */
+    public synchronized long getWatermark() {
+        return watermark;
+    }
+
+    public synchronized Checkpoint getCheckpoint() {
+        return checkpoint;
+    }
+
+    /**
+     * Row and hash of the last mark below the watermark
+     */
+    public static final class Checkpoint {
+        private final long row;
+        private final String hash;
+
+        Checkpoint(long row, String hash) {
+            this.row = row;
+            this.hash = hash;
+        }
+
+        public long getRow() {
+            return row;
+        }
+
+        /**
+         * @return the hash of the rows up to the row, null if no mark was reached
+         */
+        public String getHash() {
+            return hash;
+        }
+    }
+}
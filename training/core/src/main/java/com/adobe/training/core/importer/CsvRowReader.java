@@ -0,0 +1,137 @@
+package com.adobe.training.core.importer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads CSV rows one at a time from a Reader, so only the current row is held in memory
+ * whatever the size of the input.
+ *
+ * Fields are separated by commas, rows by \n, \r\n or \r. A quoted field may hold commas, line breaks
+ * and doubled quotes (""). Like String.split(","), trailing empty fields are dropped: "a,b,," has 2 fields.
+ * Empty lines are returned as a single empty field.
+ */
+public class CsvRowReader implements Closeable {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final Reader reader;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int position;
+    private int limit;
+    private boolean end;
+    private long rowNumber;
+    private final StringBuilder line = new StringBuilder();
+    private final StringBuilder field = new StringBuilder();
+    private final List<String> fields = new ArrayList<String>();
+
+    public CsvRowReader(Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * @return the fields of the next row, null at the end of the input
+     */
+    public String[] readRow() throws IOException {
+        line.setLength(0);
+        field.setLength(0);
+        fields.clear();
+        int c = read();
+        if (c < 0) return null;
+        boolean quoted = false;
+        boolean wasQuoted = false;
+        while (c >= 0) {
+            if (quoted) {
+                if (c == '"') {
+                    int next = peek();
+                    if (next == '"') {
+                        line.append((char) read());
+                        field.append('"');
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    field.append((char) c);
+                }
+            } else if (c == ',') {
+                addField(wasQuoted);
+                wasQuoted = false;
+            } else if (c == '\n' || c == '\r') {
+                if (c == '\r' && peek() == '\n') read();
+                break;
+            } else if (c == '"' && field.length() == 0 && !wasQuoted) {
+                quoted = true;
+                wasQuoted = true;
+            } else {
+                field.append((char) c);
+            }
+            if (c != '\n' && c != '\r' || quoted) line.append((char) c);
+            c = read();
+        }
+        addField(wasQuoted);
+        //drop trailing empty fields, keep at least one
+        int size = fields.size();
+        while (size > 1 && fields.get(size - 1) == null) {
+            size--;
+        }
+        String[] row = new String[size];
+        for (int i = 0; i < size; i++) {
+            row[i] = fields.get(i) != null ? fields.get(i) : "";
+        }
+        rowNumber++;
+        return row;
+    }
+
+    /**
+     * @return the text of the row last read, as it was in the input
+     */
+    public String getLine() {
+        return line.toString();
+    }
+
+    /**
+     * @return the number of rows read so far
+     */
+    public long getRowNumber() {
+        return rowNumber;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    /**
+     * Adds the current field, an empty unquoted field as null so it can be dropped at the end of the row
+     */
+    private void addField(boolean wasQuoted) {
+        fields.add(field.length() > 0 || wasQuoted ? field.toString() : null);
+        field.setLength(0);
+    }
+
+    private int read() throws IOException {
+        if (position == limit && !fill()) return -1;
+        return buffer[position++];
+    }
+
+    private int peek() throws IOException {
+        if (position == limit && !fill()) return -1;
+        return buffer[position];
+    }
+
+    private boolean fill() throws IOException {
+        if (end) return false;
+        int read = reader.read(buffer, 0, buffer.length);
+        if (read <= 0) {
+            end = read < 0;
+            //a Reader may return 0 without being at the end, read again
+            return !end && fill();
+        }
+        position = 0;
+        limit = read;
+        return true;
+    }
+}
@@ -0,0 +1,36 @@
+package com.adobe.training.core.importer;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Imports files in the background: the file is stored below JOBS and a Sling job of TOPIC imports it
+ * with the PageImporter, so the request uploading it returns at once.
+ */
+public interface ImportJobQueue {
+
+    /**
+     * Topic of the import jobs
+     */
+    public static final String TOPIC = "com/adobe/training/core/pageimport";
+
+    /**
+     * Root of the queued imports, one node per job id holding the file and the progress of the import
+     */
+    public static final String JOBS = "/var/trainingproject/imports/jobs";
+
+    /**
+     * Stores the file and queues its import
+     *
+     * @param userId user the pages are created as
+     * @param chunkSize pages per commit, 0 for the configured chunk size of the PageImporter
+     * @param parallelism workers creating the pages, 0 for the configured parallelism of the PageImporter
+     * @return the id of the job
+     */
+    public String enqueue(InputStream csv, String charset, String userId, int chunkSize, int parallelism) throws IOException;
+
+    /**
+     * @return the progress of the job, null if there is no such job
+     */
+    public ImportProgress getProgress(String jobId);
+}
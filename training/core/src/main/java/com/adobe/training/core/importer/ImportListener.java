@@ -0,0 +1,15 @@
+package com.adobe.training.core.importer;
+
+import java.util.Map;
+
+/**
+ * Receives the result of every row of an import once the row is committed or failed
+ */
+public interface ImportListener {
+
+    /**
+     * @param key the page path of the row, the row text if it could not be parsed
+     * @param result Status and, for created pages, Location, Title, Template Used, Tagged with, Was Published
+     */
+    public void rowImported(String key, Map<String, Object> result);
+}
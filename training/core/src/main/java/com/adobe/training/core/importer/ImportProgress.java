@@ -0,0 +1,199 @@
+package com.adobe.training.core.importer;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.Value;
+
+/**
+ * Progress of a queued import (see ImportJobQueue), stored as properties of its job node.
+ *
+ * The rows still to import are not counted ahead, the ETA is estimated from the bytes of the file read so far.
+ */
+public class ImportProgress {
+
+    public static final String STATE_QUEUED = "QUEUED";
+    public static final String STATE_RUNNING = "RUNNING";
+    public static final String STATE_SUCCEEDED = "SUCCEEDED";
+    public static final String STATE_FAILED = "FAILED";
+
+    /**
+     * Failed rows kept, the latest ones
+     */
+    public static final int MAX_ERRORS = 20;
+
+    private String state = STATE_QUEUED;
+    private long rows;
+    private long created;
+    private long failed;
+    private long bytesRead;
+    private long bytesTotal;
+    private long startedMillis;
+    private long updatedMillis;
+    private String error;
+    private final List<String> errors = new ArrayList<String>();
+
+    public String getState() {
+        return state;
+    }
+
+    public void setState(String state) {
+        this.state = state;
+    }
+
+    /**
+     * @return the rows processed: created, existing or failed, and, once the import is done,
+     *  the rows a previous attempt of the job committed before its checkpoint
+     */
+    public long getRows() {
+        return rows;
+    }
+
+    public void setRows(long rows) {
+        this.rows = rows;
+    }
+
+    public long getCreated() {
+        return created;
+    }
+
+    public void setCreated(long created) {
+        this.created = created;
+    }
+
+    public long getFailed() {
+        return failed;
+    }
+
+    public void setFailed(long failed) {
+        this.failed = failed;
+    }
+
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    public void setBytesRead(long bytesRead) {
+        this.bytesRead = bytesRead;
+    }
+
+    public long getBytesTotal() {
+        return bytesTotal;
+    }
+
+    public void setBytesTotal(long bytesTotal) {
+        this.bytesTotal = bytesTotal;
+    }
+
+    public long getStartedMillis() {
+        return startedMillis;
+    }
+
+    public void setStartedMillis(long startedMillis) {
+        this.startedMillis = startedMillis;
+    }
+
+    public long getUpdatedMillis() {
+        return updatedMillis;
+    }
+
+    public void setUpdatedMillis(long updatedMillis) {
+        this.updatedMillis = updatedMillis;
+    }
+
+    /**
+     * @return the error that stopped the import, null if it was not stopped
+     */
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+
+    /**
+     * @return the latest failed rows, Ex: "/content/trainingproject/en/a: Could not create a page"
+     */
+    public List<String> getErrors() {
+        return errors;
+    }
+
+    /**
+     * Counts the failed row and keeps it with the latest MAX_ERRORS
+     */
+    public void rowFailed(String row) {
+        failed++;
+        if (errors.size() >= MAX_ERRORS) errors.remove(0);
+        errors.add(row);
+    }
+
+    public double getRowsPerSecond() {
+        long millis = updatedMillis - startedMillis;
+        return millis > 0 ? rows * 1000.0 / millis : 0.0;
+    }
+
+    /**
+     * @return the seconds left estimated from the share of the file read, -1 if unknown
+     */
+    public long getEtaSeconds() {
+        if (STATE_SUCCEEDED.equals(state) || STATE_FAILED.equals(state)) return 0;
+        if (bytesRead <= 0 || bytesTotal <= 0 || updatedMillis <= startedMillis) return -1;
+        double left = Math.max(0, bytesTotal - bytesRead) / (double) bytesRead;
+        return Math.round((updatedMillis - startedMillis) * left / 1000.0);
+    }
+
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new LinkedHashMap<String, Object>();
+        map.put("state", state);
+        map.put("rows", rows);
+        map.put("created", created);
+        map.put("failed", failed);
+        map.put("rowsPerSecond", getRowsPerSecond());
+        map.put("etaSeconds", getEtaSeconds());
+        map.put("percent", bytesTotal > 0 ? Math.min(100, bytesRead * 100 / bytesTotal) : 0);
+        map.put("errors", new ArrayList<String>(errors));
+        if (error != null) map.put("error", error);
+        return map;
+    }
+
+    public void writeTo(Node node) throws RepositoryException {
+        node.setProperty("state", state);
+        node.setProperty("rows", rows);
+        node.setProperty("created", created);
+        node.setProperty("failed", failed);
+        node.setProperty("bytesRead", bytesRead);
+        node.setProperty("bytesTotal", bytesTotal);
+        node.setProperty("startedMillis", startedMillis);
+        node.setProperty("updatedMillis", updatedMillis);
+        node.setProperty("errors", errors.toArray(new String[errors.size()]));
+        node.setProperty("error", error);
+    }
+
+    public static ImportProgress readFrom(Node node) throws RepositoryException {
+        ImportProgress progress = new ImportProgress();
+        if (node.hasProperty("state")) progress.state = node.getProperty("state").getString();
+        progress.rows = longOf(node, "rows");
+        progress.created = longOf(node, "created");
+        progress.failed = longOf(node, "failed");
+        progress.bytesRead = longOf(node, "bytesRead");
+        progress.bytesTotal = longOf(node, "bytesTotal");
+        progress.startedMillis = longOf(node, "startedMillis");
+        progress.updatedMillis = longOf(node, "updatedMillis");
+        if (node.hasProperty("errors")) {
+            for (Value value : node.getProperty("errors").getValues()) {
+                progress.errors.add(value.getString());
+            }
+        }
+        if (node.hasProperty("error")) progress.error = node.getProperty("error").getString();
+        return progress;
+    }
+
+    private static long longOf(Node node, String name) throws RepositoryException {
+        return node.hasProperty(name) ? node.getProperty(name).getLong() : 0;
+    }
+}
@@ -0,0 +1,276 @@
+package com.adobe.training.core.importer;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.adobe.training.core.metrics.LatencyHistogram;
+
+/**
+ * Counts of a page import, updated while the import runs
+ */
+public class ImportReport {
+
+    private final String importId;
+    private final int chunkSize;
+    private final int parallelism;
+    private final long startMillis = System.currentTimeMillis();
+    private volatile long endMillis;
+    private volatile String error;
+    private volatile boolean retryable;
+
+    private final AtomicLong rows = new AtomicLong();
+    private final AtomicLong resumed = new AtomicLong();
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong existing = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong chunks = new AtomicLong();
+    private final AtomicLong failedCommits = new AtomicLong();
+    private final AtomicLong conflicts = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong partitions = new AtomicLong();
+    private final AtomicLong publishQueued = new AtomicLong();
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong publishFailed = new AtomicLong();
+    private final LatencyHistogram publishBatchTime = new LatencyHistogram();
+
+    public ImportReport(String importId, int chunkSize, int parallelism) {
+        this.importId = importId;
+        this.chunkSize = chunkSize;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * @return the number of the row read
+     */
+    public long rowRead() {
+        return rows.incrementAndGet();
+    }
+
+    public void rowResumed() {
+        resumed.incrementAndGet();
+    }
+
+    public void pageCreated() {
+        created.incrementAndGet();
+    }
+
+    public void pageExisting() {
+        existing.incrementAndGet();
+    }
+
+    public void rowFailed() {
+        failed.incrementAndGet();
+    }
+
+    public void chunkCommitted() {
+        chunks.incrementAndGet();
+    }
+
+    public void commitFailed() {
+        failedCommits.incrementAndGet();
+    }
+
+    public void conflict() {
+        conflicts.incrementAndGet();
+    }
+
+    public void retried() {
+        retries.incrementAndGet();
+    }
+
+    public void partitionStarted() {
+        partitions.incrementAndGet();
+    }
+
+    public void publishQueued() {
+        publishQueued.incrementAndGet();
+    }
+
+    /**
+     * @param micros replication time of the batch
+     * @param failed true if the pages of the batch were not activated
+     */
+    public void batchPublished(int pages, long micros, boolean failed) {
+        publishBatchTime.record(micros);
+        (failed ? publishFailed : published).addAndGet(pages);
+    }
+
+    public String getImportId() {
+        return importId;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * @return the workers creating the pages, 1 if they are created by the calling thread
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * @return the rows read in this run, including the rows skipped as committed by a previous run
+     */
+    public long getRows() {
+        return rows.get();
+    }
+
+    /**
+     * @return the rows skipped because a previous run committed them
+     */
+    public long getResumed() {
+        return resumed.get();
+    }
+
+    public long getCreated() {
+        return created.get();
+    }
+
+    /**
+     * @return the rows whose page already existed
+     */
+    public long getExisting() {
+        return existing.get();
+    }
+
+    public long getFailed() {
+        return failed.get();
+    }
+
+    public long getChunks() {
+        return chunks.get();
+    }
+
+    /**
+     * @return the chunks whose commit failed and that were committed row by row instead
+     */
+    public long getFailedCommits() {
+        return failedCommits.get();
+    }
+
+    /**
+     * @return the chunk commits that failed with a conflicting change of another session
+     */
+    public long getConflicts() {
+        return conflicts.get();
+    }
+
+    /**
+     * @return the chunk commits retried after a conflict
+     */
+    public long getRetries() {
+        return retries.get();
+    }
+
+    /**
+     * @return the subtrees the rows were partitioned in, 0 for a serial import
+     */
+    public long getPartitions() {
+        return partitions.get();
+    }
+
+    /**
+     * @return the created pages queued for activation
+     */
+    public long getPublishQueued() {
+        return publishQueued.get();
+    }
+
+    /**
+     * @return the queued pages activated so far
+     */
+    public long getPublished() {
+        return published.get();
+    }
+
+    /**
+     * @return the queued pages whose batch could not be activated
+     */
+    public long getPublishFailed() {
+        return publishFailed.get();
+    }
+
+    /**
+     * @return the replication time of the batches of the import
+     */
+    public LatencyHistogram getPublishBatchTime() {
+        return publishBatchTime;
+    }
+
+    /**
+     * @return the error that stopped the import, null if it was not stopped
+     */
+    public String getError() {
+        return error;
+    }
+
+    /**
+     * Sets an error the import may not hit again, Ex: a worker that could not log in
+     */
+    public void setError(String error) {
+        setError(error, true);
+    }
+
+    /**
+     * @param retryable false if the import fails the same way when it is run again with the same file
+     */
+    public void setError(String error, boolean retryable) {
+        this.retryable = retryable;
+        this.error = error;
+    }
+
+    /**
+     * @return false if running the import again with the same file gives the same error
+     */
+    public boolean isRetryable() {
+        return retryable;
+    }
+
+    public boolean isDone() {
+        return endMillis != 0;
+    }
+
+    public void done() {
+        endMillis = System.currentTimeMillis();
+    }
+
+    /**
+     * @return the time taken so far, or until done
+     */
+    public long getDurationMillis() {
+        return (endMillis != 0 ? endMillis : System.currentTimeMillis()) - startMillis;
+    }
+
+    public double getPagesPerSecond() {
+        long millis = Math.max(1, getDurationMillis());
+        return created.get() * 1000.0 / millis;
+    }
+
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new LinkedHashMap<String, Object>();
+        map.put("importId", importId);
+        map.put("chunkSize", chunkSize);
+        map.put("parallelism", parallelism);
+        map.put("rows", getRows());
+        map.put("resumed", getResumed());
+        map.put("created", getCreated());
+        map.put("existing", getExisting());
+        map.put("failed", getFailed());
+        map.put("chunks", getChunks());
+        map.put("failedCommits", getFailedCommits());
+        map.put("partitions", getPartitions());
+        map.put("conflicts", getConflicts());
+        map.put("retries", getRetries());
+        map.put("publishQueued", getPublishQueued());
+        map.put("published", getPublished());
+        map.put("publishFailed", getPublishFailed());
+        publishBatchTime.putInto(map, "publishBatch.");
+        map.put("durationMillis", getDurationMillis());
+        map.put("pagesPerSecond", getPagesPerSecond());
+        if (error != null) map.put("error", error);
+        return map;
+    }
+}
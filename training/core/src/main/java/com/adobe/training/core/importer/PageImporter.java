@@ -0,0 +1,46 @@
+package com.adobe.training.core.importer;
+
+import java.io.IOException;
+
+import org.apache.sling.api.resource.ResourceResolver;
+
+/**
+ * Creates the pages of an import file (see PageRow) in chunks: the pages of a chunk are created
+ * without saving and committed together.
+ *
+ * After every chunk a checkpoint is written with the number of committed rows and the hash of these rows.
+ * An import with the same id resumes after the last checkpoint if the file starts with the same rows,
+ * the checkpoint is removed once the import is complete.
+ *
+ * With a parallelism above 1 the rows are partitioned by the ancestor of their page at a configured depth
+ * and every partition is created by one of parallelism workers, each with its own service resolver.
+ * Pages at that depth or above are created first, by the calling thread, so the workers only write
+ * below them and do not conflict. As for a serial import, the parent of a page must exist or come before it
+ * in the file. The checkpoint then counts the rows up to which every row is committed.
+ */
+public interface PageImporter {
+
+    /**
+     * Root of the checkpoints, one node per import id
+     */
+    public static final String CHECKPOINTS = "/var/trainingproject/imports/checkpoints";
+
+    /**
+     * @param resolver resolver the pages are created with, the workers of a parallel import use the service user
+     * @param importId identifies the file for checkpoints, null to use the hash of the user of the resolver
+     * and the first row. An import is not started while another one with the same id runs
+     * @param chunkSize pages per commit, 0 for the configured chunk size, lowered to the configured maximum
+     * @param parallelism workers creating the pages, 1 to create them with the calling thread,
+     * 0 for the configured parallelism, at most getMaxParallelism()
+     * @param restart true to ignore the checkpoint of a previous run
+     * @param listener receives the result of every row, may be null
+     * @return the counts of the import, with an error if it was stopped
+     */
+    public ImportReport importPages(ResourceResolver resolver, CsvRowReader rows, String importId, int chunkSize,
+            int parallelism, boolean restart, ImportListener listener) throws IOException;
+
+    /**
+     * @return the most workers an import may ask for, a larger parallelism is lowered to it
+     */
+    public int getMaxParallelism();
+}
@@ -0,0 +1,22 @@
+package com.adobe.training.core.importer;
+
+/**
+ * Activates pages in batches, with one multi-path replication per batch, off the calling thread.
+ *
+ * The batches are replicated with the service user, check the permission of the requesting session
+ * before queueing a page (Replicator.checkPermission).
+ */
+public interface PagePublisher {
+
+    /**
+     * Queues the page on the shared queue, its batch starts once it has batch.size pages
+     * or after linger.millis
+     */
+    public void publish(String path);
+
+    /**
+     * @param listener receives the outcome of every batch of the queue, may be null
+     * @return a queue whose batches are replicated one at a time, in the order they are started
+     */
+    public PublishQueue open(PublishListener listener);
+}
@@ -0,0 +1,72 @@
+package com.adobe.training.core.importer;
+
+/**
+ * A row of a page import file:
+ *
+ * JCR path, Page Title[, Page Template, AEM Tag][, Publish boolean]
+ *
+ * With 3 fields the third is the publish flag, with 4 fields template and tag are given, with 5 all of them.
+ */
+public class PageRow {
+
+    private final String path;
+    private final String title;
+    private final String template;
+    private final String tag;
+    private final boolean publish;
+
+    public PageRow(String path, String title, String template, String tag, boolean publish) {
+        this.path = path;
+        this.title = title;
+        this.template = template;
+        this.tag = tag;
+        this.publish = publish;
+    }
+
+    /**
+     * @return the row, null if it has no path or title
+     */
+    public static PageRow parse(String[] fields) {
+        if (fields.length < 2 || fields[0].isEmpty() || fields[1].isEmpty()) return null;
+        String template = null;
+        String tag = null;
+        String publish = null;
+        if (fields.length == 5) {
+            template = fields[2];
+            tag = fields[3];
+            publish = fields[4];
+        } else if (fields.length == 4) {
+            template = fields[2];
+            tag = fields[3];
+        } else if (fields.length == 3) {
+            publish = fields[2];
+        }
+        return new PageRow(fields[0], fields[1], template, tag, Boolean.parseBoolean(publish));
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    /**
+     * @return the template path, null or empty for the default template
+     */
+    public String getTemplate() {
+        return template;
+    }
+
+    /**
+     * @return the tag path, null or empty for none
+     */
+    public String getTag() {
+        return tag;
+    }
+
+    public boolean isPublish() {
+        return publish;
+    }
+}
@@ -0,0 +1,15 @@
+package com.adobe.training.core.importer;
+
+/**
+ * Receives the outcome of every batch of a PublishQueue, called by the replicating thread.
+ * The pages of a failed batch may be retried and reported again as batches of one page.
+ */
+public interface PublishListener {
+
+    /**
+     * @param paths the pages of the batch
+     * @param micros time taken by the replication of the batch
+     * @param error why the batch was not replicated, null if it was
+     */
+    public void batchReplicated(String[] paths, long micros, Exception error);
+}
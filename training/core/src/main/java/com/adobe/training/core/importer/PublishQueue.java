@@ -0,0 +1,23 @@
+package com.adobe.training.core.importer;
+
+/**
+ * Pages to activate, queued by one caller (Ex: an import) and replicated in batches by the PagePublisher.
+ * Batches of a queue are replicated in order, so parents queued before their children are activated first.
+ */
+public interface PublishQueue {
+
+    /**
+     * Queues the page, starts a batch once batch.size pages are queued
+     */
+    public void add(String path);
+
+    /**
+     * Starts a batch with the pages queued so far, if any
+     */
+    public void flush();
+
+    /**
+     * Flushes the queue and waits until all its batches are replicated
+     */
+    public void await() throws InterruptedException;
+}
@@ -0,0 +1,110 @@
+package com.adobe.training.core.listeners;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+
+import org.apache.felix.scr.annotations.Activate;
+import org.apache.felix.scr.annotations.Component;
+import org.apache.felix.scr.annotations.ConfigurationPolicy;
+import org.apache.felix.scr.annotations.Deactivate;
+import org.apache.felix.scr.annotations.Properties;
+import org.apache.felix.scr.annotations.Property;
+import org.apache.felix.scr.annotations.Reference;
+import org.apache.felix.scr.annotations.Service;
+import org.apache.sling.api.SlingConstants;
+import org.apache.sling.jcr.api.SlingRepository;
+import org.osgi.service.event.Event;
+import org.osgi.service.event.EventConstants;
+import org.osgi.service.event.EventHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.adobe.training.core.alerts.StockAlertEngine;
+import com.adobe.training.core.stock.LastTradeNode;
+import com.adobe.training.core.stock.Quote;
+
+/**
+ * Feeds lastTrade nodes written outside of the StockDataImporter (which submits its quotes itself)
+ * to the StockAlertEngine. Only active if a configuration exists for it.
+ *
+ * The nodes are read on a thread of the listener, not on the EventAdmin thread. At most QUEUE_SIZE events
+ * wait for it, more are dropped.
+ */
+@Component(metatype = false, policy = ConfigurationPolicy.REQUIRE)
+@Service(value = EventHandler.class)
+@Properties({
+    @Property(name = EventConstants.EVENT_TOPIC, value = {SlingConstants.TOPIC_RESOURCE_ADDED,
+            SlingConstants.TOPIC_RESOURCE_CHANGED}),
+    @Property(name = EventConstants.EVENT_FILTER, value = "(path=*/" + LastTradeNode.NAME + ")")
+})
+public class LastTradeAlertListener implements EventHandler {
+
+    private static final int QUEUE_SIZE = 1000;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    @Reference
+    private SlingRepository repo;
+
+    @Reference
+    private StockAlertEngine alertEngine;
+
+    private ThreadPoolExecutor executor;
+
+    @Activate
+    protected void activate() {
+        executor = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(QUEUE_SIZE),
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, "training-last-trade-alerts");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+    }
+
+    @Deactivate
+    protected void deactivate() {
+        executor.shutdownNow();
+    }
+
+    @Override
+    public void handleEvent(final Event event) {
+        final String path = (String) event.getProperty(SlingConstants.PROPERTY_PATH);
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    submit(path);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            logger.warn("Dropping the quote at {}, {} events are waiting", path, executor.getQueue().size());
+        }
+    }
+
+    private void submit(String path) {
+        Session session = null;
+        try {
+            session = repo.loginService("training", null);
+            if (!session.nodeExists(path)) return;
+            Node lastTradeNode = session.getNode(path);
+            Quote quote = new Quote();
+            if (LastTradeNode.read(lastTradeNode, quote)) {
+                alertEngine.submit(quote);
+            }
+        } catch (RepositoryException e) {
+            logger.error("Could not read the quote at " + path, e);
+        } finally {
+            if (session != null) session.logout();
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.adobe.training.core.metrics;
+
+import java.util.Map;
+
+/**
+ * Service interface for components that expose runtime counters (throughput, latencies, cache stats..).
+ *
+ * Every registered provider is rendered by the StatisticsServlet:
+ * http://localhost:4502/bin/trainingproject/stats.json
+ */
+public interface StatisticsProvider {
+
+    /**
+     * @return name the statistics are grouped under, Ex: "stockImporter"
+     */
+    public String getStatisticsName();
+
+    /**
+     * @return snapshot of the current counters. Values should be Numbers, Booleans or Strings
+     */
+    public Map<String, Object> getStatistics();
+}
@@ -1,23 +1,42 @@
 package com.adobe.training.core.models;
 
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+import javax.annotation.PostConstruct;
 import javax.inject.Inject;
 import javax.jcr.Node;
 import javax.jcr.RepositoryException;
 
 import org.apache.sling.api.resource.Resource;
 import org.apache.sling.models.annotations.Model;
+import org.apache.sling.models.annotations.Optional;
 import org.apache.sling.models.annotations.injectorspecific.Self;
 
+import com.adobe.training.core.stock.Quote;
+import com.adobe.training.core.stock.StockSnapshot;
+import com.adobe.training.core.stock.StockSnapshotCache;
+import com.adobe.training.core.stock.TickHistoryStore;
+import com.adobe.training.core.stock.TickVisitor;
+
 /**
  * This model represents a Yahoo stock data structure created from the StockDataImporter:
  * /content
  *   + ADBE [cq:Page]
  *     + lastTrade [nt:unstructured]
- *       - lastTrade = <value>
- *       - requestDate = <value>
- *       - requestTime = <value>
+ *       - lastTrade = <Double>
+ *       - tradeTimestamp = <Date>
  *       - ..
  *
+ * The lastTrade values are read once into an immutable StockSnapshot, shared between requests
+ * through the StockSnapshotCache. Older quotes of the stock are decoded from the TickHistoryStore, see getHistory.
+ *
  * @author Kevin Nennig (nennig@adobe.com)
  */
 @Model(adaptables=Resource.class)
@@ -26,40 +45,93 @@ public class StockModel{
     @Inject @Self
     private Node stock;
 
-    @Inject
-    private Node lastTrade;
+    @Inject @Optional
+    private TickHistoryStore historyStore;
+
+    @Inject @Optional
+    private StockSnapshotCache snapshotCache;
+
+    private StockSnapshot snapshot;
+
+    /**
+     * Reads all lastTrade properties at once, from the cache if available.
+     * Adapting fails if the stock has no complete lastTrade node.
+     */
+    @PostConstruct
+    protected void init() throws RepositoryException {
+        snapshot = snapshotCache != null ? snapshotCache.get(stock) : StockSnapshot.read(stock, 0);
+    }
 
     public String getStockSymbol() throws RepositoryException {
         return stock.getName();
     }
 
     public double getLastTrade() throws Exception{
-        return Double.parseDouble(lastTrade.getProperty("lastTrade").getString());
+        return snapshot.getLastTrade();
+    }
+    public Calendar getTradeTimestamp() throws Exception{
+        Calendar tradeTimestamp = Calendar.getInstance(Quote.EXCHANGE_TIMEZONE);
+        tradeTimestamp.setTimeInMillis(snapshot.getTimestamp());
+        return tradeTimestamp;
     }
     public String getRequestDate() throws Exception{
-        return lastTrade.getProperty("requestDate").getString();
+        return format("M/d/yyyy");
 
     }
     public String getRequestTime() throws Exception{
-        return lastTrade.getProperty("requestTime").getString();
+        return format("h:mma").toLowerCase(Locale.US);
 
     }
     public String getTimestamp() throws Exception{
         return getRequestDate() + " " + getRequestTime();
     }
     public double getUpDown() throws Exception{
-        return Double.parseDouble(lastTrade.getProperty("upDown").getString());
+        return snapshot.getUpDown();
     }
     public double getOpenPrice() throws Exception{
-        return Double.parseDouble(lastTrade.getProperty("openPrice").getString());
+        return snapshot.getOpenPrice();
     }
     public double getRangeHigh() throws Exception{
-        return Double.parseDouble(lastTrade.getProperty("rangeHigh").getString());
+        return snapshot.getRangeHigh();
     }
     public double getRangeLow() throws Exception{
-        return Double.parseDouble(lastTrade.getProperty("rangeLow").getString());
+        return snapshot.getRangeLow();
+    }
+    public long getVolume() throws Exception{
+        return snapshot.getVolume();
+    }
+
+    /**
+     * @return the immutable values of the lastTrade node this model was created with
+     */
+    public StockSnapshot getSnapshot() {
+        return snapshot;
     }
-    public int getVolume() throws Exception{
-        return Integer.parseInt(lastTrade.getProperty("volume").getString());
+
+    /**
+     * Formats the trade timestamp like the feed does, Ex: 11/13/2016 and 4:00pm
+     */
+    private String format(String pattern) {
+        SimpleDateFormat format = new SimpleDateFormat(pattern, Locale.US);
+        format.setTimeZone(Quote.EXCHANGE_TIMEZONE);
+        return format.format(new Date(snapshot.getTimestamp()));
+    }
+
+    /**
+     * @return the quotes of this stock with from <= timestamp <= to (epoch millis), oldest first
+     */
+    public List<Quote> getHistory(long from, long to) throws RepositoryException, IOException {
+        if (historyStore == null) return Collections.emptyList();
+        final List<Quote> ticks = new ArrayList<Quote>();
+        historyStore.read(getStockSymbol(), from, to, new TickVisitor() {
+            @Override
+            public boolean visit(Quote tick) {
+                Quote copy = new Quote();
+                copy.copyFrom(tick);
+                ticks.add(copy);
+                return true;
+            }
+        });
+        return ticks;
     }
 }
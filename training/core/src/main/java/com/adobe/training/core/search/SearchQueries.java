@@ -0,0 +1,41 @@
+package com.adobe.training.core.search;
+
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.query.Query;
+
+/**
+ * Creates the full text queries of the SearchServlet from cached statements. The search term is not part
+ * of the statement, it is bound to the variable $term:
+ *
+ * SELECT [jcr:path], [jcr:title], [jcr:lastModified], [rep:excerpt] FROM [nt:unstructured] AS node
+ * WHERE ISDESCENDANTNODE(node, [<root>]) AND CONTAINS(node.*, $term)
+ *
+ * JCR-SQL2 only accepts a literal path in ISDESCENDANTNODE, so there is one statement per language and query root.
+ */
+public interface SearchQueries {
+
+    public static final String LANGUAGE_SQL = "sql";
+    public static final String LANGUAGE_JQOM = "jqom";
+    public static final String TERM = "term";
+
+    //columns of the query rows
+    public static final String COLUMN_PATH = "jcr:path";
+    public static final String COLUMN_TITLE = "jcr:title";
+    public static final String COLUMN_LAST_MODIFIED = "jcr:lastModified";
+    public static final String COLUMN_EXCERPT = "rep:excerpt";
+
+    /**
+     * @param language sql or jqom, the selector of the search request
+     * @param root path of the node the search is restricted to
+     * @return a query with the $term variable still to be bound
+     */
+    public Query prepare(Session session, String language, String root) throws RepositoryException;
+
+    /**
+     * Records how long executing a query of the language took
+     *
+     * @param startNanos System.nanoTime() before the query was executed
+     */
+    public void recordExecution(String language, long startNanos);
+}
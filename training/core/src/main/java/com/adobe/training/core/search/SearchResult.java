@@ -0,0 +1,66 @@
+package com.adobe.training.core.search;
+
+/**
+ * Immutable page of search results: per hit the path, title, last modification date (ISO 8601) and excerpt,
+ * any of them but the path may be null. Also tells whether there are more hits and the
+ * estimated total (-1 if the query engine did not report one).
+ */
+public final class SearchResult {
+
+    private final String[] paths;
+    private final String[] titles;
+    private final String[] lastModified;
+    private final String[] excerpts;
+    private final boolean hasMore;
+    private final long total;
+
+    /**
+     * @param paths the paths of the hits, the other arrays hold the values of the same hits
+     */
+    public SearchResult(String[] paths, String[] titles, String[] lastModified, String[] excerpts,
+            boolean hasMore, long total) {
+        this.paths = paths;
+        this.titles = titles;
+        this.lastModified = lastModified;
+        this.excerpts = excerpts;
+        this.hasMore = hasMore;
+        this.total = total;
+    }
+
+    public int size() {
+        return paths.length;
+    }
+    public String getPath(int i) {
+        return paths[i];
+    }
+    public String getTitle(int i) {
+        return titles[i];
+    }
+    public String getLastModified(int i) {
+        return lastModified[i];
+    }
+    public String getExcerpt(int i) {
+        return excerpts[i];
+    }
+    public boolean hasMore() {
+        return hasMore;
+    }
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * @return rough number of bytes the result occupies on the heap
+     */
+    public long estimateBytes() {
+        long bytes = 48 + 4 * (16 + 4L * paths.length);
+        for (int i = 0; i < paths.length; i++) {
+            bytes += bytes(paths[i]) + bytes(titles[i]) + bytes(lastModified[i]) + bytes(excerpts[i]);
+        }
+        return bytes;
+    }
+
+    private static long bytes(String value) {
+        return value != null ? 40 + 2L * value.length() : 0;
+    }
+}
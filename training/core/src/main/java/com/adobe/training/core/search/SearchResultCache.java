@@ -0,0 +1,35 @@
+package com.adobe.training.core.search;
+
+/**
+ * Cache of SearchServlet result pages. A page is identified by the user, query root, language, term,
+ * offset and limit. Changes below a query root drop the cached pages of that root.
+ *
+ * To not cache a page read while the content of its root changed, read getRevision(root) before running
+ * the query and pass it to put.
+ */
+public interface SearchResultCache {
+
+    /**
+     * @return the cached page, null if there is none or it expired
+     */
+    public SearchResult get(String user, String root, String language, String term, long offset, int limit);
+
+    /**
+     * Caches the page, unless a change overlapping its root was seen since the revision was read
+     */
+    public void put(String user, String root, String language, String term, long offset, int limit,
+            SearchResult result, long revision);
+
+    /**
+     * @return the revision of the root, it changes with every change below or above the root
+     */
+    public long getRevision(String root);
+
+    /**
+     * Records the time taken by a search request
+     *
+     * @param cached true if the request was answered from the cache
+     * @param startNanos System.nanoTime() at the start of the request
+     */
+    public void recordRequest(boolean cached, long startNanos);
+}
@@ -0,0 +1,414 @@
+package com.adobe.training.core.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Compressed prefix trie (radix tree) of page titles and tags, for typeahead suggestions.
+ *
+ * A page is indexed with its title, the rest of its title from every word on (so "ipsum" suggests
+ * "Lorem Ipsum") and the titles of its tags, all in lower case. An edge holds all characters up to
+ * the next branch, a node has one child per next character, sorted.
+ *
+ * Every node keeps the best weight of its subtree: a lookup walks down the prefix, then visits the
+ * subtree best first and stops after k pages instead of reading every page with the prefix.
+ * The pages of a node are sorted by weight and visited one at a time.
+ *
+ * Lookups share a read lock, updates take the write lock.
+ */
+public class SuggestIndex {
+
+    private static final Node[] NO_CHILDREN = new Node[0];
+    private static final Suggestion[] NO_SUGGESTIONS = new Suggestion[0];
+
+    //higher weight first, pages of a node before a subtree of the same weight, then by path
+    private static final Comparator<Object> RANK = new Comparator<Object>() {
+        @Override
+        public int compare(Object a, Object b) {
+            long rankA = a instanceof Node ? ((Node) a).best : ((Cursor) a).current().getWeight();
+            long rankB = b instanceof Node ? ((Node) b).best : ((Cursor) b).current().getWeight();
+            if (rankA != rankB) return rankA > rankB ? -1 : 1;
+            boolean nodeA = a instanceof Node;
+            boolean nodeB = b instanceof Node;
+            if (nodeA != nodeB) return nodeA ? 1 : -1;
+            if (nodeA) return 0;
+            return ((Cursor) a).current().getPath().compareTo(((Cursor) b).current().getPath());
+        }
+    };
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Node root = new Node(new char[0]);
+    //path -> indexed page
+    private final Map<String, Suggestion> pages = new HashMap<String, Suggestion>();
+    private int nodes = 1;
+
+    /**
+     * Indexes the page, replacing what was indexed for its path before
+     *
+     * @param tags titles of the tags of the page, may be null
+     * @param weight popularity of the page, higher weights are suggested first
+     */
+    public void put(String path, String title, String[] tags, long weight) {
+        Suggestion suggestion = new Suggestion(path, title, weight, tags != null ? tags : new String[0]);
+        lock.writeLock().lock();
+        try {
+            Suggestion old = pages.put(path, suggestion);
+            if (old != null) unindex(old);
+            for (String key : keysOf(suggestion)) {
+                insert(key, suggestion);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return true if the page was indexed
+     */
+    public boolean remove(String path) {
+        lock.writeLock().lock();
+        try {
+            Suggestion old = pages.remove(path);
+            if (old == null) return false;
+            unindex(old);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes the page and all pages below it
+     *
+     * @return the number of pages removed
+     */
+    public int removeTree(String path) {
+        String below = path + "/";
+        int removed = 0;
+        lock.writeLock().lock();
+        try {
+            for (Iterator<Suggestion> suggestions = pages.values().iterator(); suggestions.hasNext();) {
+                Suggestion suggestion = suggestions.next();
+                if (suggestion.getPath().equals(path) || suggestion.getPath().startsWith(below)) {
+                    suggestions.remove();
+                    unindex(suggestion);
+                    removed++;
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return removed;
+    }
+
+    /**
+     * @return the k pages with the highest weight having a key starting with the prefix, each page once
+     */
+    public List<Suggestion> lookup(String prefix, int k) {
+        String key = normalize(prefix);
+        if (k < 1 || key.length() == 0) return Collections.emptyList();
+        List<Suggestion> result = new ArrayList<Suggestion>(k);
+        lock.readLock().lock();
+        try {
+            Node node = root;
+            int i = 0;
+            while (i < key.length()) {
+                int index = node.childIndex(key.charAt(i));
+                if (index < 0) return result;
+                Node child = node.children[index];
+                int common = commonLength(child.label, key, i);
+                i += common;
+                //the prefix may end within the edge, its whole subtree matches
+                if (i < key.length() && common < child.label.length) return result;
+                node = child;
+            }
+            Set<String> seen = new HashSet<String>();
+            PriorityQueue<Object> queue = new PriorityQueue<Object>(16, RANK);
+            queue.add(node);
+            while (!queue.isEmpty() && result.size() < k) {
+                Object next = queue.poll();
+                if (next instanceof Cursor) {
+                    Cursor cursor = (Cursor) next;
+                    Suggestion suggestion = cursor.current();
+                    if (seen.add(suggestion.getPath())) result.add(suggestion);
+                    if (++cursor.next < cursor.entries.length) queue.add(cursor);
+                } else {
+                    Node expanded = (Node) next;
+                    if (expanded.entries.length > 0) queue.add(new Cursor(expanded.entries));
+                    queue.addAll(Arrays.asList(expanded.children));
+                }
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the number of indexed pages
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return pages.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int getNodeCount() {
+        lock.readLock().lock();
+        try {
+            return nodes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the text in lower case with single spaces, "" for null
+     */
+    static String normalize(String text) {
+        if (text == null) return "";
+        StringBuilder normalized = new StringBuilder(text.length());
+        boolean space = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                space = normalized.length() > 0;
+            } else {
+                if (space) normalized.append(' ');
+                space = false;
+                normalized.append(c);
+            }
+        }
+        return normalized.toString().toLowerCase(Locale.ENGLISH);
+    }
+
+    /**
+     * @return the title, the title from every word on and the tags, normalized
+     */
+    private static Set<String> keysOf(Suggestion suggestion) {
+        Set<String> keys = new LinkedHashSet<String>();
+        addKeys(keys, normalize(suggestion.getTitle()), true);
+        for (String tag : suggestion.tags) {
+            addKeys(keys, normalize(tag), false);
+        }
+        return keys;
+    }
+
+    /**
+     * Adds the text and, if words is true, the text from every word on
+     */
+    private static void addKeys(Set<String> keys, String text, boolean words) {
+        if (text.length() == 0) return;
+        keys.add(text);
+        if (!words) return;
+        for (int i = 1; i < text.length(); i++) {
+            if (Character.isLetterOrDigit(text.charAt(i)) && !Character.isLetterOrDigit(text.charAt(i - 1))) {
+                keys.add(text.substring(i));
+            }
+        }
+    }
+
+    private void insert(String key, Suggestion suggestion) {
+        Node node = root;
+        int i = 0;
+        while (true) {
+            if (suggestion.getWeight() > node.best) node.best = suggestion.getWeight();
+            if (i == key.length()) {
+                node.entries = insertByWeight(node.entries, suggestion);
+                return;
+            }
+            int index = node.childIndex(key.charAt(i));
+            if (index < 0) {
+                Node leaf = new Node(key.substring(i).toCharArray());
+                leaf.best = suggestion.getWeight();
+                leaf.entries = new Suggestion[]{suggestion};
+                node.children = insertAt(node.children, -index - 1, leaf);
+                nodes++;
+                return;
+            }
+            Node child = node.children[index];
+            int common = commonLength(child.label, key, i);
+            if (common < child.label.length) {
+                //split the edge at the first differing character
+                Node middle = new Node(Arrays.copyOfRange(child.label, 0, common));
+                child.label = Arrays.copyOfRange(child.label, common, child.label.length);
+                middle.children = new Node[]{child};
+                middle.best = child.best;
+                node.children[index] = middle;
+                nodes++;
+                child = middle;
+            }
+            node = child;
+            i += common;
+        }
+    }
+
+    /**
+     * Removes the keys of the suggestion, merges the nodes left with a single child and updates the best weights
+     */
+    private void unindex(Suggestion suggestion) {
+        List<Node> path = new ArrayList<Node>();
+        for (String key : keysOf(suggestion)) {
+            path.clear();
+            Node node = root;
+            int i = 0;
+            while (node != null && i < key.length()) {
+                path.add(node);
+                int index = node.childIndex(key.charAt(i));
+                node = index >= 0 ? node.children[index] : null;
+                if (node != null) i += node.label.length;
+            }
+            if (node == null) continue;
+            node.entries = without(node.entries, suggestion);
+            for (int depth = path.size(); depth >= 0; depth--) {
+                Node current = depth == path.size() ? node : path.get(depth);
+                if (depth > 0 && current.entries.length == 0 && current.children.length <= 1) {
+                    Node parent = path.get(depth - 1);
+                    int index = parent.childIndex(current.label[0]);
+                    if (current.children.length == 0) {
+                        parent.children = removeAt(parent.children, index);
+                    } else {
+                        //merge the edge into the only child
+                        Node only = current.children[0];
+                        char[] label = Arrays.copyOf(current.label, current.label.length + only.label.length);
+                        System.arraycopy(only.label, 0, label, current.label.length, only.label.length);
+                        only.label = label;
+                        parent.children[index] = only;
+                    }
+                    nodes--;
+                } else {
+                    current.updateBest();
+                }
+            }
+        }
+    }
+
+    private static int commonLength(char[] label, String key, int offset) {
+        int max = Math.min(label.length, key.length() - offset);
+        int common = 0;
+        while (common < max && label[common] == key.charAt(offset + common)) {
+            common++;
+        }
+        return common;
+    }
+
+    private static Suggestion[] insertByWeight(Suggestion[] entries, Suggestion suggestion) {
+        int index = 0;
+        while (index < entries.length && entries[index].getWeight() >= suggestion.getWeight()) {
+            index++;
+        }
+        Suggestion[] inserted = new Suggestion[entries.length + 1];
+        System.arraycopy(entries, 0, inserted, 0, index);
+        inserted[index] = suggestion;
+        System.arraycopy(entries, index, inserted, index + 1, entries.length - index);
+        return inserted;
+    }
+
+    private static Suggestion[] without(Suggestion[] entries, Suggestion suggestion) {
+        for (int i = 0; i < entries.length; i++) {
+            if (entries[i] == suggestion) {
+                if (entries.length == 1) return NO_SUGGESTIONS;
+                Suggestion[] remaining = new Suggestion[entries.length - 1];
+                System.arraycopy(entries, 0, remaining, 0, i);
+                System.arraycopy(entries, i + 1, remaining, i, entries.length - i - 1);
+                return remaining;
+            }
+        }
+        return entries;
+    }
+
+    private static Node[] insertAt(Node[] children, int index, Node child) {
+        Node[] inserted = new Node[children.length + 1];
+        System.arraycopy(children, 0, inserted, 0, index);
+        inserted[index] = child;
+        System.arraycopy(children, index, inserted, index + 1, children.length - index);
+        return inserted;
+    }
+
+    private static Node[] removeAt(Node[] children, int index) {
+        if (children.length == 1) return NO_CHILDREN;
+        Node[] remaining = new Node[children.length - 1];
+        System.arraycopy(children, 0, remaining, 0, index);
+        System.arraycopy(children, index + 1, remaining, index, children.length - index - 1);
+        return remaining;
+    }
+
+    private static class Node {
+        //characters of the edge leading to this node
+        private char[] label;
+        //sorted by the first character of their label
+        private Node[] children = NO_CHILDREN;
+        //pages with a key ending here, highest weight first
+        private Suggestion[] entries = NO_SUGGESTIONS;
+        //highest weight in the subtree
+        private long best = Long.MIN_VALUE;
+
+        Node(char[] label) {
+            this.label = label;
+        }
+
+        /**
+         * @return the index of the child starting with c, (-(insertion point) - 1) if there is none
+         */
+        int childIndex(char c) {
+            int low = 0;
+            int high = children.length - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                char first = children[middle].label[0];
+                if (first < c) {
+                    low = middle + 1;
+                } else if (first > c) {
+                    high = middle - 1;
+                } else {
+                    return middle;
+                }
+            }
+            return -(low + 1);
+        }
+
+        void updateBest() {
+            long max = Long.MIN_VALUE;
+            for (Suggestion entry : entries) {
+                if (entry.getWeight() > max) max = entry.getWeight();
+            }
+            for (Node child : children) {
+                if (child.best > max) max = child.best;
+            }
+            best = max;
+        }
+    }
+
+    /**
+     * The next page of a node to visit, the pages of a node are visited one by one
+     * instead of queueing all of them
+     */
+    private static class Cursor {
+        private final Suggestion[] entries;
+        private int next;
+
+        Cursor(Suggestion[] entries) {
+            this.entries = entries;
+        }
+
+        Suggestion current() {
+            return entries[next];
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.adobe.training.core.search;
+
+/**
+ * A page suggested for a typed prefix, ranked by its weight
+ */
+public class Suggestion {
+
+    private final String path;
+    private final String title;
+    private final long weight;
+    //titles of the tags, the keys are derived again from title and tags to remove the page
+    final String[] tags;
+
+    Suggestion(String path, String title, long weight, String[] tags) {
+        this.path = path;
+        this.title = title;
+        this.weight = weight;
+        this.tags = tags;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public long getWeight() {
+        return weight;
+    }
+
+    @Override
+    public String toString() {
+        return title + " (" + path + ", " + weight + ")";
+    }
+}
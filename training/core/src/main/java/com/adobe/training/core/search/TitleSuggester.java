@@ -0,0 +1,21 @@
+package com.adobe.training.core.search;
+
+import java.util.List;
+
+import org.apache.sling.api.resource.ResourceResolver;
+
+/**
+ * Typeahead suggestions of the pages of a site from an in-memory SuggestIndex, without running a query.
+ * The index holds the pages the service user can read, only the pages the requesting user can read are suggested.
+ */
+public interface TitleSuggester {
+
+    /**
+     * @param resolver resolver of the requesting user, pages it cannot read are not suggested
+     * @param path path of a page, the pages of the site root containing it are suggested
+     * @param prefix what has been typed so far
+     * @param limit maximum number of suggestions
+     * @return the suggestions with the highest popularity weight first, empty if the page is in no site root
+     */
+    public List<Suggestion> suggest(ResourceResolver resolver, String path, String prefix, int limit);
+}
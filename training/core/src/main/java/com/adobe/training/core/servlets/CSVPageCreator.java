@@ -1,31 +1,30 @@
 package com.adobe.training.core.servlets;
 
-import java.io.BufferedReader;
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 
-import javax.jcr.Session;
+import java.util.Map;
+
 import javax.servlet.ServletException;
 
 import org.apache.felix.scr.annotations.Reference;
 import org.apache.felix.scr.annotations.sling.SlingServlet;
 import org.apache.sling.api.SlingHttpServletRequest;
 import org.apache.sling.api.SlingHttpServletResponse;
-import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.request.RequestParameter;
 import org.apache.sling.api.servlets.SlingAllMethodsServlet;
 import org.apache.sling.commons.json.JSONException;
 import org.apache.sling.commons.json.JSONObject;
+import org.apache.sling.commons.json.io.JSONWriter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.day.cq.replication.ReplicationActionType;
-import com.day.cq.replication.Replicator;
-import com.day.cq.tagging.Tag;
-import com.day.cq.tagging.TagManager;
-import com.day.cq.wcm.api.Page;
-import com.day.cq.wcm.api.PageManager;
+import com.adobe.training.core.importer.CsvRowReader;
+import com.adobe.training.core.importer.ImportJobQueue;
+import com.adobe.training.core.importer.ImportListener;
+import com.adobe.training.core.importer.ImportReport;
+import com.adobe.training.core.importer.PageImporter;
 
 /**
  * This Servlet ingests a .csv file with the following columns:
@@ -40,6 +39,36 @@ import com.day.cq.wcm.api.PageManager;
  *
  * It is assumed there is no header to the csv file
  *
+ * The file is read while it is uploaded, row by row, and the result of each row is written
+ * as soon as the row is processed, so memory use does not grow with the size of the file. It is sent as:
+ *
+ * -the raw request body (Ex: curl -u admin:admin -H "Content-Type: text/csv" --data-binary @pages.csv
+ *  http://localhost:4502/etc/trainingproject/pagecreator.csv.html)
+ * -a multipart file upload named importer, Sling keeps large uploads in a temporary file instead of the heap
+ * -the form field importer, as before
+ *
+ * The file is read as UTF-8 unless the request sets another charset.
+ *
+ * The pages are created by the PageImporter, chunkSize pages per commit (default: its chunk.size, at most its max.chunk.size).
+ * An import interrupted or failed midway resumes after its last committed chunk when the same file is
+ * posted again with the same importId (default: the hash of the user and the first row of the file).
+ * A file posted while an import with the same id is running is not imported, the report holds the error.
+ * restart=true ignores the checkpoint of a previous run. parallelism sets the workers creating the pages
+ * (default: the parallelism of the PageImporter, at most its max.parallelism, else the request is answered 400),
+ * the rows are partitioned by subtree, see PageImporter.
+ * The result of a row is written once its chunk is committed, the counts of the import are written last:
+ *
+ * {"/content/...":{"Status":"Successful", ...}, ..., ":report":{"rows":1000,"created":998,"pagesPerSecond":85.2, ...}}
+ *
+ * Pages to publish are not activated one by one in the request: they are queued once their chunk is committed
+ * (their result has "Publish":"Queued") and activated in batches by the PagePublisher while the import goes on.
+ * The report counts the published pages and the replication time of the batches (publishBatch.p50Micros, ...).
+ *
+ * A large file can time out the connection before it is imported. With async=true the file is stored and imported
+ * by a Sling job, the response is sent at once with the id of the job and the URL of its progress (ImportStatusServlet):
+ *
+ * {"jobId":"4f1c...","status":"/etc/trainingproject/pagecreator.importstatus.json?jobId=4f1c..."}
+ *
  * To allow for POST requests for this importer the OSGi config
  * "Adobe Granite CSRF Filter" com.adobe.granite.csrf.impl.CSRFFilter
  * Needs to be configured with:
@@ -55,152 +84,112 @@ public class CSVPageCreator extends SlingAllMethodsServlet{
     Logger logger = LoggerFactory.getLogger(getClass());
 
     @Reference
-    private Replicator replicator;
+    private PageImporter pageImporter;
 
-    private Resource resource;
+    @Reference
+    private ImportJobQueue importJobQueue;
 
     public void doPost(SlingHttpServletRequest request, SlingHttpServletResponse response)throws ServletException,IOException{
-        response.setHeader("Content-Type", "application/json");
-        JSONObject resultObject = new JSONObject();
-        resource = request.getResource();
+        int chunkSize = intParameter(request, "chunkSize");
+        int parallelism = intParameter(request, "parallelism");
+        if(parallelism > pageImporter.getMaxParallelism()){
+            response.sendError(SlingHttpServletResponse.SC_BAD_REQUEST, "parallelism is at most " + pageImporter.getMaxParallelism());
+            return;
+        }
+        InputStream stream = openCSV(request);
+        if(stream == null){
+            response.sendError(SlingHttpServletResponse.SC_BAD_REQUEST, "No CSV file in the request body or the importer parameter");
+            return;
+        }
+        String charset = request.getCharacterEncoding() != null ? request.getCharacterEncoding() : "UTF-8";
+        CsvRowReader rows = new CsvRowReader(new InputStreamReader(stream, charset));
+
+        if(Boolean.parseBoolean(request.getParameter("async"))){
+            enqueue(request, response, stream, charset, chunkSize, parallelism);
+            return;
+        }
 
-        String param = request.getParameter("importer");
-        byte[] input = param.getBytes();
-        InputStream stream = new ByteArrayInputStream(input);
+        response.setHeader("Content-Type", "application/json");
+        response.setCharacterEncoding("UTF-8");
+        //Write the result of each row to the page while the file is read
+        final JSONWriter out = new JSONWriter(response.getWriter());
         try {
-            resultObject = readCSV(stream);
+            out.object();
+            ImportReport report = pageImporter.importPages(request.getResourceResolver(), rows, importIdOf(request),
+                    chunkSize, parallelism, Boolean.parseBoolean(request.getParameter("restart")), new ImportListener() {
+                        @Override
+                        public void rowImported(String key, Map<String, Object> result) {
+                            try {
+                                out.key(key).value(new JSONObject(result));
+                            } catch (JSONException e) {
+                                logger.error("Could not write the result of " + key, e);
+                            }
+                        }
+                    });
+            out.key(":report").value(new JSONObject(report.toMap()));
+            out.endObject();
         } catch (JSONException e) {
             logger.error("Failure to Read CSV: " + e);
+        } finally {
+            rows.close();
         }
-
-        if(resultObject != null){
-            //Write the result to the page
-            response.getWriter().print(resultObject.toString());
-            response.getWriter().close();
-        }
+        response.getWriter().close();
     }
 
     /**
-     * Reads the CSV file. The CSV file MUST be in the form of:
-     *
-     * JCR path, Page Title, Page Template, AEM Tag, Publish boolean
-     *
-     * @param stream Stream from the CSV
-     * @return JSON object that contains the results of the page creation process
+     * Queues the import of the file and answers 202 with the job id and the URL of its progress
      */
-    private JSONObject readCSV(InputStream stream) throws IOException, JSONException {
-        JSONObject out = new JSONObject();
-        BufferedReader br = new BufferedReader(new InputStreamReader(stream));
-
-        if(br != null){
-            String line;
-            String[] newPage;
-            JSONObject createdPageObject = null;
-            //Read each line of the CSV
-            while ((line = br.readLine()) != null){
-                newPage = line.split(",");
-                String aemTag = null;
-                String publishFlag = null;
-                String aemTemplatePath = null;
-
-                //If the line has a template, tag, publish flag, set those variables
-                if(newPage.length == 5){
-                    aemTemplatePath = newPage[2];
-                    aemTag = newPage[3];
-                    publishFlag = newPage[4];
-                }else if(newPage.length == 4){
-                    aemTemplatePath = newPage[2];
-                    aemTag = newPage[3];
-                }else if(newPage.length == 3){
-                    publishFlag = newPage[2];
-                }
-
-                //As long as there is a path and title, the page can be created
-                if((newPage.length  > 1)
-                        && !newPage[0].isEmpty()
-                        && !newPage[1].isEmpty()){
-                    String path = newPage[0];
-                    String title = newPage[1];
-                    try {
-                        createdPageObject = createTrainingPage(path, title, aemTemplatePath, aemTag, publishFlag);
-                    } catch (Exception e) {
-                        logger.error(path +" not created successfully: " + e);
-                    }
-
-                    //add the status of the row into the json array
-                    if(createdPageObject != null){
-                        out.put(path, createdPageObject); //Print Title of Page
-                        createdPageObject = null;
-                    }else{
-                        out.put(path, new JSONObject().put("Status","Could not create a page"));
-                    }
-                }
-                else {
-                    out.put(line, new JSONObject().put("Status","Could not properly parce"));
-                }
-            }
+    private void enqueue(SlingHttpServletRequest request, SlingHttpServletResponse response, InputStream stream,
+            String charset, int chunkSize, int parallelism) throws IOException {
+        String jobId;
+        try {
+            jobId = importJobQueue.enqueue(stream, charset, request.getResourceResolver().getUserID(), chunkSize, parallelism);
+        } finally {
+            stream.close();
         }
-        br.close();
-        return out;
+        response.setStatus(SlingHttpServletResponse.SC_ACCEPTED);
+        response.setHeader("Content-Type", "application/json");
+        response.setCharacterEncoding("UTF-8");
+        try {
+            new JSONWriter(response.getWriter()).object()
+                    .key("jobId").value(jobId)
+                    .key("status").value(request.getResource().getPath() + ".importstatus.json?jobId=" + jobId)
+                    .endObject();
+        } catch (JSONException e) {
+            logger.error("Could not write the job of import " + jobId, e);
+        }
+        response.getWriter().close();
     }
 
-    /** Helper method to create the page based on available input
-     *
-     * @param path JCR location of the page to be created
-     * @param title Page Title
-     * @param template AEM Template this page should be created from. The template must exist in the JCR already.
-     * @param tag Tag must already be created in AEM. The tag will be in the form of a path. Ex /etc/tags/marketing/interest
-     * @param publish boolean to publish the page
-     * @return
+    /**
+     * @return the stream of the CSV file: the request body, unless it is a form, else the importer parameter.
+     * null if there is none
      */
-    private JSONObject createTrainingPage(String path, String title, String template, String tag, String publish) throws Exception{
-        JSONObject pageInfo = new JSONObject();
-
-        if(path==null || title==null) return null;
-
-        //Parse the path to get the pageNodeName and parentPath
-        int lastSlash = path.lastIndexOf("/");
-        String pageNodeName = path.substring(lastSlash+1);
-        String parentPath = path.substring(0, lastSlash);
-
-        if(pageNodeName==null || parentPath==null) return null;
-
-        //Set a default template if none is given
-        if(template == null || template.isEmpty()){
-            template = "/apps/trainingproject/templates/page-content";
-        }
-
-        //Create page
-        PageManager pageManager = resource.getResourceResolver().adaptTo(PageManager.class);
-        Page p = pageManager.create(parentPath,
-                pageNodeName,
-                template,
-                title);
-        //Add a tag to the page
-        if(tag != null && !tag.isEmpty()) {
-            //TagManager can be retrieved via adaptTo
-            TagManager tm = resource.getResourceResolver().adaptTo(TagManager.class);
-            tm.setTags(p.getContentResource(),
-                    new Tag[]{tm.resolve(tag)},
-                    true);
+    private static InputStream openCSV(SlingHttpServletRequest request) throws IOException {
+        String contentType = request.getContentType() != null ? request.getContentType().toLowerCase() : "";
+        if(!contentType.startsWith("multipart/") && !contentType.startsWith("application/x-www-form-urlencoded")){
+            return request.getInputStream();
         }
+        RequestParameter param = request.getRequestParameter("importer");
+        return param != null ? param.getInputStream() : null;
+    }
 
-        //Publish page if requested
-        boolean publishPage = Boolean.parseBoolean(publish);
-        if(publishPage){
-            //Replicator is exposed as a service
-            replicator.replicate(resource.getResourceResolver().adaptTo(Session.class),
-                    ReplicationActionType.ACTIVATE,
-                    p.getPath());
+    /**
+     * @return the parameter as an int, 0 if it is missing or not a number
+     */
+    private static int intParameter(SlingHttpServletRequest request, String name) {
+        try {
+            return request.getParameter(name) != null ? Integer.parseInt(request.getParameter(name)) : 0;
+        } catch (NumberFormatException e) {
+            return 0;
         }
-
-        pageInfo.put("Status", "Successful");
-        pageInfo.put("Location", p.getPath());
-        pageInfo.put("Title", p.getTitle());
-        pageInfo.put("Template Used", p.getTemplate().getPath());
-        pageInfo.put("Tagged with", p.getTags()[0].getTitle());
-        pageInfo.put("Was Published", publishPage);
-        return pageInfo;
     }
 
+    /**
+     * @return the importId parameter, null to let the PageImporter derive it from the user and the file.
+     * The file name is not used, it is the same for different files and users
+     */
+    private static String importIdOf(SlingHttpServletRequest request) {
+        return request.getParameter("importId");
+    }
 }
@@ -0,0 +1,225 @@
+package com.adobe.training.core.servlets;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.felix.scr.annotations.Reference;
+import org.apache.felix.scr.annotations.sling.SlingServlet;
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.api.resource.ResourceUtil;
+import org.apache.sling.api.resource.SyntheticResource;
+import org.apache.sling.api.servlets.SlingAllMethodsServlet;
+import org.apache.sling.commons.json.JSONException;
+import org.apache.sling.commons.json.io.JSONWriter;
+import org.apache.sling.commons.osgi.PropertiesUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.adobe.training.core.StockDataImporter;
+import com.adobe.training.core.impl.SimulatedQuoteSource;
+import com.adobe.training.core.metrics.LatencyHistogram;
+import com.adobe.training.core.metrics.StatisticsProvider;
+import com.adobe.training.core.stock.QuoteWriter;
+import com.day.cq.polling.importer.ImportException;
+import com.day.cq.polling.importer.Importer;
+
+/**
+ * Load driver of the stock import: runs import cycles of many simulated symbols and reports the end-to-end
+ * throughput (fetch, parse, write and commit) and the commit latency.
+ *
+ * The Training Stock Data Importer must use the simulated source (source.url = simulator:quotes.csv?s=),
+ * every symbol changes between two cycles so nothing is skipped as unchanged.
+ *
+ * Example: curl -u admin:admin -X POST http://localhost:4502/bin/trainingproject/importload.json
+ *              -d symbols=10000 -d cycles=5 -d path=/content/trainingproject/loadtest
+ *
+ * The stock pages are written below path, which has to be below /content/trainingproject, by the service user
+ * of the importer. The caller must be allowed to add nodes and set properties at path.
+ * At most MAX_SYMBOLS symbols and MAX_CYCLES cycles are run.
+ * The run stops with a 500 at the first cycle the importer counts as failed (see its failedCycles statistic).
+ */
+@SlingServlet(paths = "/bin/trainingproject/importload", methods = "POST")
+public class ImportLoadServlet extends SlingAllMethodsServlet {
+
+    private static final long serialVersionUID = 1L;
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private static final String ROOT = "/content/trainingproject";
+    private static final String DEFAULT_PATH = ROOT + "/loadtest";
+    private static final int MAX_SYMBOLS = 100000;
+    private static final int MAX_CYCLES = 100;
+
+    @Reference(target = "(importer.scheme=stock)", bind = "bindImporter", unbind = "unbindImporter")
+    private Importer importer;
+    //source.url service property of the importer
+    private volatile String importerSourceUrl;
+
+    @Reference
+    private QuoteWriter quoteWriter;
+
+    @Reference
+    private SimulatedQuoteSource quoteSource;
+
+    @Override
+    protected void doPost(SlingHttpServletRequest request, SlingHttpServletResponse response)
+            throws ServletException, IOException {
+        int symbolCount;
+        int cycles;
+        try {
+            symbolCount = parameter(request, "symbols", 10000);
+            cycles = parameter(request, "cycles", 5);
+        } catch (NumberFormatException e) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, "symbols and cycles must be numbers");
+            return;
+        }
+        if (symbolCount > MAX_SYMBOLS || cycles > MAX_CYCLES) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST,
+                    "At most " + MAX_SYMBOLS + " symbols and " + MAX_CYCLES + " cycles");
+            return;
+        }
+        //normalized, so ../ cannot leave the root
+        String path = ResourceUtil.normalize(request.getParameter("path") != null ? request.getParameter("path")
+                : DEFAULT_PATH);
+        if (path == null || !path.startsWith(ROOT + "/")) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, "path must be below " + ROOT);
+            return;
+        }
+        //the importer writes with its service user, the caller has to be allowed to write there
+        if (!mayWrite(request, path)) {
+            response.sendError(HttpServletResponse.SC_FORBIDDEN, "Not allowed to write at " + path);
+            return;
+        }
+        String sourceUrl = importerSourceUrl;
+        if (sourceUrl == null || !sourceUrl.startsWith(SimulatedQuoteSource.SCHEME + ":")) {
+            response.sendError(HttpServletResponse.SC_CONFLICT,
+                    "Configure the stock importer with source.url = " + SimulatedQuoteSource.SOURCE_URL);
+            return;
+        }
+
+        List<String> symbols = quoteSource.getSymbols(symbolCount);
+        StringBuilder dataSource = new StringBuilder();
+        for (String symbol : symbols) {
+            if (dataSource.length() > 0) dataSource.append(',');
+            dataSource.append(symbol);
+        }
+        //the importer only uses the path of the target, the stock pages are created below it
+        SyntheticResource target = new SyntheticResource(request.getResourceResolver(), path, null);
+
+        LatencyHistogram cycleLatency = new LatencyHistogram();
+        LatencyHistogram commitLatency = new LatencyHistogram();
+        long start = System.nanoTime();
+        try {
+            for (int cycle = 0; cycle < cycles; cycle++) {
+                if (cycle > 0) quoteSource.stepAll();
+                long cycleStart = System.nanoTime();
+                long failedBefore = failedCycles();
+                importer.importData("stock", dataSource.toString(), target);
+                if (failedCycles() > failedBefore) {
+                    Object error = importerStatistics().get("lastError");
+                    response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR,
+                            "Import cycle " + (cycle + 1) + " of " + cycles + " failed: " + error);
+                    return;
+                }
+                //commit what the writer still holds, so the cycle is measured until the quotes are saved
+                long flushStart = System.nanoTime();
+                quoteWriter.flush();
+                commitLatency.recordSince(flushStart);
+                cycleLatency.recordSince(cycleStart);
+            }
+        } catch (ImportException e) {
+            logger.error("Import load run failed", e);
+            response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, e.getMessage());
+            return;
+        }
+        long millis = (System.nanoTime() - start) / 1000000;
+
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+        JSONWriter writer = new JSONWriter(response.getWriter());
+        try {
+            writer.object();
+            writer.key("symbols").value(symbols.size());
+            writer.key("cycles").value(cycles);
+            writer.key("totalMillis").value(millis);
+            writer.key("quotesPerSecond").value(millis > 0 ? symbols.size() * (long) cycles * 1000.0 / millis : 0.0);
+            writeHistogram(writer, "cycle", cycleLatency);
+            writeHistogram(writer, "finalCommit", commitLatency);
+            if (quoteWriter instanceof StatisticsProvider) {
+                writeStatistics(writer, (StatisticsProvider) quoteWriter);
+            }
+            if (importer instanceof StatisticsProvider) {
+                writeStatistics(writer, (StatisticsProvider) importer);
+            }
+            writer.endObject();
+        } catch (JSONException e) {
+            logger.error("Could not write the load run results", e);
+        }
+        response.getWriter().close();
+    }
+
+    protected void bindImporter(Importer importer, Map<String, Object> properties) {
+        this.importer = importer;
+        importerSourceUrl = PropertiesUtil.toString(properties.get(StockDataImporter.PROPERTY_SOURCE_URL), null);
+    }
+
+    protected void unbindImporter(Importer importer, Map<String, Object> properties) {
+        if (this.importer == importer) {
+            this.importer = null;
+            importerSourceUrl = null;
+        }
+    }
+
+    private boolean mayWrite(SlingHttpServletRequest request, String path) {
+        Session session = request.getResourceResolver().adaptTo(Session.class);
+        if (session == null) return false;
+        try {
+            return session.hasPermission(path, Session.ACTION_ADD_NODE + "," + Session.ACTION_SET_PROPERTY);
+        } catch (RepositoryException e) {
+            logger.warn("Could not check the permissions at " + path, e);
+            return false;
+        }
+    }
+
+    private Map<String, Object> importerStatistics() {
+        return importer instanceof StatisticsProvider
+                ? ((StatisticsProvider) importer).getStatistics() : Collections.<String, Object>emptyMap();
+    }
+
+    /**
+     * @return the failedCycles statistic of the importer, 0 if it has none
+     */
+    private long failedCycles() {
+        Object failed = importerStatistics().get("failedCycles");
+        return failed instanceof Number ? ((Number) failed).longValue() : 0;
+    }
+
+    private void writeHistogram(JSONWriter writer, String name, LatencyHistogram histogram) throws JSONException {
+        writer.key(name).object();
+        writer.key("meanMicros").value(histogram.getMean());
+        writer.key("p50Micros").value(histogram.getPercentile(50));
+        writer.key("p99Micros").value(histogram.getPercentile(99));
+        writer.key("maxMicros").value(histogram.getMax());
+        writer.endObject();
+    }
+
+    private void writeStatistics(JSONWriter writer, StatisticsProvider provider) throws JSONException {
+        writer.key(provider.getStatisticsName()).object();
+        for (Map.Entry<String, Object> stat : provider.getStatistics().entrySet()) {
+            writer.key(stat.getKey()).value(stat.getValue());
+        }
+        writer.endObject();
+    }
+
+    private int parameter(SlingHttpServletRequest request, String name, int defaultValue) {
+        String value = request.getParameter(name);
+        return value != null ? Math.max(1, Integer.parseInt(value)) : defaultValue;
+    }
+}
@@ -0,0 +1,55 @@
+package com.adobe.training.core.servlets;
+
+import java.io.IOException;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.felix.scr.annotations.Reference;
+import org.apache.felix.scr.annotations.sling.SlingServlet;
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.api.servlets.SlingSafeMethodsServlet;
+import org.apache.sling.commons.json.JSONObject;
+
+import com.adobe.training.core.importer.ImportJobQueue;
+import com.adobe.training.core.importer.ImportProgress;
+
+/**
+ * Progress of an import queued with CSVPageCreator async=true, read from the progress the job saves
+ * every few rows, Ex:
+ *
+ * http://localhost:4502/etc/trainingproject/pagecreator.importstatus.json?jobId=4f1c...
+ *
+ * {"state":"RUNNING","rows":42000,"created":41990,"failed":10,"rowsPerSecond":350.2,"etaSeconds":95,"percent":31,
+ *  "errors":["/content/trainingproject/en/x: Could not create a page", ...]}
+ */
+@SlingServlet(resourceTypes = "trainingproject/tools/pagecreator", selectors = "importstatus", extensions = "json")
+public class ImportStatusServlet extends SlingSafeMethodsServlet {
+
+    private static final long serialVersionUID = 2904723116620584145L;
+
+    @Reference
+    private ImportJobQueue importJobQueue;
+
+    @Override
+    public final void doGet(final SlingHttpServletRequest request, final SlingHttpServletResponse response)
+            throws ServletException, IOException {
+        String jobId = request.getParameter("jobId");
+        if (jobId == null || jobId.isEmpty()) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, "jobId is required");
+            return;
+        }
+        ImportProgress progress = importJobQueue.getProgress(jobId);
+        if (progress == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND, "No import " + jobId);
+            return;
+        }
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+        //the progress changes every few rows
+        response.setHeader("Cache-Control", "no-cache");
+        response.getWriter().print(new JSONObject(progress.toMap()).toString());
+        response.getWriter().close();
+    }
+}
@@ -0,0 +1,90 @@
+package com.adobe.training.core.servlets;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.felix.scr.annotations.Reference;
+import org.apache.felix.scr.annotations.sling.SlingServlet;
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.api.servlets.SlingAllMethodsServlet;
+import org.apache.sling.commons.json.JSONException;
+import org.apache.sling.commons.json.io.JSONWriter;
+import org.apache.sling.event.jobs.Job;
+import org.apache.sling.event.jobs.JobManager;
+import org.apache.sling.event.jobs.JobManager.QueryType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.adobe.training.core.impl.LastTradeMigrationJob;
+
+/**
+ * Starts the migration of lastTrade nodes to typed properties (see LastTradeMigrationJob).
+ * If a migration job is already queued or running, that job is returned instead of adding another one.
+ *
+ * Example: curl -u admin:admin -X POST http://localhost:4502/bin/trainingproject/migratelasttrade.json -d root=/content
+ *
+ * Progress is reported under lastTradeMigration at /bin/trainingproject/stats.json
+ */
+@SlingServlet(paths = "/bin/trainingproject/migratelasttrade", methods = "POST")
+public class LastTradeMigrationServlet extends SlingAllMethodsServlet {
+
+    private static final long serialVersionUID = 1L;
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    @Reference
+    private JobManager jobManager;
+
+    @Override
+    protected void doPost(SlingHttpServletRequest request, SlingHttpServletResponse response)
+            throws ServletException, IOException {
+        String root = request.getParameter(LastTradeMigrationJob.PROPERTY_ROOT);
+        if (root == null || root.isEmpty()) root = LastTradeMigrationJob.DEFAULT_ROOT;
+        if (!root.startsWith("/")) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Expecting an absolute root path");
+            return;
+        }
+
+        boolean added = false;
+        Job job = findJob(QueryType.ACTIVE);
+        if (job == null) job = findJob(QueryType.QUEUED);
+        if (job == null) {
+            Map<String, Object> properties = new HashMap<String, Object>();
+            properties.put(LastTradeMigrationJob.PROPERTY_ROOT, root);
+            job = jobManager.addJob(LastTradeMigrationJob.TOPIC, properties);
+            added = true;
+        }
+        if (job == null) {
+            response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "The migration job could not be added");
+            return;
+        }
+
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+        try {
+            new JSONWriter(response.getWriter()).object()
+                    .key("jobId").value(job.getId())
+                    .key("root").value(job.getProperty(LastTradeMigrationJob.PROPERTY_ROOT, root))
+                    .key("added").value(added)
+                    .endObject();
+        } catch (JSONException e) {
+            logger.error("Could not write the migration job", e);
+        }
+        response.getWriter().close();
+    }
+
+    /**
+     * @return a migration job of the type, null if there is none
+     */
+    @SuppressWarnings("unchecked")
+    private Job findJob(QueryType type) {
+        //no templates, the varargs array is empty
+        Collection<Job> jobs = jobManager.findJobs(type, LastTradeMigrationJob.TOPIC, 1);
+        return jobs.isEmpty() ? null : jobs.iterator().next();
+    }
+}
@@ -15,6 +15,7 @@ import org.apache.sling.commons.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.adobe.training.core.importer.PagePublisher;
 import com.day.cq.replication.ReplicationActionType;
 import com.day.cq.replication.Replicator;
 import com.day.cq.tagging.Tag;
@@ -29,6 +30,9 @@ import com.day.cq.wcm.api.PageManager;
  *
  * And outputs the AEM page created.
  *
+ * A page to publish is queued on the PagePublisher ("Publish":"Queued") and activated in a batch
+ * with the pages created by other requests, instead of being replicated in the request.
+ *
  * Make sure /apps/trainingproject/tools/pagecreator/pagecreator.html is added
  * Test with
  * http://localhost:4502/etc/trainingproject/pagecreator.html
@@ -51,6 +55,9 @@ public class PageCreator extends SlingAllMethodsServlet{
     @Reference
     private Replicator replicator;
 
+    @Reference
+    private PagePublisher pagePublisher;
+
     private Resource resource;
 
     public void doPost(SlingHttpServletRequest request, SlingHttpServletResponse response)throws ServletException,IOException{
@@ -114,13 +121,14 @@ public class PageCreator extends SlingAllMethodsServlet{
                     true);
         }
 
-        //Publish page if requested
+        //Queue the page for publication if requested, it is activated in a batch with the pages of other requests
         boolean publishPage = Boolean.parseBoolean(publish);
         if(publishPage){
-            //Replicator is exposed as a service
-            replicator.replicate(resource.getResourceResolver().adaptTo(Session.class),
+            //The batch is replicated with the service user, check the user may activate the page
+            replicator.checkPermission(resource.getResourceResolver().adaptTo(Session.class),
                     ReplicationActionType.ACTIVATE,
                     p.getPath());
+            pagePublisher.publish(p.getPath());
         }
 
         pageInfo.put("Status", "Successful");
@@ -128,7 +136,8 @@ public class PageCreator extends SlingAllMethodsServlet{
         pageInfo.put("Title", p.getTitle());
         pageInfo.put("Template Used", p.getTemplate().getPath());
         pageInfo.put("Tagged with", p.getTags()[0].getTitle());
-        pageInfo.put("Was Published", publishPage);
+        pageInfo.put("Was Published", false);
+        if(publishPage) pageInfo.put("Publish", "Queued");
         return pageInfo;
     }
 
@@ -0,0 +1,46 @@
+package com.adobe.training.core.servlets;
+
+import java.io.IOException;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.felix.scr.annotations.Reference;
+import org.apache.felix.scr.annotations.sling.SlingServlet;
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.api.servlets.SlingSafeMethodsServlet;
+
+import com.adobe.training.core.impl.SimulatedQuoteSource;
+
+/**
+ * Serves simulated quotes in the format of the Yahoo quotes.csv download, one line per requested symbol:
+ *
+ * http://localhost:4502/bin/trainingproject/quotefeed.csv?s=ADBE,MSFT
+ *
+ * Allows to run the HTTP import path (HttpQuoteFetcher) against a local source.
+ */
+@SlingServlet(paths = "/bin/trainingproject/quotefeed", methods = "GET")
+public class QuoteFeedServlet extends SlingSafeMethodsServlet {
+
+    private static final long serialVersionUID = 1L;
+
+    @Reference
+    private SimulatedQuoteSource quoteSource;
+
+    @Override
+    protected void doGet(SlingHttpServletRequest request, SlingHttpServletResponse response)
+            throws ServletException, IOException {
+        String symbols = request.getParameter("s");
+        if (symbols == null) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Expecting the comma separated symbols in s");
+            return;
+        }
+        StringBuilder csv = new StringBuilder();
+        quoteSource.appendCsv(symbols, csv);
+        response.setContentType("text/csv");
+        response.setCharacterEncoding("UTF-8");
+        response.getWriter().write(csv.toString());
+        response.getWriter().close();
+    }
+}
@@ -3,26 +3,31 @@ package com.adobe.training.core.servlets;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 import javax.jcr.Node;
-import javax.jcr.NodeIterator;
 import javax.jcr.RepositoryException;
-import javax.jcr.ValueFactory;
+import javax.jcr.Session;
+import javax.jcr.Value;
 import javax.jcr.query.Query;
-import javax.jcr.query.QueryManager;
-import javax.jcr.query.qom.Constraint;
-import javax.jcr.query.qom.QueryObjectModel;
-import javax.jcr.query.qom.QueryObjectModelFactory;
-import javax.jcr.query.qom.Selector;
+import javax.jcr.query.Row;
+import javax.jcr.query.RowIterator;
 import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletResponse;
 
+import org.apache.felix.scr.annotations.Reference;
 import org.apache.felix.scr.annotations.sling.SlingServlet;
 import org.apache.sling.api.SlingHttpServletRequest;
 import org.apache.sling.api.SlingHttpServletResponse;
 import org.apache.sling.api.servlets.SlingSafeMethodsServlet;
-import org.apache.sling.commons.json.JSONArray;
-import org.apache.sling.commons.json.JSONObject;
-
+import org.apache.sling.commons.json.JSONException;
+import org.apache.sling.commons.json.io.JSONWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.adobe.training.core.search.SearchQueries;
+import com.adobe.training.core.search.SearchResult;
+import com.adobe.training.core.search.SearchResultCache;
 import com.day.cq.wcm.api.PageManager;
 
 /**
@@ -30,21 +35,63 @@ import com.day.cq.wcm.api.PageManager;
  *
  * Example URI: http://localhost:4502/content/trainingproject/en.search.jqom.html?q=Lorem&wcmmode=disabled
  *
+ * Results are paged with limit (default 20, at most 1000) and offset, both are passed to the query,
+ * and streamed while the query result is read:
+ *
+ * {"offset":0,"limit":20,"results":[{"path":"/content/...","title":"...","lastModified":"...","excerpt":"..."}, ...],
+ *  "hasMore":true,"nextOffset":20,"total":135}
+ *
+ * The hits are read from the query rows (path, jcr:title, jcr:lastModified and rep:excerpt columns),
+ * the nodes are not loaded. title, lastModified and excerpt are left out if a hit has none.
+ *
+ * The term is bound to the query as a value, the statements are cached by SearchQueries.
+ * Result pages are cached by the SearchResultCache until they expire or the content below the query root changes.
+ *
+ * total is only counted if the request asks for it with total=true, it runs the query a second time without limit.
+ * It is only present if the query engine can tell the size of the whole result without reading it
+ * (Ex: Oak with fast query size enabled), it is an estimate.
+ *
  * @author Kevin Nennig (nennig@adobe.com)
  */
 @SlingServlet(resourceTypes = "trainingproject/components/structure/page", selectors="search")
 public class SearchServlet extends SlingSafeMethodsServlet {
 
     private static final long serialVersionUID = 3169795937693969416L;
+    private static final int DEFAULT_LIMIT = 20;
+    private static final int MAX_LIMIT = 1000;
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    @Reference
+    private SearchQueries searchQueries;
+
+    @Reference
+    private SearchResultCache resultCache;
 
     @Override
     public final void doGet(final SlingHttpServletRequest request, final SlingHttpServletResponse response)
             throws ServletException, IOException {
-        response.setHeader("Content-Type", "application/json");
-        JSONObject jsonObject = new JSONObject();
-        JSONArray resultArray = new JSONArray();
+        long start = System.nanoTime();
+        int limit;
+        long offset;
+        try {
+            limit = request.getParameter("limit") != null ? Integer.parseInt(request.getParameter("limit")) : DEFAULT_LIMIT;
+            offset = request.getParameter("offset") != null ? Long.parseLong(request.getParameter("offset")) : 0;
+        } catch (NumberFormatException e) {
+            limit = -1;
+            offset = -1;
+        }
+        if (limit < 1 || offset < 0) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, "limit must be at least 1, offset must not be negative");
+            return;
+        }
+        limit = Math.min(limit, MAX_LIMIT);
+        boolean countTotal = Boolean.parseBoolean(request.getParameter("total"));
 
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+        JSONWriter writer = new JSONWriter(response.getWriter());
         try {
+            writer.object();
             //current node that is requested
             Node currentNode = request.getResource().adaptTo(Node.class);
 
@@ -56,58 +103,123 @@ public class SearchServlet extends SlingSafeMethodsServlet {
             if (queryTerm != null) {
                 //get the selectors from the URI
                 String[] selectors = request.getRequestPathInfo().getSelectors();
-                ArrayList<String> language = new ArrayList<String>(Arrays.asList(selectors));
-
-                //Search with JQOM or SQL depending on the selector
-                NodeIterator searchResults = null;
-                if(language.contains("jqom")) {
-                    searchResults = performSearchWithJQOM(queryRoot, queryTerm);
-                } else if(language.contains("sql")) {
-                    searchResults = performSearchWithSQL(queryRoot, queryTerm);
+                String language = languageOf(Arrays.asList(selectors));
+
+                String user = request.getResourceResolver().getUserID();
+                SearchResult result = language != null
+                        ? resultCache.get(user, queryRoot.getPath(), language, queryTerm, offset, limit) : null;
+                boolean cached = result != null;
+
+                writer.key("offset").value(offset).key("limit").value(limit).key("results").array();
+                if (cached) {
+                    for (int i = 0; i < result.size(); i++) {
+                        writeHit(writer, result.getPath(i), result.getTitle(i), result.getLastModified(i), result.getExcerpt(i));
+                    }
+                } else if (language != null) {
+                    long revision = resultCache.getRevision(queryRoot.getPath());
+                    //Search with JQOM or SQL depending on the selector
+                    Query query = createQuery(language, queryRoot, queryTerm);
+                    //one more result than requested tells if there are more
+                    query.setOffset(offset);
+                    query.setLimit(limit + 1L);
+                    RowIterator searchResults = execute(language, query);
+                    //Write the hits while the rows are read, the nodes are not loaded
+                    List<String> paths = new ArrayList<String>();
+                    List<String> titles = new ArrayList<String>();
+                    List<String> lastModified = new ArrayList<String>();
+                    List<String> excerpts = new ArrayList<String>();
+                    while (searchResults.hasNext() && paths.size() < limit) {
+                        Row row = searchResults.nextRow();
+                        String path = row.getPath();
+                        String title = string(row, SearchQueries.COLUMN_TITLE);
+                        String modified = string(row, SearchQueries.COLUMN_LAST_MODIFIED);
+                        String excerpt = string(row, SearchQueries.COLUMN_EXCERPT);
+                        writeHit(writer, path, title, modified, excerpt);
+                        paths.add(path);
+                        titles.add(title);
+                        lastModified.add(modified);
+                        excerpts.add(excerpt);
+                    }
+                    boolean hasMore = searchResults.hasNext();
+                    long total = countTotal ? total(language, queryRoot, queryTerm) : -1;
+                    int size = paths.size();
+                    result = new SearchResult(paths.toArray(new String[size]), titles.toArray(new String[size]),
+                            lastModified.toArray(new String[size]), excerpts.toArray(new String[size]), hasMore, total);
+                    resultCache.put(user, queryRoot.getPath(), language, queryTerm, offset, limit, result, revision);
                 }
-
-                //Add the search results into the json array
-                if(searchResults != null) {
-                    while (searchResults.hasNext()) resultArray.put(searchResults.nextNode().getPath());
+                writer.endArray();
+                if (result != null) {
+                    writer.key("hasMore").value(result.hasMore());
+                    if (result.hasMore()) writer.key("nextOffset").value(offset + limit);
+                    if (countTotal) {
+                        //a cached page may have been stored without its total
+                        long total = result.getTotal() >= 0 ? result.getTotal() : total(language, queryRoot, queryTerm);
+                        if (total >= 0) writer.key("total").value(total);
+                    }
+                    resultCache.recordRequest(cached, start);
+                } else {
+                    writer.key("hasMore").value(false);
                 }
-                jsonObject.put("results", resultArray);
             }
+            writer.endObject();
+        } catch (RepositoryException e) {
+            logger.error("Search failed", e);
+        } catch (JSONException e) {
+            logger.error("Could not write the search results", e);
         }
-        catch (Exception e) {
-            e.printStackTrace();
-        }
-        response.getWriter().print(jsonObject.toString());
         response.getWriter().close();
-
     }
 
-    private NodeIterator performSearchWithJQOM(Node queryRoot, String queryTerm) throws RepositoryException {
-
-        // JQOM infrastructure
-        QueryObjectModelFactory qf = queryRoot.getSession().getWorkspace().getQueryManager().getQOMFactory();
-        ValueFactory vf = queryRoot.getSession().getValueFactory();
-
-        final String SELECTOR_NAME = "all results";
-        final String SELECTOR_NT_UNSTRUCTURED = "nt:unstructured";
-        // select all unstructured nodes
-        Selector selector = qf.selector(SELECTOR_NT_UNSTRUCTURED, SELECTOR_NAME);
+    /**
+     * @return the query language of the selectors, null if there is none
+     */
+    private static String languageOf(List<String> selectors) {
+        if(selectors.contains(SearchQueries.LANGUAGE_JQOM)) {
+            return SearchQueries.LANGUAGE_JQOM;
+        } else if(selectors.contains(SearchQueries.LANGUAGE_SQL)) {
+            return SearchQueries.LANGUAGE_SQL;
+        }
+        return null;
+    }
 
-        // full text constraint
-        Constraint constraint = qf.fullTextSearch(SELECTOR_NAME, null, qf.literal(vf.createValue(queryTerm)));
-        // path constraint
-        constraint = qf.and(constraint, qf.descendantNode(SELECTOR_NAME, queryRoot.getPath()));
+    /**
+     * @return the query of the language with the term bound to $term
+     */
+    private Query createQuery(String language, Node queryRoot, String queryTerm) throws RepositoryException {
+        Session session = queryRoot.getSession();
+        Query query = searchQueries.prepare(session, language, queryRoot.getPath());
+        query.bindValue(SearchQueries.TERM, session.getValueFactory().createValue(queryTerm));
+        return query;
+    }
 
-        // execute the query without explicit order and columns
-        QueryObjectModel query = qf.createQuery(selector, constraint, null, null);
-        return query.execute().getNodes();
+    /**
+     * @return the size of the unlimited result, -1 if the index cannot tell it without reading the nodes
+     */
+    private long total(String language, Node queryRoot, String queryTerm) throws RepositoryException {
+        return execute(language, createQuery(language, queryRoot, queryTerm)).getSize();
+    }
 
+    private RowIterator execute(String language, Query query) throws RepositoryException {
+        long start = System.nanoTime();
+        RowIterator rows = query.execute().getRows();
+        searchQueries.recordExecution(language, start);
+        return rows;
     }
 
-    private NodeIterator performSearchWithSQL(Node queryRoot, String queryTerm) throws RepositoryException {
-        QueryManager qm = queryRoot.getSession().getWorkspace().getQueryManager();
-        Query query = qm.createQuery("SELECT * FROM [nt:unstructured] AS node WHERE ISDESCENDANTNODE(["
-                + queryRoot.getPath() + "]) and CONTAINS(node.*, '" + queryTerm + "')", Query.JCR_SQL2);
-        return query.execute().getNodes();
+    /**
+     * @return the value of the column as String, null if the row has none
+     */
+    private static String string(Row row, String column) throws RepositoryException {
+        Value value = row.getValue(column);
+        return value != null ? value.getString() : null;
     }
 
+    private static void writeHit(JSONWriter writer, String path, String title, String lastModified, String excerpt)
+            throws JSONException {
+        writer.object().key("path").value(path);
+        if (title != null) writer.key("title").value(title);
+        if (lastModified != null) writer.key("lastModified").value(lastModified);
+        if (excerpt != null) writer.key("excerpt").value(excerpt);
+        writer.endObject();
+    }
 }
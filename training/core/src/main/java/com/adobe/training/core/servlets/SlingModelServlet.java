@@ -1,6 +1,7 @@
 package com.adobe.training.core.servlets;
 
 import java.io.IOException;
+import java.util.Calendar;
 
 import javax.servlet.ServletException;
 
@@ -23,9 +24,8 @@ import com.adobe.training.core.models.StockModel;
  * /content
  *   + ADBE [cq:Page]
  *     + lastTrade [nt:unstructured]
- *       - lastTrade = "100"
- *       - request	Date = "11/13/2016"
- *       - requestTime = "4:00pm"
+ *       - lastTrade = 100.0 (Double)
+ *       - tradeTimestamp = 2016-11-13T16:00:00.000-05:00 (Date)
  *
  * @author Kevin Nennig (nennig@adobe.com)
  */
@@ -55,7 +55,11 @@ public class SlingModelServlet extends SlingAllMethodsServlet{
                 response.getOutputStream().println("<h3>");
                 response.getOutputStream().println("lastTrade node with ValueMap is");
                 response.getOutputStream().println("</h3><br />");
-                response.getOutputStream().println("(Last Trade) "+valueMap.get("lastTrade").toString() + " (Requested Time) " + valueMap.get("requestDate").toString() + " " + valueMap.get("requestTime").toString());
+                //the importer stores typed values, no parsing needed
+                Double lastTrade = valueMap.get("lastTrade", Double.class);
+                Calendar tradeTimestamp = valueMap.get("tradeTimestamp", Calendar.class);
+                response.getOutputStream().println("(Last Trade) " + lastTrade + " (Trade Time) "
+                        + (tradeTimestamp != null ? tradeTimestamp.getTime() : valueMap.get("requestDate", "") + " " + valueMap.get("requestTime", "")));
 
                 //Adapt the resource to our model
                 StockModel stockModel = resource.adaptTo(StockModel.class);
@@ -0,0 +1,73 @@
+package com.adobe.training.core.servlets;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import javax.servlet.ServletException;
+
+import org.apache.felix.scr.annotations.Reference;
+import org.apache.felix.scr.annotations.ReferenceCardinality;
+import org.apache.felix.scr.annotations.ReferencePolicy;
+import org.apache.felix.scr.annotations.sling.SlingServlet;
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.api.servlets.SlingSafeMethodsServlet;
+import org.apache.sling.commons.json.JSONException;
+import org.apache.sling.commons.json.io.JSONWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.adobe.training.core.metrics.StatisticsProvider;
+
+/**
+ * Renders the counters of every registered StatisticsProvider as JSON:
+ *
+ * {
+ *   "stockImporter": { "batch.symbolsPerSecond": 1234.5, ... },
+ *   ...
+ * }
+ *
+ * Example URI: http://localhost:4502/bin/trainingproject/stats.json
+ */
+@SlingServlet(paths = "/bin/trainingproject/stats", methods = "GET")
+@Reference(name = "provider", referenceInterface = StatisticsProvider.class,
+        cardinality = ReferenceCardinality.OPTIONAL_MULTIPLE, policy = ReferencePolicy.DYNAMIC)
+public class StatisticsServlet extends SlingSafeMethodsServlet {
+
+    private static final long serialVersionUID = 1L;
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    //sorted by name so the output is stable between requests
+    private final Map<String, StatisticsProvider> providers = new ConcurrentSkipListMap<String, StatisticsProvider>();
+
+    @Override
+    protected void doGet(SlingHttpServletRequest request, SlingHttpServletResponse response)
+            throws ServletException, IOException {
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+        JSONWriter writer = new JSONWriter(response.getWriter());
+        try {
+            writer.object();
+            for (StatisticsProvider provider : providers.values()) {
+                writer.key(provider.getStatisticsName()).object();
+                for (Map.Entry<String, Object> stat : provider.getStatistics().entrySet()) {
+                    writer.key(stat.getKey()).value(stat.getValue());
+                }
+                writer.endObject();
+            }
+            writer.endObject();
+        } catch (JSONException e) {
+            logger.error("Could not write statistics", e);
+        }
+        response.getWriter().close();
+    }
+
+    protected void bindProvider(StatisticsProvider provider) {
+        providers.put(provider.getStatisticsName(), provider);
+    }
+
+    protected void unbindProvider(StatisticsProvider provider) {
+        providers.remove(provider.getStatisticsName());
+    }
+}
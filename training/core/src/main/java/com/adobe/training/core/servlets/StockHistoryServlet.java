@@ -0,0 +1,104 @@
+package com.adobe.training.core.servlets;
+
+import java.io.IOException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.felix.scr.annotations.Reference;
+import org.apache.felix.scr.annotations.sling.SlingServlet;
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.api.servlets.SlingSafeMethodsServlet;
+import org.apache.sling.commons.json.JSONException;
+import org.apache.sling.commons.json.io.JSONWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.adobe.training.core.stock.Quote;
+import com.adobe.training.core.stock.TickHistoryStore;
+import com.adobe.training.core.stock.TickVisitor;
+
+/**
+ * Streams the ticks of one stock symbol from the TickHistoryStore as JSON.
+ *
+ * Ticks of one (UTC) day:
+ * http://localhost:4502/bin/trainingproject/stockhistory.json?symbol=ADBE&day=2016-11-13
+ *
+ * Ticks of a range (epoch millis):
+ * http://localhost:4502/bin/trainingproject/stockhistory.json?symbol=ADBE&from=1479070800000&to=1479081600000
+ */
+@SlingServlet(paths = "/bin/trainingproject/stockhistory", methods = "GET")
+public class StockHistoryServlet extends SlingSafeMethodsServlet {
+
+    private static final long serialVersionUID = 1L;
+    private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    @Reference
+    private TickHistoryStore historyStore;
+
+    @Override
+    protected void doGet(SlingHttpServletRequest request, SlingHttpServletResponse response)
+            throws ServletException, IOException {
+        String symbol = request.getParameter("symbol");
+        long from;
+        long to;
+        try {
+            if (request.getParameter("day") != null) {
+                SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd", Locale.US);
+                format.setTimeZone(TimeZone.getTimeZone("UTC"));
+                from = format.parse(request.getParameter("day")).getTime();
+                to = from + DAY_MILLIS - 1;
+            } else {
+                from = Long.parseLong(request.getParameter("from"));
+                to = Long.parseLong(request.getParameter("to"));
+            }
+        } catch (ParseException e) {
+            from = -1;
+            to = -2;
+        } catch (NumberFormatException e) {
+            from = -1;
+            to = -2;
+        }
+        if (symbol == null || from > to) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Expecting a symbol and a day or from/to range");
+            return;
+        }
+
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+        final JSONWriter writer = new JSONWriter(response.getWriter());
+        try {
+            writer.object().key("symbol").value(symbol).key("ticks").array();
+            historyStore.read(symbol, from, to, new TickVisitor() {
+                @Override
+                public boolean visit(Quote tick) {
+                    try {
+                        writer.object()
+                                .key("timestamp").value(tick.getTimestamp())
+                                .key("lastTrade").value(tick.getLastTrade())
+                                .key("upDown").value(tick.getUpDown())
+                                .key("openPrice").value(tick.getOpenPrice())
+                                .key("rangeHigh").value(tick.getRangeHigh())
+                                .key("rangeLow").value(tick.getRangeLow())
+                                .key("volume").value(tick.getVolume())
+                                .endObject();
+                        return true;
+                    } catch (JSONException e) {
+                        logger.error("Could not write tick " + tick, e);
+                        return false;
+                    }
+                }
+            });
+            writer.endArray().endObject();
+        } catch (JSONException e) {
+            logger.error("Could not write the tick history of " + symbol, e);
+        }
+        response.getWriter().close();
+    }
+}
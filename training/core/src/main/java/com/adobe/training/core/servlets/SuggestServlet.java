@@ -0,0 +1,74 @@
+package com.adobe.training.core.servlets;
+
+import java.io.IOException;
+import java.util.List;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.felix.scr.annotations.Reference;
+import org.apache.felix.scr.annotations.sling.SlingServlet;
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.api.servlets.SlingSafeMethodsServlet;
+import org.apache.sling.commons.json.JSONException;
+import org.apache.sling.commons.json.io.JSONWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.adobe.training.core.search.Suggestion;
+import com.adobe.training.core.search.TitleSuggester;
+
+/**
+ * Typeahead suggestions of page titles and tags, answered from memory by the TitleSuggester
+ * instead of a full text query per keystroke.
+ *
+ * Example URI: http://localhost:4502/content/trainingproject/en.suggest.json?q=lor&limit=5
+ *
+ * {"suggestions":[{"path":"/content/trainingproject/en/lorem","title":"Lorem Ipsum"}, ...]}
+ *
+ * limit defaults to 10, at most 50 suggestions are returned.
+ */
+@SlingServlet(resourceTypes = "trainingproject/components/structure/page", selectors = "suggest")
+public class SuggestServlet extends SlingSafeMethodsServlet {
+
+    private static final long serialVersionUID = -4211468396522415866L;
+    private static final int DEFAULT_LIMIT = 10;
+    private static final int MAX_LIMIT = 50;
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    @Reference
+    private TitleSuggester suggester;
+
+    @Override
+    public final void doGet(final SlingHttpServletRequest request, final SlingHttpServletResponse response)
+            throws ServletException, IOException {
+        int limit;
+        try {
+            limit = request.getParameter("limit") != null ? Integer.parseInt(request.getParameter("limit")) : DEFAULT_LIMIT;
+        } catch (NumberFormatException e) {
+            limit = -1;
+        }
+        if (limit < 1) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, "limit must be at least 1");
+            return;
+        }
+        String prefix = request.getParameter("q");
+        List<Suggestion> suggestions = suggester.suggest(request.getResourceResolver(), request.getResource().getPath(),
+                prefix != null ? prefix : "", Math.min(limit, MAX_LIMIT));
+
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+        try {
+            JSONWriter writer = new JSONWriter(response.getWriter());
+            writer.object().key("suggestions").array();
+            for (Suggestion suggestion : suggestions) {
+                writer.object().key("path").value(suggestion.getPath()).key("title").value(suggestion.getTitle()).endObject();
+            }
+            writer.endArray().endObject();
+        } catch (JSONException e) {
+            logger.error("Could not write the suggestions", e);
+        }
+        response.getWriter().close();
+    }
+}
@@ -0,0 +1,54 @@
+package com.adobe.training.core.stock;
+
+/**
+ * Reads bits most significant bit first from a byte range, the counterpart of BitWriter
+ */
+final class BitReader {
+
+    private byte[] data;
+    private int offset;
+    private int limit;
+    private int position;
+
+    void reset(byte[] data, int offset, int length) {
+        this.data = data;
+        this.offset = offset;
+        this.limit = length << 3;
+        this.position = 0;
+    }
+
+    /**
+     * @param bits number of bits to read, 1 to 64
+     */
+    long read(int bits) {
+        if (position + bits > limit) {
+            throw new IllegalStateException("Reading past the end of the column");
+        }
+        long result = 0;
+        while (bits > 0) {
+            int available = 8 - (position & 7);
+            int take = available < bits ? available : bits;
+            int chunk = ((data[offset + (position >>> 3)] & 0xFF) >>> (available - take)) & ((1 << take) - 1);
+            result = (result << take) | chunk;
+            bits -= take;
+            position += take;
+        }
+        return result;
+    }
+
+    boolean readBit() {
+        return read(1) == 1;
+    }
+
+    long readVarint() {
+        long value = 0;
+        int shift = 0;
+        long b;
+        do {
+            b = read(8);
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+}
@@ -0,0 +1,66 @@
+package com.adobe.training.core.stock;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Growable bit buffer written most significant bit first. The buffer is kept between blocks,
+ * so after warming up writing bits does not allocate.
+ */
+final class BitWriter {
+
+    private byte[] buffer = new byte[64];
+    private int bitLength;
+
+    void reset() {
+        bitLength = 0;
+    }
+
+    /**
+     * Writes the lowest bits of value
+     *
+     * @param bits number of bits to write, 1 to 64
+     */
+    void write(long value, int bits) {
+        while (bits > 0) {
+            int byteIndex = bitLength >>> 3;
+            int free = 8 - (bitLength & 7);
+            if (free == 8) {
+                if (byteIndex == buffer.length) {
+                    byte[] grown = new byte[buffer.length * 2];
+                    System.arraycopy(buffer, 0, grown, 0, buffer.length);
+                    buffer = grown;
+                }
+                buffer[byteIndex] = 0;
+            }
+            int take = free < bits ? free : bits;
+            int chunk = (int) (value >>> (bits - take)) & ((1 << take) - 1);
+            buffer[byteIndex] |= chunk << (free - take);
+            bits -= take;
+            bitLength += take;
+        }
+    }
+
+    void writeBit(boolean bit) {
+        write(bit ? 1 : 0, 1);
+    }
+
+    /**
+     * Writes an unsigned LEB128 varint, 7 bits per byte
+     */
+    void writeVarint(long value) {
+        while ((value & ~0x7FL) != 0) {
+            write((value & 0x7F) | 0x80, 8);
+            value >>>= 7;
+        }
+        write(value, 8);
+    }
+
+    int byteLength() {
+        return (bitLength + 7) >>> 3;
+    }
+
+    void writeTo(OutputStream out) throws IOException {
+        out.write(buffer, 0, byteLength());
+    }
+}
@@ -0,0 +1,107 @@
+package com.adobe.training.core.stock;
+
+import java.util.Calendar;
+
+import javax.jcr.Node;
+import javax.jcr.PropertyType;
+import javax.jcr.RepositoryException;
+
+/**
+ * Reads and writes the lastTrade node of a stock page with typed properties:
+ *
+ * /content
+ *   + <STOCK_SYMBOL> [cq:Page]
+ *     + lastTrade [nt:unstructured]
+ *       - lastTrade = <Double>
+ *       - tradeTimestamp = <Date>
+ *       - upDown = <Double>
+ *       - openPrice = <Double>
+ *       - rangeHigh = <Double>
+ *       - rangeLow = <Double>
+ *       - volume = <Long>
+ *
+ * Nodes written by older importers hold String properties and separate requestDate ("11/13/2016")
+ * and requestTime ("4:00pm") properties instead of tradeTimestamp, see isLegacy.
+ */
+public final class LastTradeNode {
+
+    public static final String NAME = "lastTrade";
+
+    public static final String LASTTRADE = "lastTrade";
+    public static final String TRADETIMESTAMP = "tradeTimestamp";
+    public static final String UPDOWN = "upDown";
+    public static final String OPENPRICE = "openPrice";
+    public static final String RANGEHIGH = "rangeHigh";
+    public static final String RANGELOW = "rangeLow";
+    public static final String VOLUME = "volume";
+
+    //String properties of the legacy format
+    public static final String REQUESTDATE = "requestDate";
+    public static final String REQUESTTIME = "requestTime";
+
+    private LastTradeNode() {
+    }
+
+    /**
+     * Sets the typed properties of the quote and removes the legacy date and time properties
+     */
+    public static void write(Node node, Quote quote) throws RepositoryException {
+        Calendar tradeTimestamp = Calendar.getInstance(Quote.EXCHANGE_TIMEZONE);
+        tradeTimestamp.setTimeInMillis(quote.getTimestamp());
+        node.setProperty(LASTTRADE, quote.getLastTrade());
+        node.setProperty(TRADETIMESTAMP, tradeTimestamp);
+        node.setProperty(UPDOWN, quote.getUpDown());
+        node.setProperty(OPENPRICE, quote.getOpenPrice());
+        node.setProperty(RANGEHIGH, quote.getRangeHigh());
+        node.setProperty(RANGELOW, quote.getRangeLow());
+        node.setProperty(VOLUME, quote.getVolume());
+        if (node.hasProperty(REQUESTDATE)) node.getProperty(REQUESTDATE).remove();
+        if (node.hasProperty(REQUESTTIME)) node.getProperty(REQUESTTIME).remove();
+    }
+
+    /**
+     * @return true if the node still has the String properties of the legacy format
+     */
+    public static boolean isLegacy(Node node) throws RepositoryException {
+        return !node.hasProperty(TRADETIMESTAMP)
+                || node.getProperty(LASTTRADE).getType() == PropertyType.STRING;
+    }
+
+    /**
+     * Reads the node into the quote, the symbol is the name of the stock page.
+     * Legacy nodes are parsed like the feed line they were written from.
+     *
+     * @return false if a legacy node does not hold a complete, numeric quote
+     */
+    public static boolean read(Node node, Quote quote) throws RepositoryException {
+        if (isLegacy(node)) return readLegacy(node, quote);
+        quote.setSymbol(node.getParent().getName());
+        quote.setTimestamp(node.getProperty(TRADETIMESTAMP).getDate().getTimeInMillis());
+        quote.setLastTrade(node.getProperty(LASTTRADE).getDouble());
+        quote.setUpDown(node.getProperty(UPDOWN).getDouble());
+        quote.setOpenPrice(node.getProperty(OPENPRICE).getDouble());
+        quote.setRangeHigh(node.getProperty(RANGEHIGH).getDouble());
+        quote.setRangeLow(node.getProperty(RANGELOW).getDouble());
+        quote.setVolume(node.getProperty(VOLUME).getLong());
+        return true;
+    }
+
+    private static boolean readLegacy(Node node, Quote quote) throws RepositoryException {
+        String[] fields = {
+            node.getParent().getName(),
+            string(node, LASTTRADE),
+            string(node, REQUESTDATE),
+            string(node, REQUESTTIME),
+            string(node, UPDOWN),
+            string(node, OPENPRICE),
+            string(node, RANGEHIGH),
+            string(node, RANGELOW),
+            string(node, VOLUME)
+        };
+        return quote.setFromCsv(fields);
+    }
+
+    private static String string(Node node, String name) throws RepositoryException {
+        return node.hasProperty(name) ? node.getProperty(name).getString() : "";
+    }
+}
@@ -0,0 +1,143 @@
+package com.adobe.training.core.stock;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Mutable holder of one parsed stock quote (one line of the sl1d1t1c1ohgv feed):
+ *
+ * "ADBE",105.25,"11/13/2016","4:00pm",+1.20,104.10,106.00,103.80,2345678
+ *
+ * Instances are meant to be reused, use copyFrom to keep a quote around.
+ */
+public class Quote {
+
+    //the feed reports trade dates and times in the exchange timezone
+    public static final TimeZone EXCHANGE_TIMEZONE = TimeZone.getTimeZone("America/New_York");
+
+    private String symbol;
+    private long timestamp;
+    private double lastTrade;
+    private double upDown;
+    private double openPrice;
+    private double rangeHigh;
+    private double rangeLow;
+    private long volume;
+
+    /**
+     * Reads the columns of one feed line into this quote
+     *
+     * @param fields the comma separated columns of the feed line
+     * @return false if the line does not hold a complete, numeric quote
+     */
+    public boolean setFromCsv(String[] fields) {
+        if (fields.length < 9) return false;
+        try {
+            symbol = unquote(fields[0]);
+            timestamp = parseTimestamp(unquote(fields[2]), unquote(fields[3]));
+            lastTrade = Double.parseDouble(fields[1]);
+            upDown = Double.parseDouble(fields[4]);
+            openPrice = Double.parseDouble(fields[5]);
+            rangeHigh = Double.parseDouble(fields[6]);
+            rangeLow = Double.parseDouble(fields[7]);
+            volume = Long.parseLong(fields[8].trim());
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        } catch (ParseException e) {
+            return false;
+        }
+    }
+
+    public void copyFrom(Quote other) {
+        symbol = other.symbol;
+        timestamp = other.timestamp;
+        lastTrade = other.lastTrade;
+        upDown = other.upDown;
+        openPrice = other.openPrice;
+        rangeHigh = other.rangeHigh;
+        rangeLow = other.rangeLow;
+        volume = other.volume;
+    }
+
+    /**
+     * @return a 64 bit hash of the quote values (not the symbol), equal quotes have equal fingerprints
+     */
+    public long fingerprint() {
+        long hash = timestamp;
+        hash = hash * 0x9E3779B97F4A7C15L + Double.doubleToLongBits(lastTrade);
+        hash = hash * 0x9E3779B97F4A7C15L + Double.doubleToLongBits(upDown);
+        hash = hash * 0x9E3779B97F4A7C15L + Double.doubleToLongBits(openPrice);
+        hash = hash * 0x9E3779B97F4A7C15L + Double.doubleToLongBits(rangeHigh);
+        hash = hash * 0x9E3779B97F4A7C15L + Double.doubleToLongBits(rangeLow);
+        hash = hash * 0x9E3779B97F4A7C15L + volume;
+        return hash ^ (hash >>> 29);
+    }
+
+    private static String unquote(String field) {
+        return field.replace("\"", "").trim();
+    }
+
+    private static long parseTimestamp(String date, String time) throws ParseException {
+        //Ex: 11/13/2016 4:00pm
+        SimpleDateFormat format = new SimpleDateFormat("M/d/yyyy h:mma", Locale.US);
+        format.setTimeZone(EXCHANGE_TIMEZONE);
+        return format.parse(date + " " + time.toUpperCase(Locale.US)).getTime();
+    }
+
+    public String getSymbol() {
+        return symbol;
+    }
+    public void setSymbol(String symbol) {
+        this.symbol = symbol;
+    }
+    public long getTimestamp() {
+        return timestamp;
+    }
+    public void setTimestamp(long timestamp) {
+        this.timestamp = timestamp;
+    }
+    public double getLastTrade() {
+        return lastTrade;
+    }
+    public void setLastTrade(double lastTrade) {
+        this.lastTrade = lastTrade;
+    }
+    public double getUpDown() {
+        return upDown;
+    }
+    public void setUpDown(double upDown) {
+        this.upDown = upDown;
+    }
+    public double getOpenPrice() {
+        return openPrice;
+    }
+    public void setOpenPrice(double openPrice) {
+        this.openPrice = openPrice;
+    }
+    public double getRangeHigh() {
+        return rangeHigh;
+    }
+    public void setRangeHigh(double rangeHigh) {
+        this.rangeHigh = rangeHigh;
+    }
+    public double getRangeLow() {
+        return rangeLow;
+    }
+    public void setRangeLow(double rangeLow) {
+        this.rangeLow = rangeLow;
+    }
+    public long getVolume() {
+        return volume;
+    }
+    public void setVolume(long volume) {
+        this.volume = volume;
+    }
+
+    @Override
+    public String toString() {
+        return symbol + "@" + timestamp + "=" + lastTrade;
+    }
+}
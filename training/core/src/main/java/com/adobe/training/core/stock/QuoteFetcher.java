@@ -0,0 +1,34 @@
+package com.adobe.training.core.stock;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Fetches the CSV lines of quote source URLs (one line per symbol, same format as the Yahoo quotes.csv download).
+ * The response is returned as one CharSequence, lines end with \n or \r\n, so it can be read by the QuoteParser
+ * without a String per line.
+ *
+ * Implementations are registered with the URL schemes they handle, see PROPERTY_SCHEMES.
+ */
+public interface QuoteFetcher {
+
+    /**
+     * Service property listing the URL schemes a fetcher handles. Ex: http, https
+     */
+    public static final String PROPERTY_SCHEMES = "quote.schemes";
+
+    /**
+     * Fetches one URL on the calling thread
+     *
+     * @return the text of the response
+     * @throws IOException if the source cannot be reached, times out or does not answer with 200
+     */
+    public CharSequence fetch(String url) throws IOException;
+
+    /**
+     * Fetches the URLs in parallel. A failing or slow source does not stop the others.
+     *
+     * @return the text per URL in the order of the URLs, null for every URL that failed
+     */
+    public List<CharSequence> fetchAll(List<String> urls);
+}
@@ -0,0 +1,302 @@
+package com.adobe.training.core.stock;
+
+import java.util.TimeZone;
+
+/**
+ * Parses feed lines straight into a Quote, without splitting the line into Strings:
+ *
+ * "ADBE",105.25,"11/13/2016","4:00pm",+1.20,104.10,106.00,103.80,2345678
+ *
+ * Fields may be quoted (a quoted field may hold commas) and surrounded by whitespace. Prices are read
+ * as decimal mantissa and scale, the trade date and time are turned into epoch millis arithmetically.
+ * The only String created is the symbol, and only the first time a symbol is seen.
+ * Lines with more than 9 fields are accepted, the extra fields are ignored.
+ *
+ * Produces the same values as Quote.setFromCsv. A parser keeps state between lines, use one per thread.
+ */
+public class QuoteParser {
+
+    private static final int FIELDS = 9;
+    private static final int SYMBOL = 0;
+    private static final int LASTTRADE = 1;
+    private static final int DATE = 2;
+    private static final int TIME = 3;
+    private static final int UPDOWN = 4;
+    private static final int OPENPRICE = 5;
+    private static final int RANGEHIGH = 6;
+    private static final int RANGELOW = 7;
+    private static final int VOLUME = 8;
+
+    private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+    //mantissas up to 2^53 and scales up to 22 are exact doubles, so one division is correctly rounded
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+    private static final double[] POWERS_OF_TEN = new double[23];
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private final TimeZone timeZone;
+    private final int[] starts = new int[FIELDS];
+    private final int[] ends = new int[FIELDS];
+    private final String[] symbols = new String[1024];
+    //set by the field parsers instead of throwing
+    private boolean failed;
+
+    public QuoteParser() {
+        this(Quote.EXCHANGE_TIMEZONE);
+    }
+
+    /**
+     * @param timeZone zone the trade dates and times of the feed are reported in
+     */
+    public QuoteParser(TimeZone timeZone) {
+        this.timeZone = (TimeZone) timeZone.clone();
+    }
+
+    public boolean parse(CharSequence line, Quote quote) {
+        return parse(line, 0, line.length(), quote);
+    }
+
+    /**
+     * Reads the line between from (inclusive) and to (exclusive) into the quote.
+     * The quote is only changed if the whole line could be parsed.
+     *
+     * @return false if the line does not hold a complete, numeric quote
+     */
+    public boolean parse(CharSequence line, int from, int to, Quote quote) {
+        if (!split(line, from, to) || ends[SYMBOL] == starts[SYMBOL]) return false;
+        failed = false;
+        long timestamp = parseTimestamp(line);
+        double lastTrade = parseDouble(line, LASTTRADE);
+        double upDown = parseDouble(line, UPDOWN);
+        double openPrice = parseDouble(line, OPENPRICE);
+        double rangeHigh = parseDouble(line, RANGEHIGH);
+        double rangeLow = parseDouble(line, RANGELOW);
+        long volume = parseLong(line, VOLUME);
+        if (failed) return false;
+
+        quote.setSymbol(symbol(line, starts[SYMBOL], ends[SYMBOL]));
+        quote.setTimestamp(timestamp);
+        quote.setLastTrade(lastTrade);
+        quote.setUpDown(upDown);
+        quote.setOpenPrice(openPrice);
+        quote.setRangeHigh(rangeHigh);
+        quote.setRangeLow(rangeLow);
+        quote.setVolume(volume);
+        return true;
+    }
+
+    /**
+     * Finds start and end of the first 9 fields, without quotes and surrounding whitespace
+     */
+    private boolean split(CharSequence line, int from, int to) {
+        int i = from;
+        for (int field = 0; field < FIELDS; field++) {
+            if (field > 0) {
+                if (i == to) return false;
+                i++; //the comma
+            }
+            while (i < to && line.charAt(i) <= ' ') i++;
+            int start;
+            int end;
+            if (i < to && line.charAt(i) == '"') {
+                start = ++i;
+                while (i < to && line.charAt(i) != '"') i++;
+                if (i == to) return false;
+                end = i;
+                while (i < to && line.charAt(i) != ',') i++;
+            } else {
+                start = i;
+                while (i < to && line.charAt(i) != ',') i++;
+                end = i;
+            }
+            while (start < end && line.charAt(start) <= ' ') start++;
+            while (end > start && line.charAt(end - 1) <= ' ') end--;
+            starts[field] = start;
+            ends[field] = end;
+        }
+        return true;
+    }
+
+    private double parseDouble(CharSequence line, int field) {
+        int i = starts[field];
+        int end = ends[field];
+        boolean negative = false;
+        if (i < end && (line.charAt(i) == '-' || line.charAt(i) == '+')) {
+            negative = line.charAt(i) == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int scale = 0;
+        boolean point = false;
+        boolean digits = false;
+        for (; i < end; i++) {
+            char c = line.charAt(i);
+            if (c >= '0' && c <= '9') {
+                mantissa = mantissa * 10 + (c - '0');
+                if (mantissa > MAX_EXACT_MANTISSA) return parseDoubleSlow(line, field);
+                if (point) scale++;
+                digits = true;
+            } else if (c == '.' && !point) {
+                point = true;
+            } else {
+                //exponents and "N/A"
+                return parseDoubleSlow(line, field);
+            }
+        }
+        if (!digits || scale >= POWERS_OF_TEN.length) return parseDoubleSlow(line, field);
+        double value = scale == 0 ? mantissa : mantissa / POWERS_OF_TEN[scale];
+        return negative ? -value : value;
+    }
+
+    /**
+     * Rare formats (exponents, very long mantissas) go through Double.parseDouble
+     */
+    private double parseDoubleSlow(CharSequence line, int field) {
+        try {
+            return Double.parseDouble(line.subSequence(starts[field], ends[field]).toString());
+        } catch (NumberFormatException e) {
+            failed = true;
+            return 0;
+        }
+    }
+
+    private long parseLong(CharSequence line, int field) {
+        int i = starts[field];
+        int end = ends[field];
+        boolean negative = false;
+        if (i < end && (line.charAt(i) == '-' || line.charAt(i) == '+')) {
+            negative = line.charAt(i) == '-';
+            i++;
+        }
+        if (i == end || end - i > 18) {
+            try {
+                return Long.parseLong(line.subSequence(starts[field], ends[field]).toString());
+            } catch (NumberFormatException e) {
+                failed = true;
+                return 0;
+            }
+        }
+        long value = 0;
+        for (; i < end; i++) {
+            char c = line.charAt(i);
+            if (c < '0' || c > '9') {
+                failed = true;
+                return 0;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Reads "M/d/yyyy" and "h:mma" (Ex: 11/13/2016 and 4:00pm) in the time zone of the feed
+     */
+    private long parseTimestamp(CharSequence line) {
+        int i = starts[DATE];
+        int end = ends[DATE];
+        int month = 0;
+        int day = 0;
+        int year = 0;
+        int part = 0;
+        int partDigits = 0;
+        for (; i < end; i++) {
+            char c = line.charAt(i);
+            if (c >= '0' && c <= '9') {
+                int digit = c - '0';
+                if (part == 0) month = month * 10 + digit;
+                else if (part == 1) day = day * 10 + digit;
+                else year = year * 10 + digit;
+                partDigits++;
+            } else if (c == '/' && part < 2 && partDigits > 0) {
+                part++;
+                partDigits = 0;
+            } else {
+                failed = true;
+                return 0;
+            }
+        }
+        if (part != 2 || partDigits == 0 || month < 1 || month > 12 || day < 1 || day > 31) {
+            failed = true;
+            return 0;
+        }
+
+        i = starts[TIME];
+        end = ends[TIME];
+        int hour = 0;
+        int minute = 0;
+        int minuteDigits = 0;
+        boolean colon = false;
+        for (; i < end; i++) {
+            char c = line.charAt(i);
+            if (c >= '0' && c <= '9') {
+                if (colon) {
+                    minute = minute * 10 + (c - '0');
+                    minuteDigits++;
+                } else {
+                    hour = hour * 10 + (c - '0');
+                }
+            } else if (c == ':' && !colon) {
+                colon = true;
+            } else {
+                break;
+            }
+        }
+        if (!colon || minuteDigits == 0 || hour > 12 || minute > 59 || end - i != 2
+                || (line.charAt(i + 1) != 'm' && line.charAt(i + 1) != 'M')) {
+            failed = true;
+            return 0;
+        }
+        char meridiem = line.charAt(i);
+        if (meridiem == 'p' || meridiem == 'P') {
+            hour = hour % 12 + 12;
+        } else if (meridiem == 'a' || meridiem == 'A') {
+            hour = hour % 12;
+        } else {
+            failed = true;
+            return 0;
+        }
+
+        long local = daysFromCivil(year, month, day) * DAY_MILLIS + (hour * 60L + minute) * 60000L;
+        //offset at the local time, corrected once in case it lies on the other side of a DST change
+        int offset = timeZone.getOffset(local - timeZone.getRawOffset());
+        return local - timeZone.getOffset(local - offset);
+    }
+
+    /**
+     * @return days since 1970-01-01 of the proleptic Gregorian date
+     */
+    static long daysFromCivil(int year, int month, int day) {
+        int y = month <= 2 ? year - 1 : year;
+        int era = (y >= 0 ? y : y - 399) / 400;
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097L + dayOfEra - 719468;
+    }
+
+    /**
+     * @return the symbol, a String created for an earlier line if it has the same characters
+     */
+    private String symbol(CharSequence line, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + line.charAt(i);
+        }
+        int slot = (hash ^ (hash >>> 16)) & (symbols.length - 1);
+        String cached = symbols[slot];
+        if (cached != null && cached.length() == end - start) {
+            boolean same = true;
+            for (int i = 0; i < cached.length() && same; i++) {
+                same = cached.charAt(i) == line.charAt(start + i);
+            }
+            if (same) return cached;
+        }
+        String symbol = line.subSequence(start, end).toString();
+        symbols[slot] = symbol;
+        return symbol;
+    }
+}
@@ -0,0 +1,160 @@
+package com.adobe.training.core.stock;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Generates random-walk quotes in the column layout of the Yahoo quotes.csv feed (f=sl1d1t1c1ohgv):
+ *
+ * "SIM00042",105.25,"11/13/2016","4:00pm",+1.20,104.05,106.00,103.80,2345678
+ *
+ * Every symbol starts at a random price and moves one step every update interval: a log-normal price change,
+ * rounded to cents, and some traded volume. Open, high and low are reset when the (exchange) day changes.
+ * Symbols are created on first request, any symbol name is accepted.
+ *
+ * Steps are taken lazily when a symbol is requested, so idle symbols cost nothing.
+ */
+public class QuoteSimulator {
+
+    private static final String SYMBOL_PREFIX = "SIM";
+    //standard deviation of the relative price change per step
+    private static final double VOLATILITY = 0.002;
+    //a symbol not requested for a long time catches up with at most this many steps
+    private static final int MAX_CATCH_UP_STEPS = 16;
+    private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+
+    private final Random random;
+    private final long updateInterval;
+    private final Map<String, SymbolState> states = new HashMap<String, SymbolState>();
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat("M/d/yyyy", Locale.US);
+    private final SimpleDateFormat timeFormat = new SimpleDateFormat("h:mma", Locale.US);
+
+    /**
+     * @param seed seed of the random walks, equal seeds and request sequences give equal quotes
+     * @param updateInterval milliseconds between two steps of a symbol
+     */
+    public QuoteSimulator(long seed, long updateInterval) {
+        this.random = new Random(seed);
+        this.updateInterval = Math.max(1, updateInterval);
+        dateFormat.setTimeZone(Quote.EXCHANGE_TIMEZONE);
+        timeFormat.setTimeZone(Quote.EXCHANGE_TIMEZONE);
+    }
+
+    /**
+     * @return the name of the index-th simulated symbol, Ex: SIM00042
+     */
+    public static String symbolName(int index) {
+        String number = Integer.toString(index);
+        StringBuilder sb = new StringBuilder(SYMBOL_PREFIX);
+        for (int i = number.length(); i < 5; i++) {
+            sb.append('0');
+        }
+        return sb.append(number).toString();
+    }
+
+    /**
+     * Appends the feed line of the symbol at the given time, terminated by a line break
+     */
+    public synchronized void appendCsv(String symbol, long now, StringBuilder out) {
+        SymbolState state = states.get(symbol);
+        if (state == null) {
+            state = new SymbolState(now);
+            states.put(symbol, state);
+        }
+        long steps = (now - state.lastStep) / updateInterval;
+        if (steps > 0) {
+            for (long i = Math.min(steps, MAX_CATCH_UP_STEPS); i > 0; i--) {
+                step(state);
+            }
+            state.lastStep += steps * updateInterval;
+            startDayIfChanged(state);
+        }
+
+        Date time = new Date(state.lastStep);
+        out.append('"').append(symbol).append("\",");
+        appendCents(out, state.price).append(",\"");
+        out.append(dateFormat.format(time)).append("\",\"");
+        out.append(timeFormat.format(time).toLowerCase(Locale.US)).append("\",");
+        long change = state.price - state.open;
+        if (change >= 0) out.append('+');
+        appendCents(out, change).append(',');
+        appendCents(out, state.open).append(',');
+        appendCents(out, state.high).append(',');
+        appendCents(out, state.low).append(',');
+        out.append(state.volume).append("\r\n");
+    }
+
+    /**
+     * Moves every known symbol one step, regardless of the update interval
+     */
+    public synchronized void stepAll() {
+        for (SymbolState state : states.values()) {
+            step(state);
+        }
+    }
+
+    public synchronized int getSymbolCount() {
+        return states.size();
+    }
+
+    private void step(SymbolState state) {
+        double factor = Math.exp(random.nextGaussian() * VOLATILITY);
+        state.price = Math.max(1, Math.round(state.price * factor));
+        state.high = Math.max(state.high, state.price);
+        state.low = Math.min(state.low, state.price);
+        state.volume += random.nextInt(5000);
+    }
+
+    private void startDayIfChanged(SymbolState state) {
+        long day = exchangeDay(state.lastStep);
+        if (day != state.day) {
+            state.day = day;
+            state.open = state.price;
+            state.high = state.price;
+            state.low = state.price;
+            state.volume = 0;
+        }
+    }
+
+    private static long exchangeDay(long time) {
+        return (time + Quote.EXCHANGE_TIMEZONE.getOffset(time)) / DAY_MILLIS;
+    }
+
+    private static StringBuilder appendCents(StringBuilder out, long cents) {
+        if (cents < 0) {
+            out.append('-');
+            cents = -cents;
+        }
+        out.append(cents / 100).append('.');
+        long fraction = cents % 100;
+        if (fraction < 10) out.append('0');
+        return out.append(fraction);
+    }
+
+    /**
+     * Random walk of one symbol, prices in cents
+     */
+    private class SymbolState {
+        private long price;
+        private long open;
+        private long high;
+        private long low;
+        private long volume;
+        private long lastStep;
+        private long day;
+
+        SymbolState(long now) {
+            price = 1000 + random.nextInt(49000);
+            open = price;
+            high = price;
+            low = price;
+            volume = random.nextInt(100000);
+            lastStep = now;
+            day = exchangeDay(now);
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.adobe.training.core.stock;
+
+/**
+ * Told about the quotes a QuoteWriter could not write, called by the writing thread
+ */
+public interface QuoteWriteListener {
+
+    /**
+     * @param path path of the lastTrade node the quote was meant for
+     * @param quote the dropped quote, only valid during the call
+     */
+    public void quoteDropped(String path, Quote quote);
+}
@@ -0,0 +1,26 @@
+package com.adobe.training.core.stock;
+
+/**
+ * Persists quotes into the lastTrade node of their stock page:
+ *
+ * <parentPath>
+ *   + <STOCK_SYMBOL> [cq:Page]
+ *     + lastTrade [nt:unstructured]
+ *
+ * Implementations may buffer quotes and write them later, only the latest quote of a symbol is guaranteed to be written.
+ */
+public interface QuoteWriter {
+
+    /**
+     * Hands a quote over for writing. The quote is copied, the caller may reuse the instance.
+     *
+     * @param parentPath path the stock page is created under
+     * @param listener told if the quote cannot be written, may be null
+     */
+    public void write(String parentPath, Quote quote, QuoteWriteListener listener);
+
+    /**
+     * Writes all buffered quotes before returning
+     */
+    public void flush();
+}
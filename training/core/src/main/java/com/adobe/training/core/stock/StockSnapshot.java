@@ -0,0 +1,90 @@
+package com.adobe.training.core.stock;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.ValueFormatException;
+
+/**
+ * Immutable copy of the lastTrade node of a stock page, read in one pass (see LastTradeNode).
+ * Snapshots are shared between requests by the StockSnapshotCache.
+ */
+public final class StockSnapshot {
+
+    private final String path;
+    private final long revision;
+    private final String symbol;
+    private final long timestamp;
+    private final double lastTrade;
+    private final double upDown;
+    private final double openPrice;
+    private final double rangeHigh;
+    private final double rangeLow;
+    private final long volume;
+
+    /**
+     * @param path path of the stock page
+     * @param revision cache revision the values were read at
+     */
+    public StockSnapshot(String path, long revision, Quote quote) {
+        this.path = path;
+        this.revision = revision;
+        this.symbol = quote.getSymbol();
+        this.timestamp = quote.getTimestamp();
+        this.lastTrade = quote.getLastTrade();
+        this.upDown = quote.getUpDown();
+        this.openPrice = quote.getOpenPrice();
+        this.rangeHigh = quote.getRangeHigh();
+        this.rangeLow = quote.getRangeLow();
+        this.volume = quote.getVolume();
+    }
+
+    /**
+     * Reads the lastTrade child of the stock page node
+     *
+     * @throws ValueFormatException if the lastTrade node does not hold a complete quote
+     */
+    public static StockSnapshot read(Node stock, long revision) throws RepositoryException {
+        Node lastTradeNode = stock.getNode(LastTradeNode.NAME);
+        Quote quote = new Quote();
+        if (!LastTradeNode.read(lastTradeNode, quote)) {
+            throw new ValueFormatException("No complete quote at " + lastTradeNode.getPath());
+        }
+        return new StockSnapshot(stock.getPath(), revision, quote);
+    }
+
+    public String getPath() {
+        return path;
+    }
+    public long getRevision() {
+        return revision;
+    }
+    public String getSymbol() {
+        return symbol;
+    }
+    public long getTimestamp() {
+        return timestamp;
+    }
+    public double getLastTrade() {
+        return lastTrade;
+    }
+    public double getUpDown() {
+        return upDown;
+    }
+    public double getOpenPrice() {
+        return openPrice;
+    }
+    public double getRangeHigh() {
+        return rangeHigh;
+    }
+    public double getRangeLow() {
+        return rangeLow;
+    }
+    public long getVolume() {
+        return volume;
+    }
+
+    @Override
+    public String toString() {
+        return path + "@" + revision + "=" + lastTrade;
+    }
+}
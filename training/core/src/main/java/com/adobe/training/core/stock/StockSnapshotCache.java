@@ -0,0 +1,18 @@
+package com.adobe.training.core.stock;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+
+/**
+ * Cache of StockSnapshots by stock page path, shared by all users.
+ * Entries are dropped when their lastTrade node changes.
+ */
+public interface StockSnapshotCache {
+
+    /**
+     * @param stock node of the stock page, read with the session of the caller on a cache miss
+     * @return the snapshot of the lastTrade child of the stock page
+     * @throws RepositoryException if the stock page has no readable, complete lastTrade node
+     */
+    public StockSnapshot get(Node stock) throws RepositoryException;
+}
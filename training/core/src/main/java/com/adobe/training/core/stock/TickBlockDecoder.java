@@ -0,0 +1,174 @@
+package com.adobe.training.core.stock;
+
+/**
+ * Streaming decoder of blocks written by TickBlockEncoder.
+ *
+ * One decoder can be reset onto any number of blocks, decoding a tick only updates
+ * primitive state and the passed Quote, it does not allocate.
+ */
+public final class TickBlockDecoder {
+
+    private final TimestampColumn timestamps = new TimestampColumn();
+    private final DoubleColumn lastTrades = new DoubleColumn();
+    private final DoubleColumn upDowns = new DoubleColumn();
+    private final DoubleColumn openPrices = new DoubleColumn();
+    private final DoubleColumn rangeHighs = new DoubleColumn();
+    private final DoubleColumn rangeLows = new DoubleColumn();
+    private final VolumeColumn volumes = new VolumeColumn();
+    private final int[] columnLengths = new int[TickBlockEncoder.COLUMNS];
+
+    private int count;
+    private int decoded;
+
+    /**
+     * Positions the decoder on the block stored at data[offset..offset+length)
+     */
+    public void reset(byte[] data, int offset, int length) {
+        int end = offset + length;
+        int position = offset;
+        if (length < 2 || data[position++] != TickBlockEncoder.VERSION) {
+            throw new IllegalArgumentException("Not a tick block");
+        }
+        //header: count and column lengths as varints
+        long value = 0;
+        int shift = 0;
+        int field = -1;
+        while (field < TickBlockEncoder.COLUMNS) {
+            if (position >= end) throw new IllegalArgumentException("Truncated tick block");
+            int b = data[position++];
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+            if ((b & 0x80) == 0) {
+                if (field < 0) {
+                    count = (int) value;
+                } else {
+                    columnLengths[field] = (int) value;
+                }
+                field++;
+                value = 0;
+                shift = 0;
+            }
+        }
+        timestamps.reset(data, position, columnLengths[0]);
+        position += columnLengths[0];
+        lastTrades.reset(data, position, columnLengths[1]);
+        position += columnLengths[1];
+        upDowns.reset(data, position, columnLengths[2]);
+        position += columnLengths[2];
+        openPrices.reset(data, position, columnLengths[3]);
+        position += columnLengths[3];
+        rangeHighs.reset(data, position, columnLengths[4]);
+        position += columnLengths[4];
+        rangeLows.reset(data, position, columnLengths[5]);
+        position += columnLengths[5];
+        volumes.reset(data, position, columnLengths[6]);
+        position += columnLengths[6];
+        if (position > end) {
+            throw new IllegalArgumentException("Truncated tick block");
+        }
+        decoded = 0;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Decodes the next tick of the block into the given quote, the symbol is left untouched
+     *
+     * @return false if all ticks of the block have been decoded
+     */
+    public boolean next(Quote tick) {
+        if (decoded == count) return false;
+        tick.setTimestamp(timestamps.next());
+        tick.setLastTrade(lastTrades.next());
+        tick.setUpDown(upDowns.next());
+        tick.setOpenPrice(openPrices.next());
+        tick.setRangeHigh(rangeHighs.next());
+        tick.setRangeLow(rangeLows.next());
+        tick.setVolume(volumes.next());
+        decoded++;
+        return true;
+    }
+
+    private static final class TimestampColumn {
+        private final BitReader bits = new BitReader();
+        private boolean first;
+        private long previous;
+        private long previousDelta;
+
+        void reset(byte[] data, int offset, int length) {
+            bits.reset(data, offset, length);
+            first = true;
+            previousDelta = 0;
+        }
+
+        long next() {
+            if (first) {
+                first = false;
+                previous = bits.read(64);
+                return previous;
+            }
+            long deltaOfDelta;
+            if (!bits.readBit()) {
+                deltaOfDelta = 0;
+            } else if (!bits.readBit()) {
+                deltaOfDelta = bits.read(7) - 63;
+            } else if (!bits.readBit()) {
+                deltaOfDelta = bits.read(9) - 255;
+            } else if (!bits.readBit()) {
+                deltaOfDelta = bits.read(12) - 2047;
+            } else {
+                deltaOfDelta = bits.read(64);
+            }
+            previousDelta += deltaOfDelta;
+            previous += previousDelta;
+            return previous;
+        }
+    }
+
+    private static final class DoubleColumn {
+        private final BitReader bits = new BitReader();
+        private boolean first;
+        private long previous;
+        private int previousLeading;
+        private int previousTrailing;
+
+        void reset(byte[] data, int offset, int length) {
+            bits.reset(data, offset, length);
+            first = true;
+        }
+
+        double next() {
+            if (first) {
+                first = false;
+                previous = bits.read(64);
+            } else if (bits.readBit()) {
+                if (bits.readBit()) {
+                    previousLeading = (int) bits.read(6);
+                    int significant = (int) bits.read(6) + 1;
+                    previousTrailing = 64 - previousLeading - significant;
+                }
+                int significant = 64 - previousLeading - previousTrailing;
+                previous ^= bits.read(significant) << previousTrailing;
+            }
+            return Double.longBitsToDouble(previous);
+        }
+    }
+
+    private static final class VolumeColumn {
+        private final BitReader bits = new BitReader();
+        private long previous;
+
+        void reset(byte[] data, int offset, int length) {
+            bits.reset(data, offset, length);
+            previous = 0;
+        }
+
+        long next() {
+            long zigzag = bits.readVarint();
+            previous += (zigzag >>> 1) ^ -(zigzag & 1);
+            return previous;
+        }
+    }
+}
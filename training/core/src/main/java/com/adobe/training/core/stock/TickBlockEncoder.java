@@ -0,0 +1,233 @@
+package com.adobe.training.core.stock;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Streaming encoder of a block of ticks into a compressed columnar layout:
+ *
+ * version (1 byte)
+ * tick count (varint)
+ * byte length of each of the 7 columns (varints)
+ * timestamp column: first value raw, then delta-of-delta in 1/9/12/16/68 bit buckets
+ * lastTrade, upDown, openPrice, rangeHigh, rangeLow columns: XOR compressed doubles (Gorilla style)
+ * volume column: zigzag varints of the delta to the previous volume
+ *
+ * The column buffers are reused for the next block after reset, so encoding does not allocate per tick.
+ * Ticks are expected in time order. See TickBlockDecoder for the reading side.
+ */
+public final class TickBlockEncoder {
+
+    static final int VERSION = 1;
+    static final int COLUMNS = 7;
+
+    private final TimestampColumn timestamps = new TimestampColumn();
+    private final DoubleColumn lastTrades = new DoubleColumn();
+    private final DoubleColumn upDowns = new DoubleColumn();
+    private final DoubleColumn openPrices = new DoubleColumn();
+    private final DoubleColumn rangeHighs = new DoubleColumn();
+    private final DoubleColumn rangeLows = new DoubleColumn();
+    private final VolumeColumn volumes = new VolumeColumn();
+
+    private BitWriter[] columns;
+
+    private int count;
+    private long firstTimestamp;
+    private long lastTimestamp;
+
+    /**
+     * Starts a new, empty block
+     */
+    public void reset() {
+        count = 0;
+        timestamps.reset();
+        lastTrades.reset();
+        upDowns.reset();
+        openPrices.reset();
+        rangeHighs.reset();
+        rangeLows.reset();
+        volumes.reset();
+    }
+
+    public void add(Quote tick) {
+        if (count == 0) firstTimestamp = tick.getTimestamp();
+        lastTimestamp = tick.getTimestamp();
+        timestamps.add(tick.getTimestamp());
+        lastTrades.add(tick.getLastTrade());
+        upDowns.add(tick.getUpDown());
+        openPrices.add(tick.getOpenPrice());
+        rangeHighs.add(tick.getRangeHigh());
+        rangeLows.add(tick.getRangeLow());
+        volumes.add(tick.getVolume());
+        count++;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public long getFirstTimestamp() {
+        return firstTimestamp;
+    }
+
+    public long getLastTimestamp() {
+        return lastTimestamp;
+    }
+
+    /**
+     * @return the number of bytes writeTo will write
+     */
+    public int getEncodedSize() {
+        int size = 1 + varintSize(count);
+        for (BitWriter column : columns()) {
+            size += varintSize(column.byteLength()) + column.byteLength();
+        }
+        return size;
+    }
+
+    /**
+     * Writes the block
+     *
+     * @return the number of bytes written
+     */
+    public int writeTo(OutputStream out) throws IOException {
+        out.write(VERSION);
+        writeVarint(out, count);
+        BitWriter[] columns = columns();
+        for (BitWriter column : columns) {
+            writeVarint(out, column.byteLength());
+        }
+        for (BitWriter column : columns) {
+            column.writeTo(out);
+        }
+        return getEncodedSize();
+    }
+
+    private BitWriter[] columns() {
+        if (columns == null) {
+            columns = new BitWriter[]{timestamps.bits, lastTrades.bits, upDowns.bits, openPrices.bits,
+                    rangeHighs.bits, rangeLows.bits, volumes.bits};
+        }
+        return columns;
+    }
+
+    private static void writeVarint(OutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static int varintSize(long value) {
+        int size = 1;
+        while ((value & ~0x7FL) != 0) {
+            size++;
+            value >>>= 7;
+        }
+        return size;
+    }
+
+    static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static final class TimestampColumn {
+        private final BitWriter bits = new BitWriter();
+        private boolean first;
+        private long previous;
+        private long previousDelta;
+
+        void reset() {
+            bits.reset();
+            first = true;
+            previousDelta = 0;
+        }
+
+        void add(long timestamp) {
+            if (first) {
+                bits.write(timestamp, 64);
+                first = false;
+            } else {
+                long delta = timestamp - previous;
+                long deltaOfDelta = delta - previousDelta;
+                if (deltaOfDelta == 0) {
+                    bits.write(0, 1);
+                } else if (deltaOfDelta >= -63 && deltaOfDelta <= 64) {
+                    bits.write(0x2, 2);
+                    bits.write(deltaOfDelta + 63, 7);
+                } else if (deltaOfDelta >= -255 && deltaOfDelta <= 256) {
+                    bits.write(0x6, 3);
+                    bits.write(deltaOfDelta + 255, 9);
+                } else if (deltaOfDelta >= -2047 && deltaOfDelta <= 2048) {
+                    bits.write(0xE, 4);
+                    bits.write(deltaOfDelta + 2047, 12);
+                } else {
+                    bits.write(0xF, 4);
+                    bits.write(deltaOfDelta, 64);
+                }
+                previousDelta = delta;
+            }
+            previous = timestamp;
+        }
+    }
+
+    private static final class DoubleColumn {
+        private final BitWriter bits = new BitWriter();
+        private boolean first;
+        private long previous;
+        private int previousLeading;
+        private int previousTrailing;
+
+        void reset() {
+            bits.reset();
+            first = true;
+            previousLeading = -1;
+        }
+
+        void add(double value) {
+            long current = Double.doubleToLongBits(value);
+            if (first) {
+                bits.write(current, 64);
+                first = false;
+            } else {
+                long xor = current ^ previous;
+                if (xor == 0) {
+                    bits.write(0, 1);
+                } else {
+                    int leading = Long.numberOfLeadingZeros(xor);
+                    int trailing = Long.numberOfTrailingZeros(xor);
+                    if (previousLeading >= 0 && leading >= previousLeading && trailing >= previousTrailing) {
+                        //the meaningful bits fit into the window of the previous value
+                        bits.write(0x2, 2);
+                        bits.write(xor >>> previousTrailing, 64 - previousLeading - previousTrailing);
+                    } else {
+                        int significant = 64 - leading - trailing;
+                        bits.write(0x3, 2);
+                        bits.write(leading, 6);
+                        bits.write(significant - 1, 6);
+                        bits.write(xor >>> trailing, significant);
+                        previousLeading = leading;
+                        previousTrailing = trailing;
+                    }
+                }
+            }
+            previous = current;
+        }
+    }
+
+    private static final class VolumeColumn {
+        private final BitWriter bits = new BitWriter();
+        private long previous;
+
+        void reset() {
+            bits.reset();
+            previous = 0;
+        }
+
+        void add(long volume) {
+            bits.writeVarint(zigzag(volume - previous));
+            previous = volume;
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.adobe.training.core.stock;
+
+import java.io.IOException;
+
+/**
+ * Append-only time series of every imported quote, partitioned by symbol and day.
+ *
+ * The lastTrade node in the JCR only keeps the latest quote of a symbol,
+ * the history store keeps all of them without creating a node per tick.
+ */
+public interface TickHistoryStore {
+
+    /**
+     * Appends a tick to the segment of its symbol and day.
+     * Ticks older than the last tick of the symbol are ignored.
+     */
+    public void append(Quote tick) throws IOException;
+
+    /**
+     * Reads the ticks of a symbol with from <= timestamp <= to, in time order
+     *
+     * @return the number of ticks passed to the visitor
+     */
+    public int read(String symbol, long from, long to, TickVisitor visitor) throws IOException;
+}
@@ -0,0 +1,13 @@
+package com.adobe.training.core.stock;
+
+/**
+ * Callback for ticks read from the TickHistoryStore
+ */
+public interface TickVisitor {
+
+    /**
+     * @param tick the tick read. The instance is reused for the next tick, copy it to keep it.
+     * @return false to stop reading
+     */
+    public boolean visit(Quote tick);
+}
@@ -0,0 +1,139 @@
+package com.adobe.training.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junitx.util.PrivateAccessor;
+
+import org.apache.sling.api.resource.Resource;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.adobe.training.core.metrics.StatisticsProvider;
+import com.adobe.training.core.stock.Quote;
+import com.adobe.training.core.stock.QuoteFetcher;
+import com.adobe.training.core.stock.QuoteWriteListener;
+import com.adobe.training.core.stock.QuoteWriter;
+import com.adobe.training.core.stock.TickHistoryStore;
+
+/**
+ * JUnit test verifying the StockDataImporter skips unchanged quotes and writes them again once a write failed
+ */
+public class TestStockDataImporter {
+
+    private static final String PARENT = "/content/stocks";
+    private static final String ADBE = "\"ADBE\",105.25,\"11/13/2016\",\"4:00pm\",-0.75,106.00,106.10,104.30,1234567\n";
+    private static final String ADBE_LATER = "\"ADBE\",105.50,\"11/13/2016\",\"4:01pm\",-0.50,106.00,106.10,104.30,1234600\n";
+
+    private StockDataImporter importer;
+    private QuoteFetcher fetcher;
+    private QuoteWriter quoteWriter;
+    private Resource resource;
+
+    @Before
+    public void setup() throws Exception {
+        importer = new StockDataImporter();
+        fetcher = mock(QuoteFetcher.class);
+        quoteWriter = mock(QuoteWriter.class, withSettings().extraInterfaces(StatisticsProvider.class));
+        resource = mock(Resource.class);
+        when(resource.getPath()).thenReturn(PARENT);
+        PrivateAccessor.setField(importer, "quoteWriter", quoteWriter);
+        PrivateAccessor.setField(importer, "historyStore", mock(TickHistoryStore.class));
+        Map<String, Object> properties = new HashMap<String, Object>();
+        properties.put(StockDataImporter.PROPERTY_SOURCE_URL, "http://quotes.example.com/quotes.csv?s=");
+        importer.activate(properties);
+        Map<String, Object> fetcherProperties = new HashMap<String, Object>();
+        fetcherProperties.put(QuoteFetcher.PROPERTY_SCHEMES, new String[]{"http"});
+        importer.bindFetcher(fetcher, fetcherProperties);
+    }
+
+    @Test
+    public void testUnchangedQuoteIsSkipped() throws Exception {
+        respond(ADBE);
+        importer.importData("stock", "ADBE", resource);
+        importer.importData("stock", "ADBE", resource);
+        respond(ADBE_LATER);
+        importer.importData("stock", "ADBE", resource);
+        verify(quoteWriter, times(2)).write(eq(PARENT), any(Quote.class), any(QuoteWriteListener.class));
+        assertEquals(2L, importer.getStatistics().get("written"));
+        assertEquals(1L, importer.getStatistics().get("skippedUnchanged"));
+    }
+
+    @Test
+    public void testDroppedQuoteIsWrittenAgain() throws Exception {
+        respond(ADBE);
+        importer.importData("stock", "ADBE", resource);
+        ArgumentCaptor<Quote> quote = ArgumentCaptor.forClass(Quote.class);
+        ArgumentCaptor<QuoteWriteListener> listener = ArgumentCaptor.forClass(QuoteWriteListener.class);
+        verify(quoteWriter).write(eq(PARENT), quote.capture(), listener.capture());
+        //the writer could not save it
+        listener.getValue().quoteDropped(PARENT + "/ADBE/lastTrade", quote.getValue());
+
+        importer.importData("stock", "ADBE", resource);
+        verify(quoteWriter, times(2)).write(eq(PARENT), any(Quote.class), any(QuoteWriteListener.class));
+        assertEquals(2L, importer.getStatistics().get("written"));
+        assertEquals(0L, importer.getStatistics().get("skippedUnchanged"));
+    }
+
+    @Test
+    public void testOnlyRequestedSymbolsAreWritten() throws Exception {
+        respond(ADBE.replace("ADBE", "adbe") + ADBE.replace("ADBE", "MSFT"));
+        final List<String> written = new ArrayList<String>();
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                written.add(((Quote) invocation.getArguments()[1]).getSymbol());
+                return null;
+            }
+        }).when(quoteWriter).write(eq(PARENT), any(Quote.class), any(QuoteWriteListener.class));
+        importer.importData("stock", "ADBE", resource);
+        //written under the symbol as requested
+        assertEquals(Collections.singletonList("ADBE"), written);
+        assertEquals(1L, importer.getStatistics().get("unrequested"));
+    }
+
+    @Test
+    public void testInvalidSymbolsAreNotRequested() throws Exception {
+        importer.importData("stock", "../etc,a/b,x:y", resource);
+        verify(fetcher).fetchAll(Collections.<String>emptyList());
+        assertTrue(StockDataImporter.isValidName("BRK.B"));
+        assertFalse(StockDataImporter.isValidName(".."));
+        assertFalse(StockDataImporter.isValidName("A[1]"));
+    }
+
+    @Test
+    public void testCycleIsChargedWithTheCommitsOfTheWriter() throws Exception {
+        respond(ADBE);
+        Map<String, Object> writerStats = new HashMap<String, Object>();
+        when(((StatisticsProvider) quoteWriter).getStatistics()).thenReturn(writerStats);
+        writerStats.put("commits", 3L);
+        importer.importData("stock", "ADBE", resource);
+        writerStats.put("commits", 4L);
+        importer.importData("stock", "ADBE", resource);
+        assertEquals(2.0, (Double) importer.getStatistics().get("batch.commitsPerCycle"), 0.0);
+    }
+
+    private void respond(String text) {
+        List<CharSequence> responses = Collections.<CharSequence>singletonList(text);
+        when(fetcher.fetchAll(anyListOf(String.class))).thenReturn(responses);
+    }
+}
@@ -0,0 +1,42 @@
+package com.adobe.training.core.alerts;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * AlertSink keeping the delivered digests in memory
+ */
+public class MemoryAlertSink implements AlertSink {
+
+    //owner -> digests in delivery order
+    private final Map<String, List<List<AlertNotification>>> digests = new LinkedHashMap<String, List<List<AlertNotification>>>();
+
+    @Override
+    public synchronized void deliver(String owner, List<AlertNotification> notifications) {
+        List<List<AlertNotification>> ownerDigests = digests.get(owner);
+        if (ownerDigests == null) {
+            ownerDigests = new ArrayList<List<AlertNotification>>();
+            digests.put(owner, ownerDigests);
+        }
+        ownerDigests.add(new ArrayList<AlertNotification>(notifications));
+    }
+
+    /**
+     * @return the digests delivered to the owner, oldest first
+     */
+    public synchronized List<List<AlertNotification>> getDigests(String owner) {
+        List<List<AlertNotification>> ownerDigests = digests.get(owner);
+        return ownerDigests != null ? new ArrayList<List<AlertNotification>>(ownerDigests)
+                : new ArrayList<List<AlertNotification>>();
+    }
+
+    public synchronized int getDigestCount() {
+        int count = 0;
+        for (List<List<AlertNotification>> ownerDigests : digests.values()) {
+            count += ownerDigests.size();
+        }
+        return count;
+    }
+}
@@ -0,0 +1,132 @@
+package com.adobe.training.core.alerts;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.adobe.training.core.stock.Quote;
+
+/**
+ * JUnit test verifying which rules AlertRuleIndex fires between two quotes
+ */
+public class TestAlertRuleIndex {
+
+    @Test
+    public void testPriceRulesFireOnCrossing() {
+        AlertRuleIndex index = AlertRuleIndex.build(Arrays.asList(
+                rule("up55", "MSFT", AlertRule.Metric.PRICE, AlertRule.Direction.ABOVE, 55),
+                rule("up60", "MSFT", AlertRule.Metric.PRICE, AlertRule.Direction.ABOVE, 60),
+                rule("down50", "MSFT", AlertRule.Metric.PRICE, AlertRule.Direction.BELOW, 50)));
+        assertEquals(Arrays.asList("up55", "up60"), fired(index, quote(50, 50), quote(61, 50)));
+        assertEquals(Arrays.asList(), fired(index, quote(61, 50), quote(62, 50)));
+        assertEquals(Arrays.asList("down50"), fired(index, quote(52, 50), quote(49, 50)));
+        assertEquals(Arrays.asList(), fired(index, quote(49, 50), quote(48, 50)));
+        //at the threshold the price is neither above nor below it
+        assertEquals(Arrays.asList("down50"), fired(index, quote(50, 50), quote(49, 50)));
+        assertEquals(Arrays.asList("up55"), fired(index, quote(55, 50), quote(56, 50)));
+    }
+
+    @Test
+    public void testPercentFromOpen() {
+        AlertRuleIndex index = AlertRuleIndex.build(Arrays.asList(
+                rule("up5", "MSFT", AlertRule.Metric.PERCENT_FROM_OPEN, AlertRule.Direction.ABOVE, 5),
+                rule("down3", "MSFT", AlertRule.Metric.PERCENT_FROM_OPEN, AlertRule.Direction.BELOW, -3)));
+        assertEquals(Arrays.asList(), fired(index, quote(100, 100), quote(104, 100)));
+        assertEquals(Arrays.asList("up5"), fired(index, quote(104, 100), quote(106, 100)));
+        assertEquals(Arrays.asList("down3"), fired(index, quote(99, 100), quote(96, 100)));
+    }
+
+    @Test
+    public void testRangeBreakout() {
+        AlertRuleIndex index = AlertRuleIndex.build(Arrays.asList(
+                rule("high", "MSFT", AlertRule.Metric.RANGE_BREAKOUT, AlertRule.Direction.ABOVE, 0),
+                rule("low", "MSFT", AlertRule.Metric.RANGE_BREAKOUT, AlertRule.Direction.BELOW, 0)));
+        Quote previous = quote(55, 50);
+        previous.setRangeHigh(56);
+        previous.setRangeLow(48);
+        assertEquals(Arrays.asList("high"), fired(index, previous, quote(57, 50)));
+        assertEquals(Arrays.asList("low"), fired(index, previous, quote(47, 50)));
+        assertEquals(Arrays.asList(), fired(index, previous, quote(50, 50)));
+        //the previous quote made the high already
+        previous.setLastTrade(56.5);
+        assertEquals(Arrays.asList(), fired(index, previous, quote(57, 50)));
+    }
+
+    @Test
+    public void testVolumeDelta() {
+        AlertRuleIndex index = AlertRuleIndex.build(Arrays.asList(
+                rule("spike", "MSFT", AlertRule.Metric.VOLUME_DELTA, AlertRule.Direction.ABOVE, 10000)));
+        Quote previous = quote(50, 50);
+        previous.setVolume(100000);
+        Quote current = quote(50, 50);
+        current.setVolume(105000);
+        assertEquals(Arrays.asList(), fired(index, previous, current));
+        current.setVolume(120000);
+        assertEquals(Arrays.asList("spike"), fired(index, previous, current));
+        //a new day, the volume restarted
+        current.setVolume(20000);
+        assertEquals(Arrays.asList("spike"), fired(index, previous, current));
+    }
+
+    @Test
+    public void testMatchesScanOfAllRules() {
+        Random random = new Random(42);
+        List<AlertRule> rules = new ArrayList<AlertRule>();
+        for (int i = 0; i < 2000; i++) {
+            AlertRule.Direction direction = random.nextBoolean() ? AlertRule.Direction.ABOVE : AlertRule.Direction.BELOW;
+            rules.add(rule("r" + i, "S" + random.nextInt(5), AlertRule.Metric.PRICE, direction, 40 + random.nextInt(40)));
+        }
+        AlertRuleIndex index = AlertRuleIndex.build(rules);
+        for (int i = 0; i < 1000; i++) {
+            String symbol = "S" + random.nextInt(5);
+            Quote previous = quote(40 + random.nextInt(40), 50);
+            previous.setSymbol(symbol);
+            Quote current = quote(40 + random.nextInt(40), 50);
+            current.setSymbol(symbol);
+            Set<String> expected = new HashSet<String>();
+            for (AlertRule rule : rules) {
+                if (!rule.getSymbol().equals(symbol)) continue;
+                double t = rule.getThreshold();
+                boolean crossed = rule.getDirection() == AlertRule.Direction.ABOVE
+                        ? previous.getLastTrade() <= t && current.getLastTrade() > t
+                        : previous.getLastTrade() >= t && current.getLastTrade() < t;
+                if (crossed) expected.add(rule.getId());
+            }
+            assertEquals(expected, new HashSet<String>(fired(index, previous, current)));
+        }
+    }
+
+    private static List<String> fired(AlertRuleIndex index, Quote previous, Quote current) {
+        final List<String> ids = new ArrayList<String>();
+        int count = index.evaluate(previous, current, new AlertRuleVisitor() {
+            @Override
+            public void fired(AlertRule rule, double value) {
+                ids.add(rule.getId());
+            }
+        });
+        assertEquals(ids.size(), count);
+        return ids;
+    }
+
+    private static AlertRule rule(String id, String symbol, AlertRule.Metric metric, AlertRule.Direction direction,
+            double threshold) {
+        return new AlertRule(id, "user", symbol, metric, direction, threshold);
+    }
+
+    private static Quote quote(double price, double open) {
+        Quote quote = new Quote();
+        quote.setSymbol("MSFT");
+        quote.setLastTrade(price);
+        quote.setOpenPrice(open);
+        quote.setRangeHigh(Math.max(price, open));
+        quote.setRangeLow(Math.min(price, open));
+        return quote;
+    }
+}
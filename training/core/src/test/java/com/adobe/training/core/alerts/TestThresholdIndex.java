@@ -0,0 +1,46 @@
+package com.adobe.training.core.alerts;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+/**
+ * JUnit test verifying how ThresholdIndex compiles and matches the threshold arguments
+ */
+public class TestThresholdIndex {
+
+    @Test
+    public void testSymbolsMatchExactly() {
+        ThresholdIndex index = ThresholdIndex.compile("MSFT=55\nMS=40\n ADBE = 105 \n");
+        assertEquals(3, index.getSymbolCount());
+        assertEquals(1, index.countExceeded("MSFT", 56));
+        assertEquals(0, index.countExceeded("MS", 39));
+        assertEquals(1, index.countExceeded("MS", 41));
+        assertEquals(1, index.countExceeded("ADBE", 105.5));
+        assertEquals(0, index.countExceeded("ADB", 200));
+        assertNull(index.get("msft"));
+    }
+
+    @Test
+    public void testSeveralThresholdsPerSymbol() {
+        ThresholdIndex index = ThresholdIndex.compile("MSFT=60\nMSFT=50\nMSFT=55\nMSFT=55");
+        ThresholdIndex.Thresholds thresholds = index.get("MSFT");
+        assertEquals(4, thresholds.size());
+        assertEquals(50.0, thresholds.get(0), 0.0);
+        assertEquals(0, thresholds.countBelow(50));
+        assertEquals(1, thresholds.countBelow(55));
+        assertEquals(3, thresholds.countBelow(55.01));
+        assertEquals(4, thresholds.countBelow(1000));
+    }
+
+    @Test
+    public void testInvalidLinesAndCaching() {
+        String arguments = "ADBE=105\n=10\nMSFT\nORCL=high\n\n";
+        ThresholdIndex index = ThresholdIndex.compile(arguments);
+        assertEquals(1, index.getRuleCount());
+        assertEquals(3, index.getInvalidLines().size());
+        assertSame(ThresholdIndex.forArguments(arguments), ThresholdIndex.forArguments(new String(arguments)));
+    }
+}
@@ -0,0 +1,78 @@
+package com.adobe.training.core.alerts;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.regex.Pattern;
+
+/**
+ * Prints the cost of one threshold check for growing rule counts: the argument scan StockAlertProcess
+ * did before (regex split, linear walk, contains) against a ThresholdIndex lookup.
+ * Not a unit test (surefire skips it), run the main method with the test classpath.
+ *
+ * Every workflow execution reads its arguments as a new String, so every lookup gets a new, equal copy
+ * of the arguments: the cache lookup hashes and compares the whole text like it does in production.
+ * Copying the text is timed separately and not part of the index cost.
+ */
+public class ThresholdIndexBenchmark {
+
+    private static final int[] RULE_COUNTS = {10, 100, 1000, 10000};
+    private static final int CHECKS = 200000;
+
+    public static void main(String[] args) {
+        for (int rules : RULE_COUNTS) {
+            StringBuilder arguments = new StringBuilder();
+            String[] symbols = new String[rules];
+            for (int i = 0; i < rules; i++) {
+                symbols[i] = "SYM" + i;
+                arguments.append(symbols[i]).append('=').append(50 + i % 100).append('\n');
+            }
+            String text = arguments.toString();
+            //the scan is too slow to run as many checks with many rules
+            int scanChecks = Math.max(100, CHECKS / rules);
+            char[] chars = text.toCharArray();
+            long alerts = 0;
+            long scanNanos = 0;
+            long indexNanos = 0;
+            long copyNanos = 0;
+            //first rounds warm up the JIT
+            for (int round = 0; round < 5; round++) {
+                long start = System.nanoTime();
+                for (int i = 0; i < scanChecks; i++) {
+                    alerts += scan(text, symbols[i % rules], 100);
+                }
+                scanNanos = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                for (int i = 0; i < CHECKS; i++) {
+                    alerts += new String(chars).length();
+                }
+                copyNanos = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                for (int i = 0; i < CHECKS; i++) {
+                    alerts += ThresholdIndex.forArguments(new String(chars)).countExceeded(symbols[i % rules], 100);
+                }
+                indexNanos = System.nanoTime() - start - copyNanos;
+            }
+            System.out.println(rules + " rules: scan " + scanNanos / scanChecks + " ns/check, index "
+                    + indexNanos / CHECKS + " ns/check (copying the arguments " + copyNanos / CHECKS + " ns)");
+            System.out.println("(alerts " + alerts + ")");
+        }
+    }
+
+    /**
+     * The matching StockAlertProcess did before the ThresholdIndex
+     */
+    private static int scan(String processArgs, String symbol, double lastTrade) {
+        int alerts = 0;
+        Iterator<String> argumentsIterator = Arrays.asList(Pattern.compile("\n").split(processArgs)).iterator();
+        while (argumentsIterator.hasNext()) {
+            String argument = argumentsIterator.next();
+            if (argument.contains(symbol)) {
+                double thresholdTrade = Double.parseDouble(argument.split("=")[1]);
+                if (thresholdTrade < lastTrade) alerts++;
+            }
+        }
+        return alerts;
+    }
+}
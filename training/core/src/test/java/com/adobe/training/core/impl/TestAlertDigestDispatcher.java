@@ -0,0 +1,117 @@
+package com.adobe.training.core.impl;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.osgi.service.event.Event;
+
+import com.adobe.training.core.alerts.AlertNotification;
+import com.adobe.training.core.alerts.AlertSink;
+import com.adobe.training.core.alerts.MemoryAlertSink;
+import com.adobe.training.core.alerts.StockAlertEngine;
+
+/**
+ * JUnit test verifying that the AlertDigestDispatcher delivers one digest per owner and window
+ */
+public class TestAlertDigestDispatcher {
+
+    private AlertDigestDispatcher dispatcher;
+    private final MemoryAlertSink sink = new MemoryAlertSink();
+
+    @Before
+    public void setup() {
+        dispatcher = new AlertDigestDispatcher();
+        Map<String, Object> properties = new HashMap<String, Object>();
+        //dispatched explicitly by the tests
+        properties.put(AlertDigestDispatcher.PROPERTY_DIGEST_WINDOW, 3600000L);
+        properties.put(AlertDigestDispatcher.PROPERTY_MAX_PENDING, 3);
+        dispatcher.activate(properties);
+        dispatcher.bindSink(sink, new HashMap<String, Object>());
+    }
+
+    @After
+    public void cleanup() {
+        dispatcher.deactivate();
+    }
+
+    @Test
+    public void testOneDigestPerOwner() {
+        dispatcher.handleEvent(alert("jdoe", "ADBE", 105));
+        dispatcher.handleEvent(alert("jdoe", "MSFT", 55));
+        dispatcher.handleEvent(alert("asmith", "ADBE", 110));
+        dispatcher.dispatch();
+
+        assertEquals(2, sink.getDigestCount());
+        List<List<AlertNotification>> digests = sink.getDigests("jdoe");
+        assertEquals(1, digests.size());
+        assertEquals(2, digests.get(0).size());
+        assertEquals("ADBE", digests.get(0).get(0).getSymbol());
+        assertEquals(105.0, digests.get(0).get(0).getThreshold(), 0);
+        assertEquals(3L, dispatcher.getStatistics().get("delivered"));
+
+        //nothing pending, no digest
+        dispatcher.dispatch();
+        assertEquals(2, sink.getDigestCount());
+    }
+
+    @Test
+    public void testPendingAlertsAreBounded() {
+        for (int i = 0; i < 5; i++) {
+            dispatcher.handleEvent(alert("jdoe", "ADBE", 100 + i));
+        }
+        dispatcher.dispatch();
+        assertEquals(3, sink.getDigests("jdoe").get(0).size());
+        assertEquals(2L, dispatcher.getStatistics().get("dropped"));
+    }
+
+    @Test
+    public void testFailingSinkDoesNotStopOthers() {
+        dispatcher.unbindSink(sink, new HashMap<String, Object>());
+        dispatcher.bindSink(new AlertSink() {
+            @Override
+            public void deliver(String owner, List<AlertNotification> notifications) throws IOException {
+                throw new IOException("unreachable");
+            }
+        }, new HashMap<String, Object>());
+        dispatcher.bindSink(sink, new HashMap<String, Object>());
+        dispatcher.handleEvent(alert("jdoe", "ADBE", 105));
+        dispatcher.dispatch();
+        assertEquals(1, sink.getDigestCount());
+        assertEquals(1L, dispatcher.getStatistics().get("failedDigests"));
+    }
+
+    @Test
+    public void testDigestNoSinkTookIsUndelivered() {
+        dispatcher.unbindSink(sink, new HashMap<String, Object>());
+        dispatcher.handleEvent(alert("jdoe", "ADBE", 105));
+        dispatcher.dispatch();
+        dispatcher.bindSink(new AlertSink() {
+            @Override
+            public void deliver(String owner, List<AlertNotification> notifications) throws IOException {
+                throw new IOException("unreachable");
+            }
+        }, new HashMap<String, Object>());
+        dispatcher.handleEvent(alert("jdoe", "ADBE", 105));
+        dispatcher.dispatch();
+        assertEquals(0L, dispatcher.getStatistics().get("digests"));
+        assertEquals(0L, dispatcher.getStatistics().get("delivered"));
+        assertEquals(2L, dispatcher.getStatistics().get("undeliveredDigests"));
+    }
+
+    private static Event alert(String owner, String symbol, double threshold) {
+        Map<String, Object> properties = new HashMap<String, Object>();
+        properties.put(StockAlertEngine.PROPERTY_OWNER, owner);
+        properties.put(StockAlertEngine.PROPERTY_SYMBOL, symbol);
+        properties.put(StockAlertEngine.PROPERTY_THRESHOLD, threshold);
+        properties.put(StockAlertEngine.PROPERTY_PRICE, threshold + 1);
+        properties.put(StockAlertEngine.PROPERTY_TIMESTAMP, 1479070800000L);
+        return new Event(StockAlertEngine.TOPIC_ALERT, properties);
+    }
+}
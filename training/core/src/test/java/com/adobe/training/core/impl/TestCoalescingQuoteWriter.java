@@ -0,0 +1,212 @@
+package com.adobe.training.core.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+
+import junitx.util.PrivateAccessor;
+
+import org.apache.sling.jcr.api.SlingRepository;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.adobe.training.core.stock.LastTradeNode;
+import com.adobe.training.core.stock.Quote;
+import com.adobe.training.core.stock.QuoteWriteListener;
+
+/**
+ * JUnit test verifying that the CoalescingQuoteWriter keeps the latest quote per symbol, flushes on time and size,
+ * falls back to writing one by one and queues the quotes again if the service user cannot log in
+ */
+public class TestCoalescingQuoteWriter {
+
+    private static final String PARENT = "/content/stocks";
+
+    private CoalescingQuoteWriter writer;
+    private SlingRepository repo;
+    private Session session;
+    //path -> node of the mocked session
+    private final Map<String, Node> nodes = new HashMap<String, Node>();
+
+    @Before
+    public void setup() throws Exception {
+        writer = new CoalescingQuoteWriter();
+        repo = mock(SlingRepository.class);
+        session = mock(Session.class);
+        when(repo.loginService("training", null)).thenReturn(session);
+        when(session.hasPendingChanges()).thenReturn(true);
+        //every path exists, so JcrUtil.createPath returns the node of the path
+        when(session.itemExists(anyString())).thenReturn(true);
+        when(session.getNode(anyString())).thenAnswer(new Answer<Node>() {
+            @Override
+            public Node answer(InvocationOnMock invocation) {
+                return node((String) invocation.getArguments()[0]);
+            }
+        });
+        PrivateAccessor.setField(writer, "repo", repo);
+    }
+
+    @After
+    public void cleanup() {
+        writer.deactivate();
+    }
+
+    @Test
+    public void testLatestQuoteOfASymbolIsWritten() throws Exception {
+        activate(3600000, 1000);
+        writer.write(PARENT, quote("ADBE", 105.25), null);
+        writer.write(PARENT, quote("ADBE", 105.50), null);
+        writer.write(PARENT, quote("MSFT", 55.00), null);
+        writer.flush();
+
+        verify(lastTrade("ADBE")).setProperty(LastTradeNode.LASTTRADE, 105.50);
+        verify(lastTrade("ADBE"), never()).setProperty(LastTradeNode.LASTTRADE, 105.25);
+        verify(lastTrade("MSFT")).setProperty(LastTradeNode.LASTTRADE, 55.00);
+        verify(session, times(1)).save();
+        Map<String, Object> stats = writer.getStatistics();
+        assertEquals(3L, stats.get("submitted"));
+        assertEquals(1L, stats.get("coalesced"));
+        assertEquals(2L, stats.get("written"));
+        assertEquals(1L, stats.get("commits"));
+    }
+
+    @Test
+    public void testFlushIsSavedInChunks() throws Exception {
+        Map<String, Object> properties = properties(3600000, 1000);
+        properties.put(CoalescingQuoteWriter.PROPERTY_SAVE_CHUNK, 2);
+        writer.activate(properties);
+        writer.write(PARENT, quote("ADBE", 105.25), null);
+        writer.write(PARENT, quote("MSFT", 55.00), null);
+        writer.write(PARENT, quote("ORCL", 40.00), null);
+        writer.flush();
+        verify(session, times(2)).save();
+    }
+
+    @Test
+    public void testPendingSymbolsTriggerAFlush() throws Exception {
+        activate(3600000, 2);
+        writer.write(PARENT, quote("ADBE", 105.25), null);
+        assertEquals(1, writer.getStatistics().get("pending"));
+        writer.write(PARENT, quote("MSFT", 55.00), null);
+        verify(session, timeout(5000)).save();
+        verify(lastTrade("MSFT")).setProperty(LastTradeNode.LASTTRADE, 55.00);
+    }
+
+    @Test
+    public void testFlushIntervalTriggersAFlush() throws Exception {
+        activate(10, 1000);
+        writer.write(PARENT, quote("ADBE", 105.25), null);
+        verify(session, timeout(5000)).save();
+        verify(lastTrade("ADBE")).setProperty(LastTradeNode.LASTTRADE, 105.25);
+    }
+
+    @Test
+    public void testFailedFlushIsWrittenOneByOne() throws Exception {
+        activate(3600000, 1000);
+        //the batch and the first quote written alone fail
+        doAnswer(new Answer<Void>() {
+            private int saves;
+
+            @Override
+            public Void answer(InvocationOnMock invocation) throws RepositoryException {
+                if (++saves <= 2) throw new RepositoryException("constraint violation");
+                return null;
+            }
+        }).when(session).save();
+        QuoteWriteListener listener = mock(QuoteWriteListener.class);
+        writer.write(PARENT, quote("ADBE", 105.25), listener);
+        writer.write(PARENT, quote("MSFT", 55.00), listener);
+        writer.flush();
+
+        verify(session, times(3)).save();
+        verify(session).refresh(false);
+        verify(listener, times(1)).quoteDropped(anyString(), any(Quote.class));
+        Map<String, Object> stats = writer.getStatistics();
+        assertEquals(1L, stats.get("failedFlushes"));
+        assertEquals(1L, stats.get("dropped"));
+        assertEquals(1L, stats.get("written"));
+        assertEquals(1L, stats.get("commits"));
+    }
+
+    @Test
+    public void testQuotesAreQueuedAgainIfTheLoginFails() throws Exception {
+        activate(3600000, 1000);
+        when(repo.loginService("training", null)).thenThrow(new RepositoryException("no service user"));
+        QuoteWriteListener listener = mock(QuoteWriteListener.class);
+        writer.write(PARENT, quote("ADBE", 105.25), listener);
+        writer.flush();
+        assertEquals(1, writer.getStatistics().get("pending"));
+        assertEquals(0L, writer.getStatistics().get("dropped"));
+
+        //a newer quote replaces the queued one
+        writer.write(PARENT, quote("ADBE", 105.50), listener);
+        doReturn(session).when(repo).loginService("training", null);
+        writer.flush();
+        verify(lastTrade("ADBE")).setProperty(LastTradeNode.LASTTRADE, 105.50);
+        verify(listener, never()).quoteDropped(eq(PARENT + "/ADBE/" + LastTradeNode.NAME), any(Quote.class));
+        assertEquals(0, writer.getStatistics().get("pending"));
+    }
+
+    private void activate(int flushInterval, int maxSymbols) {
+        writer.activate(properties(flushInterval, maxSymbols));
+    }
+
+    private static Map<String, Object> properties(int flushInterval, int maxSymbols) {
+        Map<String, Object> properties = new HashMap<String, Object>();
+        properties.put(CoalescingQuoteWriter.PROPERTY_FLUSH_INTERVAL, flushInterval);
+        properties.put(CoalescingQuoteWriter.PROPERTY_FLUSH_MAX_SYMBOLS, maxSymbols);
+        return properties;
+    }
+
+    private Node lastTrade(String symbol) {
+        return node(PARENT + "/" + symbol + "/" + LastTradeNode.NAME);
+    }
+
+    private synchronized Node node(final String path) {
+        Node node = nodes.get(path);
+        if (node == null) {
+            node = mock(Node.class);
+            nodes.put(path, node);
+            try {
+                when(node.getPath()).thenReturn(path);
+                when(node.hasNode(anyString())).thenReturn(true);
+                when(node.getNode(anyString())).thenAnswer(new Answer<Node>() {
+                    @Override
+                    public Node answer(InvocationOnMock invocation) {
+                        return node(path + "/" + invocation.getArguments()[0]);
+                    }
+                });
+            } catch (RepositoryException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return node;
+    }
+
+    private static Quote quote(String symbol, double lastTrade) {
+        Quote quote = new Quote();
+        quote.setSymbol(symbol);
+        quote.setLastTrade(lastTrade);
+        quote.setTimestamp(1479070800000L);
+        return quote;
+    }
+}
@@ -0,0 +1,140 @@
+package com.adobe.training.core.impl;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.adobe.training.core.stock.Quote;
+import com.adobe.training.core.stock.TickVisitor;
+
+/**
+ * JUnit test verifying appends and range reads of the FileTickHistoryStore
+ */
+public class TestFileTickHistoryStore {
+
+    private static final long DAY = 24L * 60 * 60 * 1000;
+    private static final long DAY_START = 17118 * DAY; //2016-11-13 UTC
+
+    private File directory;
+    private FileTickHistoryStore store;
+
+    @Before
+    public void setup() throws Exception {
+        directory = File.createTempFile("ticks", "");
+        directory.delete();
+        store = new FileTickHistoryStore();
+        Hashtable<String, Object> properties = new Hashtable<String, Object>();
+        properties.put(FileTickHistoryStore.PROPERTY_BLOCK_SIZE, 10);
+        store.configure(properties, directory);
+    }
+
+    @After
+    public void cleanup() {
+        delete(directory);
+    }
+
+    @Test
+    public void testRangeReadWithinAndAcrossDays() throws Exception {
+        //one tick per minute for two days
+        for (int minute = 0; minute < 2 * 24 * 60; minute++) {
+            store.append(tick("ADBE", DAY_START + minute * 60000L, 100 + minute));
+        }
+        assertEquals(24 * 60, read("ADBE", DAY_START, DAY_START + DAY - 1).size());
+
+        List<Quote> range = read("ADBE", DAY_START + 95 * 60000L, DAY_START + 104 * 60000L);
+        assertEquals(10, range.size());
+        assertEquals(195.0, range.get(0).getLastTrade(), 0.0);
+        assertEquals(204.0, range.get(9).getLastTrade(), 0.0);
+
+        assertEquals(61, read("ADBE", DAY_START + DAY - 30 * 60000L, DAY_START + DAY + 30 * 60000L).size());
+
+        //the last ticks are still in the open block
+        List<Quote> latest = read("ADBE", DAY_START + 2 * DAY - 5 * 60000L, DAY_START + 2 * DAY);
+        assertEquals(5, latest.size());
+        assertEquals(100.0 + 2 * 24 * 60 - 1, latest.get(4).getLastTrade(), 0.0);
+
+        //only the days on disk are visited
+        assertEquals(2 * 24 * 60, read("ADBE", 0, Long.MAX_VALUE).size());
+    }
+
+    @Test
+    public void testOlderTicksAreIgnored() throws Exception {
+        store.append(tick("MSFT", DAY_START + 1000, 55));
+        store.append(tick("MSFT", DAY_START + 500, 56));
+        store.append(tick("MSFT", DAY_START + 1000, 57));
+        List<Quote> ticks = read("MSFT", DAY_START, DAY_START + DAY - 1);
+        assertEquals(2, ticks.size());
+        assertEquals(57.0, ticks.get(1).getLastTrade(), 0.0);
+        assertEquals(0, read("ORCL", DAY_START, DAY_START + DAY - 1).size());
+        store.append(tick("..", DAY_START + 1000, 1));
+        assertEquals(0, read("..", DAY_START, DAY_START + DAY - 1).size());
+        //the older tick and the tick of "..", which would be written next to the directory
+        assertEquals(2L, store.getStatistics().get("ticksRejected"));
+    }
+
+    @Test
+    public void testSymbolsDoNotShareAFolder() throws Exception {
+        assertEquals("BRK.B", FileTickHistoryStore.folderName("BRK.B"));
+        assertEquals("%5EGSPC", FileTickHistoryStore.folderName("^GSPC"));
+        assertEquals("A%2FB", FileTickHistoryStore.folderName("A/B"));
+        assertEquals("A%5FB", FileTickHistoryStore.folderName("A_B"));
+        assertEquals("%25", FileTickHistoryStore.folderName("%"));
+        store.append(tick("A/B", DAY_START + 1000, 1));
+        store.append(tick("A_B", DAY_START + 1000, 2));
+        assertEquals(1.0, read("A/B", DAY_START, DAY_START + DAY - 1).get(0).getLastTrade(), 0.0);
+        assertEquals(2.0, read("A_B", DAY_START, DAY_START + DAY - 1).get(0).getLastTrade(), 0.0);
+    }
+
+    @Test
+    public void testAppendResumesExistingSegment() throws Exception {
+        store.append(tick("ADBE", DAY_START + 1000, 100));
+        store.deactivate();
+        //a new instance has to pick up the existing segment
+        store = new FileTickHistoryStore();
+        store.configure(new Hashtable<String, Object>(), directory);
+        store.append(tick("ADBE", DAY_START + 500, 99));
+        store.append(tick("ADBE", DAY_START + 2000, 101));
+        assertEquals(2, read("ADBE", DAY_START, DAY_START + DAY - 1).size());
+    }
+
+    private List<Quote> read(String symbol, long from, long to) throws Exception {
+        final List<Quote> ticks = new ArrayList<Quote>();
+        store.read(symbol, from, to, new TickVisitor() {
+            @Override
+            public boolean visit(Quote tick) {
+                Quote copy = new Quote();
+                copy.copyFrom(tick);
+                ticks.add(copy);
+                return true;
+            }
+        });
+        return ticks;
+    }
+
+    private static Quote tick(String symbol, long timestamp, double price) {
+        Quote quote = new Quote();
+        quote.setSymbol(symbol);
+        quote.setTimestamp(timestamp);
+        quote.setLastTrade(price);
+        quote.setOpenPrice(price - 1);
+        quote.setRangeHigh(price + 1);
+        quote.setRangeLow(price - 2);
+        quote.setVolume(1000);
+        return quote;
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) delete(child);
+        }
+        file.delete();
+    }
+}
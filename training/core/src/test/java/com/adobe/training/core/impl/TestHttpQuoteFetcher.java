@@ -0,0 +1,103 @@
+package com.adobe.training.core.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.adobe.training.core.stock.Quote;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * JUnit test running the HttpQuoteFetcher against a local stand-in of the quotes.csv source
+ */
+public class TestHttpQuoteFetcher {
+
+    private HttpServer server;
+    private HttpQuoteFetcher fetcher;
+    private String baseUrl;
+
+    @Before
+    public void setup() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        //answers one line per symbol of the s parameter, SLOW never answers within the read timeout
+        server.createContext("/d/quotes.csv", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String query = exchange.getRequestURI().getQuery();
+                String symbols = query.substring(query.indexOf("s=") + 2);
+                if (symbols.contains("SLOW")) {
+                    try {
+                        Thread.sleep(1000);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                StringBuilder body = new StringBuilder();
+                for (String symbol : symbols.split(",")) {
+                    body.append('"').append(symbol).append("\",105.25,\"11/13/2016\",\"4:00pm\",-0.75,106.00,106.10,104.30,1234567\r\n");
+                }
+                byte[] bytes = body.toString().getBytes("UTF-8");
+                exchange.sendResponseHeaders(200, bytes.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(bytes);
+                out.close();
+            }
+        });
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort() + "/d/quotes.csv?f=sl1d1t1c1ohgv&e=.csv&s=";
+
+        fetcher = new HttpQuoteFetcher();
+        Map<String, Object> properties = new HashMap<String, Object>();
+        properties.put(HttpQuoteFetcher.PROPERTY_READ_TIMEOUT, 200);
+        properties.put(HttpQuoteFetcher.PROPERTY_MAX_IN_FLIGHT, 2);
+        fetcher.activate(properties);
+    }
+
+    @After
+    public void cleanup() {
+        fetcher.deactivate();
+        server.stop(0);
+    }
+
+    @Test
+    public void testFetchParsesLikeTheSource() throws Exception {
+        String[] lines = fetcher.fetch(baseUrl + "ADBE,MSFT").toString().split("\r?\n");
+        assertEquals(2, lines.length);
+        Quote quote = new Quote();
+        assertTrue(quote.setFromCsv(lines[1].split(",")));
+        assertEquals("MSFT", quote.getSymbol());
+        assertEquals(1234567L, quote.getVolume());
+    }
+
+    @Test
+    public void testSlowSourceOnlyFailsItsOwnRequest() {
+        List<CharSequence> results = fetcher.fetchAll(Arrays.asList(
+                baseUrl + "ADBE", baseUrl + "SLOW", baseUrl + "ORCL,MSFT", baseUrl + "IBM"));
+        assertEquals(4, results.size());
+        assertTrue(results.get(0).toString().startsWith("\"ADBE\""));
+        assertNull(results.get(1));
+        assertEquals(2, results.get(2).toString().split("\r?\n").length);
+        assertTrue(results.get(3).toString().startsWith("\"IBM\""));
+
+        Map<String, Object> stats = fetcher.getStatistics();
+        assertEquals(4L, stats.get("requests"));
+        assertEquals(1L, stats.get("timeouts"));
+        assertEquals(4L, stats.get("source.127.0.0.1:" + server.getAddress().getPort() + ".count"));
+    }
+}
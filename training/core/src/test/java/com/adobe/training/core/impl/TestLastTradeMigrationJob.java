@@ -0,0 +1,160 @@
+package com.adobe.training.core.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyDouble;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.jcr.Node;
+import javax.jcr.Property;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.query.Query;
+
+import junitx.util.PrivateAccessor;
+
+import org.apache.jackrabbit.commons.iterator.NodeIteratorAdapter;
+import org.apache.sling.event.jobs.Job;
+import org.apache.sling.event.jobs.consumer.JobConsumer.JobResult;
+import org.apache.sling.jcr.api.SlingRepository;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.adobe.training.core.stock.LastTradeNode;
+
+/**
+ * JUnit test verifying that the LastTradeMigrationJob converts legacy nodes, marks the ones it cannot convert
+ * and converts the nodes of a failed batch again when it is retried
+ */
+public class TestLastTradeMigrationJob {
+
+    private LastTradeMigrationJob migration;
+    private SlingRepository repo;
+    private Session session;
+    private Query query;
+    private Job job;
+
+    @Before
+    public void setup() throws Exception {
+        migration = new LastTradeMigrationJob();
+        repo = mock(SlingRepository.class);
+        session = mock(Session.class, RETURNS_DEEP_STUBS);
+        query = mock(Query.class, RETURNS_DEEP_STUBS);
+        when(repo.loginService("training", null)).thenReturn(session);
+        when(session.getWorkspace().getQueryManager().createQuery(anyString(), eq(Query.JCR_SQL2))).thenReturn(query);
+        PrivateAccessor.setField(migration, "repo", repo);
+        Map<String, Object> properties = new HashMap<String, Object>();
+        properties.put(LastTradeMigrationJob.PROPERTY_BATCH_SIZE, 2);
+        migration.activate(properties);
+        job = mock(Job.class);
+        when(job.getProperty(LastTradeMigrationJob.PROPERTY_ROOT, LastTradeMigrationJob.DEFAULT_ROOT))
+                .thenReturn("/content/stocks");
+    }
+
+    @Test
+    public void testLegacyNodesAreConverted() throws Exception {
+        Node adbe = legacyNode("ADBE", "105.25");
+        Node broken = legacyNode("MSFT", "N/A");
+        batches(Arrays.asList(adbe, broken));
+
+        assertEquals(JobResult.OK, migration.process(job));
+        verify(query, times(2)).setLimit(2);
+        verify(adbe).setProperty(LastTradeNode.LASTTRADE, 105.25);
+        verify(adbe).setProperty(eq(LastTradeNode.TRADETIMESTAMP), any(Calendar.class));
+        verify(adbe, never()).setProperty(LastTradeMigrationJob.MIGRATION_FAILED, true);
+        verify(broken).setProperty(LastTradeMigrationJob.MIGRATION_FAILED, true);
+        verify(broken, never()).setProperty(eq(LastTradeNode.LASTTRADE), anyDouble());
+        verify(session).save();
+        verify(session).logout();
+        Map<String, Object> stats = migration.getStatistics();
+        assertEquals(1L, stats.get("migrated"));
+        assertEquals(1L, stats.get("failed"));
+        assertEquals(1L, stats.get("batches"));
+    }
+
+    @Test
+    public void testFailedBatchIsConvertedWhenRetried() throws Exception {
+        Node adbe = legacyNode("ADBE", "105.25");
+        //not saved, so the retried job finds the node again
+        batches(Arrays.asList(adbe));
+        doThrow(new RepositoryException("conflict")).when(session).save();
+        assertEquals(JobResult.FAILED, migration.process(job));
+        assertEquals(0L, migration.getStatistics().get("migrated"));
+        verify(session).logout();
+
+        batches(Arrays.asList(adbe));
+        doNothing().when(session).save();
+        assertEquals(JobResult.OK, migration.process(job));
+        verify(adbe, times(2)).setProperty(LastTradeNode.LASTTRADE, 105.25);
+        assertEquals(1L, migration.getStatistics().get("migrated"));
+        assertEquals(1L, migration.getStatistics().get("batches"));
+    }
+
+    @Test
+    public void testInvalidRootIsCanceled() throws Exception {
+        when(job.getProperty(LastTradeMigrationJob.PROPERTY_ROOT, LastTradeMigrationJob.DEFAULT_ROOT))
+                .thenReturn("/content]) OR ([jcr:content");
+        assertEquals(JobResult.CANCEL, migration.process(job));
+        verifyZeroInteractions(repo);
+    }
+
+    /**
+     * Makes the query return the nodes in one batch, then no more nodes
+     */
+    private void batches(final List<Node> batch) throws RepositoryException {
+        when(query.execute().getNodes()).thenAnswer(new Answer<NodeIteratorAdapter>() {
+            private boolean done;
+
+            @Override
+            public NodeIteratorAdapter answer(InvocationOnMock invocation) {
+                if (done) return new NodeIteratorAdapter(Collections.<Node>emptyList());
+                done = true;
+                return new NodeIteratorAdapter(batch);
+            }
+        });
+    }
+
+    /**
+     * @return a lastTrade node of the symbol written by an older importer
+     */
+    private static Node legacyNode(String symbol, String lastTrade) throws RepositoryException {
+        Map<String, String> values = new HashMap<String, String>();
+        values.put(LastTradeNode.LASTTRADE, lastTrade);
+        values.put(LastTradeNode.REQUESTDATE, "11/13/2016");
+        values.put(LastTradeNode.REQUESTTIME, "4:00pm");
+        values.put(LastTradeNode.UPDOWN, "-0.75");
+        values.put(LastTradeNode.OPENPRICE, "106.00");
+        values.put(LastTradeNode.RANGEHIGH, "106.10");
+        values.put(LastTradeNode.RANGELOW, "104.30");
+        values.put(LastTradeNode.VOLUME, "1234567");
+        Node node = mock(Node.class, RETURNS_DEEP_STUBS);
+        when(node.getParent().getName()).thenReturn(symbol);
+        when(node.getPath()).thenReturn("/content/stocks/" + symbol + "/" + LastTradeNode.NAME);
+        for (Map.Entry<String, String> value : values.entrySet()) {
+            Property property = mock(Property.class);
+            when(property.getString()).thenReturn(value.getValue());
+            when(node.hasProperty(value.getKey())).thenReturn(true);
+            when(node.getProperty(value.getKey())).thenReturn(property);
+        }
+        return node;
+    }
+}
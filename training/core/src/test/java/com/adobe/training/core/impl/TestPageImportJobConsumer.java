@@ -0,0 +1,167 @@
+package com.adobe.training.core.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyMapOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import junitx.util.PrivateAccessor;
+
+import javax.jcr.Node;
+import javax.jcr.Session;
+
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.apache.sling.event.jobs.Job;
+import org.apache.sling.event.jobs.JobManager;
+import org.apache.sling.event.jobs.consumer.JobConsumer.JobResult;
+import org.apache.sling.jcr.api.SlingRepository;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.adobe.training.core.importer.CsvRowReader;
+import com.adobe.training.core.importer.ImportJobQueue;
+import com.adobe.training.core.importer.ImportListener;
+import com.adobe.training.core.importer.ImportReport;
+import com.adobe.training.core.importer.PageImporter;
+
+/**
+ * JUnit test verifying the PageImportJobConsumer saves the progress of an import every progress.rows rows
+ */
+public class TestPageImportJobConsumer {
+
+    private PageImportJobConsumer consumer;
+    private Session session;
+    private Node jobNode;
+    private Job job;
+
+    @Before
+    public void setup() throws Exception {
+        consumer = new PageImportJobConsumer();
+        session = mock(Session.class, RETURNS_DEEP_STUBS);
+        SlingRepository repo = mock(SlingRepository.class);
+        when(repo.loginService("training", null)).thenReturn(session);
+        String path = ImportJobQueue.JOBS + "/abc";
+        when(session.nodeExists(path + "/file")).thenReturn(true);
+        jobNode = session.getNode(path);
+        when(jobNode.getSession()).thenReturn(session);
+        when(jobNode.getNode("file/jcr:content").getProperty("jcr:data").getBinary().getStream())
+                .thenReturn(new ByteArrayInputStream("/content/trainingproject/en/a,A\n".getBytes("UTF-8")));
+
+        ResourceResolverFactory factory = mock(ResourceResolverFactory.class);
+        when(factory.getServiceResourceResolver(anyMapOf(String.class, Object.class))).thenReturn(mock(ResourceResolver.class));
+        PrivateAccessor.setField(consumer, "repo", repo);
+        PrivateAccessor.setField(consumer, "resourceResolverFactory", factory);
+        PrivateAccessor.setField(consumer, "jobManager", mock(JobManager.class));
+        HashMap<String, Object> properties = new HashMap<String, Object>();
+        properties.put(PageImportJobConsumer.PROPERTY_PROGRESS_ROWS, 10);
+        consumer.activate(properties);
+
+        job = mock(Job.class);
+        when(job.getProperty(PageImportJobConsumer.JOB_ID, String.class)).thenReturn("abc");
+        when(job.getProperty(PageImportJobConsumer.CHARSET, "UTF-8")).thenReturn("UTF-8");
+        when(job.getProperty(PageImportJobConsumer.CHUNK_SIZE, 0)).thenReturn(0);
+        when(job.getProperty(PageImportJobConsumer.PARALLELISM, 0)).thenReturn(0);
+    }
+
+    @Test
+    public void testProgressIsSavedEveryProgressRows() throws Exception {
+        PageImporter pageImporter = mock(PageImporter.class);
+        when(pageImporter.importPages(any(ResourceResolver.class), any(CsvRowReader.class), eq("abc"), anyInt(), anyInt(),
+                anyBoolean(), any(ImportListener.class))).thenAnswer(new Answer<ImportReport>() {
+            @Override
+            public ImportReport answer(InvocationOnMock invocation) {
+                ImportListener listener = (ImportListener) invocation.getArguments()[6];
+                for (int i = 0; i < 25; i++) {
+                    Map<String, Object> result = new LinkedHashMap<String, Object>();
+                    result.put("Status", i == 7 ? PageImporterImpl.STATUS_FAILED : PageImporterImpl.STATUS_CREATED);
+                    listener.rowImported("/content/trainingproject/en/p" + i, result);
+                }
+                return new ImportReport("abc", 100, 1);
+            }
+        });
+        PrivateAccessor.setField(consumer, "pageImporter", pageImporter);
+
+        assertEquals(JobResult.OK, consumer.process(job));
+        //running, after 10 and 20 rows, done
+        verify(session, times(4)).save();
+        verify(jobNode).setProperty("rows", 25L);
+        verify(jobNode).setProperty("created", 24L);
+        verify(jobNode, atLeastOnce()).setProperty(eq("errors"), eq(new String[]{"/content/trainingproject/en/p7: " + PageImporterImpl.STATUS_FAILED}));
+        verify(jobNode).setProperty("state", "SUCCEEDED");
+        verify(jobNode.getNode("file")).remove();
+    }
+
+    @Test
+    public void testResumedRowsAreCounted() throws Exception {
+        PageImporter pageImporter = mock(PageImporter.class);
+        when(pageImporter.importPages(any(ResourceResolver.class), any(CsvRowReader.class), eq("abc"), anyInt(), anyInt(),
+                anyBoolean(), any(ImportListener.class))).thenAnswer(new Answer<ImportReport>() {
+            @Override
+            public ImportReport answer(InvocationOnMock invocation) {
+                ImportListener listener = (ImportListener) invocation.getArguments()[6];
+                ImportReport report = new ImportReport("abc", 100, 1);
+                //the rows up to the checkpoint of the previous attempt do not reach the listener
+                for (int i = 0; i < 5; i++) {
+                    report.rowResumed();
+                }
+                Map<String, Object> result = new LinkedHashMap<String, Object>();
+                result.put("Status", PageImporterImpl.STATUS_CREATED);
+                listener.rowImported("/content/trainingproject/en/p5", result);
+                return report;
+            }
+        });
+        PrivateAccessor.setField(consumer, "pageImporter", pageImporter);
+
+        assertEquals(JobResult.OK, consumer.process(job));
+        verify(jobNode).setProperty("rows", 6L);
+        verify(jobNode).setProperty("created", 1L);
+    }
+
+    @Test
+    public void testCheckpointMismatchCancelsTheJob() throws Exception {
+        PageImporter pageImporter = mock(PageImporter.class);
+        ImportReport report = new ImportReport("abc", 100, 1);
+        report.setError("The file does not match the checkpoint of import abc", false);
+        when(pageImporter.importPages(any(ResourceResolver.class), any(CsvRowReader.class), anyString(), anyInt(), anyInt(),
+                anyBoolean(), any(ImportListener.class))).thenReturn(report);
+        PrivateAccessor.setField(consumer, "pageImporter", pageImporter);
+
+        assertEquals(JobResult.CANCEL, consumer.process(job));
+        verify(jobNode).setProperty("state", "FAILED");
+        verify(jobNode).setProperty("error", report.getError());
+        verify(jobNode.getNode("file")).remove();
+    }
+
+    @Test
+    public void testTransientImportErrorIsRetried() throws Exception {
+        PageImporter pageImporter = mock(PageImporter.class);
+        ImportReport report = new ImportReport("abc", 100, 2);
+        report.setError("The workers could not log in: unknown user");
+        when(pageImporter.importPages(any(ResourceResolver.class), any(CsvRowReader.class), anyString(), anyInt(), anyInt(),
+                anyBoolean(), any(ImportListener.class))).thenReturn(report);
+        PrivateAccessor.setField(consumer, "pageImporter", pageImporter);
+
+        assertEquals(JobResult.FAILED, consumer.process(job));
+        verify(jobNode).setProperty("state", "FAILED");
+        //kept for the retry
+        verify(jobNode.getNode("file"), never()).remove();
+    }
+}
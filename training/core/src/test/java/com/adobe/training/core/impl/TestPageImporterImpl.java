@@ -0,0 +1,297 @@
+package com.adobe.training.core.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyMapOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.StringReader;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import junitx.util.PrivateAccessor;
+
+import javax.jcr.InvalidItemStateException;
+import javax.jcr.Session;
+
+import org.apache.sling.api.resource.PersistenceException;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.apache.sling.jcr.api.SlingRepository;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.adobe.training.core.importer.CsvRowReader;
+import com.adobe.training.core.importer.ImportListener;
+import com.adobe.training.core.importer.ImportReport;
+import com.adobe.training.core.importer.PageImporter;
+import com.adobe.training.core.importer.PagePublisher;
+import com.adobe.training.core.importer.PublishListener;
+import com.adobe.training.core.importer.PublishQueue;
+import com.day.cq.replication.Replicator;
+import com.day.cq.tagging.Tag;
+import com.day.cq.wcm.api.Page;
+import com.day.cq.wcm.api.PageManager;
+import com.day.cq.wcm.api.WCMException;
+
+/**
+ * JUnit test verifying the chunked commits, checkpoints and parallel import of the PageImporterImpl
+ */
+public class TestPageImporterImpl {
+
+    private static final String CSV = "/content/trainingproject/en/a,A\n/content/trainingproject/en/b,B\n"
+            + "/content/trainingproject/en/c,C\n/content/trainingproject/en/d,D\n/content/trainingproject/en/e,E\n";
+
+    private PageImporterImpl importer;
+    private Session session;
+    private ResourceResolver resolver;
+    private PageManager pageManager;
+    private PublishQueue publishQueue;
+
+    @Before
+    public void setup() throws Exception {
+        importer = new PageImporterImpl();
+        session = mock(Session.class, RETURNS_DEEP_STUBS);
+        SlingRepository repo = mock(SlingRepository.class);
+        when(session.nodeExists(PageImporter.CHECKPOINTS)).thenReturn(true);
+        when(repo.loginService("training", null)).thenReturn(session);
+        PrivateAccessor.setField(importer, "repo", repo);
+        PrivateAccessor.setField(importer, "replicator", mock(Replicator.class));
+        PagePublisher pagePublisher = mock(PagePublisher.class);
+        publishQueue = mock(PublishQueue.class);
+        when(pagePublisher.open(any(PublishListener.class))).thenReturn(publishQueue);
+        PrivateAccessor.setField(importer, "pagePublisher", pagePublisher);
+        importer.activate(new HashMap<String, Object>());
+
+        resolver = resolver();
+        pageManager = resolver.adaptTo(PageManager.class);
+    }
+
+    @Test
+    public void testOneCommitPerChunk() throws Exception {
+        ImportReport report = importer.importPages(resolver, rows(CSV), "test", 2, 1, false, null);
+        assertNull(report.getError());
+        assertEquals(5, report.getCreated());
+        assertEquals(3, report.getChunks());
+        verify(resolver, times(3)).commit();
+        verify(pageManager).create("/content/trainingproject/en", "a", PageImporterImpl.DEFAULT_TEMPLATE, "A", false);
+    }
+
+    @Test
+    public void testImportIdRunsOnce() throws Exception {
+        final ImportReport[] second = new ImportReport[1];
+        importer.importPages(resolver, rows(CSV), "test", 5, 1, false, new ImportListener() {
+            @Override
+            public void rowImported(String key, Map<String, Object> result) {
+                try {
+                    if (second[0] == null) second[0] = importer.importPages(resolver, rows(CSV), "test", 5, 1, false, null);
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        });
+        assertEquals("Import test is already running", second[0].getError());
+        //done, the id can run again
+        assertNull(importer.importPages(resolver, rows(CSV), "test", 5, 1, false, null).getError());
+    }
+
+    @Test
+    public void testDefaultImportIdDependsOnTheUser() throws Exception {
+        when(resolver.getUserID()).thenReturn("alice");
+        String alice = importer.importPages(resolver, rows(CSV), null, 5, 1, false, null).getImportId();
+        when(resolver.getUserID()).thenReturn("bob");
+        String bob = importer.importPages(resolver, rows(CSV), null, 5, 1, false, null).getImportId();
+        assertFalse(alice.equals(bob));
+    }
+
+    @Test
+    public void testChunkSizeIsBounded() throws Exception {
+        ImportReport report = importer.importPages(resolver, rows(CSV), "test", Integer.MAX_VALUE, 1, false, null);
+        assertEquals(1000, report.getChunkSize());
+        assertEquals(5, report.getCreated());
+    }
+
+    @Test
+    public void testFailedCommitIsCommittedRowByRow() throws Exception {
+        doThrow(new PersistenceException("conflict")).doNothing().when(resolver).commit();
+        ImportReport report = importer.importPages(resolver, rows(CSV), "test", 5, 1, false, null);
+        assertEquals(5, report.getCreated());
+        assertEquals(1, report.getFailedCommits());
+        //the chunk, then the rows one by one
+        verify(resolver, times(6)).commit();
+        verify(resolver, times(1)).revert();
+    }
+
+    @Test
+    public void testBadRowIsSkipped() throws Exception {
+        doThrow(new WCMException("invalid template")).when(pageManager)
+                .create(eq("/content/trainingproject/en"), eq("d"), anyString(), anyString(), anyBoolean());
+        ImportReport report = importer.importPages(resolver, rows(CSV), "test", 5, 1, false, null);
+        assertEquals(4, report.getCreated());
+        assertEquals(1, report.getFailed());
+        //the chunk is reverted at the bad row, then committed row by row
+        verify(resolver, times(4)).commit();
+        verify(resolver, times(2)).revert();
+    }
+
+    @Test
+    public void testResumeAfterCheckpoint() throws Exception {
+        String path = PageImporter.CHECKPOINTS + "/test";
+        when(session.nodeExists(path)).thenReturn(true);
+        when(session.getNode(path).getProperty("rows").getLong()).thenReturn(2L);
+        when(session.getNode(path).getProperty("hash").getString())
+                .thenReturn(sha1("/content/trainingproject/en/a,A\n/content/trainingproject/en/b,B\n"));
+        ImportReport report = importer.importPages(resolver, rows(CSV), "test", 2, 1, false, null);
+        assertNull(report.getError());
+        assertEquals(2, report.getResumed());
+        assertEquals(3, report.getCreated());
+
+        when(session.getNode(path).getProperty("hash").getString()).thenReturn(sha1("another file"));
+        report = importer.importPages(resolver, rows(CSV), "test", 2, 1, false, null);
+        assertNotNull(report.getError());
+        assertEquals(0, report.getCreated());
+    }
+
+    @Test
+    public void testPagesToPublishAreQueued() throws Exception {
+        ImportReport report = importer.importPages(resolver, rows("/content/trainingproject/en/a,A,true\n"
+                + "/content/trainingproject/en/b,B,false\n/content/trainingproject/en/c,C,true\n"), "test", 2, 1, false, null);
+        assertEquals(2, report.getPublishQueued());
+        InOrder inOrder = inOrder(publishQueue);
+        inOrder.verify(publishQueue).add("/content/trainingproject/en/a");
+        inOrder.verify(publishQueue).add("/content/trainingproject/en/c");
+        //the import waits for its batches
+        inOrder.verify(publishQueue).await();
+    }
+
+    @Test
+    public void testConflictIsRetried() throws Exception {
+        doThrow(new PersistenceException("conflict", new InvalidItemStateException("OakState0001")))
+                .doNothing().when(resolver).commit();
+        ImportReport report = importer.importPages(resolver, rows(CSV), "test", 5, 1, false, null);
+        assertEquals(5, report.getCreated());
+        assertEquals(1, report.getConflicts());
+        assertEquals(1, report.getRetries());
+        assertEquals(0, report.getFailedCommits());
+        verify(resolver, times(2)).commit();
+        verify(resolver).refresh();
+    }
+
+    @Test
+    public void testParallelImportPartitionsBySubtree() throws Exception {
+        ResourceResolver worker1 = resolver();
+        ResourceResolver worker2 = resolver();
+        ResourceResolverFactory factory = mock(ResourceResolverFactory.class);
+        when(factory.getServiceResourceResolver(anyMapOf(String.class, Object.class))).thenReturn(worker1, worker2);
+        PrivateAccessor.setField(importer, "resourceResolverFactory", factory);
+        when(resolver.getUserID()).thenReturn("jdoe");
+        StringBuilder csv = new StringBuilder("/content/trainingproject/en/a,A\n/content/trainingproject/en/b,B\n");
+        for (int i = 0; i < 10; i++) {
+            csv.append("/content/trainingproject/en/a/a").append(i).append(",A").append(i).append('\n');
+            csv.append("/content/trainingproject/en/b/b").append(i).append(",B").append(i).append('\n');
+        }
+        final Set<String> imported = new HashSet<String>();
+        ImportReport report = importer.importPages(resolver, rows(csv.toString()), "test", 3, 2, false, new ImportListener() {
+            @Override
+            public void rowImported(String key, Map<String, Object> result) {
+                imported.add(key);
+            }
+        });
+        assertNull(report.getError());
+        assertEquals(22, report.getCreated());
+        assertEquals(22, imported.size());
+        assertEquals(2, report.getPartitions());
+        //the pages above the partitions with the calling resolver, a partition with each worker, in any order
+        verify(pageManager).create("/content/trainingproject/en", "a", PageImporterImpl.DEFAULT_TEMPLATE, "A", false);
+        verify(pageManager, times(2)).create(anyString(), anyString(), anyString(), anyString(), anyBoolean());
+        verify(worker1.adaptTo(PageManager.class), times(10)).create(anyString(), anyString(), anyString(), anyString(), anyBoolean());
+        verify(worker2.adaptTo(PageManager.class), times(10)).create(anyString(), anyString(), anyString(), anyString(), anyBoolean());
+        verify(worker1).close();
+        verify(worker2).close();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testWorkersImpersonateTheCaller() throws Exception {
+        ResourceResolver worker1 = resolver();
+        ResourceResolver worker2 = resolver();
+        ResourceResolverFactory factory = mock(ResourceResolverFactory.class);
+        when(factory.getServiceResourceResolver(anyMapOf(String.class, Object.class))).thenReturn(worker1, worker2);
+        PrivateAccessor.setField(importer, "resourceResolverFactory", factory);
+        when(resolver.getUserID()).thenReturn("jdoe");
+        importer.importPages(resolver, rows("/content/trainingproject/en/a/a1,A1\n"), "test", 3, 2, false, null);
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Map<String, Object>> params = (ArgumentCaptor<Map<String, Object>>) (ArgumentCaptor<?>) ArgumentCaptor.forClass(Map.class);
+        verify(factory, times(2)).getServiceResourceResolver(params.capture());
+        for (Map<String, Object> workerParams : params.getAllValues()) {
+            assertEquals("training", workerParams.get(ResourceResolverFactory.SUBSERVICE));
+            assertEquals("jdoe", workerParams.get(ResourceResolverFactory.USER_IMPERSONATION));
+        }
+    }
+
+    @Test
+    public void testParallelismIsBounded() throws Exception {
+        ResourceResolver[] workers = {resolver(), resolver(), resolver(), resolver()};
+        ResourceResolverFactory factory = mock(ResourceResolverFactory.class);
+        when(factory.getServiceResourceResolver(anyMapOf(String.class, Object.class)))
+                .thenReturn(workers[0], workers[1], workers[2], workers[3]);
+        PrivateAccessor.setField(importer, "resourceResolverFactory", factory);
+        when(resolver.getUserID()).thenReturn("jdoe");
+        ImportReport report = importer.importPages(resolver, rows(CSV), "test", 2, 100, false, null);
+        assertEquals(importer.getMaxParallelism(), report.getParallelism());
+        verify(factory, times(importer.getMaxParallelism())).getServiceResourceResolver(anyMapOf(String.class, Object.class));
+    }
+
+    @Test
+    public void testPartitionOf() {
+        assertEquals("/content/trainingproject/en/products", PageImporterImpl.partitionOf("/content/trainingproject/en/products/p1/x", 4));
+        assertNull(PageImporterImpl.partitionOf("/content/trainingproject/en/products", 4));
+    }
+
+    private static ResourceResolver resolver() throws Exception {
+        PageManager pageManager = mock(PageManager.class);
+        when(pageManager.create(anyString(), anyString(), anyString(), anyString(), anyBoolean())).thenAnswer(new Answer<Page>() {
+            @Override
+            public Page answer(InvocationOnMock invocation) {
+                Object[] arguments = invocation.getArguments();
+                Page page = mock(Page.class);
+                when(page.getPath()).thenReturn(arguments[0] + "/" + arguments[1]);
+                when(page.getTitle()).thenReturn((String) arguments[3]);
+                when(page.getTags()).thenReturn(new Tag[0]);
+                return page;
+            }
+        });
+        ResourceResolver resolver = mock(ResourceResolver.class);
+        when(resolver.adaptTo(PageManager.class)).thenReturn(pageManager);
+        return resolver;
+    }
+
+    private static CsvRowReader rows(String csv) {
+        return new CsvRowReader(new StringReader(csv));
+    }
+
+    private static String sha1(String text) throws Exception {
+        byte[] hash = MessageDigest.getInstance("SHA-1").digest(text.getBytes("UTF-8"));
+        return String.format("%040x", new BigInteger(1, hash));
+    }
+}
@@ -0,0 +1,127 @@
+package com.adobe.training.core.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.mockito.AdditionalMatchers.aryEq;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import junitx.util.PrivateAccessor;
+
+import javax.jcr.Session;
+
+import org.apache.sling.jcr.api.SlingRepository;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.adobe.training.core.importer.PublishListener;
+import com.adobe.training.core.importer.PublishQueue;
+import com.day.cq.replication.ReplicationActionType;
+import com.day.cq.replication.ReplicationException;
+import com.day.cq.replication.ReplicationOptions;
+import com.day.cq.replication.Replicator;
+
+/**
+ * JUnit test verifying the PagePublisherImpl activates the pages of a queue in ordered batches
+ */
+public class TestPagePublisherImpl {
+
+    private PagePublisherImpl publisher;
+    private Replicator replicator;
+    private final List<String[]> batches = new ArrayList<String[]>();
+    private final List<Exception> errors = new ArrayList<Exception>();
+
+    @Before
+    public void setup() throws Exception {
+        publisher = new PagePublisherImpl();
+        replicator = mock(Replicator.class);
+        SlingRepository repo = mock(SlingRepository.class);
+        when(repo.loginService("training", null)).thenReturn(mock(Session.class));
+        PrivateAccessor.setField(publisher, "replicator", replicator);
+        PrivateAccessor.setField(publisher, "repo", repo);
+        HashMap<String, Object> properties = new HashMap<String, Object>();
+        properties.put(PagePublisherImpl.PROPERTY_BATCH_SIZE, 2);
+        properties.put(PagePublisherImpl.PROPERTY_THREADS, 2);
+        publisher.activate(properties);
+    }
+
+    @After
+    public void teardown() {
+        publisher.deactivate();
+    }
+
+    @Test
+    public void testOneReplicationPerBatch() throws Exception {
+        PublishQueue queue = publisher.open(listener());
+        for (String path : new String[]{"/content/a", "/content/a/b", "/content/a/c", "/content/a/b/d", "/content/e"}) {
+            queue.add(path);
+        }
+        queue.await();
+        verify(replicator, times(3)).replicate(any(Session.class), eq(ReplicationActionType.ACTIVATE),
+                any(String[].class), any(ReplicationOptions.class));
+        assertEquals(3, batches.size());
+        //in the order the pages were queued
+        assertEquals(Arrays.asList("/content/a", "/content/a/b"), Arrays.asList(batches.get(0)));
+        assertEquals(Arrays.asList("/content/a/c", "/content/a/b/d"), Arrays.asList(batches.get(1)));
+        assertEquals(Arrays.asList("/content/e"), Arrays.asList(batches.get(2)));
+        assertNull(errors.get(0));
+        assertEquals(5L, publisher.getStatistics().get("published"));
+    }
+
+    @Test
+    public void testFailedBatchIsReported() throws Exception {
+        doThrow(new ReplicationException("agent down")).when(replicator).replicate(any(Session.class),
+                eq(ReplicationActionType.ACTIVATE), any(String[].class), any(ReplicationOptions.class));
+        PublishQueue queue = publisher.open(listener());
+        queue.add("/content/a");
+        queue.await();
+        assertNotNull(errors.get(0));
+        assertEquals(1L, publisher.getStatistics().get("failed"));
+        assertEquals(0L, publisher.getStatistics().get("waiting"));
+    }
+
+    @Test
+    public void testFailedBatchIsRetriedPageByPage() throws Exception {
+        doThrow(new ReplicationException("bad page")).when(replicator).replicate(any(Session.class),
+                eq(ReplicationActionType.ACTIVATE), any(String[].class), any(ReplicationOptions.class));
+        doNothing().when(replicator).replicate(any(Session.class), eq(ReplicationActionType.ACTIVATE),
+                aryEq(new String[]{"/content/a"}), any(ReplicationOptions.class));
+        PublishQueue queue = publisher.open(listener());
+        queue.add("/content/a");
+        queue.add("/content/bad");
+        queue.await();
+        //the pages are reported one by one, only the bad page failed
+        assertEquals(Arrays.asList("/content/a"), Arrays.asList(batches.get(0)));
+        assertNull(errors.get(0));
+        assertEquals(Arrays.asList("/content/bad"), Arrays.asList(batches.get(1)));
+        assertNotNull(errors.get(1));
+        assertEquals(1L, publisher.getStatistics().get("published"));
+        assertEquals(1L, publisher.getStatistics().get("failed"));
+        assertEquals(1L, publisher.getStatistics().get("retriedBatches"));
+    }
+
+    private PublishListener listener() {
+        return new PublishListener() {
+            @Override
+            public void batchReplicated(String[] paths, long micros, Exception error) {
+                synchronized (batches) {
+                    batches.add(paths);
+                    errors.add(error);
+                }
+            }
+        };
+    }
+}
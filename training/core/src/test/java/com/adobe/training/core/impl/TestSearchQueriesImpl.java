@@ -0,0 +1,102 @@
+package com.adobe.training.core.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.jcr.Session;
+import javax.jcr.query.Query;
+import javax.jcr.query.QueryManager;
+import javax.jcr.query.qom.Column;
+import javax.jcr.query.qom.Constraint;
+import javax.jcr.query.qom.Ordering;
+import javax.jcr.query.qom.QueryObjectModel;
+import javax.jcr.query.qom.QueryObjectModelFactory;
+import javax.jcr.query.qom.Source;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import com.adobe.training.core.search.SearchQueries;
+
+/**
+ * JUnit test verifying the statements of the SearchQueriesImpl and that they are cached per language and root
+ */
+public class TestSearchQueriesImpl {
+
+    private static final String ROOT = "/content/trainingproject/en";
+
+    private SearchQueriesImpl searchQueries;
+    private Session session;
+    private QueryManager queryManager;
+
+    @Before
+    public void setup() throws Exception {
+        searchQueries = new SearchQueriesImpl();
+        Map<String, Object> properties = new HashMap<String, Object>();
+        properties.put(SearchQueriesImpl.PROPERTY_CACHE_SIZE, 2);
+        searchQueries.activate(properties);
+        session = mock(Session.class, RETURNS_DEEP_STUBS);
+        queryManager = mock(QueryManager.class, RETURNS_DEEP_STUBS);
+        when(session.getWorkspace().getQueryManager()).thenReturn(queryManager);
+    }
+
+    @Test
+    public void testSqlStatementIsCached() throws Exception {
+        searchQueries.prepare(session, SearchQueries.LANGUAGE_SQL, ROOT);
+        searchQueries.prepare(session, SearchQueries.LANGUAGE_SQL, ROOT);
+
+        ArgumentCaptor<String> statement = ArgumentCaptor.forClass(String.class);
+        verify(queryManager, times(2)).createQuery(statement.capture(), eq(Query.JCR_SQL2));
+        assertEquals(statement.getAllValues().get(0), statement.getAllValues().get(1));
+        //the term is a variable, the root a literal
+        assertTrue(statement.getValue(), statement.getValue().contains("ISDESCENDANTNODE(node, [" + ROOT + "])"));
+        assertTrue(statement.getValue(), statement.getValue().contains("CONTAINS(node.*, $" + SearchQueries.TERM + ")"));
+        assertEquals(1L, searchQueries.getStatistics().get("hits"));
+        assertEquals(1L, searchQueries.getStatistics().get("misses"));
+    }
+
+    @Test
+    public void testJqomModelIsBuiltOnce() throws Exception {
+        QueryObjectModelFactory qf = queryManager.getQOMFactory();
+        QueryObjectModel model = mock(QueryObjectModel.class);
+        when(model.getStatement()).thenReturn("SELECT * FROM [nt:unstructured] AS node");
+        when(qf.createQuery(any(Source.class), any(Constraint.class), any(Ordering[].class), any(Column[].class)))
+                .thenReturn(model);
+
+        assertSame(model, searchQueries.prepare(session, SearchQueries.LANGUAGE_JQOM, ROOT));
+        searchQueries.prepare(session, SearchQueries.LANGUAGE_JQOM, ROOT);
+
+        verify(qf).bindVariable(SearchQueries.TERM);
+        verify(qf).descendantNode("node", ROOT);
+        //the hit is created from the statement of the model
+        verify(queryManager).createQuery("SELECT * FROM [nt:unstructured] AS node", Query.JCR_SQL2);
+        assertEquals(1L, searchQueries.getStatistics().get("hits"));
+    }
+
+    @Test
+    public void testStatementsAreCachedPerLanguageAndRoot() throws Exception {
+        searchQueries.prepare(session, SearchQueries.LANGUAGE_SQL, ROOT);
+        searchQueries.prepare(session, SearchQueries.LANGUAGE_SQL, "/content/trainingproject/de");
+        searchQueries.prepare(session, SearchQueries.LANGUAGE_JQOM, ROOT);
+        assertEquals(0L, searchQueries.getStatistics().get("hits"));
+        assertEquals(3L, searchQueries.getStatistics().get("misses"));
+        //cache.size is 2, the statement of the first root was evicted
+        assertEquals(2, searchQueries.getStatistics().get("cachedStatements"));
+        searchQueries.prepare(session, SearchQueries.LANGUAGE_SQL, ROOT);
+        assertEquals(4L, searchQueries.getStatistics().get("misses"));
+        verify(queryManager, times(3)).createQuery(anyString(), eq(Query.JCR_SQL2));
+    }
+}
@@ -0,0 +1,84 @@
+package com.adobe.training.core.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.sling.api.SlingConstants;
+import org.junit.Before;
+import org.junit.Test;
+import org.osgi.service.event.Event;
+
+import com.adobe.training.core.search.SearchResult;
+
+/**
+ * JUnit test verifying eviction and invalidation of the SearchResultCacheImpl
+ */
+public class TestSearchResultCacheImpl {
+
+    private static final String ROOT = "/content/trainingproject/en";
+
+    private SearchResultCacheImpl cache;
+
+    @Before
+    public void setup() {
+        cache = new SearchResultCacheImpl();
+        Map<String, Object> properties = new HashMap<String, Object>();
+        properties.put(SearchResultCacheImpl.PROPERTY_CACHE_SIZE, 2);
+        cache.activate(properties);
+    }
+
+    @Test
+    public void testLeastRecentlyUsedPageIsEvicted() {
+        put("lorem", 0);
+        put("ipsum", 0);
+        assertNotNull(cache.get("anonymous", ROOT, "sql", "lorem", 0, 20));
+        put("dolor", 0);
+        assertNull(cache.get("anonymous", ROOT, "sql", "ipsum", 0, 20));
+        assertNotNull(cache.get("anonymous", ROOT, "sql", "lorem", 0, 20));
+        assertNull(cache.get("admin", ROOT, "sql", "lorem", 0, 20));
+        assertEquals(1L, cache.getStatistics().get("evictions"));
+    }
+
+    @Test
+    public void testChangeBelowRootInvalidates() {
+        put("lorem", 0);
+        cache.handleEvent(changed("/content/trainingproject/de/jcr:content"));
+        assertNotNull(cache.get("anonymous", ROOT, "sql", "lorem", 0, 20));
+        cache.handleEvent(changed(ROOT + "/page/jcr:content"));
+        assertNull(cache.get("anonymous", ROOT, "sql", "lorem", 0, 20));
+    }
+
+    @Test
+    public void testPageReadDuringChangeIsNotCached() {
+        long revision = cache.getRevision(ROOT);
+        cache.handleEvent(changed(ROOT + "/page/jcr:content"));
+        cache.put("anonymous", ROOT, "sql", "lorem", 0, 20, result(ROOT + "/page"), revision);
+        assertNull(cache.get("anonymous", ROOT, "sql", "lorem", 0, 20));
+    }
+
+    @Test
+    public void testChangeOfAnotherRootDoesNotPreventCaching() {
+        long revision = cache.getRevision(ROOT);
+        cache.handleEvent(changed("/content/trainingproject/de/page/jcr:content"));
+        cache.put("anonymous", ROOT, "sql", "lorem", 0, 20, result(ROOT + "/page"), revision);
+        assertNotNull(cache.get("anonymous", ROOT, "sql", "lorem", 0, 20));
+    }
+
+    private void put(String term, long offset) {
+        cache.put("anonymous", ROOT, "sql", term, offset, 20, result(ROOT + "/page/jcr:content"), cache.getRevision(ROOT));
+    }
+
+    private static SearchResult result(String path) {
+        return new SearchResult(new String[]{path}, new String[]{"Page"}, new String[1], new String[1], false, 1);
+    }
+
+    private static Event changed(String path) {
+        Map<String, Object> properties = new HashMap<String, Object>();
+        properties.put(SlingConstants.PROPERTY_PATH, path);
+        return new Event(SlingConstants.TOPIC_RESOURCE_CHANGED, properties);
+    }
+}
@@ -0,0 +1,146 @@
+package com.adobe.training.core.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junitx.util.PrivateAccessor;
+
+import javax.jcr.Session;
+
+import org.apache.sling.jcr.api.SlingRepository;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.osgi.service.event.Event;
+import org.osgi.service.event.EventAdmin;
+
+import com.adobe.training.core.alerts.StockAlertEngine;
+import com.adobe.training.core.stock.Quote;
+
+/**
+ * JUnit test verifying the alerts posted by the StockAlertEngineImpl
+ */
+public class TestStockAlertEngineImpl {
+
+    private StockAlertEngineImpl engine;
+    private final List<Event> events = new ArrayList<Event>();
+    private long timestamp = 1479070800000L;
+
+    @Before
+    public void setup() throws Exception {
+        engine = new StockAlertEngineImpl();
+        EventAdmin eventAdmin = mock(EventAdmin.class, new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) {
+                synchronized (events) {
+                    events.add((Event) invocation.getArguments()[0]);
+                }
+                return null;
+            }
+        });
+        PrivateAccessor.setField(engine, "eventAdmin", eventAdmin);
+        //no rule nodes, only the configured rules
+        SlingRepository repo = mock(SlingRepository.class);
+        when(repo.loginService("training", null)).thenReturn(mock(Session.class));
+        PrivateAccessor.setField(engine, "repo", repo);
+        Map<String, Object> properties = new HashMap<String, Object>();
+        properties.put(StockAlertEngineImpl.PROPERTY_RULES, new String[]{"MSFT=55", "MSFT=60", "MS=10"});
+        properties.put(StockAlertEngineImpl.PROPERTY_COOLDOWN, 0);
+        properties.put(StockAlertEngineImpl.PROPERTY_SNAPSHOT_INTERVAL, 0);
+        engine.activate(properties);
+    }
+
+    @After
+    public void cleanup() {
+        engine.deactivate();
+    }
+
+    @Test
+    public void testAlertPerCrossedThreshold() throws Exception {
+        assertTrue(engine.submit(quote("MSFT", 50)));
+        assertTrue(engine.submit(quote("MS", 5)));
+        assertTrue(engine.submit(quote("MSFT", 57)));
+        waitForEvaluations(1);
+        assertTrue(engine.submit(quote("MSFT", 61)));
+        waitForEvaluations(2);
+
+        assertEquals(2, events.size());
+        assertEquals(StockAlertEngine.TOPIC_ALERT, events.get(0).getTopic());
+        assertEquals("MSFT", events.get(0).getProperty(StockAlertEngine.PROPERTY_SYMBOL));
+        assertEquals(55.0, events.get(0).getProperty(StockAlertEngine.PROPERTY_THRESHOLD));
+        assertEquals(60.0, events.get(1).getProperty(StockAlertEngine.PROPERTY_THRESHOLD));
+        assertEquals("config", events.get(1).getProperty(StockAlertEngine.PROPERTY_OWNER));
+    }
+
+    @Test
+    public void testNoAlertWhileAboveThreshold() throws Exception {
+        engine.submit(quote("MSFT", 50));
+        engine.submit(quote("MSFT", 57));
+        engine.submit(quote("MSFT", 58));
+        waitForEvaluations(2);
+        assertEquals(1, events.size());
+    }
+
+    @Test
+    public void testHoveringPriceAlertsOnce() throws Exception {
+        engine.submit(quote("MSFT", 50));
+        engine.submit(quote("MSFT", 55.1));
+        engine.submit(quote("MSFT", 54.9));
+        engine.submit(quote("MSFT", 55.1));
+        waitForEvaluations(3);
+        assertEquals(1, events.size());
+        assertEquals(1L, engine.getStatistics().get("suppressed"));
+
+        //back below the hysteresis band, the rule fires again
+        engine.submit(quote("MSFT", 54));
+        engine.submit(quote("MSFT", 56));
+        waitForEvaluations(5);
+        assertEquals(2, events.size());
+    }
+
+    @Test
+    public void testIdenticalQuotesAreEvaluatedOnce() throws Exception {
+        engine.submit(quote("MSFT", 50));
+        Quote quote = quote("MSFT", 57);
+        engine.submit(quote);
+        engine.submit(quote);
+        waitForEvaluations(1);
+        assertEquals(1L, engine.getStatistics().get("duplicates"));
+        assertEquals(1, events.size());
+    }
+
+    @Test
+    public void testOlderQuotesAreIgnored() throws Exception {
+        Quote older = quote("MSFT", 57);
+        engine.submit(quote("MSFT", 50));
+        engine.submit(older);
+        engine.submit(quote("MSFT", 51));
+        waitForEvaluations(1);
+        assertEquals(1L, engine.getStatistics().get("outOfOrder"));
+        assertEquals(0, events.size());
+    }
+
+    private void waitForEvaluations(long count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while ((Long) engine.getStatistics().get("evaluated") < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    private Quote quote(String symbol, double price) {
+        Quote quote = new Quote();
+        quote.setSymbol(symbol);
+        quote.setTimestamp(timestamp += 1000);
+        quote.setLastTrade(price);
+        return quote;
+    }
+}
@@ -0,0 +1,134 @@
+package com.adobe.training.core.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.jcr.Node;
+import javax.jcr.PathNotFoundException;
+
+import org.apache.sling.api.SlingConstants;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.osgi.service.event.Event;
+
+import com.adobe.training.core.stock.LastTradeNode;
+import com.adobe.training.core.stock.StockSnapshot;
+
+/**
+ * JUnit test verifying hits, misses, invalidation and the read access check of the StockSnapshotCacheImpl
+ */
+public class TestStockSnapshotCacheImpl {
+
+    private StockSnapshotCacheImpl cache;
+
+    @Before
+    public void setup() {
+        cache = new StockSnapshotCacheImpl();
+        Map<String, Object> properties = new HashMap<String, Object>();
+        properties.put(StockSnapshotCacheImpl.PROPERTY_CACHE_SIZE, 10);
+        cache.activate(properties);
+    }
+
+    @Test
+    public void testSecondReadIsAHit() throws Exception {
+        Node stock = stock("/content/ADBE");
+        StockSnapshot snapshot = cache.get(stock);
+        assertSame(snapshot, cache.get(stock));
+        verify(stock, times(1)).getNode(LastTradeNode.NAME);
+        assertEquals(1L, cache.getStatistics().get("hits"));
+        assertEquals(1L, cache.getStatistics().get("misses"));
+    }
+
+    @Test
+    public void testChangedLastTradeIsReadAgain() throws Exception {
+        Node stock = stock("/content/ADBE");
+        cache.get(stock);
+        cache.handleEvent(changed("/content/MSFT/lastTrade"));
+        cache.get(stock);
+        cache.handleEvent(changed("/content/ADBE/lastTrade"));
+        cache.get(stock);
+        verify(stock, times(2)).getNode(LastTradeNode.NAME);
+        assertEquals(1L, cache.getStatistics().get("invalidations"));
+    }
+
+    @Test
+    public void testRemovedPageDropsTheSnapshotsBelow() throws Exception {
+        Node stock = stock("/content/stocks/ADBE");
+        cache.get(stock);
+        cache.handleEvent(new Event(SlingConstants.TOPIC_RESOURCE_REMOVED, properties("/content/stocks")));
+        cache.get(stock);
+        verify(stock, times(2)).getNode(LastTradeNode.NAME);
+    }
+
+    @Test
+    public void testSnapshotReadDuringItsChangeIsNotCached() throws Exception {
+        final Node stock = stock("/content/ADBE");
+        final Node lastTrade = stock.getNode(LastTradeNode.NAME);
+        when(stock.getNode(LastTradeNode.NAME)).thenAnswer(new Answer<Node>() {
+            @Override
+            public Node answer(InvocationOnMock invocation) {
+                cache.handleEvent(changed("/content/ADBE/lastTrade"));
+                return lastTrade;
+            }
+        });
+        cache.get(stock);
+        cache.get(stock);
+        assertEquals(0L, cache.getStatistics().get("hits"));
+    }
+
+    @Test
+    public void testChangeOfAnotherStockDoesNotPreventCaching() throws Exception {
+        final Node stock = stock("/content/ADBE");
+        final Node lastTrade = stock.getNode(LastTradeNode.NAME);
+        when(stock.getNode(LastTradeNode.NAME)).thenAnswer(new Answer<Node>() {
+            @Override
+            public Node answer(InvocationOnMock invocation) {
+                cache.handleEvent(changed("/content/MSFT/lastTrade"));
+                return lastTrade;
+            }
+        });
+        cache.get(stock);
+        cache.get(stock);
+        assertEquals(1L, cache.getStatistics().get("hits"));
+    }
+
+    @Test(expected = PathNotFoundException.class)
+    public void testHitIsCheckedWithTheSessionOfTheCaller() throws Exception {
+        cache.get(stock("/content/ADBE"));
+        Node unreadable = mock(Node.class);
+        when(unreadable.getPath()).thenReturn("/content/ADBE");
+        when(unreadable.hasNode(LastTradeNode.NAME)).thenReturn(false);
+        cache.get(unreadable);
+    }
+
+    private static Node stock(String path) throws Exception {
+        Node stock = mock(Node.class);
+        Node lastTrade = mock(Node.class, RETURNS_DEEP_STUBS);
+        when(stock.getPath()).thenReturn(path);
+        when(stock.hasNode(LastTradeNode.NAME)).thenReturn(true);
+        when(stock.getNode(LastTradeNode.NAME)).thenReturn(lastTrade);
+        //a typed node, not the legacy String format
+        when(lastTrade.hasProperty(LastTradeNode.TRADETIMESTAMP)).thenReturn(true);
+        return stock;
+    }
+
+    private static Event changed(String path) {
+        return new Event(SlingConstants.TOPIC_RESOURCE_CHANGED, properties(path));
+    }
+
+    private static Map<String, Object> properties(String path) {
+        Map<String, Object> properties = new HashMap<String, Object>();
+        properties.put(SlingConstants.PROPERTY_PATH, path);
+        return properties;
+    }
+}
@@ -0,0 +1,138 @@
+package com.adobe.training.core.importer;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Writer;
+
+import org.apache.sling.commons.json.JSONException;
+import org.apache.sling.commons.json.JSONObject;
+import org.apache.sling.commons.json.io.JSONWriter;
+
+/**
+ * Prints the live heap needed to read a 1,000,000 row CSV file and write the per-row results the way
+ * CSVPageCreator did before (whole file as a parameter String, getBytes, one JSONObject for all rows)
+ * and the way it does now (rows read from the stream one at a time, results written as they come).
+ * Pages are not created, only reading the input and writing the output are measured.
+ * Not a unit test (surefire skips it), run the main method with the test classpath and -Xmx3g.
+ */
+public class CsvImportMemoryBenchmark {
+
+    private static final int ROWS = 1000000;
+
+    public static void main(String[] args) throws Exception {
+        long baseline = liveHeap();
+
+        long start = System.nanoTime();
+        long streamedPeak = streamed() - baseline;
+        long streamedMillis = (System.nanoTime() - start) / 1000000;
+        System.out.println("streamed: peak live heap " + streamedPeak / (1024 * 1024) + " MB, " + streamedMillis + " ms");
+
+        start = System.nanoTime();
+        long bufferedPeak = buffered() - baseline;
+        long bufferedMillis = (System.nanoTime() - start) / 1000000;
+        System.out.println("parameter: peak live heap " + bufferedPeak / (1024 * 1024) + " MB, " + bufferedMillis + " ms");
+    }
+
+    /**
+     * @return the highest live heap seen, sampled every 100,000 rows
+     */
+    private static long streamed() throws IOException, JSONException {
+        long peak = 0;
+        CsvRowReader rows = new CsvRowReader(new InputStreamReader(new GeneratedCsv(ROWS), "UTF-8"));
+        JSONWriter out = new JSONWriter(new DiscardingWriter());
+        out.object();
+        String[] row;
+        while ((row = rows.readRow()) != null) {
+            out.key(row[0]).value(result(row));
+            if (rows.getRowNumber() % 100000 == 0) peak = Math.max(peak, liveHeap());
+        }
+        out.endObject();
+        rows.close();
+        return peak;
+    }
+
+    /**
+     * @return the live heap once the whole response is built, when the most is held
+     */
+    private static long buffered() throws IOException, JSONException {
+        StringBuilder file = new StringBuilder();
+        InputStreamReader generated = new InputStreamReader(new GeneratedCsv(ROWS), "UTF-8");
+        char[] chars = new char[8192];
+        int read;
+        while ((read = generated.read(chars)) > 0) {
+            file.append(chars, 0, read);
+        }
+        //the request parameter
+        String param = file.toString();
+        file = null;
+        byte[] input = param.getBytes();
+        InputStream stream = new ByteArrayInputStream(input);
+        BufferedReader br = new BufferedReader(new InputStreamReader(stream));
+        JSONObject out = new JSONObject();
+        String line;
+        while ((line = br.readLine()) != null) {
+            String[] row = line.split(",");
+            out.put(row[0], result(row));
+        }
+        String response = out.toString();
+        long peak = liveHeap();
+        //keep everything reachable until measured
+        if (param.length() + input.length + response.length() + out.length() == 0) System.out.println();
+        return peak;
+    }
+
+    private static JSONObject result(String[] row) throws JSONException {
+        return new JSONObject().put("Status", "Successful").put("Location", row[0]).put("Title", row[1]);
+    }
+
+    private static long liveHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * A CSV file of page rows generated while it is read
+     */
+    private static class GeneratedCsv extends InputStream {
+        private final int rows;
+        private int row;
+        private byte[] current = new byte[0];
+        private int position;
+
+        GeneratedCsv(int rows) {
+            this.rows = rows;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (position == current.length) {
+                if (row == rows) return -1;
+                current = ("/content/trainingproject/en/import/page" + row + ",Imported Page " + row
+                        + ",/apps/trainingproject/templates/page-content,/etc/tags/training/imported,false\n").getBytes("UTF-8");
+                position = 0;
+                row++;
+            }
+            return current[position++];
+        }
+    }
+
+    private static class DiscardingWriter extends Writer {
+        @Override
+        public void write(char[] chars, int offset, int length) {
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.adobe.training.core.importer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * JUnit test verifying the CommitWatermark only moves the checkpoint over rows that are all committed
+ */
+public class TestCommitWatermark {
+
+    @Test
+    public void testRowsCommittedOutOfOrder() {
+        CommitWatermark watermark = new CommitWatermark(10);
+        watermark.mark(12, "h12");
+        watermark.mark(14, "h14");
+        assertFalse(watermark.committed(13));
+        assertFalse(watermark.committed(14));
+        assertEquals(10, watermark.getWatermark());
+        assertFalse(watermark.committed(11));
+        assertEquals(11, watermark.getWatermark());
+        //12 completes 11 to 14
+        assertTrue(watermark.committed(12));
+        assertEquals(14, watermark.getWatermark());
+        assertEquals(14, watermark.getCheckpoint().getRow());
+        assertEquals("h14", watermark.getCheckpoint().getHash());
+        //rows of a previous run are ignored
+        assertFalse(watermark.committed(5));
+        assertEquals(14, watermark.getWatermark());
+    }
+}
@@ -0,0 +1,38 @@
+package com.adobe.training.core.importer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.junit.Test;
+
+/**
+ * JUnit test verifying how CsvRowReader splits rows and fields
+ */
+public class TestCsvRowReader {
+
+    @Test
+    public void testFieldsLikeSplit() throws IOException {
+        CsvRowReader rows = new CsvRowReader(new StringReader(
+                "/content/a,A,/apps/t,/etc/tags/x,true\n/content/b,B,,\r\n\n/content/c"));
+        assertArrayEquals(new String[]{"/content/a", "A", "/apps/t", "/etc/tags/x", "true"}, rows.readRow());
+        assertArrayEquals(new String[]{"/content/b", "B"}, rows.readRow());
+        assertArrayEquals(new String[]{""}, rows.readRow());
+        assertArrayEquals(new String[]{"/content/c"}, rows.readRow());
+        assertNull(rows.readRow());
+        assertEquals(4, rows.getRowNumber());
+    }
+
+    @Test
+    public void testQuotedFields() throws IOException {
+        CsvRowReader rows = new CsvRowReader(new StringReader(
+                "/content/a,\"Lorem, \"\"Ipsum\"\"\",,\"\"\n\"multi\nline\",x\n"));
+        assertArrayEquals(new String[]{"/content/a", "Lorem, \"Ipsum\"", "", ""}, rows.readRow());
+        assertEquals("/content/a,\"Lorem, \"\"Ipsum\"\"\",,\"\"", rows.getLine());
+        assertArrayEquals(new String[]{"multi\nline", "x"}, rows.readRow());
+        assertNull(rows.readRow());
+    }
+}
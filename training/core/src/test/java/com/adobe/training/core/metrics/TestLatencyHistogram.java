@@ -0,0 +1,39 @@
+package com.adobe.training.core.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * JUnit test verifying the bucket boundaries and percentiles of LatencyHistogram
+ */
+public class TestLatencyHistogram {
+
+    @Test
+    public void testEveryValueFallsIntoItsBucket() {
+        long[] values = {0, 1, 7, 8, 15, 16, 17, 1000, 123456789L, Long.MAX_VALUE};
+        for (long value : values) {
+            int bucket = LatencyHistogram.bucketOf(value);
+            assertTrue(value + " above its bucket", value <= LatencyHistogram.upperBoundOf(bucket));
+            if (bucket > 0) {
+                assertTrue(value + " below its bucket", value > LatencyHistogram.upperBoundOf(bucket - 1));
+            }
+        }
+    }
+
+    @Test
+    public void testPercentilesWithinBucketError() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i);
+        }
+        assertEquals(1000, histogram.getCount());
+        assertEquals(500.5, histogram.getMean(), 0.001);
+        assertEquals(1000, histogram.getMax());
+        long p50 = histogram.getPercentile(50);
+        long p99 = histogram.getPercentile(99);
+        assertTrue("p50 " + p50, p50 >= 500 && p50 <= 500 * 1.125);
+        assertTrue("p99 " + p99, p99 >= 990 && p99 <= 1000);
+    }
+}
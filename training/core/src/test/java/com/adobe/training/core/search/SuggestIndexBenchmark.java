@@ -0,0 +1,73 @@
+package com.adobe.training.core.search;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Prints the heap used by a SuggestIndex of 100,000 generated page titles (3 to 6 words, 2 tags each)
+ * and the latency of top-10 lookups of 1 to 4 character prefixes.
+ * Not a unit test (surefire skips it), run the main method with the test classpath.
+ */
+public class SuggestIndexBenchmark {
+
+    private static final int TITLES = 100000;
+    private static final int LOOKUPS = 200000;
+    private static final String[] WORDS = ("lorem ipsum dolor sit amet consectetur adipiscing elit sed do eiusmod"
+            + " tempor incididunt ut labore et dolore magna aliqua enim minim veniam quis nostrud exercitation"
+            + " ullamco laboris nisi aliquip commodo consequat stock quote market trading news report").split(" ");
+
+    public static void main(String[] args) {
+        Random random = new Random(42);
+        String[] titles = new String[TITLES];
+        for (int i = 0; i < TITLES; i++) {
+            StringBuilder title = new StringBuilder();
+            int words = 3 + random.nextInt(4);
+            for (int w = 0; w < words; w++) {
+                if (w > 0) title.append(' ');
+                String word = WORDS[random.nextInt(WORDS.length)];
+                title.append(Character.toUpperCase(word.charAt(0))).append(word.substring(1));
+            }
+            titles[i] = title.append(' ').append(i).toString();
+        }
+
+        long before = usedMemory();
+        long start = System.nanoTime();
+        SuggestIndex index = new SuggestIndex();
+        for (int i = 0; i < TITLES; i++) {
+            String[] tags = {WORDS[i % WORDS.length], "tag " + (i % 1000)};
+            index.put("/content/trainingproject/en/page" + i, titles[i], tags, random.nextInt(10000));
+        }
+        long buildMillis = (System.nanoTime() - start) / 1000000;
+        long bytes = usedMemory() - before;
+        System.out.println(TITLES + " titles: " + bytes / (1024 * 1024) + " MB, " + bytes / TITLES + " bytes/title, "
+                + index.getNodeCount() + " nodes, built in " + buildMillis + " ms");
+
+        String[] prefixes = new String[1000];
+        for (int i = 0; i < prefixes.length; i++) {
+            String word = WORDS[random.nextInt(WORDS.length)];
+            prefixes[i] = word.substring(0, Math.min(word.length(), 1 + random.nextInt(4)));
+        }
+        long[] nanos = new long[LOOKUPS];
+        long found = 0;
+        //first rounds warm up the JIT
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < LOOKUPS; i++) {
+                long lookupStart = System.nanoTime();
+                found += index.lookup(prefixes[i % prefixes.length], 10).size();
+                nanos[i] = System.nanoTime() - lookupStart;
+            }
+        }
+        Arrays.sort(nanos);
+        System.out.println("top-10 lookup: p50 " + nanos[LOOKUPS / 2] / 1000.0 + " us, p99 "
+                + nanos[LOOKUPS * 99 / 100] / 1000.0 + " us, max " + nanos[LOOKUPS - 1] / 1000.0 + " us");
+        System.out.println("(found " + found + ", " + index.size() + " pages)");
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,61 @@
+package com.adobe.training.core.search;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * JUnit test verifying the prefix lookups, ranking and updates of the SuggestIndex
+ */
+public class TestSuggestIndex {
+
+    private static final String ROOT = "/content/trainingproject/en";
+
+    @Test
+    public void testTopPagesByWeight() {
+        SuggestIndex index = new SuggestIndex();
+        index.put(ROOT + "/lorem", "Lorem Ipsum", null, 5);
+        index.put(ROOT + "/lorentz", "Lorentz Force", null, 20);
+        index.put(ROOT + "/loop", "Loop", null, 50);
+        index.put(ROOT + "/dolor", "Dolor sit", new String[]{"Lorem Tag"}, 10);
+
+        List<Suggestion> suggestions = index.lookup("LOR", 3);
+        assertEquals(3, suggestions.size());
+        assertEquals(ROOT + "/lorentz", suggestions.get(0).getPath());
+        assertEquals(ROOT + "/dolor", suggestions.get(1).getPath());
+        assertEquals(ROOT + "/lorem", suggestions.get(2).getPath());
+        assertEquals(4, index.lookup("lo", 10).size());
+        assertEquals(0, index.lookup("lorx", 10).size());
+    }
+
+    @Test
+    public void testWordsOfTheTitleMatch() {
+        SuggestIndex index = new SuggestIndex();
+        index.put(ROOT + "/lorem", "Lorem  Ipsum-Dolor", null, 0);
+        assertEquals(1, index.lookup("ipsum", 10).size());
+        assertEquals(1, index.lookup("dol", 10).size());
+        assertEquals(1, index.lookup("lorem ip", 10).size());
+        assertEquals(0, index.lookup("psum", 10).size());
+    }
+
+    @Test
+    public void testUpdatesAndRemovals() {
+        SuggestIndex index = new SuggestIndex();
+        index.put(ROOT + "/lorem", "Lorem", null, 1);
+        index.put(ROOT + "/lorem/ipsum", "Lorem Ipsum", null, 2);
+        index.put(ROOT + "/lorem", "Renamed", null, 3);
+        assertEquals(ROOT + "/lorem/ipsum", index.lookup("lorem", 10).get(0).getPath());
+        assertEquals(1, index.lookup("lorem", 10).size());
+        assertEquals(3, index.lookup("ren", 10).get(0).getWeight());
+
+        assertTrue(index.remove(ROOT + "/lorem/ipsum"));
+        assertEquals(0, index.lookup("lorem", 10).size());
+        assertEquals(1, index.removeTree(ROOT));
+        assertEquals(0, index.size());
+        //only the root is left, the emptied nodes are removed
+        assertEquals(1, index.getNodeCount());
+    }
+}
@@ -0,0 +1,209 @@
+package com.adobe.training.core.servlets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.jcr.Node;
+import javax.jcr.Session;
+import javax.jcr.Value;
+import javax.jcr.query.Query;
+import javax.jcr.query.QueryManager;
+import javax.jcr.query.QueryResult;
+import javax.jcr.query.Row;
+import javax.jcr.query.RowIterator;
+import javax.servlet.http.HttpServletResponse;
+
+import junitx.util.PrivateAccessor;
+
+import org.apache.jackrabbit.commons.iterator.RowIteratorAdapter;
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.commons.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.adobe.training.core.impl.SearchQueriesImpl;
+import com.adobe.training.core.search.SearchQueries;
+import com.adobe.training.core.search.SearchResultCache;
+import com.day.cq.wcm.api.Page;
+import com.day.cq.wcm.api.PageManager;
+
+/**
+ * JUnit test verifying the paging parameters, the term binding and the statement cache of the SearchServlet
+ */
+public class TestSearchServlet {
+
+    private static final String ROOT = "/content/trainingproject/en";
+
+    private SearchServlet servlet;
+    private SearchQueriesImpl searchQueries;
+    private SearchResultCache resultCache;
+    private SlingHttpServletRequest request;
+    private SlingHttpServletResponse response;
+    private StringWriter out;
+    private Session session;
+    private QueryManager queryManager;
+    private Query query;
+    private Value term;
+
+    @Before
+    public void setup() throws Throwable {
+        servlet = new SearchServlet();
+        searchQueries = new SearchQueriesImpl();
+        PrivateAccessor.invoke(searchQueries, "activate", new Class[]{Map.class},
+                new Object[]{new HashMap<String, Object>()});
+        resultCache = mock(SearchResultCache.class);
+        PrivateAccessor.setField(servlet, "searchQueries", searchQueries);
+        PrivateAccessor.setField(servlet, "resultCache", resultCache);
+
+        session = mock(Session.class, RETURNS_DEEP_STUBS);
+        queryManager = mock(QueryManager.class);
+        query = mock(Query.class);
+        term = mock(Value.class);
+        when(session.getWorkspace().getQueryManager()).thenReturn(queryManager);
+        when(queryManager.createQuery(anyString(), eq(Query.JCR_SQL2))).thenReturn(query);
+        when(session.getValueFactory().createValue("lorem")).thenReturn(term);
+
+        Node queryRoot = mock(Node.class);
+        when(queryRoot.getPath()).thenReturn(ROOT);
+        when(queryRoot.getSession()).thenReturn(session);
+        Node current = mock(Node.class);
+        when(current.getPath()).thenReturn(ROOT + "/jcr:content");
+        Page page = mock(Page.class);
+        when(page.adaptTo(Node.class)).thenReturn(queryRoot);
+        PageManager pageManager = mock(PageManager.class);
+        when(pageManager.getContainingPage(ROOT + "/jcr:content")).thenReturn(page);
+        ResourceResolver resolver = mock(ResourceResolver.class);
+        when(resolver.adaptTo(PageManager.class)).thenReturn(pageManager);
+        when(resolver.getUserID()).thenReturn("jdoe");
+        Resource resource = mock(Resource.class);
+        when(resource.adaptTo(Node.class)).thenReturn(current);
+        when(resource.getResourceResolver()).thenReturn(resolver);
+
+        request = mock(SlingHttpServletRequest.class, RETURNS_DEEP_STUBS);
+        when(request.getResource()).thenReturn(resource);
+        when(request.getResourceResolver()).thenReturn(resolver);
+        when(request.getRequestPathInfo().getSelectors()).thenReturn(new String[]{"search", SearchQueries.LANGUAGE_SQL});
+        when(request.getParameter("q")).thenReturn("lorem");
+        response = mock(SlingHttpServletResponse.class);
+        out = new StringWriter();
+    }
+
+    @Test
+    public void testInvalidPagingIsRejected() throws Exception {
+        for (String[] paging : new String[][]{{"0", null}, {null, "-1"}, {"ten", null}, {null, "x"}}) {
+            when(request.getParameter("limit")).thenReturn(paging[0]);
+            when(request.getParameter("offset")).thenReturn(paging[1]);
+            servlet.doGet(request, response);
+        }
+        verify(response, times(4)).sendError(eq(HttpServletResponse.SC_BAD_REQUEST), anyString());
+        verify(queryManager, never()).createQuery(anyString(), anyString());
+    }
+
+    @Test
+    public void testPageWithMoreResults() throws Exception {
+        when(request.getParameter("limit")).thenReturn("2");
+        when(request.getParameter("offset")).thenReturn("4");
+        results(rows(3), -1);
+
+        JSONObject json = get();
+        //one more row than requested tells there are more
+        verify(query).setOffset(4);
+        verify(query).setLimit(3);
+        verify(query).bindValue(SearchQueries.TERM, term);
+        assertEquals(2, json.getJSONArray("results").length());
+        assertEquals(ROOT + "/page0", json.getJSONArray("results").getJSONObject(0).getString("path"));
+        assertEquals("Title 0", json.getJSONArray("results").getJSONObject(0).getString("title"));
+        assertTrue(json.getBoolean("hasMore"));
+        assertEquals(6, json.getLong("nextOffset"));
+        assertFalse(json.has("total"));
+    }
+
+    @Test
+    public void testLastPage() throws Exception {
+        when(request.getParameter("limit")).thenReturn("5");
+        results(rows(3), -1);
+
+        JSONObject json = get();
+        assertEquals(3, json.getJSONArray("results").length());
+        assertFalse(json.getBoolean("hasMore"));
+        assertFalse(json.has("nextOffset"));
+    }
+
+    @Test
+    public void testLimitIsCapped() throws Exception {
+        when(request.getParameter("limit")).thenReturn("100000");
+        results(rows(0), -1);
+        assertEquals(1000, get().getInt("limit"));
+        verify(query).setLimit(1001);
+    }
+
+    @Test
+    public void testTotalIsCountedOnRequest() throws Exception {
+        when(request.getParameter("total")).thenReturn("true");
+        results(rows(1), 135);
+        assertEquals(135, get().getLong("total"));
+    }
+
+    @Test
+    public void testStatementIsPreparedOnce() throws Exception {
+        results(rows(1), -1);
+        get();
+        results(rows(1), -1);
+        get();
+        assertEquals(1L, searchQueries.getStatistics().get("misses"));
+        assertEquals(1L, searchQueries.getStatistics().get("hits"));
+    }
+
+    private JSONObject get() throws Exception {
+        out.getBuffer().setLength(0);
+        //the servlet closes the writer of a response
+        when(response.getWriter()).thenReturn(new PrintWriter(out));
+        servlet.doGet(request, response);
+        return new JSONObject(out.toString());
+    }
+
+    /**
+     * Makes the query return the rows, then a result of the size for the total count
+     */
+    private void results(List<Row> rows, long size) throws Exception {
+        QueryResult page = mock(QueryResult.class);
+        when(page.getRows()).thenReturn(new RowIteratorAdapter(rows));
+        RowIterator all = mock(RowIterator.class);
+        when(all.getSize()).thenReturn(size);
+        QueryResult total = mock(QueryResult.class);
+        when(total.getRows()).thenReturn(all);
+        when(query.execute()).thenReturn(page, total);
+    }
+
+    private static List<Row> rows(int count) throws Exception {
+        List<Row> rows = new ArrayList<Row>();
+        for (int i = 0; i < count; i++) {
+            Row row = mock(Row.class);
+            Value title = mock(Value.class);
+            when(title.getString()).thenReturn("Title " + i);
+            when(row.getPath()).thenReturn(ROOT + "/page" + i);
+            when(row.getValue(SearchQueries.COLUMN_TITLE)).thenReturn(title);
+            rows.add(row);
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,90 @@
+package com.adobe.training.core.stock;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Prints the throughput of Quote.setFromCsv(line.split(",")), the parsing the importer used before,
+ * and of QuoteParser for the same feed lines. Not a unit test (surefire skips it), run the main
+ * method with the test classpath and -verbose:gc to compare the garbage of both.
+ *
+ * JMH is not a dependency of the project, so like the other benchmarks this is a main method. It covers
+ * what JMH would: the warm-up rounds are not measured, the parsers run in alternating order so neither
+ * always gets the warmer caches, the median of the measured rounds is reported and the parsed volumes
+ * are summed into a printed checksum so the JIT cannot drop the parsing.
+ */
+public class QuoteParserBenchmark {
+
+    private static final int LINES = 10000;
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int ROUNDS = 11;
+    private static final int PASSES = 100;
+
+    private static long checksum;
+
+    public static void main(String[] args) {
+        Random random = new Random(3);
+        String[] lines = new String[LINES];
+        for (int i = 0; i < LINES; i++) {
+            double price = 10 + random.nextInt(50000) / 100.0;
+            lines[i] = "\"SYM" + (i % 500) + "\"," + price + ",\"11/" + (1 + i % 28) + "/2016\",\""
+                    + (1 + i % 12) + ":" + (10 + i % 50) + (i % 2 == 0 ? "am" : "pm") + "\",-0.75,"
+                    + (price - 1) + "," + (price + 2.5) + "," + (price - 3.25) + "," + random.nextInt(10000000);
+        }
+        Quote quote = new Quote();
+        QuoteParser parser = new QuoteParser();
+        for (int round = 0; round < WARMUP_ROUNDS; round++) {
+            split(lines, quote);
+            scan(lines, parser, quote);
+        }
+        long[] split = new long[ROUNDS];
+        long[] scan = new long[ROUNDS];
+        for (int round = 0; round < ROUNDS; round++) {
+            if (round % 2 == 0) {
+                split[round] = split(lines, quote);
+                scan[round] = scan(lines, parser, quote);
+            } else {
+                scan[round] = scan(lines, parser, quote);
+                split[round] = split(lines, quote);
+            }
+        }
+        long splitRate = linesPerSecond(split);
+        long scanRate = linesPerSecond(scan);
+        System.out.println("median of " + ROUNDS + " rounds: split " + splitRate + " lines/sec, parser "
+                + scanRate + " lines/sec (" + String.format("%.1f", (double) scanRate / splitRate) + "x)");
+        //both parsers read the same volumes
+        System.out.println("(checksum " + checksum + ")");
+    }
+
+    /**
+     * @return the nanoseconds of one round of the split parsing
+     */
+    private static long split(String[] lines, Quote quote) {
+        long start = System.nanoTime();
+        for (int pass = 0; pass < PASSES; pass++) {
+            for (String line : lines) {
+                if (quote.setFromCsv(line.split(","))) checksum += quote.getVolume();
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * @return the nanoseconds of one round of the QuoteParser
+     */
+    private static long scan(String[] lines, QuoteParser parser, Quote quote) {
+        long start = System.nanoTime();
+        for (int pass = 0; pass < PASSES; pass++) {
+            for (String line : lines) {
+                if (parser.parse(line, quote)) checksum -= quote.getVolume();
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static long linesPerSecond(long[] roundNanos) {
+        long[] sorted = roundNanos.clone();
+        Arrays.sort(sorted);
+        return (long) (LINES * PASSES / (sorted[sorted.length / 2] / 1e9));
+    }
+}
@@ -0,0 +1,143 @@
+package com.adobe.training.core.stock;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.jcr.Node;
+import javax.jcr.Property;
+import javax.jcr.PropertyType;
+import javax.jcr.RepositoryException;
+
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * JUnit test verifying that LastTradeNode tells legacy nodes apart, parses them and writes typed properties
+ */
+public class TestLastTradeNode {
+
+    //11/13/2016 4:00pm in New York
+    private static final long TIMESTAMP = 1479070800000L;
+
+    @Test
+    public void testLegacyNodeIsDetected() throws Exception {
+        Map<String, Property> properties = legacyProperties();
+        Node node = node(properties);
+        assertTrue(LastTradeNode.isLegacy(node));
+
+        properties.clear();
+        properties.put(LastTradeNode.TRADETIMESTAMP, property("2016-11-13T16:00:00.000-05:00", PropertyType.DATE));
+        properties.put(LastTradeNode.LASTTRADE, property("105.25", PropertyType.DOUBLE));
+        assertFalse(LastTradeNode.isLegacy(node));
+
+        //a timestamp next to a String price is still legacy
+        properties.put(LastTradeNode.LASTTRADE, property("105.25", PropertyType.STRING));
+        assertTrue(LastTradeNode.isLegacy(node));
+    }
+
+    @Test
+    public void testLegacyNodeIsParsed() throws Exception {
+        Quote quote = new Quote();
+        assertTrue(LastTradeNode.read(node(legacyProperties()), quote));
+        assertEquals("ADBE", quote.getSymbol());
+        assertEquals(TIMESTAMP, quote.getTimestamp());
+        assertEquals(105.25, quote.getLastTrade(), 0);
+        assertEquals(-0.75, quote.getUpDown(), 0);
+        assertEquals(106.00, quote.getOpenPrice(), 0);
+        assertEquals(106.10, quote.getRangeHigh(), 0);
+        assertEquals(104.30, quote.getRangeLow(), 0);
+        assertEquals(1234567L, quote.getVolume());
+    }
+
+    @Test
+    public void testIncompleteLegacyNodeIsNotParsed() throws Exception {
+        Map<String, Property> properties = legacyProperties();
+        properties.put(LastTradeNode.LASTTRADE, property("N/A", PropertyType.STRING));
+        assertFalse(LastTradeNode.read(node(properties), new Quote()));
+
+        properties = legacyProperties();
+        properties.remove(LastTradeNode.VOLUME);
+        assertFalse(LastTradeNode.read(node(properties), new Quote()));
+    }
+
+    @Test
+    public void testQuoteIsWrittenTyped() throws Exception {
+        Map<String, Property> properties = legacyProperties();
+        Node node = node(properties);
+        Quote quote = new Quote();
+        LastTradeNode.read(node, quote);
+        LastTradeNode.write(node, quote);
+
+        verify(node).setProperty(LastTradeNode.LASTTRADE, 105.25);
+        verify(node).setProperty(LastTradeNode.UPDOWN, -0.75);
+        verify(node).setProperty(LastTradeNode.OPENPRICE, 106.00);
+        verify(node).setProperty(LastTradeNode.RANGEHIGH, 106.10);
+        verify(node).setProperty(LastTradeNode.RANGELOW, 104.30);
+        verify(node).setProperty(LastTradeNode.VOLUME, 1234567L);
+        ArgumentCaptor<Calendar> tradeTimestamp = ArgumentCaptor.forClass(Calendar.class);
+        verify(node).setProperty(eq(LastTradeNode.TRADETIMESTAMP), tradeTimestamp.capture());
+        assertEquals(TIMESTAMP, tradeTimestamp.getValue().getTimeInMillis());
+        assertEquals(Quote.EXCHANGE_TIMEZONE, tradeTimestamp.getValue().getTimeZone());
+        //the legacy date and time are removed
+        verify(properties.get(LastTradeNode.REQUESTDATE)).remove();
+        verify(properties.get(LastTradeNode.REQUESTTIME)).remove();
+    }
+
+    /**
+     * @return the String properties of a lastTrade node written by an older importer
+     */
+    private static Map<String, Property> legacyProperties() throws RepositoryException {
+        Map<String, Property> properties = new HashMap<String, Property>();
+        properties.put(LastTradeNode.LASTTRADE, property("105.25", PropertyType.STRING));
+        properties.put(LastTradeNode.REQUESTDATE, property("11/13/2016", PropertyType.STRING));
+        properties.put(LastTradeNode.REQUESTTIME, property("4:00pm", PropertyType.STRING));
+        properties.put(LastTradeNode.UPDOWN, property("-0.75", PropertyType.STRING));
+        properties.put(LastTradeNode.OPENPRICE, property("106.00", PropertyType.STRING));
+        properties.put(LastTradeNode.RANGEHIGH, property("106.10", PropertyType.STRING));
+        properties.put(LastTradeNode.RANGELOW, property("104.30", PropertyType.STRING));
+        properties.put(LastTradeNode.VOLUME, property("1234567", PropertyType.STRING));
+        return properties;
+    }
+
+    /**
+     * @return the lastTrade node of the ADBE page, reading the map on every call
+     */
+    private static Node node(final Map<String, Property> properties) throws RepositoryException {
+        Node node = mock(Node.class);
+        Node page = mock(Node.class);
+        when(page.getName()).thenReturn("ADBE");
+        when(node.getParent()).thenReturn(page);
+        when(node.hasProperty(anyString())).thenAnswer(new Answer<Boolean>() {
+            @Override
+            public Boolean answer(InvocationOnMock invocation) {
+                return properties.containsKey(invocation.getArguments()[0]);
+            }
+        });
+        when(node.getProperty(anyString())).thenAnswer(new Answer<Property>() {
+            @Override
+            public Property answer(InvocationOnMock invocation) {
+                return properties.get(invocation.getArguments()[0]);
+            }
+        });
+        return node;
+    }
+
+    private static Property property(String value, int type) throws RepositoryException {
+        Property property = mock(Property.class);
+        when(property.getString()).thenReturn(value);
+        when(property.getType()).thenReturn(type);
+        return property;
+    }
+}
@@ -0,0 +1,84 @@
+package com.adobe.training.core.stock;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * JUnit test verifying that QuoteParser reads the same values as Quote.setFromCsv
+ */
+public class TestQuoteParser {
+
+    @Test
+    public void testSameValuesAsSplitParsing() {
+        Random random = new Random(11);
+        QuoteParser parser = new QuoteParser();
+        Quote expected = new Quote();
+        Quote actual = new Quote();
+        for (int i = 0; i < 20000; i++) {
+            //every day of several years, including the DST changes, at random trading minutes
+            int month = 1 + random.nextInt(12);
+            int day = 1 + random.nextInt(28);
+            int year = 2010 + random.nextInt(10);
+            int hour = 1 + random.nextInt(12);
+            String line = "\"SYM" + random.nextInt(50) + "\"," + price(random) + ",\"" + month + "/" + day + "/" + year
+                    + "\",\"" + hour + ":" + (random.nextInt(50) + 10) + (random.nextBoolean() ? "am" : "pm") + "\","
+                    + (random.nextBoolean() ? "+" : "-") + price(random) + "," + price(random) + "," + price(random)
+                    + "," + price(random) + "," + random.nextInt(Integer.MAX_VALUE);
+            assertTrue(line, expected.setFromCsv(line.split(",")));
+            assertTrue(line, parser.parse(line, actual));
+            assertEquals(line, expected.toString(), actual.toString());
+            assertEquals(line, expected.fingerprint(), actual.fingerprint());
+        }
+    }
+
+    @Test
+    public void testQuotedFieldsAndWhitespace() {
+        QuoteParser parser = new QuoteParser();
+        Quote quote = new Quote();
+        assertTrue(parser.parse(" \"ADBE\" , 105.25 ,\"11/13/2016\", \"4:00pm\",-0.75,\"106.00\",106.10,104.30,1234567,\"Adobe, Inc.\"\r", quote));
+        assertEquals("ADBE", quote.getSymbol());
+        assertEquals(105.25, quote.getLastTrade(), 0.0);
+        assertEquals(-0.75, quote.getUpDown(), 0.0);
+        assertEquals(106.0, quote.getOpenPrice(), 0.0);
+        assertEquals(1234567L, quote.getVolume());
+        //4:00pm EST is 21:00 UTC
+        assertEquals(1479070800000L, quote.getTimestamp());
+
+        Quote again = new Quote();
+        assertTrue(parser.parse("\"ADBE\",1.5e2,\"11/13/2016\",\"12:05am\",0,0,0,0,0", again));
+        assertSame(quote.getSymbol(), again.getSymbol());
+        assertEquals(150.0, again.getLastTrade(), 0.0);
+        assertEquals(1479013500000L, again.getTimestamp());
+    }
+
+    @Test
+    public void testIncompleteLinesAreRejected() {
+        QuoteParser parser = new QuoteParser();
+        Quote quote = new Quote();
+        assertTrue(parser.parse("\"ADBE\",105.25,\"11/13/2016\",\"4:00pm\",-0.75,106.00,106.10,104.30,1234567", quote));
+        String[] lines = {
+            "",
+            "\"ADBE\",N/A,\"N/A\",\"N/A\",N/A,N/A,N/A,N/A,N/A",
+            "\"ADBE\",105.25,\"11/13/2016\",\"4:00pm\",-0.75,106.00,106.10,104.30",
+            "\"ADBE\",105.25,\"13/13/2016\",\"4:00pm\",-0.75,106.00,106.10,104.30,1234567",
+            "\"ADBE\",105.25,\"11/13/2016\",\"4:00\",-0.75,106.00,106.10,104.30,1234567",
+            "\"ADBE,105.25,\"11/13/2016\",\"4:00pm\",-0.75,106.00,106.10,104.30,1234567",
+            "\"ADBE\",105.25,\"11/13/2016\",\"4:00pm\",-0.75,106.00,106.10,104.30,12x4567"
+        };
+        for (String line : lines) {
+            assertFalse(line, parser.parse(line, quote));
+        }
+        //rejected lines leave the quote untouched
+        assertEquals(105.25, quote.getLastTrade(), 0.0);
+    }
+
+    private static String price(Random random) {
+        return random.nextInt(2000) + "." + random.nextInt(10) + random.nextInt(10);
+    }
+}
@@ -0,0 +1,55 @@
+package com.adobe.training.core.stock;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * JUnit test verifying that QuoteSimulator produces feed lines the importer parses
+ */
+public class TestQuoteSimulator {
+
+    private static final long NOW = 1479070800000L; //11/13/2016 4:00pm New York
+
+    @Test
+    public void testLinesParseAndStayInRange() {
+        QuoteSimulator simulator = new QuoteSimulator(1, 1000);
+        QuoteParser parser = new QuoteParser();
+        Quote quote = new Quote();
+        for (int second = 0; second < 600; second++) {
+            StringBuilder csv = new StringBuilder();
+            simulator.appendCsv(QuoteSimulator.symbolName(second % 10), NOW + second * 1000L, csv);
+            String line = csv.substring(0, csv.length() - 2);
+            assertTrue(line, parser.parse(line, quote));
+            assertTrue(line, quote.getRangeLow() <= quote.getLastTrade() && quote.getLastTrade() <= quote.getRangeHigh());
+            assertEquals(line, quote.getLastTrade() - quote.getOpenPrice(), quote.getUpDown(), 0.001);
+            //quotes are stamped with the time of the last step
+            assertTrue(line, quote.getTimestamp() <= NOW + second * 1000L);
+        }
+        assertEquals(10, simulator.getSymbolCount());
+        assertEquals("SIM00042", QuoteSimulator.symbolName(42));
+    }
+
+    @Test
+    public void testQuotesOnlyChangeWithSteps() {
+        QuoteSimulator simulator = new QuoteSimulator(1, 60000);
+        QuoteParser parser = new QuoteParser();
+        Quote first = new Quote();
+        Quote second = new Quote();
+        parse(simulator, parser, NOW, first);
+        parse(simulator, parser, NOW + 1000, second);
+        assertEquals(first.fingerprint(), second.fingerprint());
+
+        simulator.stepAll();
+        parse(simulator, parser, NOW + 2000, second);
+        assertFalse(first.fingerprint() == second.fingerprint());
+    }
+
+    private static void parse(QuoteSimulator simulator, QuoteParser parser, long now, Quote quote) {
+        StringBuilder csv = new StringBuilder();
+        simulator.appendCsv("ADBE", now, csv);
+        assertTrue(parser.parse(csv.substring(0, csv.length() - 2), quote));
+    }
+}
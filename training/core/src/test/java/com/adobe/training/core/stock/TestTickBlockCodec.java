@@ -0,0 +1,108 @@
+package com.adobe.training.core.stock;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * JUnit test verifying that TickBlockDecoder reads back exactly what TickBlockEncoder wrote
+ */
+public class TestTickBlockCodec {
+
+    @Test
+    public void testRoundTripOfRandomWalk() throws Exception {
+        Random random = new Random(42);
+        Quote[] ticks = new Quote[500];
+        long timestamp = 1479070800000L;
+        double price = 105.25;
+        long volume = 0;
+        for (int i = 0; i < ticks.length; i++) {
+            //mostly regular polling with jitter, plus a few large gaps
+            timestamp += i % 97 == 0 ? 3600000L : 60000L + random.nextInt(200) - 100;
+            price = Math.round((price + random.nextGaussian() * 0.05) * 100) / 100.0;
+            volume += random.nextInt(5000);
+            ticks[i] = quote(timestamp, price, price - 105.25, 105.25, Math.max(price, 106), Math.min(price, 104), volume);
+        }
+        assertRoundTrip(ticks);
+    }
+
+    @Test
+    public void testRoundTripOfEdgeValues() throws Exception {
+        assertRoundTrip(new Quote[]{
+                quote(0L, 0.0, -0.0, Double.NaN, Double.MAX_VALUE, -Double.MIN_VALUE, Long.MAX_VALUE),
+                quote(Long.MAX_VALUE / 2, Double.NEGATIVE_INFINITY, 1e-300, 1, 2, 3, 0),
+                quote(Long.MAX_VALUE / 2, 1.0, 1.0, 1.0, 1.0, 1.0, -1L),
+                quote(Long.MAX_VALUE / 2 + 1, 1.0000001, 1.0, 1.0, 1.0, 1.0, Long.MIN_VALUE)
+        });
+    }
+
+    @Test
+    public void testEncoderIsReusable() throws Exception {
+        TickBlockEncoder encoder = new TickBlockEncoder();
+        encoder.reset();
+        encoder.add(quote(1000, 1, 1, 1, 1, 1, 1));
+        encoder.add(quote(2000, 2, 2, 2, 2, 2, 2));
+        encoder.reset();
+        encoder.add(quote(3000, 3, 3, 3, 3, 3, 3));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(encoder.getEncodedSize(), encoder.writeTo(out));
+
+        TickBlockDecoder decoder = new TickBlockDecoder();
+        decoder.reset(out.toByteArray(), 0, out.size());
+        Quote decoded = new Quote();
+        assertTrue(decoder.next(decoded));
+        assertEquals(3000, decoded.getTimestamp());
+        assertFalse(decoder.next(decoded));
+    }
+
+    private static void assertRoundTrip(Quote[] ticks) throws Exception {
+        TickBlockEncoder encoder = new TickBlockEncoder();
+        encoder.reset();
+        for (Quote tick : ticks) {
+            encoder.add(tick);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        //write behind some other bytes to check offsets are honored
+        out.write(new byte[]{9, 9, 9});
+        int length = encoder.writeTo(out);
+        assertEquals(out.size() - 3, length);
+
+        TickBlockDecoder decoder = new TickBlockDecoder();
+        decoder.reset(out.toByteArray(), 3, length);
+        assertEquals(ticks.length, decoder.getCount());
+        Quote decoded = new Quote();
+        for (Quote tick : ticks) {
+            assertTrue(decoder.next(decoded));
+            assertEquals(tick.getTimestamp(), decoded.getTimestamp());
+            assertBits(tick.getLastTrade(), decoded.getLastTrade());
+            assertBits(tick.getUpDown(), decoded.getUpDown());
+            assertBits(tick.getOpenPrice(), decoded.getOpenPrice());
+            assertBits(tick.getRangeHigh(), decoded.getRangeHigh());
+            assertBits(tick.getRangeLow(), decoded.getRangeLow());
+            assertEquals(tick.getVolume(), decoded.getVolume());
+        }
+        assertFalse(decoder.next(decoded));
+    }
+
+    private static void assertBits(double expected, double actual) {
+        assertEquals(Double.doubleToRawLongBits(expected), Double.doubleToRawLongBits(actual));
+    }
+
+    static Quote quote(long timestamp, double lastTrade, double upDown, double openPrice,
+                       double rangeHigh, double rangeLow, long volume) {
+        Quote quote = new Quote();
+        quote.setTimestamp(timestamp);
+        quote.setLastTrade(lastTrade);
+        quote.setUpDown(upDown);
+        quote.setOpenPrice(openPrice);
+        quote.setRangeHigh(rangeHigh);
+        quote.setRangeLow(rangeLow);
+        quote.setVolume(volume);
+        return quote;
+    }
+}
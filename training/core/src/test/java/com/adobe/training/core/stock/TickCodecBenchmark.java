@@ -0,0 +1,81 @@
+package com.adobe.training.core.stock;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+
+/**
+ * Prints bytes per tick and decode throughput of the tick block codec for a random walk
+ * polled once a minute. Not a unit test (surefire skips it), run the main method with the test classpath.
+ */
+public class TickCodecBenchmark {
+
+    private static final int TICKS = 1000000;
+    private static final int BLOCK_SIZE = 128;
+
+    public static void main(String[] args) throws Exception {
+        Random random = new Random(7);
+        Quote tick = new Quote();
+        TickBlockEncoder encoder = new TickBlockEncoder();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(16 * 1024 * 1024);
+        int[] blockEnds = new int[TICKS / BLOCK_SIZE + 1];
+        int blocks = 0;
+        long timestamp = 1479070800000L;
+        double price = 105.25;
+        long volume = 0;
+        long stringBytes = 0;
+
+        encoder.reset();
+        for (int i = 0; i < TICKS; i++) {
+            timestamp += 60000L + random.nextInt(100) - 50;
+            //prices move in cents and repeat often between polls
+            if (random.nextInt(3) == 0) price = Math.max(1, price + (random.nextInt(11) - 5) / 100.0);
+            volume += random.nextInt(3000);
+            tick.setTimestamp(timestamp);
+            tick.setLastTrade(price);
+            tick.setUpDown(Math.round((price - 105.25) * 100) / 100.0);
+            tick.setOpenPrice(105.25);
+            tick.setRangeHigh(Math.max(price, 106.10));
+            tick.setRangeLow(Math.min(price, 104.30));
+            tick.setVolume(volume);
+            stringBytes += stringSize(tick);
+            encoder.add(tick);
+            if (encoder.getCount() == BLOCK_SIZE) {
+                encoder.writeTo(out);
+                blockEnds[blocks++] = out.size();
+                encoder.reset();
+            }
+        }
+        byte[] data = out.toByteArray();
+        System.out.println("ticks:                  " + blocks * BLOCK_SIZE);
+        System.out.println("string properties:      " + (double) stringBytes / TICKS + " bytes/tick (UTF-8 characters only)");
+        System.out.println("fixed binary records:   56.0 bytes/tick");
+        System.out.println("compressed blocks:      " + (double) data.length / (blocks * BLOCK_SIZE) + " bytes/tick");
+
+        TickBlockDecoder decoder = new TickBlockDecoder();
+        double checksum = 0;
+        //first rounds warm up the JIT
+        for (int round = 0; round < 5; round++) {
+            long start = System.nanoTime();
+            int offset = 0;
+            for (int block = 0; block < blocks; block++) {
+                decoder.reset(data, offset, blockEnds[block] - offset);
+                while (decoder.next(tick)) {
+                    checksum += tick.getLastTrade();
+                }
+                offset = blockEnds[block];
+            }
+            long nanos = System.nanoTime() - start;
+            System.out.println("decode round " + round + ":         "
+                    + (long) (blocks * BLOCK_SIZE / (nanos / 1e9)) + " ticks/sec");
+        }
+        System.out.println("(checksum " + checksum + ")");
+    }
+
+    private static int stringSize(Quote tick) {
+        return Double.toString(tick.getLastTrade()).length() + Double.toString(tick.getUpDown()).length()
+                + Double.toString(tick.getOpenPrice()).length() + Double.toString(tick.getRangeHigh()).length()
+                + Double.toString(tick.getRangeLow()).length() + Long.toString(tick.getVolume()).length()
+                //requestDate and requestTime, Ex: 11/13/2016 4:00pm
+                + 10 + 6;
+    }
+}
@@ -0,0 +1,111 @@
+package com.adobe.training.it.tests;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import javax.jcr.Session;
+import javax.jcr.query.Query;
+import javax.jcr.query.QueryManager;
+import javax.jcr.query.RowIterator;
+
+import org.apache.sling.jcr.api.SlingRepository;
+import org.apache.sling.junit.annotations.SlingAnnotationsTestRunner;
+import org.apache.sling.junit.annotations.TestReference;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.adobe.training.core.search.SearchQueries;
+
+/**
+ * Test case which explains the queries of the project and the lastTrade
+ * range queries of stock alerts server-side, and fails if one of them is
+ * planned as a traversal instead of using the index definitions shipped
+ * in ui.apps (/oak:index/trainingproject*).
+ */
+@RunWith(SlingAnnotationsTestRunner.class)
+public class QueryPlanServerSideTest {
+
+    @TestReference
+    private SlingRepository repository;
+
+    @TestReference
+    private SearchQueries searchQueries;
+
+    private Session session;
+
+    @Before
+    public void login() throws Exception {
+        assertNotNull("Expecting the SlingRepository to be injected by Sling test runner", repository);
+        session = repository.loginAdministrative(null);
+    }
+
+    @After
+    public void logout() {
+        if (session != null) session.logout();
+    }
+
+    @Test
+    public void testSearchUsesContentIndex() throws Exception {
+        //statements of SearchQueriesImpl as run by the SearchServlet
+        for (String language : new String[]{SearchQueries.LANGUAGE_SQL, SearchQueries.LANGUAGE_JQOM}) {
+            String statement = searchQueries.prepare(session, language, "/content/trainingproject/en").getStatement();
+            assertIndex("trainingprojectContent", explain(statement, "lorem"));
+        }
+    }
+
+    @Test
+    public void testLastTradeMigrationUsesLastTradeIndex() throws Exception {
+        //statement of LastTradeMigrationJob
+        String plan = explain("SELECT * FROM [nt:unstructured] AS n WHERE ISDESCENDANTNODE(n, [/content])"
+                + " AND NAME(n) = 'lastTrade'"
+                + " AND n.[requestDate] IS NOT NULL"
+                + " AND n.[migrationFailed] IS NULL", null);
+        assertIndex("trainingprojectLastTrade", plan);
+    }
+
+    @Test
+    public void testPriceRangeUsesLastTradeIndex() throws Exception {
+        //stocks above the threshold of a price alert
+        assertIndex("trainingprojectLastTrade", explain("SELECT * FROM [nt:unstructured] AS n"
+                + " WHERE ISDESCENDANTNODE(n, [/content]) AND NAME(n) = 'lastTrade'"
+                + " AND n.[lastTrade] > 105.0", null));
+    }
+
+    @Test
+    public void testVolumeRangeUsesLastTradeIndex() throws Exception {
+        assertIndex("trainingprojectLastTrade", explain("SELECT * FROM [nt:unstructured] AS n"
+                + " WHERE ISDESCENDANTNODE(n, [/content]) AND NAME(n) = 'lastTrade'"
+                + " AND n.[volume] > 1000000", null));
+    }
+
+    @Test
+    public void testTradeTimeRangeUsesLastTradeIndex() throws Exception {
+        //latest trades first
+        assertIndex("trainingprojectLastTrade", explain("SELECT * FROM [nt:unstructured] AS n"
+                + " WHERE ISDESCENDANTNODE(n, [/content]) AND NAME(n) = 'lastTrade'"
+                + " AND n.[tradeTimestamp] >= CAST('2016-11-13T00:00:00.000Z' AS DATE)"
+                + " ORDER BY n.[tradeTimestamp] DESC", null));
+    }
+
+    private static void assertIndex(String index, String plan) {
+        assertTrue("Expecting the query to use the " + index + " index: " + plan, plan.contains(index));
+    }
+
+    /**
+     * @param term value of $term, null if the statement has no variables
+     * @return the plan of the JCR-SQL2 statement, after checking it does not traverse
+     */
+    private String explain(String statement, String term) throws Exception {
+        QueryManager queryManager = session.getWorkspace().getQueryManager();
+        Query query = queryManager.createQuery("EXPLAIN " + statement, Query.JCR_SQL2);
+        if (term != null) query.bindValue("term", session.getValueFactory().createValue(term));
+        RowIterator rows = query.execute().getRows();
+        assertTrue("Expecting a plan for " + statement, rows.hasNext());
+        String plan = rows.nextRow().getValue("plan").getString();
+        assertFalse("Expecting an index instead of a traversal: " + plan, plan.contains("/* traverse"));
+        return plan;
+    }
+}